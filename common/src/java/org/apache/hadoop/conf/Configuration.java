@@ -38,6 +38,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -68,6 +69,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.PureJavaCrc32;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.codehaus.jackson.JsonFactory;
@@ -521,8 +523,8 @@ public class Configuration implements Iterable<Map.Entry<String,String>>,
   private static int MAX_SUBST = 20;
 
   private String substituteVars(String expr) {
-    if (expr == null) {
-      return null;
+    if (expr == null || expr.indexOf("${") < 0) {
+      return expr;
     }
     Matcher match = varPat.matcher("");
     String eval = expr;
@@ -1446,7 +1448,166 @@ public class Configuration implements Iterable<Map.Entry<String,String>>,
     }
   }
   
+  /**
+   * A property as declared by a resource, before deprecations and final
+   * parameters are applied.
+   */
+  private static class ResourceProperty {
+    final String source;
+    final String attr;
+    final String value;
+    final boolean finalParameter;
+    /** Whether the property comes from an included document */
+    final boolean included;
+
+    ResourceProperty(String source, String attr, String value,
+                     boolean finalParameter, boolean included) {
+      this.source = source;
+      this.attr = attr;
+      this.value = value;
+      this.finalParameter = finalParameter;
+      this.included = included;
+    }
+  }
+
+  /**
+   * The properties of a parsed classpath resource, valid as long as the
+   * resource keeps its length and checksum.
+   */
+  private static class ParsedResource {
+    final long length;
+    final long checksum;
+    final List<ResourceProperty> properties;
+
+    ParsedResource(long length, long checksum,
+                   List<ResourceProperty> properties) {
+      this.length = length;
+      this.checksum = checksum;
+      this.properties = properties;
+    }
+  }
+
+  private static final int MAX_PARSED_RESOURCES = 256;
+
+  /**
+   * The parsed classpath resources shared by all configurations, by URL, so
+   * that new configurations do not parse the default resources again.
+   */
+  private static final Map<String, ParsedResource> PARSED_RESOURCES =
+    Collections.synchronizedMap(
+      new LinkedHashMap<String, ParsedResource>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<String, ParsedResource> eldest) {
+          return size() > MAX_PARSED_RESOURCES;
+        }
+      });
+
+  /**
+   * Is a resource a local file, or in a local jar, cheap to read again?
+   */
+  private static boolean isLocal(URL url) {
+    if ("file".equals(url.getProtocol())) {
+      return true;
+    }
+    if ("jar".equals(url.getProtocol())) {
+      return url.getPath().startsWith("file:");
+    }
+    return false;
+  }
+
+  /**
+   * Read a resource, checksumming its content.
+   * @return the length and checksum of the resource
+   */
+  private static long[] checksum(URL url) throws IOException {
+    PureJavaCrc32 crc = new PureJavaCrc32();
+    byte[] buffer = new byte[8192];
+    long length = 0;
+    InputStream in = url.openStream();
+    try {
+      for (int n; (n = in.read(buffer)) > 0; length += n) {
+        crc.update(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return new long[] { length, crc.getValue() };
+  }
+
   private void loadResource(Properties properties, Object name, boolean quiet) {
+    List<ResourceProperty> props = parseResource(name, quiet);
+    if (props == null) {
+      return;
+    }
+    for (ResourceProperty prop : props) {
+      if (deprecatedKeyMap.containsKey(prop.attr)) {
+        DeprecatedKeyInfo keyInfo = deprecatedKeyMap.get(prop.attr);
+        keyInfo.accessed = false;
+        for (String key:keyInfo.newKeys) {
+          // update new keys with deprecated key's value 
+          loadProperty(properties, prop.source, key, prop.value,
+                       prop.finalParameter);
+        }
+      }
+      else {
+        loadProperty(properties, prop.source, prop.attr, prop.value,
+                     prop.finalParameter);
+      }
+    }
+  }
+
+  /**
+   * Get the properties declared by a resource, from the shared cache when
+   * the resource is on the classpath, is local and has the same content as
+   * when it was cached. Files named by a Path, and resources including other
+   * documents, are parsed every time.
+   * @return the properties, or null if the resource was not found and quiet
+   */
+  private List<ResourceProperty> parseResource(Object name, boolean quiet) {
+    URL url = null;
+    if (name instanceof URL) {
+      url = (URL)name;
+    } else if (name instanceof String) {
+      url = getResource((String)name);
+      if (url != null && isLocal(url)) {
+        return parseClasspathResource(name, url, quiet);
+      }
+    }
+    return parseXml(name, url, quiet);
+  }
+
+  private List<ResourceProperty> parseClasspathResource(Object name, URL url,
+                                                        boolean quiet) {
+    String key = url.toString();
+    long[] content;
+    try {
+      content = checksum(url);
+    } catch (IOException e) {
+      LOG.debug("Not caching " + url, e);
+      return parseXml(name, url, quiet);
+    }
+    ParsedResource parsed = PARSED_RESOURCES.get(key);
+    if (parsed != null && parsed.length == content[0] &&
+        parsed.checksum == content[1]) {
+      return parsed.properties;
+    }
+    List<ResourceProperty> props = parseXml(name, url, quiet);
+    for (ResourceProperty prop : props) {
+      if (prop.included) {
+        PARSED_RESOURCES.remove(key);
+        return props;
+      }
+    }
+    PARSED_RESOURCES.put(key,
+        new ParsedResource(content[0], content[1], props));
+    return props;
+  }
+
+  private List<ResourceProperty> parseXml(Object name, URL url,
+                                          boolean quiet) {
     try {
       DocumentBuilderFactory docBuilderFactory 
         = DocumentBuilderFactory.newInstance();
@@ -1467,22 +1628,11 @@ public class Configuration implements Iterable<Map.Entry<String,String>>,
       Document doc = null;
       Element root = null;
 
-      if (name instanceof URL) {                  // an URL resource
-        URL url = (URL)name;
-        if (url != null) {
-          if (!quiet) {
-            LOG.info("parsing " + url);
-          }
-          doc = builder.parse(url.toString());
-        }
-      } else if (name instanceof String) {        // a CLASSPATH resource
-        URL url = getResource((String)name);
-        if (url != null) {
-          if (!quiet) {
-            LOG.info("parsing " + url);
-          }
-          doc = builder.parse(url.toString());
+      if (url != null) {                          // a URL or CLASSPATH resource
+        if (!quiet) {
+          LOG.info("parsing " + url);
         }
+        doc = builder.parse(url.toString());
       } else if (name instanceof Path) {          // a file resource
         // Can't use FileSystem API or we get an infinite loop
         // since FileSystem uses Configuration API.  Use java.io.File instead.
@@ -1511,60 +1661,16 @@ public class Configuration implements Iterable<Map.Entry<String,String>>,
 
       if (doc == null && root == null) {
         if (quiet)
-          return;
+          return null;
         throw new RuntimeException(name + " not found");
       }
 
       if (root == null) {
         root = doc.getDocumentElement();
       }
-      if (!"configuration".equals(root.getTagName()))
-        LOG.fatal("bad conf file: top-level element not <configuration>");
-      NodeList props = root.getChildNodes();
-      for (int i = 0; i < props.getLength(); i++) {
-        Node propNode = props.item(i);
-        if (!(propNode instanceof Element))
-          continue;
-        Element prop = (Element)propNode;
-        if ("configuration".equals(prop.getTagName())) {
-          loadResource(properties, prop, quiet);
-          continue;
-        }
-        if (!"property".equals(prop.getTagName()))
-          LOG.warn("bad conf file: element not <property>");
-        NodeList fields = prop.getChildNodes();
-        String attr = null;
-        String value = null;
-        boolean finalParameter = false;
-        for (int j = 0; j < fields.getLength(); j++) {
-          Node fieldNode = fields.item(j);
-          if (!(fieldNode instanceof Element))
-            continue;
-          Element field = (Element)fieldNode;
-          if ("name".equals(field.getTagName()) && field.hasChildNodes())
-            attr = ((Text)field.getFirstChild()).getData().trim();
-          if ("value".equals(field.getTagName()) && field.hasChildNodes())
-            value = ((Text)field.getFirstChild()).getData();
-          if ("final".equals(field.getTagName()) && field.hasChildNodes())
-            finalParameter = "true".equals(((Text)field.getFirstChild()).getData());
-        }
-        
-        // Ignore this parameter if it has already been marked as 'final'
-        if (attr != null) {
-          if (deprecatedKeyMap.containsKey(attr)) {
-            DeprecatedKeyInfo keyInfo = deprecatedKeyMap.get(attr);
-            keyInfo.accessed = false;
-            for (String key:keyInfo.newKeys) {
-              // update new keys with deprecated key's value 
-              loadProperty(properties, name, key, value, finalParameter);
-            }
-          }
-          else {
-            loadProperty(properties, name, attr, value, finalParameter);
-          }
-        }
-      }
-        
+      List<ResourceProperty> props = new ArrayList<ResourceProperty>();
+      parseElement(props, name, root, false);
+      return Collections.unmodifiableList(props);
     } catch (IOException e) {
       LOG.fatal("error parsing conf file: " + e);
       throw new RuntimeException(e);
@@ -1580,14 +1686,59 @@ public class Configuration implements Iterable<Map.Entry<String,String>>,
     }
   }
 
-  private void loadProperty(Properties properties, Object name, String attr,
+  private static void parseElement(List<ResourceProperty> props, Object name,
+                                   Element root, boolean included) {
+    if (!"configuration".equals(root.getTagName()))
+      LOG.fatal("bad conf file: top-level element not <configuration>");
+    NodeList propNodes = root.getChildNodes();
+    for (int i = 0; i < propNodes.getLength(); i++) {
+      Node propNode = propNodes.item(i);
+      if (!(propNode instanceof Element))
+        continue;
+      Element prop = (Element)propNode;
+      if ("configuration".equals(prop.getTagName())) {
+        // XInclude sets the base of included elements
+        parseElement(props, prop, prop,
+                     included || prop.hasAttribute("xml:base"));
+        continue;
+      }
+      if (!"property".equals(prop.getTagName()))
+        LOG.warn("bad conf file: element not <property>");
+      NodeList fields = prop.getChildNodes();
+      String attr = null;
+      String value = null;
+      boolean finalParameter = false;
+      for (int j = 0; j < fields.getLength(); j++) {
+        Node fieldNode = fields.item(j);
+        if (!(fieldNode instanceof Element))
+          continue;
+        Element field = (Element)fieldNode;
+        if ("name".equals(field.getTagName()) && field.hasChildNodes())
+          attr = ((Text)field.getFirstChild()).getData().trim();
+        if ("value".equals(field.getTagName()) && field.hasChildNodes())
+          value = ((Text)field.getFirstChild()).getData();
+        if ("final".equals(field.getTagName()) && field.hasChildNodes())
+          finalParameter =
+            "true".equals(((Text)field.getFirstChild()).getData());
+      }
+
+      if (attr != null) {
+        props.add(new ResourceProperty(name.toString(), attr, value,
+                                       finalParameter,
+                                       included ||
+                                       prop.hasAttribute("xml:base")));
+      }
+    }
+  }
+
+  private void loadProperty(Properties properties, String source, String attr,
       String value, boolean finalParameter) {
     if (value != null) {
       if (!finalParameters.contains(attr)) {
         properties.setProperty(attr, value);
-        updatingResource.put(attr, name.toString());
+        updatingResource.put(attr, source);
       } else {
-        LOG.warn(name+":an attempt to override final parameter: "+attr
+        LOG.warn(source+":an attempt to override final parameter: "+attr
             +";  Ignoring.");
       }
     }
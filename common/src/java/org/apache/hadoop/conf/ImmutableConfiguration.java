@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.conf;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * A read-only snapshot of a {@link Configuration}, for code that reads the
+ * same properties over and over.
+ *
+ * <p>The values of all properties are resolved, with
+ * <a href="Configuration.html#VariableExpansion">variable expansion</a>,
+ * when the snapshot is taken, and the values of numbers and booleans are
+ * parsed once, so that getters are map lookups. Names which are deprecated
+ * or not set are resolved on first use and remembered.
+ *
+ * <p>Changes to the configuration the snapshot was taken from, to system
+ * properties and to default resources are not seen by the snapshot.
+ * Methods which would change the snapshot throw
+ * {@link UnsupportedOperationException}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ImmutableConfiguration extends Configuration {
+  /** Marks names which are not set; compared by identity */
+  private static final String UNSET = new String("");
+  /**
+   * Mark names whose values do not parse as a number of the type, for which
+   * each caller gets its own default
+   */
+  private static final Object NOT_INT = new Object();
+  private static final Object NOT_LONG = new Object();
+  private static final Object NOT_FLOAT = new Object();
+
+  private final ConcurrentHashMap<String, String> values;
+  private final ConcurrentHashMap<String, Object> parsed =
+    new ConcurrentHashMap<String, Object>();
+
+  /**
+   * Take a snapshot of a configuration.
+   * @param other the configuration
+   */
+  public ImmutableConfiguration(Configuration other) {
+    super(other);
+    ConcurrentHashMap<String, String> resolved =
+      new ConcurrentHashMap<String, String>(size() * 2);
+    for (Map.Entry<String, String> item : this) {
+      String value = super.get(item.getKey());
+      if (value != null) {
+        resolved.put(item.getKey(), value);
+      }
+    }
+    values = resolved;
+  }
+
+  @Override
+  public String get(String name) {
+    String value = values.get(name);
+    if (value == null) {
+      value = super.get(name);
+      values.put(name, value == null ? UNSET : value);
+      return value;
+    }
+    return value == UNSET ? null : value;
+  }
+
+  @Override
+  public String get(String name, String defaultValue) {
+    String value = get(name);
+    return value == null ? super.get(name, defaultValue) : value;
+  }
+
+  @Override
+  public int getInt(String name, int defaultValue) {
+    Object value = parsed.get(name);
+    if (value instanceof Integer) {
+      return (Integer) value;
+    }
+    if (value == NOT_INT || get(name) == null) {
+      return defaultValue;
+    }
+    int i = super.getInt(name, defaultValue);
+    // only a value which is not a number gives back different defaults
+    if (i == defaultValue && super.getInt(name, ~defaultValue) != i) {
+      parsed.put(name, NOT_INT);
+    } else {
+      parsed.put(name, i);
+    }
+    return i;
+  }
+
+  @Override
+  public long getLong(String name, long defaultValue) {
+    Object value = parsed.get(name);
+    if (value instanceof Long) {
+      return (Long) value;
+    }
+    if (value == NOT_LONG || get(name) == null) {
+      return defaultValue;
+    }
+    long l = super.getLong(name, defaultValue);
+    if (l == defaultValue && super.getLong(name, ~defaultValue) != l) {
+      parsed.put(name, NOT_LONG);
+    } else {
+      parsed.put(name, l);
+    }
+    return l;
+  }
+
+  @Override
+  public float getFloat(String name, float defaultValue) {
+    Object value = parsed.get(name);
+    if (value instanceof Float) {
+      return (Float) value;
+    }
+    if (value == NOT_FLOAT || get(name) == null) {
+      return defaultValue;
+    }
+    float f = super.getFloat(name, defaultValue);
+    float other = Float.isNaN(defaultValue) ? 0f : Float.NaN;
+    if (Float.compare(f, defaultValue) == 0 &&
+        Float.compare(super.getFloat(name, other), f) != 0) {
+      parsed.put(name, NOT_FLOAT);
+    } else {
+      parsed.put(name, f);
+    }
+    return f;
+  }
+
+  @Override
+  public boolean getBoolean(String name, boolean defaultValue) {
+    Object value = parsed.get(name);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    String s = get(name);
+    if ("true".equals(s) || "false".equals(s)) {
+      boolean b = Boolean.parseBoolean(s);
+      parsed.put(name, b);
+      return b;
+    }
+    return super.getBoolean(name, defaultValue);
+  }
+
+  private static UnsupportedOperationException immutable() {
+    return new UnsupportedOperationException("Configuration is immutable");
+  }
+
+  @Override
+  public void set(String name, String value) {
+    throw immutable();
+  }
+
+  @Override
+  public synchronized void unset(String name) {
+    throw immutable();
+  }
+
+  @Override
+  public void clear() {
+    throw immutable();
+  }
+
+  @Override
+  public void addResource(String name) {
+    throw immutable();
+  }
+
+  @Override
+  public void addResource(URL url) {
+    throw immutable();
+  }
+
+  @Override
+  public void addResource(Path file) {
+    throw immutable();
+  }
+
+  @Override
+  public void addResource(InputStream in) {
+    throw immutable();
+  }
+
+  /**
+   * Does nothing: a snapshot keeps the resources it was taken with, also
+   * when default resources are added.
+   */
+  @Override
+  public synchronized void reloadConfiguration() {
+  }
+}
@@ -73,6 +73,23 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
     "ipc.server.handler.queue.size";
   /** Default value for IPC_SERVER_HANDLER_QUEUE_SIZE_KEY */
   public static final int     IPC_SERVER_HANDLER_QUEUE_SIZE_DEFAULT = 100;
+  /** Number of (user, method) pairs the RPC server profiles; 0 disables */
+  public static final String  IPC_SERVER_CALL_PROFILE_SIZE_KEY =
+    "ipc.server.call.profile.size";
+  /** Default value for IPC_SERVER_CALL_PROFILE_SIZE_KEY */
+  public static final int     IPC_SERVER_CALL_PROFILE_SIZE_DEFAULT = 0;
+
+  /** How LocalDirAllocator places files: round-robin or weighted */
+  public static final String  FS_LOCAL_DIR_PLACEMENT_KEY =
+    "fs.local.dir.placement";
+  /** Default value for FS_LOCAL_DIR_PLACEMENT_KEY */
+  public static final String  FS_LOCAL_DIR_PLACEMENT_DEFAULT =
+    LocalDirAllocator.PLACEMENT_ROUND_ROBIN;
+  /** Milliseconds for which LocalDirAllocator trusts a directory check */
+  public static final String  FS_LOCAL_DIR_CHECK_INTERVAL_KEY =
+    "fs.local.dir.check.interval";
+  /** Default value for FS_LOCAL_DIR_CHECK_INTERVAL_KEY */
+  public static final long    FS_LOCAL_DIR_CHECK_INTERVAL_DEFAULT = 0;
 
   /** Internal buffer size for Lzo compressor/decompressors */
   public static final String  IO_COMPRESSION_CODEC_LZO_BUFFERSIZE_KEY =
@@ -93,5 +110,12 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Default value for IO_COMPRESSION_CODEC_SNAPPY_BUFFERSIZE_KEY */
   public static final int IO_COMPRESSION_CODEC_SNAPPY_BUFFERSIZE_DEFAULT =
       256 * 1024;
-}
 
+  /** Internal buffer size for LZ4 compressor/decompressors */
+  public static final String IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_KEY =
+      "io.compression.codec.lz4.buffersize";
+
+  /** Default value for IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_KEY */
+  public static final int IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_DEFAULT =
+      256 * 1024;
+}
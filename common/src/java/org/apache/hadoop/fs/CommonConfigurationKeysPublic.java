@@ -44,6 +44,11 @@ public class CommonConfigurationKeysPublic {
     "net.topology.script.number.args";
   /** Default value for NET_TOPOLOGY_SCRIPT_NUMBER_ARGS_KEY */
   public static final int     NET_TOPOLOGY_SCRIPT_NUMBER_ARGS_DEFAULT = 100;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  NET_TOPOLOGY_CACHE_TTL_KEY =
+    "net.topology.cache.ttl";
+  /** Default value for NET_TOPOLOGY_CACHE_TTL_KEY */
+  public static final long    NET_TOPOLOGY_CACHE_TTL_DEFAULT = 0;
 
   //FS keys
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
@@ -54,6 +59,10 @@ public class CommonConfigurationKeysPublic {
   public static final String  FS_DF_INTERVAL_KEY = "fs.df.interval"; 
   /** Default value for FS_DF_INTERVAL_KEY */
   public static final long    FS_DF_INTERVAL_DEFAULT = 60000;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  FS_DU_INTERVAL_KEY = "fs.du.interval";
+  /** Default value for FS_DU_INTERVAL_KEY */
+  public static final long    FS_DU_INTERVAL_DEFAULT = 600000;
 
 
   //Defaults are not specified for following keys
@@ -63,6 +72,9 @@ public class CommonConfigurationKeysPublic {
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  NET_TOPOLOGY_NODE_SWITCH_MAPPING_IMPL_KEY =
     "net.topology.node.switch.mapping.impl";
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  NET_TOPOLOGY_TABLE_FILE_NAME_KEY =
+    "net.topology.table.file.name";
 
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  FS_TRASH_CHECKPOINT_INTERVAL_KEY =
@@ -113,11 +125,47 @@ public class CommonConfigurationKeysPublic {
   /** Default value for IO_MAP_INDEX_SKIP_KEY */
   public static final int     IO_MAP_INDEX_SKIP_DEFAULT = 0;
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_MAP_INDEX_CACHE_SIZE_KEY =
+    "io.map.index.cache.size";
+  /** Default value for IO_MAP_INDEX_CACHE_SIZE_KEY */
+  public static final long    IO_MAP_INDEX_CACHE_SIZE_DEFAULT = 0;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_COLUMNFILE_ROWGROUP_SIZE_KEY =
+    "io.columnfile.rowgroup.size";
+  /** Default value for IO_COLUMNFILE_ROWGROUP_SIZE_KEY */
+  public static final long    IO_COLUMNFILE_ROWGROUP_SIZE_DEFAULT =
+    4 * 1024 * 1024;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY =
     "io.seqfile.compress.blocksize";
   /** Default value for IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY */
   public static final int     IO_SEQFILE_COMPRESS_BLOCKSIZE_DEFAULT = 1000000;
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_SEQFILE_COMPRESS_THREADS_KEY =
+    "io.seqfile.compress.threads";
+  /** Default value for IO_SEQFILE_COMPRESS_THREADS_KEY */
+  public static final int     IO_SEQFILE_COMPRESS_THREADS_DEFAULT = 0;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_SEQFILE_READ_AHEAD_BLOCKS_KEY =
+    "io.seqfile.read.ahead.blocks";
+  /** Default value for IO_SEQFILE_READ_AHEAD_BLOCKS_KEY */
+  public static final int     IO_SEQFILE_READ_AHEAD_BLOCKS_DEFAULT = 0;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_SEQFILE_READ_AHEAD_THREADS_KEY =
+    "io.seqfile.read.ahead.threads";
+  /** Default value for IO_SEQFILE_READ_AHEAD_THREADS_KEY */
+  public static final int     IO_SEQFILE_READ_AHEAD_THREADS_DEFAULT = 2;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_BZIP2_COMPRESS_THREADS_KEY =
+    "io.compression.codec.bzip2.compress.threads";
+  /** Default value for IO_BZIP2_COMPRESS_THREADS_KEY */
+  public static final int     IO_BZIP2_COMPRESS_THREADS_DEFAULT = 0;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IO_BZIP2_DECOMPRESS_THREADS_KEY =
+    "io.compression.codec.bzip2.decompress.threads";
+  /** Default value for IO_BZIP2_DECOMPRESS_THREADS_KEY */
+  public static final int     IO_BZIP2_DECOMPRESS_THREADS_DEFAULT = 0;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  IO_FILE_BUFFER_SIZE_KEY =
     "io.file.buffer.size";
   /** Default value for IO_FILE_BUFFER_SIZE_KEY */
@@ -64,8 +64,8 @@ public class DU extends Shell {
    * @throws IOException if we fail to refresh the disk usage
    */
   public DU(File path, Configuration conf) throws IOException {
-    this(path, 600000L);
-    //10 minutes default refresh interval
+    this(path, conf.getLong(CommonConfigurationKeysPublic.FS_DU_INTERVAL_KEY,
+        CommonConfigurationKeysPublic.FS_DU_INTERVAL_DEFAULT));
   }
 
   /**
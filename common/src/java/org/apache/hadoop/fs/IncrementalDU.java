@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Filesystem disk space usage statistics kept without running 'du'. The
+ * owner of the directory reports the bytes it adds and removes, and the
+ * total is reconciled now and then by walking the directory in process.
+ * <p>
+ * Usage is the sum of file lengths, not of the blocks allocated on disk as
+ * 'du' reports, so that it agrees with the lengths reported by the owner.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
+@InterfaceStability.Evolving
+public class IncrementalDU {
+  private static final Log LOG = LogFactory.getLog(IncrementalDU.class);
+
+  private final File dir;
+  private final long reconcileInterval;
+  private final AtomicLong used = new AtomicLong();
+  private volatile boolean shouldRun = true;
+  private Thread reconciler;
+
+  /**
+   * Keeps track of disk usage.
+   * @param path the path to check disk usage in
+   * @param interval walk the path to reconcile the usage at this interval
+   * @throws IOException if the path cannot be walked
+   */
+  public IncrementalDU(File path, long interval) throws IOException {
+    this.dir = path.getCanonicalFile();
+    this.reconcileInterval = interval;
+    reconcile();
+  }
+
+  /**
+   * Keeps track of disk usage, reconciled at the interval given by
+   * {@link CommonConfigurationKeysPublic#FS_DU_INTERVAL_KEY}.
+   * @param path the path to check disk usage in
+   * @param conf configuration object
+   * @throws IOException if the path cannot be walked
+   */
+  public IncrementalDU(File path, Configuration conf) throws IOException {
+    this(path, conf.getLong(CommonConfigurationKeysPublic.FS_DU_INTERVAL_KEY,
+        CommonConfigurationKeysPublic.FS_DU_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Decrease how much disk space we use.
+   * @param value decrease by this value
+   */
+  public void decDfsUsed(long value) {
+    used.addAndGet(-value);
+  }
+
+  /**
+   * Increase how much disk space we use.
+   * @param value increase by this value
+   */
+  public void incDfsUsed(long value) {
+    used.addAndGet(value);
+  }
+
+  /**
+   * @return disk space used
+   */
+  public long getUsed() {
+    return used.get();
+  }
+
+  /**
+   * @return the path of which we're keeping track of disk usage
+   */
+  public String getDirPath() {
+    return dir.getPath();
+  }
+
+  /**
+   * Set the usage to the sum of the lengths of the files under the path.
+   * Bytes reported while the path is walked are kept, so a file written
+   * meanwhile may be counted twice until the next walk.
+   * @throws IOException if the path cannot be listed
+   */
+  public synchronized void reconcile() throws IOException {
+    long before = used.get();
+    long walked;
+    if (dir.isDirectory()) {
+      File[] files = dir.listFiles();
+      if (files == null) {
+        throw new IOException("Could not list " + dir);
+      }
+      walked = sizeOf(files);
+    } else if (dir.exists()) {
+      walked = dir.length();
+    } else {
+      throw new IOException(dir + " does not exist");
+    }
+    long now = used.addAndGet(walked - before);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(dir + " uses " + now + " bytes, " + (walked - before) +
+                " more than reported");
+    }
+  }
+
+  private static long sizeOf(File[] files) {
+    long size = 0;
+    for (File f : files) {
+      if (f.isDirectory()) {
+        File[] children = f.listFiles();
+        // null when removed while walking
+        if (children != null) {
+          size += sizeOf(children);
+        }
+      } else {
+        size += f.length();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Start the thread reconciling the disk usage.
+   */
+  public void start() {
+    //only start the thread if the interval is sane
+    if (reconcileInterval > 0) {
+      reconciler = new Thread(new Runnable() {
+        public void run() {
+          while (shouldRun) {
+            try {
+              Thread.sleep(reconcileInterval);
+              reconcile();
+            } catch (InterruptedException e) {
+            } catch (IOException e) {
+              LOG.warn("Could not get disk usage information", e);
+            }
+          }
+        }
+      }, "reconcileUsed-" + dir);
+      reconciler.setDaemon(true);
+      reconciler.start();
+    }
+  }
+
+  /**
+   * Shut down the reconciling thread.
+   */
+  public void shutdown() {
+    shouldRun = false;
+    if (reconciler != null) {
+      reconciler.interrupt();
+    }
+  }
+
+  public String toString() {
+    return used + "\t" + dir;
+  }
+}
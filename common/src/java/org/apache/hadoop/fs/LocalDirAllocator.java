@@ -20,6 +20,7 @@ package org.apache.hadoop.fs;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.*;
 
@@ -31,6 +32,8 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration; 
 
+import static org.apache.hadoop.fs.CommonConfigurationKeys.*;
+
 /** An implementation of a round-robin scheme for disk allocation for creating
  * files. The way it works is that it is kept track what disk was last
  * allocated for a file write. For the current request, the next disk from
@@ -61,6 +64,14 @@ import org.apache.hadoop.conf.Configuration;
  * 3. In the class implementation, "Disk" is referred to as "Dir", which
  * actually points to the configured directory on the Disk which will be the
  * parent for all file write/read allocations.
+ * 4. With <code>fs.local.dir.placement</code> set to <code>weighted</code>,
+ * files are placed at random instead, with directories weighted by their
+ * free space and by how slow recent checks on them were. With
+ * <code>fs.local.dir.check.interval</code> set, directories that passed or
+ * failed a check are not checked again within the interval, and weighted
+ * placement reuses free space read within the interval, up to a second.
+ * 5. Allocations do not lock each other out, except while the configured
+ * directories are first checked.
  */
 @InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
 @InterfaceStability.Unstable
@@ -76,6 +87,11 @@ public class LocalDirAllocator {
   /** Used when size of file to be allocated is unknown. */
   public static final int SIZE_UNKNOWN = -1;
 
+  /** Round-robin placement of files of known size. */
+  public static final String PLACEMENT_ROUND_ROBIN = "round-robin";
+  /** Placement weighted by free space and check latency. */
+  public static final String PLACEMENT_WEIGHTED = "weighted";
+
   /**Create an allocator object
    * @param contextCfgItemName
    */
@@ -199,13 +215,66 @@ public class LocalDirAllocator {
     private final Log LOG =
       LogFactory.getLog(AllocatorPerContext.class);
 
-    private int dirNumLastAccessed;
-    private Random dirIndexRandomizer = new Random();
-    private FileSystem localFS;
-    private DF[] dirDF;
-    private String contextCfgItemName;
-    private String[] localDirs;
-    private String savedLocalDirs = "";
+    private final Random random = new Random();
+    private final String contextCfgItemName;
+    // replaced whenever the configuration changes; read without locking
+    private volatile Dirs dirs;
+
+    /** A configured directory and what was observed checking it. */
+    private static class Dir {
+      final String path;
+      final DF df;
+      // the last check holds until these times
+      volatile long goodUntil;
+      volatile long badUntil;
+      // moving average of the nanoseconds taken to check the directories
+      // created under this one
+      volatile long checkNanos;
+      volatile long available;
+      volatile long availableTime;
+
+      Dir(String path) throws IOException {
+        this.path = path;
+        this.df = new DF(new File(path), 30000);
+      }
+
+      /**
+       * The space available, read at most maxAge milliseconds ago.
+       */
+      long getAvailable(long now, long maxAge) {
+        if (now - availableTime >= maxAge) {
+          available = df.getAvailable();
+          availableTime = now;
+        }
+        return available;
+      }
+
+      void addCheckNanos(long nanos) {
+        long avg = checkNanos;
+        // racing updates may drop a sample
+        checkNanos = avg == 0 ? nanos : avg + (nanos - avg) / 8;
+      }
+    }
+
+    /** The usable directories for one configuration of the context. */
+    private static class Dirs {
+      final String savedLocalDirs;
+      final String placement;
+      final boolean weighted;
+      final long checkInterval;
+      final Dir[] dirs;
+      final AtomicInteger next;
+
+      Dirs(String savedLocalDirs, String placement, long checkInterval,
+           Dir[] dirs, int next) {
+        this.savedLocalDirs = savedLocalDirs;
+        this.placement = placement;
+        this.weighted = PLACEMENT_WEIGHTED.equals(placement);
+        this.checkInterval = checkInterval;
+        this.dirs = dirs;
+        this.next = new AtomicInteger(next);
+      }
+    }
 
     public AllocatorPerContext(String contextCfgItemName) {
       this.contextCfgItemName = contextCfgItemName;
@@ -214,23 +283,36 @@ public class LocalDirAllocator {
     /** This method gets called everytime before any read/write to make sure
      * that any change to localDirs is reflected immediately.
      */
-    private void confChanged(Configuration conf) throws IOException {
+    private Dirs confChanged(Configuration conf) throws IOException {
       String newLocalDirs = conf.get(contextCfgItemName);
-      if (!newLocalDirs.equals(savedLocalDirs)) {
-        localDirs = conf.getTrimmedStrings(contextCfgItemName);
-        localFS = FileSystem.getLocal(conf);
-        int numDirs = localDirs.length;
-        ArrayList<String> dirs = new ArrayList<String>(numDirs);
-        ArrayList<DF> dfList = new ArrayList<DF>(numDirs);
-        for (int i = 0; i < numDirs; i++) {
+      String placement = conf.get(FS_LOCAL_DIR_PLACEMENT_KEY,
+                                  FS_LOCAL_DIR_PLACEMENT_DEFAULT);
+      long checkInterval = conf.getLong(FS_LOCAL_DIR_CHECK_INTERVAL_KEY,
+                                        FS_LOCAL_DIR_CHECK_INTERVAL_DEFAULT);
+      Dirs current = dirs;
+      if (current != null && newLocalDirs.equals(current.savedLocalDirs) &&
+          placement.equals(current.placement) &&
+          checkInterval == current.checkInterval) {
+        return current;
+      }
+      synchronized (this) {
+        current = dirs;
+        if (current != null && newLocalDirs.equals(current.savedLocalDirs) &&
+            placement.equals(current.placement) &&
+            checkInterval == current.checkInterval) {
+          return current;
+        }
+        String[] localDirs = conf.getTrimmedStrings(contextCfgItemName);
+        FileSystem localFS = FileSystem.getLocal(conf);
+        ArrayList<Dir> dirList = new ArrayList<Dir>(localDirs.length);
+        for (int i = 0; i < localDirs.length; i++) {
           try {
             // filter problematic directories
             Path tmpDir = new Path(localDirs[i]);
             if(localFS.mkdirs(tmpDir)|| localFS.exists(tmpDir)) {
               try {
                 DiskChecker.checkDir(new File(localDirs[i]));
-                dirs.add(localDirs[i]);
-                dfList.add(new DF(new File(localDirs[i]), 30000));
+                dirList.add(new Dir(localDirs[i]));
               } catch (DiskErrorException de) {
                 LOG.warn( localDirs[i] + "is not writable\n", de);
               }
@@ -242,26 +324,42 @@ public class LocalDirAllocator {
                 ie.getMessage() + "\n", ie);
           } //ignore
         }
-        localDirs = dirs.toArray(new String[dirs.size()]);
-        dirDF = dfList.toArray(new DF[dirs.size()]);
-        savedLocalDirs = newLocalDirs;
-        
         // randomize the first disk picked in the round-robin selection 
-        dirNumLastAccessed = dirIndexRandomizer.nextInt(dirs.size());
+        int first = dirList.isEmpty() ? 0 : random.nextInt(dirList.size());
+        current = new Dirs(newLocalDirs, placement, checkInterval,
+            dirList.toArray(new Dir[dirList.size()]), first);
+        dirs = current;
+        return current;
       }
     }
 
-    private Path createPath(String path) throws IOException {
-      Path file = new Path(new Path(localDirs[dirNumLastAccessed]),
-                                    path);
+    /**
+     * Check that the parent of path can be created under dir. The check is
+     * skipped if dir passed one within the check interval and the parent
+     * already exists.
+     * @return the path under dir, or null if dir failed the check
+     */
+    private Path createPath(Dir dir, String path, long checkInterval) {
+      Path file = new Path(new Path(dir.path), path);
+      File parent = new File(file.getParent().toUri().getPath());
+      long now = System.currentTimeMillis();
+      if (now < dir.goodUntil && parent.isDirectory()) {
+        return file;
+      }
       //check whether we are able to create a directory here. If the disk
       //happens to be RDONLY we will fail
+      long start = System.nanoTime();
       try {
-        DiskChecker.checkDir(new File(file.getParent().toUri().getPath()));
+        DiskChecker.checkDir(parent);
+        dir.goodUntil = now + checkInterval;
         return file;
       } catch (DiskErrorException d) {
         LOG.warn("Disk Error Exception: ", d);
+        dir.goodUntil = 0;
+        dir.badUntil = now + checkInterval;
         return null;
+      } finally {
+        dir.addCheckNanos(System.nanoTime() - start);
       }
     }
 
@@ -270,7 +368,9 @@ public class LocalDirAllocator {
      * @return the current directory index.
      */
     int getCurrentDirectoryIndex() {
-      return dirNumLastAccessed;
+      Dirs current = dirs;
+      return current == null || current.dirs.length == 0 ? 0
+          : (current.next.get() & Integer.MAX_VALUE) % current.dirs.length;
     }
     
     /** Get a path from the local FS. This method should be used if the size of 
@@ -279,7 +379,7 @@ public class LocalDirAllocator {
      *  It will use roulette selection, picking directories
      *  with probability proportional to their available space. 
      */
-    public synchronized Path getLocalPathForWrite(String path, 
+    public Path getLocalPathForWrite(String path, 
         Configuration conf) throws IOException {
       return getLocalPathForWrite(path, SIZE_UNKNOWN, conf);
     }
@@ -290,57 +390,24 @@ public class LocalDirAllocator {
      *  
      *  If size is not known, use roulette selection -- pick directories
      *  with probability proportional to their available space.
+     *
+     *  With weighted placement, directories are always picked by roulette
+     *  selection among those with enough space, weighted also by how slow
+     *  their recent checks were.
      */
-    public synchronized Path getLocalPathForWrite(String pathStr, long size, 
+    public Path getLocalPathForWrite(String pathStr, long size, 
         Configuration conf) throws IOException {
-      confChanged(conf);
-      int numDirs = localDirs.length;
-      int numDirsSearched = 0;
+      Dirs current = confChanged(conf);
       //remove the leading slash from the path (to make sure that the uri
       //resolution results in a valid path on the dir being checked)
       if (pathStr.startsWith("/")) {
         pathStr = pathStr.substring(1);
       }
-      Path returnPath = null;
-      
-      if(size == SIZE_UNKNOWN) {  //do roulette selection: pick dir with probability 
-                    //proportional to available size
-        long[] availableOnDisk = new long[dirDF.length];
-        long totalAvailable = 0;
-        
-            //build the "roulette wheel"
-        for(int i =0; i < dirDF.length; ++i) {
-          availableOnDisk[i] = dirDF[i].getAvailable();
-          totalAvailable += availableOnDisk[i];
-        }
-
-        // Keep rolling the wheel till we get a valid path
-        Random r = new java.util.Random();
-        while (numDirsSearched < numDirs && returnPath == null) {
-          long randomPosition = Math.abs(r.nextLong()) % totalAvailable;
-          int dir = 0;
-          while (randomPosition > availableOnDisk[dir]) {
-            randomPosition -= availableOnDisk[dir];
-            dir++;
-          }
-          dirNumLastAccessed = dir;
-          returnPath = createPath(pathStr);
-          if (returnPath == null) {
-            totalAvailable -= availableOnDisk[dir];
-            availableOnDisk[dir] = 0; // skip this disk
-            numDirsSearched++;
-          }
-        }
+      Path returnPath;
+      if (current.weighted || size == SIZE_UNKNOWN) {
+        returnPath = pickWeighted(current, pathStr, size);
       } else {
-        while (numDirsSearched < numDirs && returnPath == null) {
-          long capacity = dirDF[dirNumLastAccessed].getAvailable();
-          if (capacity > size) {
-            returnPath = createPath(pathStr);
-          }
-          dirNumLastAccessed++;
-          dirNumLastAccessed = dirNumLastAccessed % numDirs; 
-          numDirsSearched++;
-        } 
+        returnPath = pickRoundRobin(current, pathStr, size);
       }
       if (returnPath != null) {
         return returnPath;
@@ -351,6 +418,80 @@ public class LocalDirAllocator {
           "directory for " + pathStr);
     }
 
+    private Path pickRoundRobin(Dirs current, String pathStr, long size) {
+      Dir[] dirs = current.dirs;
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < dirs.length; ++i) {
+        // concurrent callers start from different directories
+        Dir dir = dirs[(current.next.getAndIncrement() & Integer.MAX_VALUE) %
+                       dirs.length];
+        if (now >= dir.badUntil && dir.df.getAvailable() > size) {
+          Path returnPath = createPath(dir, pathStr, current.checkInterval);
+          if (returnPath != null) {
+            return returnPath;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Roulette selection among the directories with more than size bytes
+     * available, weighted by the space available. With weighted placement
+     * the weight is divided by one plus the milliseconds taken by recent
+     * checks, so disks slow to create directories get fewer files.
+     */
+    private Path pickWeighted(Dirs current, String pathStr, long size) {
+      Dir[] dirs = current.dirs;
+      double[] weights = new double[dirs.length];
+      double totalWeight = 0;
+      int candidates = 0;
+      long now = System.currentTimeMillis();
+      // free space read within the last second will do, when checks are
+      // trusted for that long
+      long maxAge = current.weighted ? Math.min(current.checkInterval, 1000)
+                                     : 0;
+      //build the "roulette wheel"
+      for (int i = 0; i < dirs.length; ++i) {
+        long available = dirs[i].getAvailable(now, maxAge);
+        if (now < dirs[i].badUntil || available <= 0 ||
+            (size != SIZE_UNKNOWN && available <= size)) {
+          continue;
+        }
+        weights[i] = available;
+        if (current.weighted) {
+          weights[i] /= 1 + dirs[i].checkNanos / 1e6;
+        }
+        totalWeight += weights[i];
+        ++candidates;
+      }
+
+      // Keep rolling the wheel till we get a valid path
+      while (candidates > 0) {
+        double position = random.nextDouble() * totalWeight;
+        int dir = -1;
+        for (int i = 0; i < dirs.length; ++i) {
+          if (weights[i] > 0) {
+            // the last candidate, should rounding leave the position past it
+            dir = i;
+            if (position < weights[i]) {
+              break;
+            }
+            position -= weights[i];
+          }
+        }
+        current.next.set(dir);
+        Path returnPath = createPath(dirs[dir], pathStr, current.checkInterval);
+        if (returnPath != null) {
+          return returnPath;
+        }
+        totalWeight -= weights[dir];
+        weights[dir] = 0; // skip this disk
+        --candidates;
+      }
+      return null;
+    }
+
     /** Creates a file on the local FS. Pass size as 
      * {@link LocalDirAllocator.SIZE_UNKNOWN} if not known apriori. We
      *  round-robin over the set of disks (via the configured dirs) and return
@@ -375,22 +516,20 @@ public class LocalDirAllocator {
      *  configured dirs for the file's existence and return the complete
      *  path to the file when we find one 
      */
-    public synchronized Path getLocalPathToRead(String pathStr, 
+    public Path getLocalPathToRead(String pathStr, 
         Configuration conf) throws IOException {
-      confChanged(conf);
-      int numDirs = localDirs.length;
-      int numDirsSearched = 0;
+      Dir[] dirs = confChanged(conf).dirs;
       //remove the leading slash from the path (to make sure that the uri
       //resolution results in a valid path on the dir being checked)
       if (pathStr.startsWith("/")) {
         pathStr = pathStr.substring(1);
       }
-      while (numDirsSearched < numDirs) {
-        Path file = new Path(localDirs[numDirsSearched], pathStr);
+      FileSystem localFS = FileSystem.getLocal(conf);
+      for (Dir dir : dirs) {
+        Path file = new Path(dir.path, pathStr);
         if (localFS.exists(file)) {
           return file;
         }
-        numDirsSearched++;
       }
 
       //no path found
@@ -401,21 +540,23 @@ public class LocalDirAllocator {
     /** We search through all the configured dirs for the file's existence
      *  and return true when we find one 
      */
-    public synchronized boolean ifExists(String pathStr,Configuration conf) {
+    public boolean ifExists(String pathStr,Configuration conf) {
+      Dirs current = dirs;
+      if (current == null) {
+        return false;
+      }
       try {
-        int numDirs = localDirs.length;
-        int numDirsSearched = 0;
         //remove the leading slash from the path (to make sure that the uri
         //resolution results in a valid path on the dir being checked)
         if (pathStr.startsWith("/")) {
           pathStr = pathStr.substring(1);
         }
-        while (numDirsSearched < numDirs) {
-          Path file = new Path(localDirs[numDirsSearched], pathStr);
+        FileSystem localFS = FileSystem.getLocal(conf);
+        for (Dir dir : current.dirs) {
+          Path file = new Path(dir.path, pathStr);
           if (localFS.exists(file)) {
             return true;
           }
-          numDirsSearched++;
         }
       } catch (IOException e) {
         // IGNORE and try again
@@ -52,6 +52,7 @@ import org.apache.hadoop.http.AdminAuthorizedServlet;
 import org.apache.hadoop.http.FilterContainer;
 import org.apache.hadoop.http.FilterInitializer;
 import org.apache.hadoop.http.HtmlQuoting;
+import org.apache.hadoop.ipc.metrics.RpcProfileServlet;
 import org.apache.hadoop.jmx.JMXJsonServlet;
 import org.apache.hadoop.log.LogLevel;
 import org.apache.hadoop.metrics.MetricsServlet;
@@ -290,6 +291,7 @@ public class HttpServer implements FilterContainer {
     addServlet("metrics", "/metrics", MetricsServlet.class);
     addServlet("jmx", "/jmx", JMXJsonServlet.class);
     addServlet("conf", "/conf", ConfServlet.class);
+    addServlet("rpcprofile", "/rpcprofile", RpcProfileServlet.class);
   }
 
   public void addContext(Context ctxt, boolean isFiltered)
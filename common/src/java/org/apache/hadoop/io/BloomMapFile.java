@@ -21,12 +21,14 @@ package org.apache.hadoop.io;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.BitSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
@@ -233,11 +235,27 @@ public class BloomMapFile {
       DataInputStream in = null;
       try {
         FileSystem fs = dirName.getFileSystem(conf);
-        in = fs.open(new Path(dirName, BLOOM_FILE_NAME));
+        Path bloomFile = new Path(dirName, BLOOM_FILE_NAME);
+        // a cached filter spares reading the filter file
+        MapFileIndexCache cache = MapFileIndexCache.get(conf);
+        FileStatus status = null;
+        String name = null;
+        if (cache != null) {
+          status = fs.getFileStatus(bloomFile);
+          name = MapFileIndexCache.getName(status);
+          bloomFilter = cache.get(name, DynamicBloomFilter.class);
+          if (bloomFilter != null) {
+            return;
+          }
+        }
+        in = fs.open(bloomFile);
         bloomFilter = new DynamicBloomFilter();
         bloomFilter.readFields(in);
         in.close();
         in = null;
+        if (cache != null) {
+          cache.put(name, bloomFilter, status.getLen());
+        }
       } catch (IOException ioe) {
         LOG.warn("Can't open BloomFilter: " + ioe + " - fallback to MapFile.");
         bloomFilter = null;
@@ -280,6 +298,40 @@ public class BloomMapFile {
       return super.get(key, val);
     }
     
+    /**
+     * Fast version of the
+     * {@link MapFile.Reader#get(WritableComparable[], Writable[])} method.
+     * Only the keys that the Bloom filter may hold are looked up.
+     */
+    @Override
+    public synchronized BitSet get(WritableComparable[] searchKeys,
+                                   Writable[] vals) throws IOException {
+      if (searchKeys.length != vals.length) {
+        throw new IllegalArgumentException(searchKeys.length + " keys but " +
+                                           vals.length + " values");
+      }
+      int[] candidates = new int[searchKeys.length];
+      int n = 0;
+      for (int i = 0; i < searchKeys.length; ++i) {
+        if (probablyHasKey(searchKeys[i])) {
+          candidates[n++] = i;
+        }
+      }
+      WritableComparable[] candidateKeys = new WritableComparable[n];
+      Writable[] candidateVals = new Writable[n];
+      for (int j = 0; j < n; ++j) {
+        candidateKeys[j] = searchKeys[candidates[j]];
+        candidateVals[j] = vals[candidates[j]];
+      }
+      BitSet candidatesFound = super.get(candidateKeys, candidateVals);
+      BitSet found = new BitSet(searchKeys.length);
+      for (int j = candidatesFound.nextSetBit(0); j >= 0;
+           j = candidatesFound.nextSetBit(j + 1)) {
+        found.set(candidates[j]);
+      }
+      return found;
+    }
+
     /**
      * Retrieve the Bloom filter used by this instance of the Reader.
      * @return a Bloom filter (see {@link Filter})
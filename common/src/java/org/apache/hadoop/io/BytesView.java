@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A view of a range of bytes in an array, serialized as a
+ * {@link BytesWritable}.
+ * <p>
+ * Setting a view does not copy the bytes. The array stays owned by whoever
+ * passed it, and what the view shows changes when the owner reuses the
+ * array: a view filled by a reader is only valid until the next read from
+ * that reader. Use {@link #copyBytes()}, or set a {@link BytesWritable} from
+ * {@link #getBytes()}, {@link #getOffset()} and {@link #getLength()}, to keep
+ * the bytes. Bytes read by {@link #readFields(DataInput)} are copied into an
+ * array owned by the view, which is reused by later reads.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class BytesView implements WritableComparable<BytesView> {
+  private static final int LENGTH_BYTES = 4;
+  private static final byte[] EMPTY_BYTES = {};
+
+  private byte[] bytes = EMPTY_BYTES;
+  private int offset;
+  private int length;
+  // the array of the last readFields, kept for the next one
+  private byte[] owned;
+
+  /** Create an empty view. */
+  public BytesView() {}
+
+  /**
+   * Create a view of a range of an array, without copying it.
+   * @param bytes the array, still owned by the caller
+   * @param offset the first byte of the range
+   * @param length the number of bytes in the range
+   */
+  public BytesView(byte[] bytes, int offset, int length) {
+    set(bytes, offset, length);
+  }
+
+  /**
+   * Refer to a range of an array, without copying it.
+   * @param bytes the array, still owned by the caller
+   * @param offset the first byte of the range
+   * @param length the number of bytes in the range
+   */
+  public void set(byte[] bytes, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > bytes.length - length) {
+      throw new IndexOutOfBoundsException("offset " + offset + ", length " +
+          length + " of " + bytes.length + " bytes");
+    }
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Refer to the remaining bytes of a buffer. The bytes are copied only if
+   * the buffer is not backed by an accessible array. The position of the
+   * buffer is not changed.
+   * @param buffer the buffer, still owned by the caller
+   */
+  public void set(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      set(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    } else {
+      byte[] b = ownedArray(buffer.remaining());
+      buffer.duplicate().get(b, 0, buffer.remaining());
+      set(b, 0, buffer.remaining());
+    }
+  }
+
+  /** Make the view empty. */
+  public void clear() {
+    set(EMPTY_BYTES, 0, 0);
+  }
+
+  /**
+   * Get the array viewed. Only the bytes from {@link #getOffset()} on, for
+   * {@link #getLength()} bytes, belong to the view.
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /** Get the position of the first byte of the view in its array. */
+  public int getOffset() {
+    return offset;
+  }
+
+  /** Get the number of bytes in the view. */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Get a copy of the bytes in the view, in an array of their own.
+   */
+  public byte[] copyBytes() {
+    byte[] result = new byte[length];
+    System.arraycopy(bytes, offset, result, 0, length);
+    return result;
+  }
+
+  private byte[] ownedArray(int len) {
+    if (owned == null || owned.length < len) {
+      owned = new byte[Math.max(len, owned == null ? 0 : owned.length * 3 / 2)];
+    }
+    return owned;
+  }
+
+  /**
+   * Read len bytes into the array owned by the view, and view them.
+   */
+  protected void readBytes(DataInput in, int len) throws IOException {
+    byte[] b = ownedArray(len);
+    in.readFully(b, 0, len);
+    set(b, 0, len);
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    readBytes(in, in.readInt());
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(length);
+    out.write(bytes, offset, length);
+  }
+
+  /**
+   * Compare the bytes of two views.
+   */
+  public int compareTo(BytesView other) {
+    return WritableComparator.compareBytes(bytes, offset, length,
+        other.bytes, other.offset, other.length);
+  }
+
+  /**
+   * Are the views of the same class and over equal bytes?
+   */
+  public boolean equals(Object o) {
+    if (o == null || o.getClass() != getClass()) {
+      return false;
+    }
+    BytesView that = (BytesView) o;
+    return length == that.length && compareTo(that) == 0;
+  }
+
+  public int hashCode() {
+    return WritableComparator.hashBytes(bytes, offset, length);
+  }
+
+  /**
+   * Generate the stream of bytes as hex pairs separated by ' '.
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder(3 * length);
+    for (int idx = offset; idx < offset + length; idx++) {
+      if (idx != offset) {
+        sb.append(' ');
+      }
+      String num = Integer.toHexString(0xff & bytes[idx]);
+      if (num.length() < 2) {
+        sb.append('0');
+      }
+      sb.append(num);
+    }
+    return sb.toString();
+  }
+
+  /** A Comparator optimized for BytesView. */
+  public static class Comparator extends WritableComparator {
+    public Comparator() {
+      super(BytesView.class);
+    }
+
+    /**
+     * Compare the buffers in serialized form.
+     */
+    public int compare(byte[] b1, int s1, int l1,
+                       byte[] b2, int s2, int l2) {
+      return compareBytes(b1, s1+LENGTH_BYTES, l1-LENGTH_BYTES,
+                          b2, s2+LENGTH_BYTES, l2-LENGTH_BYTES);
+    }
+  }
+
+  static {                                        // register this comparator
+    WritableComparator.define(BytesView.class, new Comparator());
+  }
+}
@@ -0,0 +1,768 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.rmi.server.UID;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * <code>ColumnFile</code>s are flat files of rows of typed columns, stored
+ * column by column, so that readers decompress and deserialize only the
+ * columns they need.
+ *
+ * <p>A file begins with a header describing its {@link Schema}: the name,
+ * {@link Writable} class and {@link CompressionCodec} of each column. Rows
+ * follow in row groups of about <code>io.columnfile.rowgroup.size</code>
+ * bytes. A row group holds, for each column, the values of its rows
+ * serialized one after another and compressed with the codec of the column,
+ * and the least and greatest values of columns of
+ * {@link WritableComparable}s, so that readers can skip groups without
+ * reading them. Row groups begin with a sync marker, so that files can be
+ * split as {@link SequenceFile}s are.</p>
+ *
+ * <p>Values may not be null.</p>
+ *
+ * <pre>
+ * header: "CLF", version, column count, (name, class, codec)*, sync
+ * group:  -1, sync, row count, (raw length, length, [least, greatest])*,
+ *         column data*
+ * </pre>
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ColumnFile {
+  private static final byte[] MAGIC = { 'C', 'L', 'F' };
+  private static final byte VERSION = 1;
+  private static final int SYNC_ESCAPE = -1;      // "length" of sync entries
+  private static final int SYNC_HASH_SIZE = 16;   // number of bytes in hash
+  private static final int SYNC_SIZE = 4 + SYNC_HASH_SIZE; // escape + hash
+
+  private ColumnFile() {}                         // no public ctor
+
+  /**
+   * The names, value classes and codecs of the columns of a file.
+   */
+  public static class Schema {
+    private final List<String> names = new ArrayList<String>();
+    private final List<Class<? extends Writable>> valueClasses =
+      new ArrayList<Class<? extends Writable>>();
+    private final List<Class<? extends CompressionCodec>> codecClasses =
+      new ArrayList<Class<? extends CompressionCodec>>();
+
+    /**
+     * Add an uncompressed column.
+     * @return this schema
+     */
+    public Schema addColumn(String name, Class<? extends Writable> valueClass) {
+      return addColumn(name, valueClass, null);
+    }
+
+    /**
+     * Add a column.
+     * @param name the name of the column, unique in the schema
+     * @param valueClass the class of the values of the column
+     * @param codecClass the codec compressing the column, or null for none
+     * @return this schema
+     */
+    public Schema addColumn(String name, Class<? extends Writable> valueClass,
+        Class<? extends CompressionCodec> codecClass) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException("Duplicate column " + name);
+      }
+      names.add(name);
+      valueClasses.add(valueClass);
+      codecClasses.add(codecClass);
+      return this;
+    }
+
+    public int getColumnCount() {
+      return names.size();
+    }
+
+    public String getName(int column) {
+      return names.get(column);
+    }
+
+    /** Get the index of the named column, or -1 if there is none. */
+    public int getColumn(String name) {
+      return names.indexOf(name);
+    }
+
+    public Class<? extends Writable> getValueClass(int column) {
+      return valueClasses.get(column);
+    }
+
+    /** Get the codec of a column, or null if it is not compressed. */
+    public Class<? extends CompressionCodec> getCodecClass(int column) {
+      return codecClasses.get(column);
+    }
+
+    private void write(DataOutput out) throws IOException {
+      WritableUtils.writeVInt(out, names.size());
+      for (int i = 0; i < names.size(); ++i) {
+        Text.writeString(out, names.get(i));
+        Text.writeString(out, valueClasses.get(i).getName());
+        Class<?> codecClass = codecClasses.get(i);
+        Text.writeString(out, codecClass == null ? "" : codecClass.getName());
+      }
+    }
+
+    private static Schema read(DataInput in, Configuration conf)
+        throws IOException {
+      Schema schema = new Schema();
+      int columns = WritableUtils.readVInt(in);
+      try {
+        for (int i = 0; i < columns; ++i) {
+          String name = Text.readString(in);
+          Class<? extends Writable> valueClass =
+            conf.getClassByName(Text.readString(in)).asSubclass(Writable.class);
+          String codec = Text.readString(in);
+          schema.addColumn(name, valueClass, codec.length() == 0 ? null :
+            conf.getClassByName(codec).asSubclass(CompressionCodec.class));
+        }
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Unknown class in schema", e);
+      }
+      return schema;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Schema)) {
+        return false;
+      }
+      Schema other = (Schema) obj;
+      return names.equals(other.names) &&
+        valueClasses.equals(other.valueClasses) &&
+        codecClasses.equals(other.codecClasses);
+    }
+
+    @Override
+    public int hashCode() {
+      return names.hashCode() * 31 + valueClasses.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder s = new StringBuilder();
+      for (int i = 0; i < names.size(); ++i) {
+        s.append(i == 0 ? "" : ", ").append(names.get(i)).append(':')
+          .append(valueClasses.get(i).getSimpleName());
+        if (codecClasses.get(i) != null) {
+          s.append('/').append(codecClasses.get(i).getSimpleName());
+        }
+      }
+      return s.toString();
+    }
+  }
+
+  /**
+   * The values of a row, by column. Rows read with a projection hold null
+   * for the columns not read.
+   */
+  public static class Row {
+    private final Schema schema;
+    private final Writable[] values;
+
+    public Row(Schema schema) {
+      this.schema = schema;
+      this.values = new Writable[schema.getColumnCount()];
+    }
+
+    public Schema getSchema() {
+      return schema;
+    }
+
+    public Writable get(int column) {
+      return values[column];
+    }
+
+    /** Get the value of the named column. */
+    public Writable get(String name) {
+      int column = schema.getColumn(name);
+      if (column < 0) {
+        throw new IllegalArgumentException("No column " + name);
+      }
+      return values[column];
+    }
+
+    public void set(int column, Writable value) {
+      values[column] = value;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(values);
+    }
+  }
+
+  /** Write rows to a file. */
+  public static class Writer implements Closeable {
+    private final FSDataOutputStream out;
+    private final boolean ownOutputStream;
+    private final Schema schema;
+    private final long groupSize;
+    private final byte[] sync;
+
+    private final DataOutputBuffer[] columns;
+    // raw comparators of columns of WritableComparables
+    private final RawComparator<?>[] comparators;
+    // where the least and greatest values of each column are in its buffer
+    private final int[] leastStart;
+    private final int[] leastLength;
+    private final int[] greatestStart;
+    private final int[] greatestLength;
+    private final CompressionCodec[] codecs;
+    private final Compressor[] compressors;
+    private final DataOutputBuffer compressed = new DataOutputBuffer();
+    private int rows = 0;
+    private long bytes = 0;
+
+    /**
+     * Create a file for rows of the given schema.
+     */
+    public Writer(FileSystem fs, Configuration conf, Path name,
+                  Schema schema) throws IOException {
+      this(fs.create(name), true, conf, schema);
+    }
+
+    /**
+     * Create a file for rows of the given schema, reporting progress.
+     */
+    public Writer(FileSystem fs, Configuration conf, Path name,
+                  Schema schema, Progressable progress) throws IOException {
+      this(fs.create(name, progress), true, conf, schema);
+    }
+
+    private Writer(FSDataOutputStream out, boolean ownOutputStream,
+                   Configuration conf, Schema schema) throws IOException {
+      this.out = out;
+      this.ownOutputStream = ownOutputStream;
+      this.schema = schema;
+      this.groupSize = conf.getLong(
+          CommonConfigurationKeysPublic.IO_COLUMNFILE_ROWGROUP_SIZE_KEY,
+          CommonConfigurationKeysPublic.IO_COLUMNFILE_ROWGROUP_SIZE_DEFAULT);
+      try {
+        MessageDigest digester = MessageDigest.getInstance("MD5");
+        long time = System.currentTimeMillis();
+        digester.update((new UID()+"@"+time).getBytes());
+        sync = digester.digest();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+
+      final int n = schema.getColumnCount();
+      columns = new DataOutputBuffer[n];
+      comparators = new RawComparator<?>[n];
+      leastStart = new int[n];
+      leastLength = new int[n];
+      greatestStart = new int[n];
+      greatestLength = new int[n];
+      codecs = new CompressionCodec[n];
+      compressors = new Compressor[n];
+      for (int i = 0; i < n; ++i) {
+        columns[i] = new DataOutputBuffer();
+        Class<? extends Writable> c = schema.getValueClass(i);
+        if (WritableComparable.class.isAssignableFrom(c)) {
+          comparators[i] =
+            WritableComparator.get(c.asSubclass(WritableComparable.class));
+        }
+        if (schema.getCodecClass(i) != null) {
+          codecs[i] = ReflectionUtils.newInstance(schema.getCodecClass(i),
+                                                  conf);
+          compressors[i] = CodecPool.getCompressor(codecs[i]);
+        }
+      }
+
+      out.write(MAGIC);
+      out.write(VERSION);
+      schema.write(out);
+      out.write(sync);
+    }
+
+    /** Get the schema of the rows. */
+    public Schema getSchema() {
+      return schema;
+    }
+
+    /**
+     * Append a row, which must have a value for each column.
+     */
+    public synchronized void append(Row row) throws IOException {
+      if (row.getSchema().getColumnCount() != schema.getColumnCount()) {
+        throw new IllegalArgumentException("Row of " + row.getSchema() +
+            " appended to a file of " + schema);
+      }
+      append(row.values);
+    }
+
+    /**
+     * Append a row of the given values, one for each column.
+     */
+    public synchronized void append(Writable... values) throws IOException {
+      if (values.length != schema.getColumnCount()) {
+        throw new IllegalArgumentException(values.length + " values for " +
+            schema.getColumnCount() + " columns");
+      }
+      for (int i = 0; i < values.length; ++i) {
+        Writable value = values[i];
+        if (value == null) {
+          throw new IOException("Null value for column " + schema.getName(i));
+        }
+        if (value.getClass() != schema.getValueClass(i)) {
+          throw new IOException("Wrong value class: " +
+              value.getClass().getName() + " is not " +
+              schema.getValueClass(i) + " for column " + schema.getName(i));
+        }
+        DataOutputBuffer column = columns[i];
+        int start = column.getLength();
+        value.write(column);
+        int length = column.getLength() - start;
+        bytes += length;
+        if (comparators[i] != null) {
+          byte[] b = column.getData();
+          if (rows == 0 || comparators[i].compare(
+                b, start, length, b, leastStart[i], leastLength[i]) < 0) {
+            leastStart[i] = start;
+            leastLength[i] = length;
+          }
+          if (rows == 0 || comparators[i].compare(
+                b, start, length, b, greatestStart[i], greatestLength[i]) > 0) {
+            greatestStart[i] = start;
+            greatestLength[i] = length;
+          }
+        }
+      }
+      ++rows;
+      if (bytes >= groupSize) {
+        writeGroup();
+      }
+    }
+
+    private void writeGroup() throws IOException {
+      if (rows == 0) {
+        return;
+      }
+      final int n = columns.length;
+      // compress the columns, one after another
+      compressed.reset();
+      int[] lengths = new int[n];
+      for (int i = 0; i < n; ++i) {
+        int start = compressed.getLength();
+        if (codecs[i] == null) {
+          compressed.write(columns[i].getData(), 0, columns[i].getLength());
+        } else {
+          CompressionOutputStream deflateOut;
+          if (compressors[i] != null) {
+            compressors[i].reset();
+            deflateOut =
+              codecs[i].createOutputStream(compressed, compressors[i]);
+          } else {
+            // codecs without a compressor, such as gzip without native zlib
+            deflateOut = codecs[i].createOutputStream(compressed);
+          }
+          deflateOut.write(columns[i].getData(), 0, columns[i].getLength());
+          deflateOut.finish();
+        }
+        lengths[i] = compressed.getLength() - start;
+      }
+
+      out.writeInt(SYNC_ESCAPE);
+      out.write(sync);
+      WritableUtils.writeVInt(out, rows);
+      for (int i = 0; i < n; ++i) {
+        WritableUtils.writeVInt(out, columns[i].getLength());
+        WritableUtils.writeVInt(out, lengths[i]);
+        out.writeBoolean(comparators[i] != null);
+        if (comparators[i] != null) {
+          byte[] b = columns[i].getData();
+          WritableUtils.writeVInt(out, leastLength[i]);
+          out.write(b, leastStart[i], leastLength[i]);
+          WritableUtils.writeVInt(out, greatestLength[i]);
+          out.write(b, greatestStart[i], greatestLength[i]);
+        }
+        columns[i].reset();
+      }
+      out.write(compressed.getData(), 0, compressed.getLength());
+      rows = 0;
+      bytes = 0;
+    }
+
+    /** Returns the current length of the output file, without the rows
+     * buffered for the current row group. */
+    public synchronized long getLength() throws IOException {
+      return out.getPos();
+    }
+
+    /** Write the buffered rows and close the file. */
+    public synchronized void close() throws IOException {
+      try {
+        writeGroup();
+      } finally {
+        for (int i = 0; i < compressors.length; ++i) {
+          if (compressors[i] != null) {
+            CodecPool.returnCompressor(compressors[i]);
+            compressors[i] = null;
+          }
+        }
+        if (ownOutputStream) {
+          out.close();
+        }
+      }
+    }
+  }
+
+  /** Read rows from a file. */
+  public static class Reader implements Closeable {
+    private final Configuration conf;
+    private final FSDataInputStream in;
+    private final long end;
+    private final Schema schema;
+    private final byte[] syncMarker = new byte[SYNC_SIZE];
+    private final long headerEnd;
+    private final boolean[] projected;
+
+    private final CompressionCodec[] codecs;
+    private final Decompressor[] decompressors;
+    private final DataInputBuffer[] columns;
+    private final DataOutputBuffer[] columnData;
+    private byte[] compressed = new byte[0];
+    private final DataInputBuffer compressedIn = new DataInputBuffer();
+
+    // the current row group
+    private long nextGroup;
+    private int groupRows = 0;
+    private int groupRow = 0;
+    private long groupData;
+    private boolean groupLoaded;
+    private final int[] rawLengths;
+    private final int[] lengths;
+    private final byte[][] least;
+    private final byte[][] greatest;
+
+    /** Open the named file. */
+    public Reader(FileSystem fs, Path file, Configuration conf)
+        throws IOException {
+      this.conf = conf;
+      this.end = fs.getFileStatus(file).getLen();
+      this.in = fs.open(file);
+      try {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+          throw new IOException(file + " not a ColumnFile");
+        }
+        byte version = in.readByte();
+        if (version > VERSION) {
+          throw new VersionMismatchException(VERSION, version);
+        }
+        schema = Schema.read(in, conf);
+        Arrays.fill(syncMarker, 0, 4, (byte) SYNC_ESCAPE);
+        in.readFully(syncMarker, 4, SYNC_HASH_SIZE);
+        headerEnd = in.getPos();
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+      nextGroup = headerEnd;
+
+      final int n = schema.getColumnCount();
+      projected = new boolean[n];
+      Arrays.fill(projected, true);
+      codecs = new CompressionCodec[n];
+      decompressors = new Decompressor[n];
+      columns = new DataInputBuffer[n];
+      columnData = new DataOutputBuffer[n];
+      rawLengths = new int[n];
+      lengths = new int[n];
+      least = new byte[n][];
+      greatest = new byte[n][];
+      for (int i = 0; i < n; ++i) {
+        if (schema.getCodecClass(i) != null) {
+          codecs[i] = ReflectionUtils.newInstance(schema.getCodecClass(i),
+                                                  conf);
+        }
+      }
+    }
+
+    /** Get the schema of the rows. */
+    public Schema getSchema() {
+      return schema;
+    }
+
+    /**
+     * Read only the named columns from the next row group on. The other
+     * columns of rows read are null.
+     */
+    public synchronized void setProjection(String... names) {
+      boolean[] columns = new boolean[projected.length];
+      for (String name : names) {
+        int column = schema.getColumn(name);
+        if (column < 0) {
+          throw new IllegalArgumentException("No column " + name + " in " +
+                                             schema);
+        }
+        columns[column] = true;
+      }
+      System.arraycopy(columns, 0, projected, 0, columns.length);
+    }
+
+    /**
+     * Skip the rest of the current row group, if any, and read the header
+     * of the next. Its columns are read by the first call to
+     * {@link #nextRow(Row)}.
+     * @return false at the end of the file
+     */
+    public synchronized boolean nextGroup() throws IOException {
+      groupRows = groupRow = 0;
+      if (nextGroup >= end) {
+        return false;
+      }
+      in.seek(nextGroup);
+      if (in.readInt() != SYNC_ESCAPE) {
+        throw new IOException("Missing row group at " + nextGroup);
+      }
+      for (int i = 4; i < SYNC_SIZE; ++i) {
+        if (in.readByte() != syncMarker[i]) {
+          throw new IOException("File is corrupt: bad sync at " + nextGroup);
+        }
+      }
+      int rows = WritableUtils.readVInt(in);
+      long length = 0;
+      for (int i = 0; i < schema.getColumnCount(); ++i) {
+        rawLengths[i] = WritableUtils.readVInt(in);
+        lengths[i] = WritableUtils.readVInt(in);
+        length += lengths[i];
+        if (in.readBoolean()) {
+          least[i] = new byte[WritableUtils.readVInt(in)];
+          in.readFully(least[i]);
+          greatest[i] = new byte[WritableUtils.readVInt(in)];
+          in.readFully(greatest[i]);
+        } else {
+          least[i] = greatest[i] = null;
+        }
+      }
+      groupData = in.getPos();
+      nextGroup = groupData + length;
+      groupRows = rows;
+      groupLoaded = false;
+      return true;
+    }
+
+    /** Get the number of rows in the current row group. */
+    public synchronized int getGroupRowCount() {
+      return groupRows;
+    }
+
+    /**
+     * Get the least value of a column in the current row group, or null if
+     * its values are not {@link WritableComparable}s.
+     */
+    public synchronized WritableComparable<?> getGroupLeast(int column)
+        throws IOException {
+      return readValue(column, least[column]);
+    }
+
+    /**
+     * Get the greatest value of a column in the current row group, or null
+     * if its values are not {@link WritableComparable}s.
+     */
+    public synchronized WritableComparable<?> getGroupGreatest(int column)
+        throws IOException {
+      return readValue(column, greatest[column]);
+    }
+
+    private WritableComparable<?> readValue(int column, byte[] b)
+        throws IOException {
+      if (b == null) {
+        return null;
+      }
+      WritableComparable<?> value = (WritableComparable<?>)
+        ReflectionUtils.newInstance(schema.getValueClass(column), conf);
+      DataInputBuffer buffer = new DataInputBuffer();
+      buffer.reset(b, b.length);
+      value.readFields(buffer);
+      return value;
+    }
+
+    /** Read and decompress the projected columns of the current group. */
+    private void loadGroup() throws IOException {
+      long offset = groupData;
+      for (int i = 0; i < schema.getColumnCount(); ++i) {
+        if (projected[i]) {
+          in.seek(offset);
+          if (columns[i] == null) {
+            columns[i] = new DataInputBuffer();
+            columnData[i] = new DataOutputBuffer();
+          }
+          columnData[i].reset();
+          if (codecs[i] == null) {
+            columnData[i].write(in, lengths[i]);
+          } else {
+            if (compressed.length < lengths[i]) {
+              compressed = new byte[lengths[i]];
+            }
+            in.readFully(compressed, 0, lengths[i]);
+            compressedIn.reset(compressed, lengths[i]);
+            if (decompressors[i] == null) {
+              decompressors[i] = CodecPool.getDecompressor(codecs[i]);
+            }
+            InputStream inflateIn;
+            if (decompressors[i] != null) {
+              decompressors[i].reset();
+              inflateIn =
+                codecs[i].createInputStream(compressedIn, decompressors[i]);
+            } else {
+              // codecs without a decompressor
+              inflateIn = codecs[i].createInputStream(compressedIn);
+            }
+            columnData[i].write(new DataInputStream(inflateIn),
+                                rawLengths[i]);
+          }
+          columns[i].reset(columnData[i].getData(), columnData[i].getLength());
+        }
+        offset += lengths[i];
+      }
+      groupLoaded = true;
+    }
+
+    /**
+     * Read the next row of the current row group.
+     * @param row a row of this file's schema, whose values are reused
+     * @return false at the end of the row group
+     */
+    public synchronized boolean nextRow(Row row) throws IOException {
+      if (row.schema != schema && !row.schema.equals(schema)) {
+        throw new IllegalArgumentException("Row of " + row.schema +
+            " read from a file of " + schema);
+      }
+      if (groupRow >= groupRows) {
+        return false;
+      }
+      if (!groupLoaded) {
+        loadGroup();
+      }
+      for (int i = 0; i < projected.length; ++i) {
+        if (projected[i]) {
+          if (row.values[i] == null) {
+            row.values[i] =
+              ReflectionUtils.newInstance(schema.getValueClass(i), conf);
+          }
+          row.values[i].readFields(columns[i]);
+        } else {
+          row.values[i] = null;
+        }
+      }
+      ++groupRow;
+      return true;
+    }
+
+    /**
+     * Read the next row of the file.
+     * @param row a row of this file's schema, whose values are reused
+     * @return false at the end of the file
+     */
+    public synchronized boolean next(Row row) throws IOException {
+      while (!nextRow(row)) {
+        if (!nextGroup()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Skip to the first row group that begins at or after a position, so
+     * that its rows are read next.
+     */
+    public synchronized void sync(long position) throws IOException {
+      groupRows = groupRow = 0;
+      if (position <= headerEnd) {
+        nextGroup = headerEnd;
+        return;
+      }
+      if (position + SYNC_SIZE > end) {
+        nextGroup = end;
+        return;
+      }
+      in.seek(position);
+      byte[] check = new byte[SYNC_SIZE];
+      in.readFully(check);
+      for (int i = 0; ; i++) {
+        int j = 0;
+        while (j < SYNC_SIZE && syncMarker[j] == check[(i + j) % SYNC_SIZE]) {
+          j++;
+        }
+        if (j == SYNC_SIZE) {
+          nextGroup = in.getPos() - SYNC_SIZE;
+          return;
+        }
+        if (in.getPos() >= end) {
+          nextGroup = end;
+          return;
+        }
+        check[i % SYNC_SIZE] = in.readByte();
+      }
+    }
+
+    /**
+     * Get the position of the next row group in the file, where the rows
+     * following those of the current group begin.
+     */
+    public synchronized long getPosition() {
+      return nextGroup;
+    }
+
+    /** Close the file. */
+    public synchronized void close() throws IOException {
+      for (int i = 0; i < decompressors.length; ++i) {
+        if (decompressors[i] != null) {
+          CodecPool.returnDecompressor(decompressors[i]);
+          decompressors[i] = null;
+        }
+      }
+      in.close();
+    }
+  }
+}
@@ -20,6 +20,8 @@ package org.apache.hadoop.io;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.io.*;
 
 import org.apache.commons.logging.Log;
@@ -365,6 +367,23 @@ public class MapFile {
     private WritableComparable[] keys;
     private long[] positions;
 
+    private Configuration conf;
+    // the shared cache of indices, or null
+    private MapFileIndexCache indexCache;
+    // the name of the index in the cache
+    private String indexName;
+
+    /** An index, as cached. */
+    private static final class Index {
+      final WritableComparable[] keys;
+      final long[] positions;
+
+      Index(WritableComparable[] keys, long[] positions) {
+        this.keys = keys;
+        this.positions = positions;
+      }
+    }
+
     /** Returns the class of keys in this file. */
     public Class<?> getKeyClass() { return data.getKeyClass(); }
 
@@ -434,6 +453,23 @@ public class MapFile {
       else
         this.comparator = comparator;
 
+      // a cached index spares reading the index file
+      this.conf = conf;
+      this.indexCache = MapFileIndexCache.get(conf);
+      if (indexCache != null) {
+        FileSystem fs = indexFile.getFileSystem(conf);
+        indexName = MapFileIndexCache.getName(fs.getFileStatus(indexFile)) +
+          " skip " + INDEX_SKIP + " " + this.comparator.getClass().getName();
+        Index cached = indexCache.get(indexName, Index.class);
+        if (cached != null) {
+          this.keys = cached.keys;
+          this.positions = cached.positions;
+          this.count = keys.length;
+          this.indexClosed = true;
+          return;
+        }
+      }
+
       // open the index
       SequenceFile.Reader.Option[] indexOptions =
         Options.prependOptions(options, SequenceFile.Reader.file(indexFile));
@@ -465,6 +501,9 @@ public class MapFile {
         LongWritable position = new LongWritable();
         WritableComparable lastKey = null;
         long lastIndex = -1;
+        // an estimate of the memory used by the index, to cache it
+        long size = 0;
+        DataOutputBuffer keyBuffer = new DataOutputBuffer();
         ArrayList<WritableComparable> keyBuilder = new ArrayList<WritableComparable>(1024);
         while (true) {
           WritableComparable k = comparator.newKey();
@@ -496,10 +535,18 @@ public class MapFile {
           keyBuilder.add(k);
           positions[count] = position.get();
           count++;
+          if (indexCache != null) {
+            keyBuffer.reset();
+            k.write(keyBuffer);
+            size += keyBuffer.getLength() + 64;
+          }
         }
 
         this.keys = keyBuilder.toArray(new WritableComparable[count]);
         positions = Arrays.copyOf(positions, count);
+        if (indexCache != null) {
+          indexCache.put(indexName, new Index(keys, positions), size);
+        }
       } catch (EOFException e) {
         LOG.warn("Unexpected EOF reading " + index +
                               " at entry #" + count + ".  Ignoring.");
@@ -524,7 +571,9 @@ public class MapFile {
         return null;
       }
     
-      return keys[(count - 1) / 2];
+      WritableComparable key = keys[(count - 1) / 2];
+      // the keys of a cached index are shared with other readers
+      return indexCache == null ? key : WritableUtils.clone(key, conf);
     }
     
     /** Reads the final key from the file.
@@ -680,6 +729,73 @@ public class MapFile {
         return null;
     }
 
+    /**
+     * Look up many keys in one forward pass over the map. The keys are
+     * looked up in sorted order, so that keys near each other are found
+     * without seeking back to the index. The reader is left positioned after
+     * the last key looked up.
+     *
+     * @param searchKeys the keys to look up, in any order
+     * @param vals <code>vals[i]</code> is read with the value of
+     *   <code>searchKeys[i]</code>, if there is one, and is left unchanged
+     *   otherwise
+     * @return the set of the indices of the keys found
+     */
+    public synchronized BitSet get(final WritableComparable[] searchKeys,
+                                   Writable[] vals) throws IOException {
+      if (searchKeys.length != vals.length) {
+        throw new IllegalArgumentException(searchKeys.length + " keys but " +
+                                           vals.length + " values");
+      }
+      Integer[] order = new Integer[searchKeys.length];
+      for (int i = 0; i < order.length; ++i) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return comparator.compare(searchKeys[a], searchKeys[b]);
+        }
+      });
+
+      BitSet found = new BitSet(searchKeys.length);
+      // whether the reader is just after nextKey, at or after the last key
+      boolean positioned = false;
+      for (int n = 0; n < order.length; ++n) {
+        final int i = order[n];
+        final WritableComparable key = searchKeys[i];
+        if (n > 0 && comparator.compare(key, searchKeys[order[n - 1]]) == 0) {
+          // the value was read already
+          int previous = order[n - 1];
+          if (found.get(previous)) {
+            ReflectionUtils.copy(conf, vals[previous], vals[i]);
+            found.set(i);
+          }
+          continue;
+        }
+        int c;
+        if (positioned && (seekIndex + 1 >= count ||
+                           comparator.compare(key, keys[seekIndex+1]) < 0)) {
+          // the key is ahead, before the next index entry: read on to it
+          c = comparator.compare(key, nextKey);
+          while (c > 0 && data.next(nextKey)) {
+            c = comparator.compare(key, nextKey);
+          }
+        } else {
+          c = seekInternal(key);
+        }
+        if (c > 0) {
+          // at the end of the map: none of the remaining keys are in it
+          break;
+        }
+        positioned = true;
+        if (c == 0) {
+          data.getCurrentValue(vals[i]);
+          found.set(i);
+        }
+      }
+      return found;
+    }
+
     /** 
      * Finds the record that is the closest match to the specified key.
      * Returns <code>key</code> or if it does not exist, at the first entry
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileStatus;
+
+/**
+ * The parsed indices of MapFiles and Bloom filters of BloomMapFiles, shared
+ * by the readers in a JVM. Entries are named after the path, modification
+ * time and length of their file, so a rewritten file is read again, and the
+ * least recently used entries are dropped to keep their estimated size
+ * within <code>io.map.index.cache.size</code> bytes. Cached entries must not
+ * be modified.
+ */
+final class MapFileIndexCache {
+  private static MapFileIndexCache cache = null;
+
+  private final long capacity;
+  private long size = 0;
+  // in access order, least recently used first
+  private final LinkedHashMap<String, Entry> entries =
+    new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  long hits = 0;
+  long misses = 0;
+
+  private static final class Entry {
+    final Object value;
+    final long size;
+
+    Entry(Object value, long size) {
+      this.value = value;
+      this.size = size;
+    }
+  }
+
+  MapFileIndexCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Get the cache of the JVM, creating it if needed.
+   *
+   * @return the cache, or null if caching is disabled in conf.
+   */
+  static synchronized MapFileIndexCache get(Configuration conf) {
+    long capacity = conf.getLong(
+        CommonConfigurationKeysPublic.IO_MAP_INDEX_CACHE_SIZE_KEY,
+        CommonConfigurationKeysPublic.IO_MAP_INDEX_CACHE_SIZE_DEFAULT);
+    if (capacity <= 0) {
+      return null;
+    }
+    if (cache == null) {
+      cache = new MapFileIndexCache(capacity);
+    }
+    return cache;
+  }
+
+  /**
+   * Get the name of the version of a file with the given status.
+   */
+  static String getName(FileStatus status) {
+    return status.getPath() + "@" + status.getModificationTime() + ":" +
+      status.getLen();
+  }
+
+  /**
+   * Get a cached entry.
+   *
+   * @return the entry, or null if it is not cached or not of the given class.
+   */
+  synchronized <T> T get(String name, Class<T> c) {
+    Entry e = entries.get(name);
+    if (e == null || !c.isInstance(e.value)) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return c.cast(e.value);
+  }
+
+  /**
+   * Cache an entry of the given estimated size, unless it is larger than
+   * the cache.
+   */
+  synchronized void put(String name, Object value, long estimatedSize) {
+    if (estimatedSize > capacity) {
+      return;
+    }
+    Entry old = entries.put(name, new Entry(value, estimatedSize));
+    size += estimatedSize - (old == null ? 0 : old.size);
+    Iterator<Entry> lru = entries.values().iterator();
+    while (size > capacity) {
+      size -= lru.next().size;
+      lru.remove();
+    }
+  }
+
+  synchronized long getSize() {
+    return size;
+  }
+}
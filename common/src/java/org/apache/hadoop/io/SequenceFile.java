@@ -20,6 +20,9 @@ package org.apache.hadoop.io;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.rmi.server.UID;
 import java.security.MessageDigest;
 import org.apache.commons.logging.*;
@@ -46,6 +49,7 @@ import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.NativeCodeLoader;
 import org.apache.hadoop.util.MergeSort;
 import org.apache.hadoop.util.PriorityQueue;
+import org.apache.hadoop.util.ThrottledExecutor;
 
 /** 
  * <code>SequenceFile</code>s are flat files consisting of binary key/value 
@@ -1304,6 +1308,8 @@ public class SequenceFile {
     private DataOutputBuffer valBuffer = new DataOutputBuffer();
 
     private final int compressionBlockSize;
+
+    private ParallelCompression parallelCompression = null;
     
     BlockCompressWriter(Configuration conf,
                         Option... options) throws IOException {
@@ -1314,6 +1320,12 @@ public class SequenceFile {
       keySerializer.open(keyBuffer);
       uncompressedValSerializer.close();
       uncompressedValSerializer.open(valBuffer);
+      int threads = conf.getInt(
+          CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_KEY,
+          CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_DEFAULT);
+      if (threads > 0) {
+        parallelCompression = new ParallelCompression(threads);
+      }
     }
 
     /** Workhorse to check and write out compressed data/lengths */
@@ -1333,6 +1345,11 @@ public class SequenceFile {
     
     /** Compress and flush contents to dfs */
     public synchronized void sync() throws IOException {
+      if (parallelCompression != null) {
+        parallelCompression.submit();
+        parallelCompression.write(true);
+        return;
+      }
       if (noBufferedRecords > 0) {
         super.sync();
         
@@ -1362,12 +1379,28 @@ public class SequenceFile {
     
     /** Close the file. */
     public synchronized void close() throws IOException {
-      if (out != null) {
-        sync();
+      try {
+        if (out != null) {
+          sync();
+        }
+      } finally {
+        if (parallelCompression != null) {
+          parallelCompression.close();
+          parallelCompression = null;
+        }
       }
       super.close();
     }
 
+    /** Compress the current block, in the background if configured. */
+    private void blockFull() throws IOException {
+      if (parallelCompression != null) {
+        parallelCompression.submit();
+      } else {
+        sync();
+      }
+    }
+
     /** Append a key/value pair. */
     @SuppressWarnings("unchecked")
     public synchronized void append(Object key, Object val)
@@ -1396,7 +1429,7 @@ public class SequenceFile {
       // Compress and flush?
       int currentBlockSize = keyBuffer.getLength() + valBuffer.getLength();
       if (currentBlockSize >= compressionBlockSize) {
-        sync();
+        blockFull();
       }
     }
     
@@ -1421,7 +1454,150 @@ public class SequenceFile {
       // Compress and flush?
       int currentBlockSize = keyBuffer.getLength() + valBuffer.getLength(); 
       if (currentBlockSize >= compressionBlockSize) {
-        sync();
+        blockFull();
+      }
+    }
+
+
+    /**
+     * Compresses full blocks on a pool of threads while records are
+     * appended to the next block, and writes the compressed blocks in order,
+     * each preceded by a sync mark, as {@link #sync()} would. At most twice as
+     * many blocks as threads are held in memory.
+     */
+    private class ParallelCompression {
+      private final int maxPendingBlocks;
+      private final ThrottledExecutor executor;
+      // compressors not in use, returned to the CodecPool once closed
+      private final LinkedList<BlockCompressor> compressors =
+        new LinkedList<BlockCompressor>();
+      private boolean closed = false;
+      // blocks being compressed, in file order
+      private final LinkedList<Future<DataOutputBuffer>> pending =
+        new LinkedList<Future<DataOutputBuffer>>();
+
+      ParallelCompression(int threads) {
+        maxPendingBlocks = 2 * threads;
+        executor = new ThrottledExecutor(threads);
+      }
+
+      /** Hand the buffered records to the pool as a block. */
+      void submit() throws IOException {
+        if (noBufferedRecords == 0) {
+          return;
+        }
+        final int records = noBufferedRecords;
+        final byte[][] data = {
+          copy(keyLenBuffer), copy(keyBuffer), copy(valLenBuffer),
+          copy(valBuffer)
+        };
+        pending.add(executor.submit(new Callable<DataOutputBuffer>() {
+          public DataOutputBuffer call() throws IOException {
+            BlockCompressor c = takeCompressor();
+            try {
+              DataOutputBuffer block = new DataOutputBuffer();
+              WritableUtils.writeVInt(block, records);
+              for (byte[] d : data) {
+                c.compress(d, block);
+              }
+              return block;
+            } finally {
+              giveBack(c);
+            }
+          }
+        }));
+        keyLenBuffer.reset();
+        keyBuffer.reset();
+        valLenBuffer.reset();
+        valBuffer.reset();
+        noBufferedRecords = 0;
+        write(false);
+      }
+
+      private byte[] copy(DataOutputBuffer buffer) {
+        return Arrays.copyOf(buffer.getData(), buffer.getLength());
+      }
+
+      /**
+       * Write the compressed blocks at the head of the queue: all of them,
+       * or those done and as many as needed to bound the memory used.
+       */
+      void write(boolean all) throws IOException {
+        while (!pending.isEmpty() &&
+               (all || pending.size() > maxPendingBlocks ||
+                pending.getFirst().isDone())) {
+          DataOutputBuffer block;
+          try {
+            block = pending.removeFirst().get();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted compressing a block");
+          } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+              throw (IOException) cause;
+            }
+            throw new IOException("Failed to compress a block", cause);
+          }
+          BlockCompressWriter.super.sync();
+          out.write(block.getData(), 0, block.getLength());
+          out.flush();
+        }
+      }
+
+      private synchronized BlockCompressor takeCompressor()
+          throws IOException {
+        BlockCompressor c = compressors.poll();
+        return c != null ? c : new BlockCompressor();
+      }
+
+      private void giveBack(BlockCompressor c) {
+        synchronized (this) {
+          if (!closed) {
+            compressors.add(c);
+            return;
+          }
+        }
+        // still in use when the writer was closed
+        CodecPool.returnCompressor(c.compressor);
+      }
+
+      /**
+       * Drop the blocks not yet written and give back the compressors.
+       * Blocks being compressed give back theirs when done.
+       */
+      void close() {
+        for (Future<DataOutputBuffer> block : pending) {
+          block.cancel(false);
+        }
+        pending.clear();
+        synchronized (this) {
+          closed = true;
+          for (BlockCompressor c : compressors) {
+            CodecPool.returnCompressor(c.compressor);
+          }
+          compressors.clear();
+        }
+      }
+    }
+
+    /** Compresses the buffers of blocks, on one thread at a time. */
+    private class BlockCompressor {
+      final Compressor compressor = CodecPool.getCompressor(codec);
+      final DataOutputBuffer buffer = new DataOutputBuffer();
+      final CompressionOutputStream filter;
+
+      BlockCompressor() throws IOException {
+        filter = codec.createOutputStream(buffer, compressor);
+      }
+
+      /** Append the length and compressed form of the data to the block. */
+      void compress(byte[] data, DataOutputBuffer block) throws IOException {
+        filter.resetState();
+        buffer.reset();
+        filter.write(data, 0, data.length);
+        filter.finish();
+        WritableUtils.writeVInt(block, buffer.getLength());
+        block.write(buffer.getData(), 0, buffer.getLength());
       }
     }
   
@@ -1490,6 +1666,13 @@ public class SequenceFile {
     private Deserializer keyDeserializer;
     private Deserializer valDeserializer;
 
+    private ReadAhead readAhead = null;
+
+    // copies of raw records viewed by nextRawKey/Value(BytesView)
+    private DataOutputBuffer rawKeyCopy;
+    private DataOutputBuffer rawValueCopy;
+    private ValueBytes rawValueBytes;
+
     /**
      * A tag interface for all of the Reader options
      */
@@ -1776,8 +1959,11 @@ public class SequenceFile {
       
       // Initialize... *not* if this we are constructing a temporary Reader
       if (!tempReader) {
+        int readAheadBlocks = !blockCompressed ? 0 : conf.getInt(
+            CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_BLOCKS_KEY,
+            CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_BLOCKS_DEFAULT);
         valBuffer = new DataInputBuffer();
-        if (decompress) {
+        if (decompress && readAheadBlocks <= 0) {
           valDecompressor = CodecPool.getDecompressor(codec);
           valInFilter = codec.createInputStream(valBuffer, valDecompressor);
           valIn = new DataInputStream(valInFilter);
@@ -1790,19 +1976,30 @@ public class SequenceFile {
           keyBuffer = new DataInputBuffer();
           valLenBuffer = new DataInputBuffer();
 
-          keyLenDecompressor = CodecPool.getDecompressor(codec);
-          keyLenInFilter = codec.createInputStream(keyLenBuffer, 
-                                                   keyLenDecompressor);
-          keyLenIn = new DataInputStream(keyLenInFilter);
-
-          keyDecompressor = CodecPool.getDecompressor(codec);
-          keyInFilter = codec.createInputStream(keyBuffer, keyDecompressor);
-          keyIn = new DataInputStream(keyInFilter);
-
-          valLenDecompressor = CodecPool.getDecompressor(codec);
-          valLenInFilter = codec.createInputStream(valLenBuffer, 
-                                                   valLenDecompressor);
-          valLenIn = new DataInputStream(valLenInFilter);
+          if (readAheadBlocks > 0) {
+            // blocks are decompressed ahead, the buffers hold plain data
+            readAhead = new ReadAhead(readAheadBlocks, conf.getInt(
+                CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_THREADS_KEY,
+                CommonConfigurationKeysPublic.
+                  IO_SEQFILE_READ_AHEAD_THREADS_DEFAULT));
+            keyLenIn = keyLenBuffer;
+            keyIn = keyBuffer;
+            valLenIn = valLenBuffer;
+          } else {
+            keyLenDecompressor = CodecPool.getDecompressor(codec);
+            keyLenInFilter = codec.createInputStream(keyLenBuffer, 
+                                                     keyLenDecompressor);
+            keyLenIn = new DataInputStream(keyLenInFilter);
+
+            keyDecompressor = CodecPool.getDecompressor(codec);
+            keyInFilter = codec.createInputStream(keyBuffer, keyDecompressor);
+            keyIn = new DataInputStream(keyInFilter);
+
+            valLenDecompressor = CodecPool.getDecompressor(codec);
+            valLenInFilter = codec.createInputStream(valLenBuffer, 
+                                                     valLenDecompressor);
+            valLenIn = new DataInputStream(valLenInFilter);
+          }
         }
         
         SerializationFactory serializationFactory =
@@ -1827,6 +2024,9 @@ public class SequenceFile {
     
     /** Close the file. */
     public synchronized void close() throws IOException {
+      if (readAhead != null) {
+        readAhead.close();
+      }
       // Return the decompressors to the pool
       CodecPool.returnDecompressor(keyLenDecompressor);
       CodecPool.returnDecompressor(keyDecompressor);
@@ -1931,6 +2131,10 @@ public class SequenceFile {
     
     /** Read the next 'compressed' block */
     private synchronized void readBlock() throws IOException {
+      if (readAhead != null) {
+        readAhead.next();
+        return;
+      }
       // Check if we need to throw away a whole block of 
       // 'values' due to 'lazy decompression' 
       if (lazyDecompress && !valuesDecompressed) {
@@ -2247,23 +2451,9 @@ public class SequenceFile {
         
         return length;
       } else {
-        //Reset syncSeen
-        syncSeen = false;
-        
-        // Read 'key'
-        if (noBufferedKeys == 0) {
-          if (in.getPos() >= end) 
-            return -1;
-
-          try { 
-            readBlock();
-          } catch (EOFException eof) {
-            return -1;
-          }
-        }
-        int keyLength = WritableUtils.readVInt(keyLenIn);
-        if (keyLength < 0) {
-          throw new IOException("zero length key found!");
+        int keyLength = nextBlockKeyLength();
+        if (keyLength == -1) {
+          return -1;
         }
         key.write(keyIn, keyLength);
         --noBufferedKeys;
@@ -2297,23 +2487,9 @@ public class SequenceFile {
         key.write(in, keyLength);
         return keyLength;
       } else {
-        //Reset syncSeen
-        syncSeen = false;
-        
-        // Read 'key'
-        if (noBufferedKeys == 0) {
-          if (in.getPos() >= end) 
-            return -1;
-
-          try { 
-            readBlock();
-          } catch (EOFException eof) {
-            return -1;
-          }
-        }
-        int keyLength = WritableUtils.readVInt(keyLenIn);
-        if (keyLength < 0) {
-          throw new IOException("zero length key found!");
+        int keyLength = nextBlockKeyLength();
+        if (keyLength == -1) {
+          return -1;
         }
         key.write(keyIn, keyLength);
         --noBufferedKeys;
@@ -2323,6 +2499,105 @@ public class SequenceFile {
       
     }
 
+    /**
+     * Read the length of the next key of a block-compressed file, reading
+     * the next block if this one is done.
+     * @return the key length or -1 for end of file
+     */
+    private int nextBlockKeyLength() throws IOException {
+      //Reset syncSeen
+      syncSeen = false;
+      
+      // Read 'key'
+      if (noBufferedKeys == 0) {
+        if (getPosition() >= end) 
+          return -1;
+
+        try { 
+          readBlock();
+        } catch (EOFException eof) {
+          return -1;
+        }
+      }
+      int keyLength = WritableUtils.readVInt(keyLenIn);
+      if (keyLength < 0) {
+        throw new IOException("zero length key found!");
+      }
+      return keyLength;
+    }
+
+    /**
+     * Point a view at the next length bytes of a buffer, and skip them.
+     */
+    private static void view(DataInputBuffer buffer, int length,
+                             BytesView view) throws IOException {
+      int position = buffer.getPosition();
+      if (length > buffer.getLength() - position) {
+        throw new EOFException("Record of " + length + " bytes past the " +
+                               "end of its block");
+      }
+      view.set(buffer.getData(), position, length);
+      buffer.skipBytes(length);
+    }
+
+    /**
+     * Read a 'raw' key into a view. Keys of block-compressed files that are
+     * decompressed ahead, as set by
+     * <code>io.seqfile.read.ahead.blocks</code>, are viewed where they were
+     * decompressed. Others are copied to a buffer of this reader. Either way
+     * the view is valid until the next read from this reader.
+     * @param key - The view of the key
+     * @return Returns the key length or -1 for end of file
+     * @throws IOException
+     */
+    public synchronized int nextRawKey(BytesView key) throws IOException {
+      if (readAhead != null) {
+        int keyLength = nextBlockKeyLength();
+        if (keyLength == -1) {
+          key.clear();
+          return -1;
+        }
+        view(keyBuffer, keyLength, key);
+        --noBufferedKeys;
+        return keyLength;
+      }
+      if (rawKeyCopy == null) {
+        rawKeyCopy = new DataOutputBuffer();
+      }
+      rawKeyCopy.reset();
+      int keyLength = nextRawKey(rawKeyCopy);
+      key.set(rawKeyCopy.getData(), 0, rawKeyCopy.getLength());
+      return keyLength;
+    }
+
+    /**
+     * Read the 'raw' value of the last key read into a view, uncompressed.
+     * As for {@link #nextRawKey(BytesView)}, values are viewed in place
+     * when blocks are decompressed ahead, and the view is valid until the
+     * next read from this reader.
+     * @param val - The view of the value
+     * @return Returns the value length, as stored in the file
+     * @throws IOException
+     */
+    public synchronized int nextRawValue(BytesView val) throws IOException {
+      if (readAhead != null) {
+        seekToCurrentValue();
+        int valLength = WritableUtils.readVInt(valLenIn);
+        view(valBuffer, valLength, val);
+        --noBufferedValues;
+        return valLength;
+      }
+      if (rawValueCopy == null) {
+        rawValueCopy = new DataOutputBuffer();
+        rawValueBytes = createValueBytes();
+      }
+      int valLength = nextRawValue(rawValueBytes);
+      rawValueCopy.reset();
+      rawValueBytes.writeUncompressedBytes(rawValueCopy);
+      val.set(rawValueCopy.getData(), 0, rawValueCopy.getLength());
+      return valLength;
+    }
+
     /** Read the next key in the file, skipping its
      * value.  Return null at end of file. */
     public synchronized Object next(Object key) throws IOException {
@@ -2432,6 +2707,9 @@ public class SequenceFile {
      * position, use {@link SequenceFile.Reader#sync(long)}.
      */
     public synchronized void seek(long position) throws IOException {
+      if (readAhead != null) {
+        readAhead.discard();
+      }
       in.seek(position);
       if (blockCompressed) {                      // trigger block read
         noBufferedKeys = 0;
@@ -2441,6 +2719,9 @@ public class SequenceFile {
 
     /** Seek to the next sync mark past a given position.*/
     public synchronized void sync(long position) throws IOException {
+      if (readAhead != null) {
+        readAhead.discard();
+      }
       if (position+SYNC_SIZE >= end) {
         seek(end);
         return;
@@ -2480,7 +2761,7 @@ public class SequenceFile {
 
     /** Return the current byte position in the input file. */
     public synchronized long getPosition() throws IOException {
-      return in.getPos();
+      return readAhead != null ? readAhead.getPosition() : in.getPos();
     }
 
     /** Returns the name of the file. */
@@ -2488,6 +2769,191 @@ public class SequenceFile {
       return filename;
     }
 
+    /**
+     * Reads the blocks of a block-compressed file ahead of the reader and
+     * decompresses them on a pool of threads, keeping at most a fixed number
+     * of blocks in memory. The compressed bytes are read from the file by the
+     * reader's thread, so the input stream is only ever used by it. Stops
+     * reading ahead at the first block at or past the end of the range read.
+     */
+    private class ReadAhead {
+      private final int maxBlocks;
+      private final ThrottledExecutor executor;
+      // decompressors not in use, returned to the CodecPool once closed
+      private final LinkedList<BlockDecompressor> decompressors =
+        new LinkedList<BlockDecompressor>();
+      private boolean closed = false;
+      private final LinkedList<Block> blocks = new LinkedList<Block>();
+      // failure reading ahead, thrown when the reader gets to it
+      private IOException pending = null;
+
+      ReadAhead(int maxBlocks, int threads) {
+        this.maxBlocks = maxBlocks;
+        executor = new ThrottledExecutor(Math.max(1, threads));
+      }
+
+      /** The position of the first block not yet given to the reader. */
+      long getPosition() throws IOException {
+        return blocks.isEmpty() ? in.getPos() : blocks.getFirst().start;
+      }
+
+      /** Make the next block the current block of the reader. */
+      void next() throws IOException {
+        fill();
+        if (blocks.isEmpty()) {
+          throw pending;
+        }
+        Block block = blocks.removeFirst();
+        DataOutputBuffer[] data;
+        try {
+          data = block.data.get();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted reading block at " +
+                                           block.start + " of " + filename);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new IOException("Failed to decompress block at " +
+                                block.start + " of " + filename, cause);
+        }
+        keyLenBuffer.reset(data[0].getData(), data[0].getLength());
+        keyBuffer.reset(data[1].getData(), data[1].getLength());
+        valLenBuffer.reset(data[2].getData(), data[2].getLength());
+        valBuffer.reset(data[3].getData(), data[3].getLength());
+        noBufferedRecords = block.records;
+        noBufferedKeys = noBufferedRecords;
+        noBufferedValues = noBufferedRecords;
+        valuesDecompressed = true;
+        syncSeen = true;
+        // keep the workers busy while the reader is on this block
+        fill();
+      }
+
+      /** Read and start decompressing blocks until enough are in memory. */
+      private void fill() {
+        while (pending == null && blocks.size() < maxBlocks &&
+               (blocks.isEmpty() || blocks.getLast().start < end)) {
+          try {
+            blocks.add(readBlock());
+          } catch (IOException e) {
+            pending = e;
+          }
+        }
+      }
+
+      private Block readBlock() throws IOException {
+        final long start = in.getPos();
+        if (sync != null) {
+          in.readInt();
+          in.readFully(syncCheck);                // read syncCheck
+          if (!Arrays.equals(sync, syncCheck))    // check it
+            throw new IOException("File is corrupt!");
+        }
+        final int records = WritableUtils.readVInt(in);
+        final byte[][] compressed = new byte[4][];
+        for (int i = 0; i < compressed.length; ++i) {
+          compressed[i] = new byte[WritableUtils.readVInt(in)];
+          in.readFully(compressed[i]);
+        }
+        Future<DataOutputBuffer[]> data = executor.submit(
+            new Callable<DataOutputBuffer[]>() {
+              public DataOutputBuffer[] call() throws IOException {
+                BlockDecompressor d = takeDecompressor();
+                try {
+                  DataOutputBuffer[] data =
+                    new DataOutputBuffer[compressed.length];
+                  for (int i = 0; i < compressed.length; ++i) {
+                    data[i] = d.decompress(compressed[i]);
+                  }
+                  return data;
+                } finally {
+                  giveBack(d);
+                }
+              }
+            });
+        return new Block(start, records, data);
+      }
+
+      /** Drop the blocks read ahead, before the reader moves. */
+      void discard() {
+        for (Block block : blocks) {
+          block.data.cancel(false);
+        }
+        blocks.clear();
+        pending = null;
+      }
+
+      private synchronized BlockDecompressor takeDecompressor()
+          throws IOException {
+        BlockDecompressor d = decompressors.poll();
+        return d != null ? d : new BlockDecompressor();
+      }
+
+      private void giveBack(BlockDecompressor d) {
+        synchronized (this) {
+          if (!closed) {
+            decompressors.add(d);
+            return;
+          }
+        }
+        // still in use when the reader was closed
+        CodecPool.returnDecompressor(d.decompressor);
+      }
+
+      /**
+       * Drop the blocks read ahead and give back the decompressors. Blocks
+       * being decompressed give back theirs when done.
+       */
+      void close() {
+        discard();
+        synchronized (this) {
+          closed = true;
+          for (BlockDecompressor d : decompressors) {
+            CodecPool.returnDecompressor(d.decompressor);
+          }
+          decompressors.clear();
+        }
+      }
+    }
+
+    /** A block read ahead, with its decompressed buffers to come. */
+    private static class Block {
+      final long start;
+      final int records;
+      final Future<DataOutputBuffer[]> data;
+
+      Block(long start, int records, Future<DataOutputBuffer[]> data) {
+        this.start = start;
+        this.records = records;
+        this.data = data;
+      }
+    }
+
+    /** Decompresses the buffers of blocks, on one thread at a time. */
+    private class BlockDecompressor {
+      final Decompressor decompressor = CodecPool.getDecompressor(codec);
+      final DataInputBuffer buffer = new DataInputBuffer();
+      final CompressionInputStream filter;
+      final byte[] chunk = new byte[64 * 1024];
+
+      BlockDecompressor() throws IOException {
+        filter = codec.createInputStream(buffer, decompressor);
+      }
+
+      DataOutputBuffer decompress(byte[] compressed) throws IOException {
+        buffer.reset(compressed, compressed.length);
+        filter.resetState();
+        DataOutputBuffer out = new DataOutputBuffer(compressed.length * 4);
+        int n;
+        while ((n = filter.read(chunk, 0, chunk.length)) > 0) {
+          out.write(chunk, 0, n);
+        }
+        return out;
+      }
+    }
+
   }
 
   /** Sorts key/value pairs in a sequence-format file.
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A view of UTF-8 text in a range of an array, serialized as a {@link Text}.
+ * Like any {@link BytesView}, it refers to the bytes without copying them,
+ * and is valid only while their owner leaves the array alone.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class TextView extends BytesView {
+
+  /** Create an empty view. */
+  public TextView() {}
+
+  /**
+   * Create a view of UTF-8 text in a range of an array, without copying it.
+   * @param utf8 the array, still owned by the caller
+   * @param offset the first byte of the text
+   * @param length the number of bytes of text
+   */
+  public TextView(byte[] utf8, int offset, int length) {
+    super(utf8, offset, length);
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    readBytes(in, WritableUtils.readVInt(in));
+  }
+
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, getLength());
+    out.write(getBytes(), getOffset(), getLength());
+  }
+
+  /** 
+   * Convert the text to a string.
+   */
+  public String toString() {
+    try {
+      return Text.decode(getBytes(), getOffset(), getLength());
+    } catch (CharacterCodingException e) { 
+      throw new RuntimeException("Should not have happened " , e); 
+    }
+  }
+
+  /** A Comparator optimized for TextView. */
+  public static class Comparator extends WritableComparator {
+    public Comparator() {
+      super(TextView.class);
+    }
+
+    public int compare(byte[] b1, int s1, int l1,
+                       byte[] b2, int s2, int l2) {
+      int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+      int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+      return compareBytes(b1, s1+n1, l1-n1, b2, s2+n2, l2-n2);
+    }
+  }
+
+  static {
+    // register this comparator
+    WritableComparator.define(TextView.class, new Comparator());
+  }
+}
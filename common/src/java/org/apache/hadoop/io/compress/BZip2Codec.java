@@ -26,12 +26,17 @@ import java.io.OutputStream;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.compress.bzip2.BZip2Constants;
 import org.apache.hadoop.io.compress.bzip2.BZip2DummyCompressor;
 import org.apache.hadoop.io.compress.bzip2.BZip2DummyDecompressor;
 import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.io.compress.bzip2.ParallelCBZip2InputStream;
+import org.apache.hadoop.io.compress.bzip2.ParallelCBZip2OutputStream;
 
 /**
  * This class provides CompressionOutputStream and CompressionInputStream for
@@ -39,21 +44,50 @@ import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
  * the Compressor and Decompressor interfaces, so those methods of
  * CompressionCodec which have a Compressor or Decompressor type argument, throw
  * UnsupportedOperationException.
+ *
+ * Up to io.compression.codec.bzip2.compress.threads and
+ * io.compression.codec.bzip2.decompress.threads blocks of a stream are
+ * compressed and decompressed at a time on the threads shared by the JVM,
+ * or by the calling thread if they are 0.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class BZip2Codec implements SplittableCompressionCodec {
+public class BZip2Codec implements SplittableCompressionCodec, Configurable {
 
   private static final String HEADER = "BZ";
   private static final int HEADER_LEN = HEADER.length();
   private static final String SUB_HEADER = "h9";
   private static final int SUB_HEADER_LEN = SUB_HEADER.length();
 
+  private Configuration conf;
+
   /**
   * Creates a new instance of BZip2Codec
   */
   public BZip2Codec() { }
 
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  private int getCompressThreads() {
+    return conf == null ? 0 : conf.getInt(
+        CommonConfigurationKeysPublic.IO_BZIP2_COMPRESS_THREADS_KEY,
+        CommonConfigurationKeysPublic.IO_BZIP2_COMPRESS_THREADS_DEFAULT);
+  }
+
+  private int getDecompressThreads() {
+    return conf == null ? 0 : conf.getInt(
+        CommonConfigurationKeysPublic.IO_BZIP2_DECOMPRESS_THREADS_KEY,
+        CommonConfigurationKeysPublic.IO_BZIP2_DECOMPRESS_THREADS_DEFAULT);
+  }
+
   /**
   * Creates CompressionOutputStream for BZip2
   *
@@ -65,7 +99,7 @@ public class BZip2Codec implements SplittableCompressionCodec {
   */
   public CompressionOutputStream createOutputStream(OutputStream out)
       throws IOException {
-    return new BZip2CompressionOutputStream(out);
+    return new BZip2CompressionOutputStream(out, getCompressThreads());
   }
 
   /**
@@ -108,7 +142,7 @@ public class BZip2Codec implements SplittableCompressionCodec {
   */
   public CompressionInputStream createInputStream(InputStream in)
       throws IOException {
-    return new BZip2CompressionInputStream(in);
+    return new BZip2CompressionInputStream(in, getDecompressThreads());
   }
 
   /**
@@ -154,7 +188,8 @@ public class BZip2Codec implements SplittableCompressionCodec {
 
     ((Seekable)seekableIn).seek(adjStart);
     SplitCompressionInputStream in =
-      new BZip2CompressionInputStream(seekableIn, adjStart, end, readMode);
+      new BZip2CompressionInputStream(seekableIn, adjStart, end, readMode,
+                                      getDecompressThreads());
 
 
     // The following if clause handles the following case:
@@ -170,7 +205,8 @@ public class BZip2Codec implements SplittableCompressionCodec {
 
     if (in.getPos() <= start) {
       ((Seekable)seekableIn).seek(start);
-      in = new BZip2CompressionInputStream(seekableIn, start, end, readMode);
+      in = new BZip2CompressionInputStream(seekableIn, start, end, readMode,
+                                           getDecompressThreads());
     }
 
     return in;
@@ -209,12 +245,14 @@ public class BZip2Codec implements SplittableCompressionCodec {
     // class data starts here//
     private CBZip2OutputStream output;
     private boolean needsReset; 
+    private final int threads;
     // class data ends here//
 
-    public BZip2CompressionOutputStream(OutputStream out)
+    public BZip2CompressionOutputStream(OutputStream out, int threads)
         throws IOException {
       super(out);
       needsReset = true;
+      this.threads = threads;
     }
 
     private void writeStreamHeader() throws IOException {
@@ -241,7 +279,10 @@ public class BZip2Codec implements SplittableCompressionCodec {
       if (needsReset) {
         needsReset = false;
         writeStreamHeader();
-        this.output = new CBZip2OutputStream(out);
+        this.output = threads > 0
+          ? new ParallelCBZip2OutputStream(out,
+                CBZip2OutputStream.MAX_BLOCKSIZE, threads)
+          : new CBZip2OutputStream(out);
       }
     }    
     
@@ -305,6 +346,7 @@ public class BZip2Codec implements SplittableCompressionCodec {
     private boolean isSubHeaderStripped = false;
     private READ_MODE readMode = READ_MODE.CONTINUOUS;
     private long startingPos = 0L;
+    private final int threads;
 
     // Following state machine handles different states of compressed stream
     // position
@@ -320,13 +362,15 @@ public class BZip2Codec implements SplittableCompressionCodec {
 
     // class data ends here//
 
-    public BZip2CompressionInputStream(InputStream in) throws IOException {
-      this(in, 0L, Long.MAX_VALUE, READ_MODE.CONTINUOUS);
+    public BZip2CompressionInputStream(InputStream in, int threads)
+        throws IOException {
+      this(in, 0L, Long.MAX_VALUE, READ_MODE.CONTINUOUS, threads);
     }
 
     public BZip2CompressionInputStream(InputStream in, long start, long end,
-        READ_MODE readMode) throws IOException {
+        READ_MODE readMode, int threads) throws IOException {
       super(in, start, end);
+      this.threads = threads;
       needsReset = false;
       bufferedIn = new BufferedInputStream(super.in);
       this.startingPos = super.getPos();
@@ -335,7 +379,7 @@ public class BZip2Codec implements SplittableCompressionCodec {
         // We only strip header if it is start of file
         bufferedIn = readStreamHeader();
       }
-      input = new CBZip2InputStream(bufferedIn, readMode);
+      input = createInput(bufferedIn);
       if (this.isHeaderStripped) {
         input.updateReportedByteCount(HEADER_LEN);
       }
@@ -450,9 +494,16 @@ public class BZip2Codec implements SplittableCompressionCodec {
       if (needsReset) {
         needsReset = false;
         BufferedInputStream bufferedIn = readStreamHeader();
-        input = new CBZip2InputStream(bufferedIn, this.readMode);
+        input = createInput(bufferedIn);
       }
     }    
+
+    private CBZip2InputStream createInput(InputStream in)
+        throws IOException {
+      return threads > 0
+        ? new ParallelCBZip2InputStream(in, readMode, threads)
+        : new CBZip2InputStream(in, readMode);
+    }
     
     public void resetState() throws IOException {
       // Cannot read from bufferedIn at this point because bufferedIn
@@ -55,6 +55,8 @@ public class BlockCompressorStream extends CompressorStream {
                                int bufferSize, int compressionOverhead) {
     super(out, compressor, bufferSize);
     MAX_INPUT_SIZE = bufferSize - compressionOverhead;
+    // blocks are framed by write(byte[], int, int)
+    directCompressor = null;
   }
 
   /**
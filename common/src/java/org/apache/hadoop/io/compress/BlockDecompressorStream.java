@@ -48,6 +48,8 @@ public class BlockDecompressorStream extends DecompressorStream {
   public BlockDecompressorStream(InputStream in, Decompressor decompressor, 
                                  int bufferSize) throws IOException {
     super(in, decompressor, bufferSize);
+    // blocks are unframed by decompress(byte[], int, int)
+    directDecompressor = null;
   }
 
   /**
@@ -59,6 +61,7 @@ public class BlockDecompressorStream extends DecompressorStream {
    */
   public BlockDecompressorStream(InputStream in, Decompressor decompressor) throws IOException {
     super(in, decompressor);
+    directDecompressor = null;
   }
 
   protected BlockDecompressorStream(InputStream in) throws IOException {
@@ -17,77 +17,322 @@
  */
 package org.apache.hadoop.io.compress;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 
 /**
  * A global compressor/decompressor pool used to save and reuse 
  * (possibly native) compression/decompression codecs.
+ *
+ * <p>Returned compressors and decompressors go to a shared pool of at most
+ * {@link #MAX_POOLED} per type, beyond which they are ended. Compressors and
+ * decompressors that are garbage collected without being returned are
+ * logged as leaks. The counts are published to the metrics system once the
+ * pool is first used.</p>
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
 public class CodecPool {
   private static final Log LOG = LogFactory.getLog(CodecPool.class);
-  
+
+  /** The most compressors or decompressors of one type kept in the pool. */
+  public static final int MAX_POOLED = 128;
+
   /**
    * A global compressor pool used to save the expensive 
    * construction/destruction of (possibly native) decompression codecs.
    */
-  private static final Map<Class<Compressor>, List<Compressor>> compressorPool = 
-    new HashMap<Class<Compressor>, List<Compressor>>();
+  private static final Pool<Compressor> compressorPool =
+    new Pool<Compressor>("compressor") {
+      void end(Compressor compressor) {
+        compressor.end();
+      }
+    };
   
   /**
    * A global decompressor pool used to save the expensive 
    * construction/destruction of (possibly native) decompression codecs.
    */
-  private static final Map<Class<Decompressor>, List<Decompressor>> decompressorPool = 
-    new HashMap<Class<Decompressor>, List<Decompressor>>();
-
-  private static <T> T borrow(Map<Class<T>, List<T>> pool,
-                             Class<? extends T> codecClass) {
-    T codec = null;
-    
-    // Check if an appropriate codec is available
-    synchronized (pool) {
-      if (pool.containsKey(codecClass)) {
-        List<T> codecList = pool.get(codecClass);
-        
-        if (codecList != null) {
-          synchronized (codecList) {
-            if (!codecList.isEmpty()) {
-              codec = codecList.remove(codecList.size()-1);
-            }
-          }
-        }
+  private static final Pool<Decompressor> decompressorPool =
+    new Pool<Decompressor>("decompressor") {
+      void end(Decompressor decompressor) {
+        decompressor.end();
       }
+    };
+
+  private static final AtomicBoolean metricsRegistered = new AtomicBoolean();
+
+  /**
+   * Publish the counts when the pool is first used rather than when the
+   * class is loaded.
+   */
+  private static void registerMetrics() {
+    if (!metricsRegistered.get() &&
+        metricsRegistered.compareAndSet(false, true)) {
+      DefaultMetricsSystem.instance().register("CodecPool",
+          "Compressor and decompressor pool metrics", new PoolMetrics());
     }
-    
-    return codec;
   }
 
-  private static <T> void payback(Map<Class<T>, List<T>> pool, T codec) {
-    if (codec != null) {
-      Class<T> codecClass = ReflectionUtils.getClass(codec);
-      synchronized (pool) {
-        if (!pool.containsKey(codecClass)) {
-          pool.put(codecClass, new ArrayList<T>());
-        }
+  /**
+   * Pooled instances of one kind, by type, with the counts of instances
+   * created, reused, in use and leaked.
+   */
+  abstract static class Pool<T> {
+    private final String name;
+    private final ConcurrentHashMap<Class<?>, Pooled<T>> pool =
+      new ConcurrentHashMap<Class<?>, Pooled<T>>();
+    // the instances in use, held weakly to notice those never returned
+    private final ConcurrentHashMap<IdentityKey, Lease> leases =
+      new ConcurrentHashMap<IdentityKey, Lease>();
+    private final ReferenceQueue<Object> collected =
+      new ReferenceQueue<Object>();
+
+    final AtomicLong created = new AtomicLong();
+    final AtomicLong reused = new AtomicLong();
+    final AtomicLong leaked = new AtomicLong();
+    final AtomicInteger inUse = new AtomicInteger();
+
+    Pool(String name) {
+      this.name = name;
+    }
+
+    /** Free the resources of an instance not kept in the pool. */
+    abstract void end(T t);
+
+    /** Take an instance of the given type from the pool, or null. */
+    T borrow(Class<? extends T> type) {
+      if (type == null) {
+        return null;
+      }
+      Pooled<T> pooled = pool.get(type);
+      T t = pooled == null ? null : pooled.poll();
+      if (t != null) {
+        reused.incrementAndGet();
+      }
+      return t;
+    }
+
+    /** Note that an instance, pooled or new, is given out. */
+    void lease(T t, boolean isNew) {
+      if (isNew) {
+        created.incrementAndGet();
+      }
+      inUse.incrementAndGet();
+      Lease lease = new Lease(t, collected);
+      leases.put(lease, lease);
+      expungeLeaks();
+    }
 
-        List<T> codecList = pool.get(codecClass);
-        synchronized (codecList) {
-          codecList.add(codec);
+    /** Note that an instance given out is returned. */
+    void release(T t) {
+      Lease lease = leases.remove(new IdentityKey.Strong(t));
+      if (lease != null) {
+        // returned, so not to be reported as leaked
+        lease.clear();
+        inUse.decrementAndGet();
+      }
+    }
+
+    /** Take back an instance, keeping it for reuse if there is room. */
+    void payback(T t) {
+      release(t);
+      Class<?> type = t.getClass();
+      Pooled<T> pooled = pool.get(type);
+      if (pooled == null) {
+        pool.putIfAbsent(type, new Pooled<T>());
+        pooled = pool.get(type);
+      }
+      if (!pooled.offer(t)) {
+        end(t);
+      }
+    }
+
+    private void expungeLeaks() {
+      Reference<?> ref;
+      while ((ref = collected.poll()) != null) {
+        Lease lease = ((Lease.Ref) ref).lease;
+        if (leases.remove(lease) != null) {
+          inUse.decrementAndGet();
+          leaked.incrementAndGet();
+          LOG.warn("A " + name + " of type " + lease.type + " was garbage " +
+                   "collected without being returned to the CodecPool");
         }
       }
     }
+
+    /** The number of pooled instances of the given type. */
+    int getPooled(Class<?> type) {
+      Pooled<T> pooled = pool.get(type);
+      return pooled == null ? 0 : pooled.size.get();
+    }
+  }
+
+  /** A bounded, lock-free queue of instances of one type. */
+  private static class Pooled<T> {
+    private final Queue<T> queue = new ConcurrentLinkedQueue<T>();
+    final AtomicInteger size = new AtomicInteger();
+
+    T poll() {
+      T t = queue.poll();
+      if (t != null) {
+        size.decrementAndGet();
+      }
+      return t;
+    }
+
+    boolean offer(T t) {
+      if (size.incrementAndGet() > MAX_POOLED) {
+        size.decrementAndGet();
+        return false;
+      }
+      queue.add(t);
+      return true;
+    }
+  }
+
+  /** A key comparing the objects it refers to by identity. */
+  private abstract static class IdentityKey {
+    abstract Object get();
+
+    @Override
+    public abstract int hashCode();
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof IdentityKey)) {
+        return false;
+      }
+      Object referent = get();
+      return referent != null && referent == ((IdentityKey) o).get();
+    }
+
+    /** A key used to look up a lease. */
+    static class Strong extends IdentityKey {
+      private final Object referent;
+
+      Strong(Object referent) {
+        this.referent = referent;
+      }
+
+      Object get() {
+        return referent;
+      }
+
+      public int hashCode() {
+        return System.identityHashCode(referent);
+      }
+    }
+  }
+
+  /** An instance given out, referred to weakly. */
+  private static class Lease extends IdentityKey {
+    private final WeakReference<Object> ref;
+    private final int hash;
+    final String type;
+
+    Lease(Object referent, ReferenceQueue<Object> queue) {
+      ref = new Ref(referent, queue, this);
+      hash = System.identityHashCode(referent);
+      type = referent.getClass().getName();
+    }
+
+    Object get() {
+      return ref.get();
+    }
+
+    void clear() {
+      ref.clear();
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    /** The reference enqueued when the referent is collected. */
+    private static class Ref extends WeakReference<Object> {
+      final Lease lease;
+
+      Ref(Object referent, ReferenceQueue<Object> queue, Lease lease) {
+        super(referent, queue);
+        this.lease = lease;
+      }
+    }
+  }
+
+  /** Publishes the counts of the pools. */
+  @Metrics(about="Compressor and decompressor pool metrics", context="codec")
+  static class PoolMetrics {
+    @Metric(value="Number of compressors created", type=Metric.Type.COUNTER)
+    public long getCompressorsCreated() {
+      return compressorPool.created.get();
+    }
+
+    @Metric(value="Number of compressors reused", type=Metric.Type.COUNTER)
+    public long getCompressorsReused() {
+      return compressorPool.reused.get();
+    }
+
+    @Metric("Number of compressors in use")
+    public int getCompressorsInUse() {
+      return compressorPool.inUse.get();
+    }
+
+    @Metric(value="Number of compressors never returned",
+            type=Metric.Type.COUNTER)
+    public long getCompressorsLeaked() {
+      return compressorPool.leaked.get();
+    }
+
+    @Metric(value="Number of decompressors created", type=Metric.Type.COUNTER)
+    public long getDecompressorsCreated() {
+      return decompressorPool.created.get();
+    }
+
+    @Metric(value="Number of decompressors reused", type=Metric.Type.COUNTER)
+    public long getDecompressorsReused() {
+      return decompressorPool.reused.get();
+    }
+
+    @Metric("Number of decompressors in use")
+    public int getDecompressorsInUse() {
+      return decompressorPool.inUse.get();
+    }
+
+    @Metric(value="Number of decompressors never returned",
+            type=Metric.Type.COUNTER)
+    public long getDecompressorsLeaked() {
+      return decompressorPool.leaked.get();
+    }
+  }
+
+  /** The pool of compressors, for tests. */
+  static Pool<Compressor> getCompressorPool() {
+    return compressorPool;
+  }
+
+  /** The pool of decompressors, for tests. */
+  static Pool<Decompressor> getDecompressorPool() {
+    return decompressorPool;
   }
   
   /**
@@ -101,8 +346,10 @@ public class CodecPool {
    *         <code>CompressionCodec</code> from the pool or a new one
    */
   public static Compressor getCompressor(CompressionCodec codec, Configuration conf) {
-    Compressor compressor = borrow(compressorPool, codec.getCompressorType());
-    if (compressor == null) {
+    registerMetrics();
+    Compressor compressor = compressorPool.borrow(codec.getCompressorType());
+    boolean isNew = compressor == null;
+    if (isNew) {
       compressor = codec.createCompressor();
       LOG.info("Got brand-new compressor ["+codec.getDefaultExtension()+"]");
     } else {
@@ -111,6 +358,9 @@ public class CodecPool {
         LOG.debug("Got recycled compressor");
       }
     }
+    if (compressor != null) {
+      compressorPool.lease(compressor, isNew);
+    }
     return compressor;
   }
   
@@ -128,8 +378,11 @@ public class CodecPool {
    *         <code>CompressionCodec</code> the pool or a new one
    */
   public static Decompressor getDecompressor(CompressionCodec codec) {
-    Decompressor decompressor = borrow(decompressorPool, codec.getDecompressorType());
-    if (decompressor == null) {
+    registerMetrics();
+    Decompressor decompressor =
+      decompressorPool.borrow(codec.getDecompressorType());
+    boolean isNew = decompressor == null;
+    if (isNew) {
       decompressor = codec.createDecompressor();
       LOG.info("Got brand-new decompressor ["+codec.getDefaultExtension()+"]");
     } else {
@@ -137,6 +390,9 @@ public class CodecPool {
         LOG.debug("Got recycled decompressor");
       }
     }
+    if (decompressor != null) {
+      decompressorPool.lease(decompressor, isNew);
+    }
     return decompressor;
   }
   
@@ -151,10 +407,11 @@ public class CodecPool {
     }
     // if the compressor can't be reused, don't pool it.
     if (compressor.getClass().isAnnotationPresent(DoNotPool.class)) {
+      compressorPool.release(compressor);
       return;
     }
     compressor.reset();
-    payback(compressorPool, compressor);
+    compressorPool.payback(compressor);
   }
   
   /**
@@ -169,9 +426,10 @@ public class CodecPool {
     }
     // if the decompressor can't be reused, don't pool it.
     if (decompressor.getClass().isAnnotationPresent(DoNotPool.class)) {
+      decompressorPool.release(decompressor);
       return;
     }
     decompressor.reset();
-    payback(decompressorPool, decompressor);
+    decompressorPool.payback(decompressor);
   }
 }
@@ -20,6 +20,7 @@ package org.apache.hadoop.io.compress;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -32,6 +33,19 @@ public class CompressorStream extends CompressionOutputStream {
   protected Compressor compressor;
   protected byte[] buffer;
   protected boolean closed = false;
+  /**
+   * The compressor, if it compresses between {@link ByteBuffer}s; direct
+   * buffers given to {@link #write(ByteBuffer)} are then compressed straight
+   * into {@link #buffer}.
+   */
+  protected DirectCompressor directCompressor = null;
+  private ByteBuffer output;
+  // whether the compressor has been given arrays or buffers since it was
+  // reset; it is not given both
+  private boolean arrayInput = false;
+  private boolean bufferInput = false;
+
+  private static final ByteBuffer NO_INPUT = ByteBuffer.allocate(0);
   
   public CompressorStream(OutputStream out, Compressor compressor, int bufferSize) {
     super(out);
@@ -44,6 +58,10 @@ public class CompressorStream extends CompressionOutputStream {
 
     this.compressor = compressor;
     buffer = new byte[bufferSize];
+    if (compressor instanceof DirectCompressor) {
+      directCompressor = (DirectCompressor)compressor;
+      output = ByteBuffer.wrap(buffer);
+    }
   }
 
   public CompressorStream(OutputStream out, Compressor compressor) {
@@ -70,12 +88,55 @@ public class CompressorStream extends CompressionOutputStream {
       return;
     }
 
+    if (bufferInput) {
+      compress(ByteBuffer.wrap(b, off, len));
+      return;
+    }
+    arrayInput = true;
     compressor.setInput(b, off, len);
     while (!compressor.needsInput()) {
       compress();
     }
   }
 
+  /**
+   * Writes the remaining bytes of the given buffer. Compressors working on
+   * {@link ByteBuffer}s read direct buffers where they are, saving a copy,
+   * unless arrays have been written since the stream was reset; arrays
+   * written after such a buffer are then compressed the same way.
+   */
+  public void write(ByteBuffer src) throws IOException {
+    if (directCompressor == null || !src.isDirect() || arrayInput) {
+      if (src.hasArray()) {
+        write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+        src.position(src.limit());
+      } else {
+        byte[] b = new byte[Math.min(src.remaining(), 64 * 1024)];
+        while (src.hasRemaining()) {
+          int len = Math.min(src.remaining(), b.length);
+          src.get(b, 0, len);
+          write(b, 0, len);
+        }
+      }
+      return;
+    }
+    if (compressor.finished()) {
+      throw new IOException("write beyond end of stream");
+    }
+    bufferInput = true;
+    compress(src);
+  }
+
+  private void compress(ByteBuffer src) throws IOException {
+    do {
+      output.clear();
+      directCompressor.compress(src, output);
+      if (output.position() > 0) {
+        out.write(buffer, 0, output.position());
+      }
+    } while (src.hasRemaining());
+  }
+
   protected void compress() throws IOException {
     int len = compressor.compress(buffer, 0, buffer.length);
     if (len > 0) {
@@ -87,13 +148,19 @@ public class CompressorStream extends CompressionOutputStream {
     if (!compressor.finished()) {
       compressor.finish();
       while (!compressor.finished()) {
-        compress();
+        if (bufferInput) {
+          compress(NO_INPUT);
+        } else {
+          compress();
+        }
       }
     }
   }
 
   public void resetState() throws IOException {
     compressor.reset();
+    arrayInput = false;
+    bufferInput = false;
   }
   
   public void close() throws IOException {
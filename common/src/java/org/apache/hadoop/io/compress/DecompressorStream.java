@@ -21,6 +21,7 @@ package org.apache.hadoop.io.compress;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -34,6 +35,18 @@ public class DecompressorStream extends CompressionInputStream {
   protected boolean eof = false;
   protected boolean closed = false;
   private int lastBytesSent = 0;
+  /**
+   * The decompressor, if it decompresses between {@link ByteBuffer}s; data
+   * read with {@link #read(ByteBuffer)} into direct buffers is then
+   * decompressed from {@link #buffer} straight into them.
+   */
+  protected DirectDecompressor directDecompressor = null;
+  /** The bytes of {@link #buffer} not yet consumed by the decompressor. */
+  private ByteBuffer input;
+  // whether the decompressor has been given arrays or buffers since it was
+  // reset; it is not given both
+  private boolean arrayInput = false;
+  private boolean bufferInput = false;
 
   public DecompressorStream(InputStream in, Decompressor decompressor,
                             int bufferSize)
@@ -48,6 +61,11 @@ public class DecompressorStream extends CompressionInputStream {
 
     this.decompressor = decompressor;
     buffer = new byte[bufferSize];
+    if (decompressor instanceof DirectDecompressor) {
+      directDecompressor = (DirectDecompressor)decompressor;
+      input = ByteBuffer.wrap(buffer);
+      input.limit(0);
+    }
   }
 
   public DecompressorStream(InputStream in, Decompressor decompressor)
@@ -83,7 +101,46 @@ public class DecompressorStream extends CompressionInputStream {
     return decompress(b, off, len);
   }
 
+  /**
+   * Reads decompressed bytes into the remaining space of the given buffer.
+   * Decompressors working on {@link ByteBuffer}s write them straight into
+   * direct buffers, saving a copy, unless arrays have been read since the
+   * stream was reset; arrays read after such a buffer are then filled the
+   * same way.
+   *
+   * @return the number of bytes read, or -1 at the end of the stream
+   */
+  public int read(ByteBuffer dst) throws IOException {
+    checkStream();
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    if (directDecompressor != null && dst.isDirect() && !arrayInput) {
+      bufferInput = true;
+      return decompress(dst);
+    }
+    int n;
+    if (dst.hasArray()) {
+      n = read(dst.array(), dst.arrayOffset() + dst.position(),
+               dst.remaining());
+      if (n > 0) {
+        dst.position(dst.position() + n);
+      }
+    } else {
+      byte[] b = new byte[Math.min(dst.remaining(), 64 * 1024)];
+      n = read(b, 0, b.length);
+      if (n > 0) {
+        dst.put(b, 0, n);
+      }
+    }
+    return n;
+  }
+
   protected int decompress(byte[] b, int off, int len) throws IOException {
+    if (bufferInput) {
+      return decompress(ByteBuffer.wrap(b, off, len));
+    }
+    arrayInput = true;
     int n = 0;
 
     while ((n = decompressor.decompress(b, off, len)) == 0) {
@@ -150,6 +207,55 @@ public class DecompressorStream extends CompressionInputStream {
     return n;
   }
 
+  private int decompress(ByteBuffer dst) throws IOException {
+    final int start = dst.position();
+    while (dst.position() == start) {
+      if (decompressor.finished()) {
+        // whatever follows the end of the stream is either the end of the
+        // file or another concatenated stream
+        if (!input.hasRemaining() && readInput() == -1) {
+          eof = true;
+          return -1;
+        }
+        decompressor.reset();
+      } else if (!input.hasRemaining() && readInput() == -1) {
+        throw new EOFException("Unexpected end of input stream");
+      }
+      final int consumed = input.position();
+      directDecompressor.decompress(input, dst);
+      if (decompressor.needsDictionary()) {
+        eof = true;
+        return -1;
+      }
+      if (dst.position() == start && input.position() == consumed &&
+          !decompressor.finished()) {
+        // the decompressor needs more than the input left in the buffer
+        if (input.limit() == buffer.length && input.position() == 0) {
+          throw new IOException("Decompressor made no progress with " +
+                                buffer.length + " bytes of input");
+        }
+        if (readInput() == -1) {
+          throw new EOFException("Unexpected end of input stream");
+        }
+      }
+    }
+    return dst.position() - start;
+  }
+
+  /**
+   * Reads compressed data after the input left in the buffer.
+   */
+  private int readInput() throws IOException {
+    checkStream();
+    input.compact();
+    int m = in.read(buffer, input.position(), input.remaining());
+    if (m > 0) {
+      input.position(input.position() + m);
+    }
+    input.flip();
+    return m;
+  }
+
   protected int getCompressedData() throws IOException {
     checkStream();
   
@@ -165,6 +271,11 @@ public class DecompressorStream extends CompressionInputStream {
   
   public void resetState() throws IOException {
     decompressor.reset();
+    if (input != null) {
+      input.limit(0);
+    }
+    arrayInput = false;
+    bufferInput = false;
   }
 
   private byte[] skipBytes = new byte[512];
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A {@link Compressor} which also compresses from one {@link ByteBuffer} to
+ * another. Native compressors work on the memory of direct buffers in place,
+ * without copying the data to and from their own buffers; heap buffers are
+ * staged through those buffers as before.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface DirectCompressor extends Compressor {
+  /**
+   * Compresses the remaining bytes of <code>src</code> into <code>dst</code>,
+   * advancing the position of <code>src</code> past the bytes consumed and
+   * the position of <code>dst</code> past the bytes written.
+   *
+   * <p>Stream compressors return when <code>src</code> has been consumed or
+   * <code>dst</code> is full. Once {@link #finish()} has been called, the
+   * end of the compressed stream is written after the last of the input, and
+   * {@link #finished()} returns <code>true</code> when all of it has been
+   * written. Block compressors compress all of <code>src</code> as one block
+   * and need <code>dst</code> to have room for it.</p>
+   *
+   * <p>No input is kept between calls, so the buffers may be changed as soon
+   * as this returns. Calls should not be mixed with
+   * {@link #setInput(byte[], int, int)} and
+   * {@link #compress(byte[], int, int)} between calls to {@link #reset()}.</p>
+   *
+   * @param src the uncompressed data
+   * @param dst the buffer for the compressed data
+   * @throws IOException
+   */
+  public void compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+}
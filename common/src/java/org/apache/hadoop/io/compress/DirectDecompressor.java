@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A {@link Decompressor} which also decompresses from one {@link ByteBuffer}
+ * to another. Native decompressors work on the memory of direct buffers in
+ * place, without copying the data to and from their own buffers; heap
+ * buffers are staged through those buffers as before.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface DirectDecompressor extends Decompressor {
+  /**
+   * Decompresses the remaining bytes of <code>src</code> into
+   * <code>dst</code>, advancing the position of <code>src</code> past the
+   * bytes consumed and the position of <code>dst</code> past the bytes
+   * written.
+   *
+   * <p>Stream decompressors return when <code>src</code> has been consumed,
+   * <code>dst</code> is full, a dictionary is needed or the end of the
+   * compressed stream has been reached. In the last case {@link #finished()}
+   * returns <code>true</code> and the bytes following the stream are left in
+   * <code>src</code>. Block decompressors need <code>src</code> to hold one
+   * whole compressed block and <code>dst</code> to have room for all of
+   * it.</p>
+   *
+   * <p>No input is kept between calls, so the buffers may be changed as soon
+   * as this returns. Calls should not be mixed with
+   * {@link #setInput(byte[], int, int)} and
+   * {@link #decompress(byte[], int, int)} between calls to
+   * {@link #reset()}.</p>
+   *
+   * @param src the compressed data
+   * @param dst the buffer for the uncompressed data
+   * @throws IOException
+   */
+  public void decompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.bzip2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes bits, most significant first, to a stream. Bzip2 blocks are not
+ * aligned to bytes, so blocks compressed or read apart from their stream are
+ * spliced in with {@link #writeBits(byte[], int, long)}.
+ */
+class BZip2BitOutput {
+  private final OutputStream out;
+  private int buff;
+  private int live;
+
+  BZip2BitOutput(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Write the low <code>n</code> bits of <code>v</code>, for n <= 24.
+   */
+  void write(int n, int v) throws IOException {
+    flushBytes();
+    buff |= v << (32 - live - n);
+    live += n;
+  }
+
+  void writeInt(int v) throws IOException {
+    write(16, v >>> 16);
+    write(16, v & 0xffff);
+  }
+
+  /**
+   * Write <code>n</code> bits of <code>b</code>, starting with bit
+   * <code>startBit</code> of its first byte.
+   */
+  void writeBits(byte[] b, int startBit, long n) throws IOException {
+    int i = 0;
+    if (startBit == 0 && (live & 7) == 0) {
+      // aligned: whole bytes are copied
+      flushBytes();
+      i = (int) (n >>> 3);
+      out.write(b, 0, i);
+    } else {
+      // shift whole bytes through a chunk, keeping the live bits in front
+      flushBytes();
+      final int bytes = (int) (n >>> 3);
+      byte[] chunk = new byte[Math.min(bytes, 64 * 1024)];
+      int carry = buff >>> 24;
+      while (i < bytes) {
+        final int len = Math.min(chunk.length, bytes - i);
+        for (int j = 0; j < len; ++j) {
+          final int v = byteAt(b, i + j, startBit);
+          chunk[j] = (byte) (carry | (v >>> live));
+          carry = (v << (8 - live)) & 0xff;
+        }
+        out.write(chunk, 0, len);
+        i += len;
+      }
+      buff = carry << 24;
+    }
+    final int rest = (int) (n & 7);
+    if (rest > 0) {
+      write(rest, byteAt(b, i, startBit) >>> (8 - rest));
+    }
+  }
+
+  /** The eight bits starting at bit <code>startBit</code> of byte i. */
+  private static int byteAt(byte[] b, int i, int startBit) {
+    int v = (b[i] << startBit) & 0xff;
+    if (startBit > 0 && i + 1 < b.length) {
+      v |= (b[i + 1] & 0xff) >>> (8 - startBit);
+    }
+    return v;
+  }
+
+  private void flushBytes() throws IOException {
+    while (live >= 8) {
+      out.write(buff >>> 24);
+      buff <<= 8;
+      live -= 8;
+    }
+  }
+
+  /**
+   * Write the bits left, padding the last byte with zeros.
+   */
+  void finish() throws IOException {
+    flushBytes();
+    if (live > 0) {
+      out.write(buff >>> 24);
+      buff = 0;
+      live = 0;
+    }
+  }
+}
@@ -129,7 +129,8 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
   private int computedBlockCRC, computedCombinedCRC;
 
   private boolean skipResult = false;// used by skipToNextMarker
-  private static boolean skipDecompression = false;
+  // set until the first block found in BYBLOCK mode is decompressed
+  private boolean skipDecompression = false;
 
   // Variables used by setup* methods exclusively
 
@@ -297,9 +298,9 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       this.currentState = STATE.NO_PROCESS_STATE;
       skipResult = this.skipToNextMarker(CBZip2InputStream.BLOCK_DELIMITER,DELIMITER_BIT_LENGTH);
       this.reportedBytesReadFromCompressedStream = this.bytesReadFromCompressedStream;
-      if(!skipDecompression){
-        changeStateToProcessABlock();
-      }
+      // the block is decompressed by the first read, so streams only
+      // counting the bytes to it, or dropped, do not decompress it
+      skipDecompression = true;
     }
   }
 
@@ -316,7 +317,6 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
    *
    */
   public static long numberOfBytesTillNextMarker(final InputStream in) throws IOException{
-    CBZip2InputStream.skipDecompression = true;
     CBZip2InputStream anObject = null;
 
     anObject = new CBZip2InputStream(in, READ_MODE.BYBLOCK);
@@ -328,6 +328,14 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     this(in, READ_MODE.CONTINUOUS);
   }
 
+  /**
+   * Constructs a CBZip2InputStream for subclasses which read the blocks
+   * themselves. No stream is read and no memory is allocated.
+   */
+  CBZip2InputStream(READ_MODE readMode) {
+    this.readMode = readMode;
+  }
+
   private void changeStateToProcessABlock() throws IOException {
     if (skipResult == true) {
       initBlock();
@@ -395,7 +403,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
     if(skipDecompression){
       changeStateToProcessABlock();
-      CBZip2InputStream.skipDecompression = false;
+      this.skipDecompression = false;
     }
 
     final int hi = offs + len;
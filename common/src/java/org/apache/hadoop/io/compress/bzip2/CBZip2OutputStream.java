@@ -558,6 +558,19 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
 
   private OutputStream out;
 
+  /**
+  * Whether the stream header and trailer are written, or only the blocks,
+  * as {@link ParallelCBZip2OutputStream} needs.
+  */
+  private final boolean writeStream;
+
+  private int blockCount;
+
+  /**
+  * The bits after the last block that only pad the last byte written.
+  */
+  private int paddingBits;
+
   /**
   * Chooses a blocksize based on the given length of the data to compress.
   *
@@ -623,8 +636,35 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
   */
   public CBZip2OutputStream(final OutputStream out, final int blockSize)
       throws IOException {
-    super();
+    this(out, blockSize, true);
+  }
+
+  /**
+  * Constructs a new <tt>CBZip2OutputStream</tt> writing only the blocks
+  * compressed, without the stream header and trailer. The combined CRC of the
+  * blocks, their number and the padding after them are available once the
+  * stream is finished.
+  */
+  CBZip2OutputStream(final OutputStream out, final int blockSize,
+      final boolean writeStream) throws IOException {
+    checkBlockSize(blockSize);
+    this.blockSize100k = blockSize;
+    this.out = out;
+    this.writeStream = writeStream;
+    init();
+  }
+
+  /**
+  * Constructs a <tt>CBZip2OutputStream</tt> for subclasses which compress the
+  * blocks themselves. No memory is allocated for compression.
+  */
+  CBZip2OutputStream(final int blockSize) {
+    checkBlockSize(blockSize);
+    this.blockSize100k = blockSize;
+    this.writeStream = true;
+  }
 
+  private static void checkBlockSize(final int blockSize) {
     if (blockSize < 1) {
       throw new IllegalArgumentException("blockSize(" + blockSize
           + ") < 1");
@@ -633,10 +673,6 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
       throw new IllegalArgumentException("blockSize(" + blockSize
           + ") > 9");
     }
-
-    this.blockSize100k = blockSize;
-    this.out = out;
-    init();
   }
 
   public void write(final int b) throws IOException {
@@ -718,7 +754,12 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
         }
         this.currentChar = -1;
         endBlock();
-        endCompression();
+        if (this.writeStream) {
+          endCompression();
+        } else {
+          this.paddingBits = (8 - (this.bsLive & 7)) & 7;
+          bsFinishedWithStream();
+        }
       } finally {
         this.out = null;
         this.data = null;
@@ -757,8 +798,10 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
     * Write `magic' bytes h indicating file-format == huffmanised, followed
     * by a digit indicating blockSize100k.
     */
-    bsPutUByte('h');
-    bsPutUByte('0' + this.blockSize100k);
+    if (this.writeStream) {
+      bsPutUByte('h');
+      bsPutUByte('0' + this.blockSize100k);
+    }
 
     this.combinedCRC = 0;
     initBlock();
@@ -789,6 +832,8 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
       return;
     }
 
+    this.blockCount++;
+
     /* sort the block and establish posn of original string */
     blockSort();
 
@@ -842,6 +887,18 @@ public class CBZip2OutputStream extends OutputStream implements BZip2Constants {
     bsFinishedWithStream();
   }
 
+  int getCombinedCRC() {
+    return this.combinedCRC;
+  }
+
+  int getBlockCount() {
+    return this.blockCount;
+  }
+
+  int getPaddingBits() {
+    return this.paddingBits;
+  }
+
   /**
   * Returns the blocksize parameter specified at construction time.
   */
@@ -0,0 +1,470 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec.READ_MODE;
+import org.apache.hadoop.util.ThrottledExecutor;
+
+/**
+ * A {@link CBZip2InputStream} decompressing the blocks ahead of the reader
+ * on the threads shared by the JVM, see {@link ThrottledExecutor}.
+ *
+ * <p>
+ * The compressed stream is scanned for the 48 bit block delimiters, and the
+ * bits between two delimiters are decompressed on their own as a single block
+ * stream, checking the CRC of the block. Up to the given number of blocks
+ * are decompressed at a time, and twice as many are read ahead. The blocks
+ * and the positions reported in {@link READ_MODE#BYBLOCK} mode are those of
+ * {@link CBZip2InputStream}: {@link #read(byte[], int, int)} returns
+ * {@link #END_OF_BLOCK} once the data of a block have been read, and the
+ * position advances past the delimiter of the next block.
+ * </p>
+ *
+ * <p>
+ * Like the block reading of {@link CBZip2InputStream}, this relies on the
+ * delimiters not appearing inside compressed blocks; if one does, the block
+ * fails to decompress.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are not threadsafe.
+ * </p>
+ */
+public class ParallelCBZip2InputStream extends CBZip2InputStream {
+  private static final int DELIMITER_BIT_LENGTH = 48;
+  private static final long DELIMITER_MASK =
+    (1L << DELIMITER_BIT_LENGTH) - 1;
+
+  /** A block read ahead. */
+  private static class Block {
+    final Future<DataOutputBuffer> data;
+    final int storedCRC;
+    // the compressed bytes read once the block is over
+    final long end;
+
+    Block(Future<DataOutputBuffer> data, int storedCRC, long end) {
+      this.data = data;
+      this.storedCRC = storedCRC;
+      this.end = end;
+    }
+  }
+
+  private InputStream in;
+  private final int threads;
+  private final ThrottledExecutor executor;
+  // blocks being decompressed, in stream order
+  private final LinkedList<Block> pending = new LinkedList<Block>();
+
+  private final byte[] buffer = new byte[64 * 1024];
+  private int bufferPos;
+  private int bufferLen;
+  // the byte being scanned and the number of its bits not yet scanned
+  private int bitBuff;
+  private int bitsLeft;
+  // the bytes of the block being scanned, and its first in the buffer
+  private DataOutputBuffer blockBytes;
+  private int blockStart;
+  private long bytesRead;
+  private boolean started;
+  // whether the scan stopped after a block delimiter
+  private boolean moreBlocks;
+  private int storedCombinedCRC;
+  private int computedCombinedCRC;
+  private boolean complete;
+
+  private long reportedBytesRead;
+  private DataOutputBuffer current;
+  private int currentOff;
+  private long currentEnd;
+  private final byte[] oneByte = new byte[1];
+
+  /**
+   * Constructs a new stream decompressing the blocks read from the given
+   * stream, up to the given number at a time.
+   *
+   * <p>
+   * As with {@link CBZip2InputStream}, callers have to skip the magic
+   * <tt>"BZ"</tt> in {@link READ_MODE#CONTINUOUS} mode.
+   * </p>
+   *
+   * @throws IOException if an I/O error occurs in the specified stream.
+   */
+  public ParallelCBZip2InputStream(InputStream in, READ_MODE readMode,
+                                   int threads) throws IOException {
+    super(readMode);
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads(" + threads + ") < 1");
+    }
+    this.in = in;
+    this.threads = threads;
+    this.executor = new ThrottledExecutor(threads);
+    if (readMode == READ_MODE.BYBLOCK) {
+      started = true;
+      moreBlocks = skipToMarker(BLOCK_DELIMITER, DELIMITER_BIT_LENGTH);
+      reportedBytesRead = bytesRead;
+    }
+  }
+
+  @Override
+  public long getProcessedByteCount() {
+    return reportedBytesRead;
+  }
+
+  @Override
+  public void updateReportedByteCount(int count) {
+    reportedBytesRead += count;
+    bytesRead += count;
+  }
+
+  /**
+   * Skip past the next occurrence of a marker, with the scanner that finds
+   * the block delimiters. The scan starts where the blocks already read
+   * ahead end; those blocks are still returned by later reads. Scanning
+   * resumes after the marker as after a block delimiter.
+   *
+   * @return whether the marker was found
+   * @throws IllegalArgumentException if markerBitLength is greater than 63
+   */
+  @Override
+  public boolean skipToNextMarker(long marker, int markerBitLength)
+      throws IOException, IllegalArgumentException {
+    if (markerBitLength > 63) {
+      throw new IllegalArgumentException(
+          "skipToNextMarker can not find patterns greater than 63 bits");
+    }
+    // the skip takes the place of the stream header
+    started = true;
+    try {
+      moreBlocks = skipToMarker(marker, markerBitLength);
+    } catch (IOException e) {
+      moreBlocks = false;
+    }
+    return moreBlocks;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int result = read(oneByte, 0, 1);
+    return result > 0 ? oneByte[0] & 0xff : result;
+  }
+
+  @Override
+  public int read(byte[] dest, int offs, int len) throws IOException {
+    if (offs < 0 || len < 0 || offs > dest.length - len) {
+      throw new IndexOutOfBoundsException("offs(" + offs + ") len(" + len +
+          ") dest.length(" + dest.length + ")");
+    }
+    if (in == null) {
+      throw new IOException("stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    while (true) {
+      if (current != null) {
+        final int n = Math.min(len, current.getLength() - currentOff);
+        if (n > 0) {
+          System.arraycopy(current.getData(), currentOff, dest, offs, n);
+          currentOff += n;
+          return n;
+        }
+        current = null;
+        if (readMode == READ_MODE.BYBLOCK) {
+          // advertise the position as the next block starts
+          reportedBytesRead = currentEnd;
+          return END_OF_BLOCK;
+        }
+      }
+      readAhead();
+      if (pending.isEmpty()) {
+        if (readMode == READ_MODE.CONTINUOUS && !complete) {
+          complete = true;
+          if (storedCombinedCRC != computedCombinedCRC) {
+            reportCRCError();
+          }
+        }
+        return END_OF_STREAM;
+      }
+      Block block = pending.removeFirst();
+      try {
+        current = block.data.get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted decompressing a block");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException("Failed to decompress a block", cause);
+      }
+      currentOff = 0;
+      currentEnd = block.end;
+      computedCombinedCRC = Integer.rotateLeft(computedCombinedCRC, 1) ^
+                            block.storedCRC;
+    }
+  }
+
+  /** Scan blocks and hand them to the pool, up to the limit. */
+  private void readAhead() throws IOException {
+    if (!started) {
+      started = true;
+      readStreamHeader();
+    }
+    while (moreBlocks && pending.size() < 2 * threads) {
+      pending.add(readBlock());
+    }
+  }
+
+  /** Read the header and the first delimiter of a stream. */
+  private void readStreamHeader() throws IOException {
+    int magic = readBits(8);
+    if (magic != 'h') {
+      throw new IOException("Stream is not BZip2 formatted: expected 'h'"
+          + " as first byte but got '" + (char) magic + "'");
+    }
+    int blockSize = readBits(8);
+    if ((blockSize < '1') || (blockSize > '9')) {
+      throw new IOException("Stream is not BZip2 formatted: illegal "
+          + "blocksize " + (char) blockSize);
+    }
+    long delimiter = ((long) readBits(24) << 24) | readBits(24);
+    if (delimiter == BLOCK_DELIMITER) {
+      moreBlocks = true;
+    } else if (delimiter == EOS_DELIMITER) {
+      storedCombinedCRC = (readBits(16) << 16) | readBits(16);
+    } else {
+      throw new IOException("bad block header");
+    }
+  }
+
+  /**
+   * Scan the block after the last delimiter up to the next one, or to the
+   * end of the stream, and hand it to the pool.
+   */
+  private Block readBlock() throws IOException {
+    blockBytes = new DataOutputBuffer();
+    final DataOutputBuffer bytes = blockBytes;
+    // the block starts with the bits of the last byte not yet scanned
+    int startBit = 0;
+    blockStart = bufferPos;
+    if (bitsLeft > 0) {
+      --blockStart;
+      startBit = 8 - bitsLeft;
+    }
+    long window = 0;
+    long bits = 0;
+    int storedCRC = 0;
+    try {
+      while (true) {
+        final int bit = readBit();
+        if (bit < 0) {
+          if (readMode == READ_MODE.CONTINUOUS) {
+            throw new IOException("unexpected end of stream");
+          }
+          // the last block ends with the stream
+          moreBlocks = false;
+          keepBlockBytes();
+          blockBytes = null;
+          break;
+        }
+        window = ((window << 1) | bit) & DELIMITER_MASK;
+        if (++bits == 32) {
+          storedCRC = (int) window;
+        }
+        if (bits >= DELIMITER_BIT_LENGTH) {
+          if (window == BLOCK_DELIMITER) {
+            bits -= DELIMITER_BIT_LENGTH;
+            keepBlockBytes();
+            blockBytes = null;
+            break;
+          } else if (window == EOS_DELIMITER) {
+            bits -= DELIMITER_BIT_LENGTH;
+            keepBlockBytes();
+            blockBytes = null;
+            endOfStream();
+            break;
+          }
+        }
+      }
+    } finally {
+      blockBytes = null;
+    }
+    final int fromBit = startBit;
+    final long blockBits = bits;
+    final int crc = storedCRC;
+    Future<DataOutputBuffer> data =
+      executor.submit(new Callable<DataOutputBuffer>() {
+        public DataOutputBuffer call() throws IOException {
+          return decompress(bytes.getData(), fromBit, blockBits, crc);
+        }
+      });
+    return new Block(data, storedCRC, bytesRead);
+  }
+
+  /**
+   * After the end of stream delimiter: read the combined CRC, or in
+   * {@link READ_MODE#BYBLOCK} mode skip to the block of any stream
+   * concatenated, as {@link CBZip2InputStream} does.
+   */
+  private void endOfStream() throws IOException {
+    if (readMode == READ_MODE.CONTINUOUS) {
+      storedCombinedCRC = (readBits(16) << 16) | readBits(16);
+      moreBlocks = false;
+    } else {
+      moreBlocks = skipToMarker(BLOCK_DELIMITER, DELIMITER_BIT_LENGTH);
+    }
+  }
+
+  /**
+   * Skip past the next occurrence of a marker of up to 63 bits.
+   *
+   * @return whether one was found
+   */
+  private boolean skipToMarker(long marker, int markerBitLength)
+      throws IOException {
+    final long mask = (1L << markerBitLength) - 1;
+    long window = 0;
+    int bits = 0;
+    while (true) {
+      final int bit = readBit();
+      if (bit < 0) {
+        return false;
+      }
+      window = ((window << 1) | bit) & mask;
+      if (bits < markerBitLength) {
+        ++bits;
+      }
+      if (bits == markerBitLength && window == marker) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Read the next bit, or -1 at the end of the stream.
+   */
+  private int readBit() throws IOException {
+    if (bitsLeft == 0) {
+      if (bufferPos == bufferLen && !fillBuffer()) {
+        return -1;
+      }
+      bitBuff = buffer[bufferPos++] & 0xff;
+      ++bytesRead;
+      bitsLeft = 8;
+    }
+    return (bitBuff >>> --bitsLeft) & 1;
+  }
+
+  /**
+   * Refill the buffer, first keeping the bytes of any block being scanned.
+   *
+   * @return false at the end of the stream
+   */
+  private boolean fillBuffer() throws IOException {
+    keepBlockBytes();
+    bufferPos = bufferLen = 0;
+    int n;
+    do {
+      n = in.read(buffer, 0, buffer.length);
+    } while (n == 0);
+    if (n < 0) {
+      return false;
+    }
+    bufferLen = n;
+    return true;
+  }
+
+  /** Copy the bytes of the block scanned so far out of the buffer. */
+  private void keepBlockBytes() throws IOException {
+    if (blockBytes != null) {
+      blockBytes.write(buffer, blockStart, bufferPos - blockStart);
+      blockStart = 0;
+    }
+  }
+
+  private int readBits(int n) throws IOException {
+    int v = 0;
+    for (int i = 0; i < n; ++i) {
+      final int bit = readBit();
+      if (bit < 0) {
+        throw new IOException("unexpected end of stream");
+      }
+      v = (v << 1) | bit;
+    }
+    return v;
+  }
+
+  /**
+   * Decompress the bits of a block as a stream of that block alone.
+   */
+  static DataOutputBuffer decompress(byte[] b, int startBit, long bits,
+                                     int storedCRC) throws IOException {
+    DataOutputBuffer stream = new DataOutputBuffer((int) (bits >>> 3) + 32);
+    BZip2BitOutput out = new BZip2BitOutput(stream);
+    out.write(8, 'h');
+    out.write(8, '9');
+    out.write(24, (int) (BLOCK_DELIMITER >>> 24));
+    out.write(24, (int) (BLOCK_DELIMITER & 0xffffff));
+    out.writeBits(b, startBit, bits);
+    out.write(24, (int) (EOS_DELIMITER >>> 24));
+    out.write(24, (int) (EOS_DELIMITER & 0xffffff));
+    // the combined CRC of a single block is its own
+    out.writeInt(storedCRC);
+    out.finish();
+
+    CBZip2InputStream decoder = new CBZip2InputStream(
+        new ByteArrayInputStream(stream.getData(), 0, stream.getLength()));
+    DataOutputBuffer data = new DataOutputBuffer();
+    byte[] buffer = new byte[64 * 1024];
+    int n;
+    while ((n = decoder.read(buffer, 0, buffer.length)) > 0) {
+      data.write(buffer, 0, n);
+    }
+    return data;
+  }
+
+  @Override
+  public void close() throws IOException {
+    InputStream inShadow = in;
+    if (inShadow != null) {
+      try {
+        if (inShadow != System.in) {
+          inShadow.close();
+        }
+      } finally {
+        in = null;
+        current = null;
+        for (Block block : pending) {
+          block.data.cancel(true);
+        }
+        pending.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.bzip2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.ThrottledExecutor;
+
+/**
+ * A {@link CBZip2OutputStream} compressing blocks on the threads shared by
+ * the JVM, see {@link ThrottledExecutor}. The input is cut into chunks of a
+ * block each, of which up to the given number are compressed concurrently;
+ * the compressed blocks are written in order, so the output is an ordinary
+ * bzip2 stream. At most twice as many blocks as that are held in memory.
+ *
+ * <p>
+ * Blocks are cut by the size of their input rather than of the run-length
+ * encoded data the sequential stream counts, so the blocks may differ from
+ * those of {@link CBZip2OutputStream}.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are not threadsafe.
+ * </p>
+ */
+public class ParallelCBZip2OutputStream extends CBZip2OutputStream {
+
+  /** A compressed chunk of input. */
+  private static class Blocks {
+    final DataOutputBuffer bits = new DataOutputBuffer();
+    int paddingBits;
+    int combinedCRC;
+    int count;
+  }
+
+  private final int maxPendingBlocks;
+  private final ThrottledExecutor executor;
+  // chunks being compressed, in stream order
+  private final LinkedList<Future<Blocks>> pending =
+    new LinkedList<Future<Blocks>>();
+  private final int chunkSize;
+  private byte[] chunk;
+  private int chunkLen;
+  private int combinedCRC;
+  private OutputStream out;
+  private BZip2BitOutput bits;
+
+  /**
+   * Constructs a new stream compressing blocks of the given size, up to the
+   * given number at a time.
+   *
+   * <p>
+   * <b>Attention: </b>The caller is resonsible to write the two BZip2 magic
+   * bytes <tt>"BZ"</tt> to the specified stream prior to calling this
+   * constructor.
+   * </p>
+   *
+   * @param out the destination stream.
+   * @param blockSize the blockSize as 100k units.
+   * @param threads the most blocks compressed at a time.
+   * @throws IOException if an I/O error occurs in the specified stream.
+   */
+  public ParallelCBZip2OutputStream(OutputStream out, int blockSize,
+                                    int threads) throws IOException {
+    super(blockSize);
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads(" + threads + ") < 1");
+    }
+    this.out = out;
+    this.bits = new BZip2BitOutput(out);
+    // 20 is the paranoia constant of CBZip2OutputStream
+    this.chunkSize = blockSize * BZip2Constants.baseBlockSize - 20;
+    this.chunk = new byte[chunkSize];
+    this.maxPendingBlocks = 2 * threads;
+    this.executor = new ThrottledExecutor(threads);
+    bits.write(8, 'h');
+    bits.write(8, '0' + blockSize);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (out == null) {
+      throw new IOException("closed");
+    }
+    chunk[chunkLen++] = (byte) b;
+    if (chunkLen == chunkSize) {
+      submit();
+    }
+  }
+
+  @Override
+  public void write(byte[] buf, int offs, int len) throws IOException {
+    if (offs < 0 || len < 0 || offs > buf.length - len) {
+      throw new IndexOutOfBoundsException("offs(" + offs + ") len(" + len +
+          ") buf.length(" + buf.length + ")");
+    }
+    if (out == null) {
+      throw new IOException("stream closed");
+    }
+    while (len > 0) {
+      final int n = Math.min(len, chunkSize - chunkLen);
+      System.arraycopy(buf, offs, chunk, chunkLen, n);
+      chunkLen += n;
+      offs += n;
+      len -= n;
+      if (chunkLen == chunkSize) {
+        submit();
+      }
+    }
+  }
+
+  /** Hand the chunk to the pool. */
+  private void submit() throws IOException {
+    final byte[] data = chunk;
+    final int len = chunkLen;
+    final int blockSize = getBlockSize();
+    pending.add(executor.submit(new Callable<Blocks>() {
+      public Blocks call() throws IOException {
+        Blocks blocks = new Blocks();
+        CBZip2OutputStream encoder =
+          new CBZip2OutputStream(blocks.bits, blockSize, false);
+        encoder.write(data, 0, len);
+        encoder.finish();
+        blocks.paddingBits = encoder.getPaddingBits();
+        blocks.combinedCRC = encoder.getCombinedCRC();
+        blocks.count = encoder.getBlockCount();
+        return blocks;
+      }
+    }));
+    chunk = new byte[chunkSize];
+    chunkLen = 0;
+    write(false);
+  }
+
+  /**
+   * Write the compressed blocks at the head of the queue: all of them,
+   * or those done and as many as needed to bound the memory used.
+   */
+  private void write(boolean all) throws IOException {
+    while (!pending.isEmpty() &&
+           (all || pending.size() > maxPendingBlocks ||
+            pending.getFirst().isDone())) {
+      Blocks blocks;
+      try {
+        blocks = pending.removeFirst().get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted compressing a block");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException("Failed to compress a block", cause);
+      }
+      bits.writeBits(blocks.bits.getData(), 0,
+          8L * blocks.bits.getLength() - blocks.paddingBits);
+      // the combined CRC rotates by one bit per block
+      combinedCRC = Integer.rotateLeft(combinedCRC, blocks.count) ^
+                    blocks.combinedCRC;
+    }
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (out != null) {
+      try {
+        if (chunkLen > 0) {
+          submit();
+        }
+        write(true);
+        // the end of stream marker, as CBZip2OutputStream writes it
+        bits.write(24, 0x177245);
+        bits.write(24, 0x385090);
+        bits.writeInt(combinedCRC);
+        bits.finish();
+      } finally {
+        out = null;
+        chunk = null;
+        shutdown();
+      }
+    }
+  }
+
+  private void shutdown() {
+    for (Future<Blocks> blocks : pending) {
+      blocks.cancel(false);
+    }
+    pending.clear();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out != null) {
+      OutputStream outShadow = out;
+      try {
+        finish();
+      } finally {
+        outShadow.close();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (out != null) {
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.lz4;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.Compressor;
+
+/**
+ * A {@link Compressor} writing blocks in the LZ4 format, implemented in
+ * Java. It favours speed over ratio: repeated sequences of four or more
+ * bytes are found through a hash table of recent positions, and runs
+ * without matches are skipped ever faster.
+ * http://code.google.com/p/lz4/
+ */
+public class Lz4Compressor implements Compressor {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  static final int MIN_MATCH = 4;
+  /** The last bytes of a block are always literals. */
+  static final int LAST_LITERALS = 5;
+  /** The last match starts at least this many bytes before the end. */
+  static final int MF_LIMIT = 12;
+  static final int MAX_DISTANCE = 65535;
+  static final int RUN_MASK = 15;
+  static final int ML_BITS = 4;
+  private static final int HASH_LOG = 14;
+  private static final int SKIP_STRENGTH = 6;
+
+  private final int bufferSize;
+  private final byte[] uncompressedBuf;
+  private int uncompressedBufLen;
+  private final byte[] compressedBuf;
+  private int compressedBufOff, compressedBufLen;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufLen = 0;
+  private boolean finish, finished;
+  private final int[] hashTable = new int[1 << HASH_LOG];
+
+  private long bytesRead = 0L;
+  private long bytesWritten = 0L;
+
+  /**
+   * Creates a new compressor.
+   *
+   * @param bufferSize size of the blocks compressed at once.
+   */
+  public Lz4Compressor(int bufferSize) {
+    this.bufferSize = bufferSize;
+    uncompressedBuf = new byte[bufferSize];
+    compressedBuf = new byte[maxCompressedLength(bufferSize)];
+  }
+
+  /**
+   * Creates a new compressor with the default buffer size.
+   */
+  public Lz4Compressor() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Get the largest size a block of the given length compresses to.
+   */
+  public static int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  /**
+   * Sets input data for compression.
+   * This should be called whenever #needsInput() returns
+   * <code>true</code> indicating that more input data is required.
+   *
+   * @param b   Input data
+   * @param off Start offset
+   * @param len Length
+   */
+  @Override
+  public synchronized void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    finished = false;
+
+    if (len > bufferSize - uncompressedBufLen) {
+      // save data; now !needsInput
+      this.userBuf = b;
+      this.userBufOff = off;
+      this.userBufLen = len;
+    } else {
+      System.arraycopy(b, off, uncompressedBuf, uncompressedBufLen, len);
+      uncompressedBufLen += len;
+    }
+
+    bytesRead += len;
+  }
+
+  /**
+   * If a write would exceed the capacity of the buffer, it is set aside to
+   * be loaded by this function while the compressed data are consumed.
+   */
+  synchronized void setInputFromSavedData() {
+    if (0 >= userBufLen) {
+      return;
+    }
+    finished = false;
+
+    uncompressedBufLen = Math.min(userBufLen, bufferSize);
+    System.arraycopy(userBuf, userBufOff, uncompressedBuf, 0,
+                     uncompressedBufLen);
+
+    userBufOff += uncompressedBufLen;
+    userBufLen -= uncompressedBufLen;
+  }
+
+  /**
+   * Does nothing.
+   */
+  @Override
+  public synchronized void setDictionary(byte[] b, int off, int len) {
+    // do nothing
+  }
+
+  /**
+   * Returns true if the input data buffer is empty and
+   * #setInput() should be called to provide more input.
+   *
+   * @return <code>true</code> if the input data buffer is empty and
+   *         #setInput() should be called in order to provide more input.
+   */
+  @Override
+  public synchronized boolean needsInput() {
+    return !(compressedBufOff < compressedBufLen
+        || uncompressedBufLen == bufferSize || userBufLen > 0);
+  }
+
+  /**
+   * When called, indicates that compression should end
+   * with the current contents of the input buffer.
+   */
+  @Override
+  public synchronized void finish() {
+    finish = true;
+  }
+
+  /**
+   * Returns true if the end of the compressed
+   * data output stream has been reached.
+   *
+   * @return <code>true</code> if the end of the compressed
+   *         data output stream has been reached.
+   */
+  @Override
+  public synchronized boolean finished() {
+    // Check if all uncompressed data has been consumed
+    return (finish && finished && compressedBufOff == compressedBufLen);
+  }
+
+  /**
+   * Fills specified buffer with compressed data. Returns actual number
+   * of bytes of compressed data. A return value of 0 indicates that
+   * needsInput() should be called in order to determine if more input
+   * data is required.
+   *
+   * @param b   Buffer for the compressed data
+   * @param off Start offset of the data
+   * @param len Size of the buffer
+   * @return The actual number of bytes of compressed data.
+   */
+  @Override
+  public synchronized int compress(byte[] b, int off, int len)
+      throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    // Check if there is compressed data
+    int n = compressedBufLen - compressedBufOff;
+    if (n > 0) {
+      n = Math.min(n, len);
+      System.arraycopy(compressedBuf, compressedBufOff, b, off, n);
+      compressedBufOff += n;
+      bytesWritten += n;
+      return n;
+    }
+
+    compressedBufOff = compressedBufLen = 0;
+    if (0 == uncompressedBufLen) {
+      // No compressed data, so we should have !needsInput or !finished
+      setInputFromSavedData();
+      if (0 == uncompressedBufLen) {
+        // Called without data; write nothing
+        finished = true;
+        return 0;
+      }
+    }
+
+    // Compress data
+    compressedBufLen = compress(uncompressedBuf, 0, uncompressedBufLen,
+                                compressedBuf, 0, hashTable);
+    uncompressedBufLen = 0;
+
+    // Set 'finished' if all user-data has been consumed
+    if (0 == userBufLen) {
+      finished = true;
+    }
+
+    // Get atmost 'len' bytes
+    n = Math.min(compressedBufLen, len);
+    System.arraycopy(compressedBuf, 0, b, off, n);
+    compressedBufOff = n;
+    bytesWritten += n;
+
+    return n;
+  }
+
+  /**
+   * Resets compressor so that a new set of input data can be processed.
+   */
+  @Override
+  public synchronized void reset() {
+    finish = false;
+    finished = false;
+    uncompressedBufLen = 0;
+    compressedBufOff = compressedBufLen = 0;
+    userBufOff = userBufLen = 0;
+    bytesRead = bytesWritten = 0L;
+  }
+
+  /**
+   * Prepare the compressor to be used in a new stream with settings defined in
+   * the given Configuration
+   *
+   * @param conf Configuration from which new setting are fetched
+   */
+  @Override
+  public synchronized void reinit(Configuration conf) {
+    reset();
+  }
+
+  /**
+   * Return number of bytes given to this compressor since last reset.
+   */
+  @Override
+  public synchronized long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Return number of bytes consumed by callers of compress since last reset.
+   */
+  @Override
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Closes the compressor and discards any unprocessed input.
+   */
+  @Override
+  public synchronized void end() {
+  }
+
+  /**
+   * Compress a block. Each sequence written is a token holding the lengths
+   * of its literals and of its match, the literals, the little-endian
+   * distance back to the match and the rest of the lengths.
+   *
+   * @param table hash table of positions; it need not be cleared between
+   *              blocks, since every candidate match is checked
+   * @return the length of the compressed block, at most
+   *         {@link #maxCompressedLength(int)} of <code>srcLen</code>
+   */
+  static int compress(byte[] src, int srcOff, int srcLen,
+                      byte[] dst, int dstOff, int[] table) {
+    final int srcEnd = srcOff + srcLen;
+    final int mfLimit = srcEnd - MF_LIMIT;
+    final int matchLimit = srcEnd - LAST_LITERALS;
+    int sOff = srcOff;
+    int anchor = srcOff;
+    int dOff = dstOff;
+    while (sOff < mfLimit) {
+      final int sequence = readInt(src, sOff);
+      final int h = (sequence * -1640531535) >>> (32 - HASH_LOG);
+      int ref = table[h];
+      table[h] = sOff;
+      if (ref < srcOff || ref >= sOff || sOff - ref > MAX_DISTANCE ||
+          readInt(src, ref) != sequence) {
+        // the longer since the last match, the faster to skip
+        sOff += 1 + ((sOff - anchor) >>> SKIP_STRENGTH);
+        continue;
+      }
+      while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+        --sOff;
+        --ref;
+      }
+      int matchLen = MIN_MATCH;
+      while (sOff + matchLen < matchLimit &&
+             src[ref + matchLen] == src[sOff + matchLen]) {
+        ++matchLen;
+      }
+
+      final int token = dOff++;
+      final int literals = sOff - anchor;
+      dOff = writeLength(literals, dst, dOff);
+      System.arraycopy(src, anchor, dst, dOff, literals);
+      dOff += literals;
+      final int distance = sOff - ref;
+      dst[dOff++] = (byte) distance;
+      dst[dOff++] = (byte) (distance >>> 8);
+      dOff = writeLength(matchLen - MIN_MATCH, dst, dOff);
+      dst[token] = (byte) ((Math.min(literals, RUN_MASK) << ML_BITS) |
+                           Math.min(matchLen - MIN_MATCH, RUN_MASK));
+
+      sOff += matchLen;
+      anchor = sOff;
+      if (sOff < mfLimit) {
+        final int h2 = (readInt(src, sOff - 2) * -1640531535) >>>
+                       (32 - HASH_LOG);
+        table[h2] = sOff - 2;
+      }
+    }
+
+    // the last literals
+    final int literals = srcEnd - anchor;
+    dst[dOff++] = (byte) (Math.min(literals, RUN_MASK) << ML_BITS);
+    dOff = writeLength(literals, dst, dOff);
+    System.arraycopy(src, anchor, dst, dOff, literals);
+    return dOff + literals - dstOff;
+  }
+
+  /**
+   * Write the part of a length beyond what fits in the token.
+   */
+  private static int writeLength(int len, byte[] dst, int dOff) {
+    if (len >= RUN_MASK) {
+      len -= RUN_MASK;
+      while (len >= 255) {
+        dst[dOff++] = (byte) 255;
+        len -= 255;
+      }
+      dst[dOff++] = (byte) len;
+    }
+    return dOff;
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) |
+           ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+  }
+}
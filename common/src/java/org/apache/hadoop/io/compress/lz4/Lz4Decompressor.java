@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress.lz4;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * A {@link Decompressor} for blocks written by {@link Lz4Compressor}. Every
+ * length and distance read is checked, so corrupt input fails with an
+ * {@link IOException} rather than reading or writing out of bounds.
+ */
+public class Lz4Decompressor implements Decompressor {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final byte[] uncompressedBuf;
+  private int uncompressedBufOff, uncompressedBufLen;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufLen = 0;
+  private boolean finished;
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param bufferSize size of the largest block decompressed.
+   */
+  public Lz4Decompressor(int bufferSize) {
+    uncompressedBuf = new byte[bufferSize];
+  }
+
+  /**
+   * Creates a new decompressor with the default buffer size.
+   */
+  public Lz4Decompressor() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Sets input data for decompression: one whole compressed block. The data
+   * are read in place, so they must remain unmodified until
+   * {@link #needsInput()} returns <code>true</code>.
+   *
+   * @param b   Input data
+   * @param off Start offset
+   * @param len Length
+   */
+  @Override
+  public synchronized void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    this.userBuf = b;
+    this.userBufOff = off;
+    this.userBufLen = len;
+    uncompressedBufOff = uncompressedBufLen = 0;
+  }
+
+  /**
+   * Does nothing.
+   */
+  @Override
+  public synchronized void setDictionary(byte[] b, int off, int len) {
+    // do nothing
+  }
+
+  /**
+   * Returns true if the input data buffer is empty and
+   * {@link #setInput(byte[], int, int)} should be called to
+   * provide more input.
+   *
+   * @return <code>true</code> if the input data buffer is empty and
+   *         {@link #setInput(byte[], int, int)} should be called in
+   *         order to provide more input.
+   */
+  @Override
+  public synchronized boolean needsInput() {
+    return uncompressedBufOff == uncompressedBufLen && userBufLen <= 0;
+  }
+
+  /**
+   * Returns <code>false</code>.
+   *
+   * @return <code>false</code>.
+   */
+  @Override
+  public synchronized boolean needsDictionary() {
+    return false;
+  }
+
+  /**
+   * Returns true if the end of the decompressed
+   * data output stream has been reached.
+   *
+   * @return <code>true</code> if the end of the decompressed
+   *         data output stream has been reached.
+   */
+  @Override
+  public synchronized boolean finished() {
+    return finished && uncompressedBufOff == uncompressedBufLen;
+  }
+
+  /**
+   * Fills specified buffer with uncompressed data. Returns actual number
+   * of bytes of uncompressed data. A return value of 0 indicates that
+   * {@link #needsInput()} should be called in order to determine if more
+   * input data is required.
+   *
+   * @param b   Buffer for the compressed data
+   * @param off Start offset of the data
+   * @param len Size of the buffer
+   * @return The actual number of bytes of compressed data.
+   * @throws IOException if the block is corrupt
+   */
+  @Override
+  public synchronized int decompress(byte[] b, int off, int len)
+      throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    if (uncompressedBufOff == uncompressedBufLen && userBufLen > 0) {
+      uncompressedBufOff = 0;
+      uncompressedBufLen = decompress(userBuf, userBufOff, userBufLen,
+          uncompressedBuf, 0, uncompressedBuf.length);
+      userBufOff += userBufLen;
+      userBufLen = 0;
+      finished = true;
+    }
+
+    int n = Math.min(uncompressedBufLen - uncompressedBufOff, len);
+    System.arraycopy(uncompressedBuf, uncompressedBufOff, b, off, n);
+    uncompressedBufOff += n;
+    return n;
+  }
+
+  /**
+   * Returns <code>0</code>.
+   *
+   * @return <code>0</code>.
+   */
+  @Override
+  public synchronized int getRemaining() {
+    // Never use this function in BlockDecompressorStream.
+    return 0;
+  }
+
+  @Override
+  public synchronized void reset() {
+    finished = false;
+    uncompressedBufOff = uncompressedBufLen = 0;
+    userBufOff = userBufLen = 0;
+  }
+
+  /**
+   * Resets decompressor and input and output buffers so that a new set of
+   * input data can be processed.
+   */
+  @Override
+  public synchronized void end() {
+    // do nothing
+  }
+
+  /**
+   * Decompress a whole block written by
+   * {@link Lz4Compressor#compress(byte[], int, int, byte[], int, int[])}.
+   *
+   * @return the length of the uncompressed block
+   * @throws IOException if the block is corrupt or does not fit in
+   *                     <code>dstLen</code> bytes
+   */
+  static int decompress(byte[] src, int srcOff, int srcLen,
+                        byte[] dst, int dstOff, int dstLen)
+      throws IOException {
+    final int srcEnd = srcOff + srcLen;
+    final int dstEnd = dstOff + dstLen;
+    int sOff = srcOff;
+    int dOff = dstOff;
+    while (true) {
+      if (sOff >= srcEnd) {
+        throw new IOException("Truncated LZ4 block");
+      }
+      final int token = src[sOff++] & 0xFF;
+
+      // literals
+      int literals = token >>> Lz4Compressor.ML_BITS;
+      if (literals == Lz4Compressor.RUN_MASK) {
+        int b;
+        do {
+          if (sOff >= srcEnd) {
+            throw new IOException("Truncated LZ4 block");
+          }
+          b = src[sOff++] & 0xFF;
+          literals += b;
+        } while (b == 255 && literals > 0);
+      }
+      if (literals < 0 || literals > srcEnd - sOff ||
+          literals > dstEnd - dOff) {
+        throw new IOException("Corrupt LZ4 block: " + literals +
+                              " literals at " + (sOff - srcOff));
+      }
+      System.arraycopy(src, sOff, dst, dOff, literals);
+      sOff += literals;
+      dOff += literals;
+      if (sOff == srcEnd) {
+        // the last sequence has no match
+        return dOff - dstOff;
+      }
+
+      // match
+      if (srcEnd - sOff < 2) {
+        throw new IOException("Truncated LZ4 block");
+      }
+      final int distance = (src[sOff] & 0xFF) | ((src[sOff + 1] & 0xFF) << 8);
+      sOff += 2;
+      int matchLen = token & Lz4Compressor.RUN_MASK;
+      if (matchLen == Lz4Compressor.RUN_MASK) {
+        int b;
+        do {
+          if (sOff >= srcEnd) {
+            throw new IOException("Truncated LZ4 block");
+          }
+          b = src[sOff++] & 0xFF;
+          matchLen += b;
+        } while (b == 255 && matchLen > 0);
+      }
+      matchLen += Lz4Compressor.MIN_MATCH;
+      if (distance == 0 || distance > dOff - dstOff ||
+          matchLen < Lz4Compressor.MIN_MATCH || matchLen > dstEnd - dOff) {
+        throw new IOException("Corrupt LZ4 block: match of " + matchLen +
+            " bytes at distance " + distance + " at " + (sOff - srcOff));
+      }
+      int ref = dOff - distance;
+      final int matchEnd = dOff + matchLen;
+      // an overlapping match repeats the last distance bytes; each copy
+      // doubles what is available to the next
+      int n = distance;
+      while (dOff < matchEnd) {
+        final int len = Math.min(n, matchEnd - dOff);
+        System.arraycopy(dst, ref, dst, dOff, len);
+        dOff += len;
+        n += len;
+      }
+    }
+  }
+}
@@ -26,12 +26,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 
 /**
  * A {@link Compressor} based on the snappy compression algorithm.
  * http://code.google.com/p/snappy/
  */
-public class SnappyCompressor implements Compressor {
+public class SnappyCompressor implements DirectCompressor {
   private static final Log LOG =
       LogFactory.getLog(SnappyCompressor.class.getName());
   private static final int DEFAULT_DIRECT_BUFFER_SIZE = 64 * 1024;
@@ -243,6 +244,84 @@ public class SnappyCompressor implements Compressor {
     return n;
   }
 
+  /**
+   * Compresses all of <code>src</code> as one block. Direct buffers are
+   * compressed in place; heap buffers are staged through the buffers of this
+   * compressor, so they must fit in them.
+   *
+   * @param src the uncompressed block
+   * @param dst the buffer for the compressed block, with room for
+   *            {@link #maxCompressedLength(int)} bytes
+   */
+  @Override
+  public synchronized void compress(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    Buffer uncompressed = uncompressedDirectBuf;
+    Buffer compressed = compressedDirectBuf;
+    int bufferSize = directBufferSize;
+
+    int len = src.remaining();
+    ByteBuffer in;
+    if (src.isDirect()) {
+      in = src.slice();
+    } else if (len <= bufferSize) {
+      in = (ByteBuffer) uncompressed;
+      in.clear();
+      in.put(src.duplicate());
+      in.flip();
+    } else {
+      throw new IOException("Block of " + len +
+          " bytes does not fit the buffer of " + bufferSize + " bytes");
+    }
+    ByteBuffer out;
+    if (dst.isDirect()) {
+      out = dst.slice();
+    } else {
+      out = (ByteBuffer) compressed;
+      out.clear();
+      out.limit(Math.min(dst.remaining(), bufferSize));
+    }
+    if (out.remaining() < maxCompressedLength(len)) {
+      throw new IOException("Need " + maxCompressedLength(len) +
+          " bytes to compress a block of " + len + " bytes, have " +
+          out.remaining());
+    }
+
+    // snappy reads the buffers and lengths from these fields
+    uncompressedDirectBuf = in;
+    uncompressedDirectBufLen = len;
+    compressedDirectBuf = out;
+    directBufferSize = out.remaining();
+    try {
+      int n = compressBytesDirect();
+      src.position(src.limit());
+      if (dst.isDirect()) {
+        dst.position(dst.position() + n);
+      } else {
+        out.limit(n);
+        dst.put(out);
+      }
+      bytesRead += len;
+      bytesWritten += n;
+      finished = true;
+    } finally {
+      uncompressedDirectBuf = uncompressed;
+      compressedDirectBuf = compressed;
+      directBufferSize = bufferSize;
+      uncompressed.clear();
+      uncompressedDirectBufLen = 0;
+      compressed.clear();
+      compressed.limit(0);
+    }
+  }
+
+  /**
+   * Get the largest size a block of the given length compresses to.
+   */
+  public static int maxCompressedLength(int len) {
+    return 32 + len + len / 6;
+  }
+
   /**
    * Resets compressor so that a new set of input data can be processed.
    */
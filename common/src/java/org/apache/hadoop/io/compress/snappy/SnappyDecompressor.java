@@ -25,12 +25,13 @@ import java.nio.ByteBuffer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 
 /**
  * A {@link Decompressor} based on the snappy compression algorithm.
  * http://code.google.com/p/snappy/
  */
-public class SnappyDecompressor implements Decompressor {
+public class SnappyDecompressor implements DirectDecompressor {
   private static final Log LOG =
       LogFactory.getLog(SnappyCompressor.class.getName());
   private static final int DEFAULT_DIRECT_BUFFER_SIZE = 64 * 1024;
@@ -246,6 +247,69 @@ public class SnappyDecompressor implements Decompressor {
     return n;
   }
 
+  /**
+   * Decompresses one whole block. Direct buffers are decompressed in place;
+   * heap buffers are staged through the buffers of this decompressor, so the
+   * block must fit in them.
+   *
+   * @param src the compressed block
+   * @param dst the buffer for the uncompressed block, with room for all of it
+   */
+  @Override
+  public synchronized void decompress(ByteBuffer src, ByteBuffer dst)
+      throws IOException {
+    Buffer compressed = compressedDirectBuf;
+    Buffer uncompressed = uncompressedDirectBuf;
+    int bufferSize = directBufferSize;
+
+    int len = src.remaining();
+    ByteBuffer in;
+    if (src.isDirect()) {
+      in = src.slice();
+    } else if (len <= bufferSize) {
+      in = (ByteBuffer) compressed;
+      in.clear();
+      in.put(src.duplicate());
+      in.flip();
+    } else {
+      throw new IOException("Block of " + len +
+          " bytes does not fit the buffer of " + bufferSize + " bytes");
+    }
+    ByteBuffer out;
+    if (dst.isDirect()) {
+      out = dst.slice();
+    } else {
+      out = (ByteBuffer) uncompressed;
+      out.clear();
+      out.limit(Math.min(dst.remaining(), bufferSize));
+    }
+
+    // snappy reads the buffers and lengths from these fields
+    compressedDirectBuf = in;
+    compressedDirectBufLen = len;
+    uncompressedDirectBuf = out;
+    directBufferSize = out.remaining();
+    try {
+      int n = decompressBytesDirect();
+      src.position(src.limit());
+      if (dst.isDirect()) {
+        dst.position(dst.position() + n);
+      } else {
+        out.limit(n);
+        dst.put(out);
+      }
+      finished = true;
+    } finally {
+      compressedDirectBuf = compressed;
+      uncompressedDirectBuf = uncompressed;
+      directBufferSize = bufferSize;
+      compressedDirectBufLen = 0;
+      uncompressed.limit(bufferSize);
+      uncompressed.position(bufferSize);
+      userBufOff = userBufLen = 0;
+    }
+  }
+
   /**
    * Returns <code>0</code>.
    *
@@ -19,10 +19,12 @@
 package org.apache.hadoop.io.compress.zlib;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.zip.Deflater;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,10 +34,17 @@ import org.apache.commons.logging.LogFactory;
  * to org.apache.hadoop.io.compress.Compressor interface.
  * 
  */
-public class BuiltInZlibDeflater extends Deflater implements Compressor {
+public class BuiltInZlibDeflater extends Deflater implements DirectCompressor {
 
   private static final Log LOG = LogFactory.getLog(BuiltInZlibDeflater.class);
 
+  private static final int STAGING_SIZE = 64 * 1024;
+  private static final byte[] NO_INPUT = new byte[0];
+
+  private boolean finishCalled = false;
+  private byte[] stagedInput;
+  private byte[] stagedOutput;
+
   public BuiltInZlibDeflater(int level, boolean nowrap) {
     super(level, nowrap);
   }
@@ -53,6 +62,59 @@ public class BuiltInZlibDeflater extends Deflater implements Compressor {
     return super.deflate(b, off, len);
   }
 
+  /**
+   * Compresses between buffers. The arrays of heap buffers are given to the
+   * deflater as they are; direct buffers are staged through arrays.
+   */
+  public synchronized void compress(ByteBuffer src, ByteBuffer dst)
+    throws IOException {
+    int len = src.remaining();
+    if (src.hasArray()) {
+      setInput(src.array(), src.arrayOffset() + src.position(), len);
+    } else {
+      // the deflater ends the stream once it has consumed the input given
+      // after finish(), so the last of the input is staged at once
+      if (!finishCalled) {
+        len = Math.min(len, STAGING_SIZE);
+      }
+      stagedInput = stage(stagedInput, len);
+      src.duplicate().get(stagedInput, 0, len);
+      setInput(stagedInput, 0, len);
+    }
+    try {
+      long read = getBytesRead();
+      if (dst.hasArray()) {
+        int n = super.deflate(dst.array(), dst.arrayOffset() + dst.position(),
+                              dst.remaining());
+        dst.position(dst.position() + n);
+      } else {
+        stagedOutput = stage(stagedOutput, STAGING_SIZE);
+        int n = super.deflate(stagedOutput, 0,
+                              Math.min(dst.remaining(), STAGING_SIZE));
+        dst.put(stagedOutput, 0, n);
+      }
+      src.position(src.position() + (int) (getBytesRead() - read));
+    } finally {
+      setInput(NO_INPUT, 0, 0);
+    }
+  }
+
+  static byte[] stage(byte[] b, int len) {
+    return b != null && b.length >= len ? b : new byte[len];
+  }
+
+  @Override
+  public synchronized void finish() {
+    finishCalled = true;
+    super.finish();
+  }
+
+  @Override
+  public synchronized void reset() {
+    finishCalled = false;
+    super.reset();
+  }
+
   /**
    * reinit the compressor with the given configuration. It will reset the
    * compressor's compression level and compression strategy. Different from
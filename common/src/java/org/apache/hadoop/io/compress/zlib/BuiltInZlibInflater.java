@@ -19,17 +19,26 @@
 package org.apache.hadoop.io.compress.zlib;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 
 /**
  * A wrapper around java.util.zip.Inflater to make it conform 
  * to org.apache.hadoop.io.compress.Decompressor interface.
  * 
  */
-public class BuiltInZlibInflater extends Inflater implements Decompressor {
+public class BuiltInZlibInflater extends Inflater
+    implements DirectDecompressor {
+
+  private static final int STAGING_SIZE = 64 * 1024;
+  private static final byte[] NO_INPUT = new byte[0];
+
+  private byte[] stagedInput;
+  private byte[] stagedOutput;
 
   public BuiltInZlibInflater(boolean nowrap) {
     super(nowrap);
@@ -47,4 +56,38 @@ public class BuiltInZlibInflater extends Inflater implements Decompressor {
       throw new IOException(dfe.getMessage());
     }
   }
+
+  /**
+   * Decompresses between buffers. The arrays of heap buffers are given to
+   * the inflater as they are; direct buffers are staged through arrays.
+   */
+  public synchronized void decompress(ByteBuffer src, ByteBuffer dst)
+    throws IOException {
+    int len = src.remaining();
+    if (src.hasArray()) {
+      setInput(src.array(), src.arrayOffset() + src.position(), len);
+    } else {
+      len = Math.min(len, STAGING_SIZE);
+      stagedInput = BuiltInZlibDeflater.stage(stagedInput, len);
+      src.duplicate().get(stagedInput, 0, len);
+      setInput(stagedInput, 0, len);
+    }
+    try {
+      if (dst.hasArray()) {
+        int n = super.inflate(dst.array(), dst.arrayOffset() + dst.position(),
+                              dst.remaining());
+        dst.position(dst.position() + n);
+      } else {
+        stagedOutput = BuiltInZlibDeflater.stage(stagedOutput, STAGING_SIZE);
+        int n = super.inflate(stagedOutput, 0,
+                              Math.min(dst.remaining(), STAGING_SIZE));
+        dst.put(stagedOutput, 0, n);
+      }
+      src.position(src.position() + len - getRemaining());
+    } catch (DataFormatException dfe) {
+      throw new IOException(dfe.getMessage());
+    } finally {
+      setInput(NO_INPUT, 0, 0);
+    }
+  }
 }
@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 import org.apache.commons.logging.Log;
@@ -35,7 +36,7 @@ import org.apache.commons.logging.LogFactory;
  * http://www.zlib.net/
  * 
  */
-public class ZlibCompressor implements Compressor {
+public class ZlibCompressor implements DirectCompressor {
 
   private static final Log LOG = LogFactory.getLog(ZlibCompressor.class);
 
@@ -380,6 +381,67 @@ public class ZlibCompressor implements Compressor {
     return n;
   }
 
+  /**
+   * Compresses between direct buffers in place. Heap buffers are staged
+   * through the buffers of this compressor.
+   */
+  public synchronized void compress(ByteBuffer src, ByteBuffer dst)
+    throws IOException {
+    checkStream();
+    Buffer uncompressed = uncompressedDirectBuf;
+    Buffer compressed = compressedDirectBuf;
+    int bufferSize = directBufferSize;
+    boolean finishStream = finish;
+
+    ByteBuffer in = src;
+    if (!src.isDirect()) {
+      in = (ByteBuffer)uncompressed;
+      in.clear();
+      ByteBuffer chunk = src.duplicate();
+      chunk.limit(chunk.position() + Math.min(src.remaining(), bufferSize));
+      in.put(chunk);
+      in.flip();
+      // zlib ends the stream once it has consumed the input given with
+      // Z_FINISH, so only the last of the input is given with it
+      finish = finishStream && in.remaining() == src.remaining();
+    }
+    ByteBuffer out;
+    if (dst.isDirect()) {
+      out = dst.slice();
+    } else {
+      out = (ByteBuffer)compressed;
+      out.clear();
+      out.limit(Math.min(dst.remaining(), bufferSize));
+    }
+
+    // zlib reads the buffers, offsets and lengths from these fields
+    uncompressedDirectBuf = in;
+    uncompressedDirectBufOff = in.position();
+    uncompressedDirectBufLen = in.remaining();
+    compressedDirectBuf = out;
+    directBufferSize = out.remaining();
+    try {
+      int n = deflateBytesDirect();
+      src.position(src.position() + uncompressedDirectBufOff - in.position());
+      if (dst.isDirect()) {
+        dst.position(dst.position() + n);
+      } else {
+        out.limit(n);
+        dst.put(out);
+      }
+    } finally {
+      uncompressedDirectBuf = uncompressed;
+      compressedDirectBuf = compressed;
+      directBufferSize = bufferSize;
+      finish = finishStream;
+      uncompressed.clear();
+      uncompressedDirectBufOff = uncompressedDirectBufLen = 0;
+      keepUncompressedBuf = false;
+      compressed.limit(bufferSize);
+      compressed.position(bufferSize);
+    }
+  }
+
   /**
    * Returns the total number of compressed bytes output so far.
    *
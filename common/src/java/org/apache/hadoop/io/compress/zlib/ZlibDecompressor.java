@@ -23,6 +23,7 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 import org.apache.hadoop.util.NativeCodeLoader;
 
 /**
@@ -31,7 +32,7 @@ import org.apache.hadoop.util.NativeCodeLoader;
  * http://www.zlib.net/
  * 
  */
-public class ZlibDecompressor implements Decompressor {
+public class ZlibDecompressor implements DirectDecompressor {
   private static final int DEFAULT_DIRECT_BUFFER_SIZE = 64*1024;
   
   // HACK - Use this as a global lock in the JNI layer
@@ -227,6 +228,61 @@ public class ZlibDecompressor implements Decompressor {
 
     return n;
   }
+
+  /**
+   * Decompresses between direct buffers in place. Heap buffers are staged
+   * through the buffers of this decompressor.
+   */
+  public synchronized void decompress(ByteBuffer src, ByteBuffer dst)
+    throws IOException {
+    checkStream();
+    Buffer compressed = compressedDirectBuf;
+    Buffer uncompressed = uncompressedDirectBuf;
+    int bufferSize = directBufferSize;
+
+    ByteBuffer in = src;
+    if (!src.isDirect()) {
+      in = (ByteBuffer)compressed;
+      in.clear();
+      ByteBuffer chunk = src.duplicate();
+      chunk.limit(chunk.position() + Math.min(src.remaining(), bufferSize));
+      in.put(chunk);
+      in.flip();
+    }
+    ByteBuffer out;
+    if (dst.isDirect()) {
+      out = dst.slice();
+    } else {
+      out = (ByteBuffer)uncompressed;
+      out.clear();
+      out.limit(Math.min(dst.remaining(), bufferSize));
+    }
+
+    // zlib reads the buffers, offsets and lengths from these fields
+    compressedDirectBuf = in;
+    compressedDirectBufOff = in.position();
+    compressedDirectBufLen = in.remaining();
+    uncompressedDirectBuf = out;
+    directBufferSize = out.remaining();
+    try {
+      int n = inflateBytesDirect();
+      src.position(src.position() + compressedDirectBufOff - in.position());
+      if (dst.isDirect()) {
+        dst.position(dst.position() + n);
+      } else {
+        out.limit(n);
+        dst.put(out);
+      }
+    } finally {
+      compressedDirectBuf = compressed;
+      uncompressedDirectBuf = uncompressed;
+      directBufferSize = bufferSize;
+      compressedDirectBufOff = compressedDirectBufLen = 0;
+      uncompressed.limit(bufferSize);
+      uncompressed.position(bufferSize);
+      userBufOff = userBufLen = 0;
+    }
+  }
   
   /**
    * Returns the total number of uncompressed bytes output so far.
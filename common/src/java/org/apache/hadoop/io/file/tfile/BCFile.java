@@ -25,17 +25,27 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.compress.Compressor;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.file.tfile.CompareUtils.Scalar;
@@ -43,6 +53,10 @@ import org.apache.hadoop.io.file.tfile.CompareUtils.ScalarComparator;
 import org.apache.hadoop.io.file.tfile.CompareUtils.ScalarLong;
 import org.apache.hadoop.io.file.tfile.Compression.Algorithm;
 import org.apache.hadoop.io.file.tfile.Utils.Version;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * Block Compressed file, the underlying physical storage layer for TFile.
@@ -56,6 +70,46 @@ final class BCFile {
   static final Version API_VERSION = new Version((short) 1, (short) 0);
   static final Log LOG = LogFactory.getLog(BCFile.class);
 
+  // the block cache of the JVM, created by the first reader that uses it
+  private static BlockCache blockCache = null;
+  static final AtomicLong cacheHits = new AtomicLong();
+  static final AtomicLong cacheMisses = new AtomicLong();
+
+  /**
+   * Get the block cache of the JVM, creating it and registering its metrics
+   * if needed.
+   * 
+   * @return the block cache, or null if caching is disabled in conf.
+   */
+  static synchronized BlockCache getBlockCache(Configuration conf) {
+    if (TFile.getBlockCacheSize(conf) <= 0) {
+      return null;
+    }
+    if (blockCache == null) {
+      blockCache =
+          ReflectionUtils.newInstance(TFile.getBlockCacheClass(conf), conf);
+      DefaultMetricsSystem.instance().register("TFileBlockCache",
+          "TFile block cache metrics", new CacheMetrics());
+    }
+    return blockCache;
+  }
+
+  /** Publishes the lookups in the block cache. */
+  @Metrics(about="TFile block cache metrics", context="tfile")
+  static class CacheMetrics {
+    @Metric(value="Number of data blocks found in the cache",
+            type=Metric.Type.COUNTER)
+    public long getBlockCacheHits() {
+      return cacheHits.get();
+    }
+
+    @Metric(value="Number of data blocks read and decompressed",
+            type=Metric.Type.COUNTER)
+    public long getBlockCacheMisses() {
+      return cacheMisses.get();
+    }
+  }
+
   /**
    * Prevent the instantiation of BCFile objects.
    */
@@ -473,8 +527,17 @@ final class BCFile {
    * BCFile Reader, interface to read the file's data and meta blocks.
    */
   static public class Reader implements Closeable {
+    // the number of readers with blocks cached under their own name
+    private static final AtomicLong unnamedReaders = new AtomicLong();
     private final FSDataInputStream in;
     private final Configuration conf;
+    // closed with the reader if it opened the file
+    private final Closeable file;
+    private final BlockCache cache;
+    // the name of the data blocks in the cache
+    private final String cacheName;
+    // the file mapped into memory, or null if blocks are read from in
+    private final ByteBuffer mapped;
     final DataIndex dataIndex;
     // Index for meta blocks
     final MetaIndex metaIndex;
@@ -491,24 +554,45 @@ final class BCFile {
       private final InputStream in;
 
       public RBlockState(Algorithm compressionAlgo, FSDataInputStream fsin,
-          BlockRegion region, Configuration conf) throws IOException {
+          ByteBuffer mapped, BlockRegion region, Configuration conf)
+          throws IOException {
         this.compressAlgo = compressionAlgo;
         this.region = region;
         this.decompressor = compressionAlgo.getDecompressor();
 
         try {
+          InputStream rawIn;
+          if (mapped != null) {
+            ByteBuffer block = mapped.duplicate();
+            block.position((int) region.getOffset());
+            block.limit((int) (region.getOffset() + 
+                               region.getCompressedSize()));
+            rawIn = new ByteBufferInputStream(block);
+          } else {
+            rawIn = new BoundedRangeFileInputStream(fsin, region.getOffset(),
+                region.getCompressedSize());
+          }
           this.in =
-              compressAlgo
-                  .createDecompressionStream(new BoundedRangeFileInputStream(
-                      fsin, this.region.getOffset(), this.region
-                          .getCompressedSize()), decompressor, TFile
-                      .getFSInputBufferSize(conf));
+              compressAlgo.createDecompressionStream(rawIn, decompressor,
+                  TFile.getFSInputBufferSize(conf));
         } catch (IOException e) {
           compressAlgo.returnDecompressor(decompressor);
           throw e;
         }
       }
 
+      /**
+       * State of a block read from the cache.
+       */
+      public RBlockState(Algorithm compressionAlgo, BlockRegion region,
+          byte[] block) {
+        this.compressAlgo = compressionAlgo;
+        this.region = region;
+        this.decompressor = null;
+        // keys and values are parsed a byte at a time, so unsynchronized
+        this.in = new ByteBufferInputStream(ByteBuffer.wrap(block));
+      }
+
       /**
        * Get the output stream for BlockAppender's consumption.
        * 
@@ -613,8 +697,72 @@ final class BCFile {
      */
     public Reader(FSDataInputStream fin, long fileLength, Configuration conf)
         throws IOException {
+      this(fin, fileLength, conf, null, null, null);
+    }
+
+    /**
+     * Open a BCFile. Its data blocks are cached under its path, modification
+     * time and length, and the file is mapped into memory if it is local
+     * and tfile.fs.mmap is set.
+     * 
+     * @param fs
+     *          the file system of the file.
+     * @param path
+     *          the path of the file.
+     * @param conf
+     * @return a reader that closes the file when it is closed.
+     * @throws IOException
+     */
+    static Reader open(FileSystem fs, Path path, Configuration conf)
+        throws IOException {
+      FileStatus status = fs.getFileStatus(path);
+      String name = status.getPath() + "@" + status.getModificationTime() +
+          ":" + status.getLen();
+      ByteBuffer mapped = null;
+      if (TFile.getFSMmap(conf)) {
+        mapped = map(fs, path, status.getLen());
+      }
+      FSDataInputStream fin = fs.open(path);
+      try {
+        return new Reader(fin, status.getLen(), conf, fin, name, mapped);
+      } catch (IOException e) {
+        IOUtils.closeStream(fin);
+        throw e;
+      }
+    }
+
+    /**
+     * Map a local file into memory.
+     * 
+     * @return the mapped file, or null if it is not local or too long.
+     */
+    private static ByteBuffer map(FileSystem fs, Path path, long length)
+        throws IOException {
+      if (fs instanceof LocalFileSystem) {
+        fs = ((LocalFileSystem) fs).getRaw();
+      }
+      if (!(fs instanceof RawLocalFileSystem) || length > Integer.MAX_VALUE) {
+        return null;
+      }
+      RandomAccessFile file =
+          new RandomAccessFile(((RawLocalFileSystem) fs).pathToFile(path), "r");
+      try {
+        // the mapping outlives the file
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      } finally {
+        file.close();
+      }
+    }
+
+    private Reader(FSDataInputStream fin, long fileLength, Configuration conf,
+        Closeable file, String name, ByteBuffer mapped) throws IOException {
       this.in = fin;
       this.conf = conf;
+      this.file = file;
+      this.mapped = mapped;
+      this.cache = getBlockCache(conf);
+      this.cacheName = name != null
+          ? name : "BCFile.Reader#" + unnamedReaders.incrementAndGet();
 
       // move the cursor to the beginning of the tail, containing: offset to the
       // meta block index, version and magic
@@ -672,7 +820,12 @@ final class BCFile {
      * Finishing reading the BCFile. Release all resources.
      */
     public void close() {
-      // nothing to be done now
+      if (file != null) {
+        IOUtils.closeStream(file);
+      } else if (cache != null) {
+        // no other reader uses the blocks
+        cache.evictBlocks(cacheName);
+      }
     }
 
     /**
@@ -720,12 +873,31 @@ final class BCFile {
       }
 
       BlockRegion region = dataIndex.getBlockRegionList().get(blockIndex);
-      return createReader(dataIndex.getDefaultCompressionAlgorithm(), region);
+      Algorithm compressAlgo = dataIndex.getDefaultCompressionAlgorithm();
+      if (cache == null || region.getRawSize() > Integer.MAX_VALUE) {
+        return createReader(compressAlgo, region);
+      }
+
+      byte[] block = cache.getBlock(cacheName, region.getOffset());
+      if (block != null) {
+        cacheHits.incrementAndGet();
+      } else {
+        cacheMisses.incrementAndGet();
+        block = new byte[(int) region.getRawSize()];
+        BlockReader blockR = createReader(compressAlgo, region);
+        try {
+          blockR.readFully(block);
+        } finally {
+          blockR.close();
+        }
+        cache.cacheBlock(cacheName, region.getOffset(), block);
+      }
+      return new BlockReader(new RBlockState(compressAlgo, region, block));
     }
 
     private BlockReader createReader(Algorithm compressAlgo, BlockRegion region)
         throws IOException {
-      RBlockState rbs = new RBlockState(compressAlgo, in, region, conf);
+      RBlockState rbs = new RBlockState(compressAlgo, in, mapped, region, conf);
       return new BlockReader(rbs);
     }
 
@@ -752,6 +924,47 @@ final class BCFile {
     }
   }
 
+  /**
+   * Reads the remaining bytes of a buffer.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) {
+      n = Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + (int) n);
+      return n;
+    }
+  }
+
   /**
    * Index for all Meta blocks.
    */
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.file.tfile;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A cache of decompressed data blocks, shared by the TFile readers of a JVM.
+ * Blocks are identified by the name of their file and their offset in it.
+ * The cache in use is chosen by <b>tfile.io.block.cache.class</b> and
+ * enabled by setting <b>tfile.io.block.cache.size</b>, its budget in bytes.
+ * Implementations must be thread safe.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface BlockCache {
+  /**
+   * Get a cached block.
+   * 
+   * @param file
+   *          the name of the file of the block.
+   * @param offset
+   *          the offset of the block in the file.
+   * @return the decompressed block, or null if it is not cached. It must not
+   *         be modified.
+   */
+  byte[] getBlock(String file, long offset);
+
+  /**
+   * Cache a block. The cache may choose not to keep it.
+   * 
+   * @param file
+   *          the name of the file of the block.
+   * @param offset
+   *          the offset of the block in the file.
+   * @param block
+   *          the decompressed block, which will not be modified.
+   */
+  void cacheBlock(String file, long offset, byte[] block);
+
+  /**
+   * Drop the cached blocks of a file.
+   * 
+   * @param file
+   *          the name of the file.
+   */
+  void evictBlocks(String file);
+}
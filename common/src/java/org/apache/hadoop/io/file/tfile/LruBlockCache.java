@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.file.tfile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * A {@link BlockCache} that keeps the most recently used blocks, up to a
+ * budget of bytes taken from <b>tfile.io.block.cache.size</b>.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class LruBlockCache implements BlockCache, Configurable {
+  private Configuration conf;
+  private long capacity;
+  private long size = 0;
+  private long evictions = 0;
+  // in access order, least recently used first
+  private final LinkedHashMap<BlockKey, byte[]> blocks =
+    new LinkedHashMap<BlockKey, byte[]>(16, 0.75f, true);
+
+  public LruBlockCache() {
+  }
+
+  /**
+   * @param capacity
+   *          the most bytes of blocks to keep.
+   */
+  public LruBlockCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    capacity = TFile.getBlockCacheSize(conf);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public synchronized byte[] getBlock(String file, long offset) {
+    return blocks.get(new BlockKey(file, offset));
+  }
+
+  @Override
+  public synchronized void cacheBlock(String file, long offset,
+      byte[] block) {
+    if (block.length > capacity) {
+      return;
+    }
+    byte[] old = blocks.put(new BlockKey(file, offset), block);
+    size += block.length - (old == null ? 0 : old.length);
+    Iterator<byte[]> lru = blocks.values().iterator();
+    while (size > capacity) {
+      size -= lru.next().length;
+      lru.remove();
+      ++evictions;
+    }
+  }
+
+  @Override
+  public synchronized void evictBlocks(String file) {
+    for (Iterator<Map.Entry<BlockKey, byte[]>> i =
+           blocks.entrySet().iterator(); i.hasNext();) {
+      Map.Entry<BlockKey, byte[]> e = i.next();
+      if (e.getKey().file.equals(file)) {
+        size -= e.getValue().length;
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the bytes of blocks cached.
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * Get the number of blocks cached.
+   */
+  public synchronized int getBlockCount() {
+    return blocks.size();
+  }
+
+  /**
+   * Get the number of blocks dropped to stay within the budget.
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  private static final class BlockKey {
+    final String file;
+    final long offset;
+
+    BlockKey(String file, long offset) {
+      this.file = file;
+      this.offset = offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return file.hashCode() * 31 + (int) (offset ^ (offset >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof BlockKey)) {
+        return false;
+      }
+      BlockKey other = (BlockKey) obj;
+      return offset == other.offset && file.equals(other.file);
+    }
+  }
+}
@@ -36,6 +36,8 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BoundedByteArrayOutputStream;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.DataInputBuffer;
@@ -94,6 +96,16 @@ import org.apache.hadoop.io.serializer.JavaSerializationComparator;
  * FSDataOutputStream. Integer (in bytes). Default to 256KB.
  * <li><b>tfile.fs.input.buffer.size</b>: Buffer size used for
  * FSDataInputStream. Integer (in bytes). Default to 256KB.
+ * <li><b>tfile.io.block.cache.size</b>: Budget of the {@link BlockCache} of
+ * decompressed data blocks shared by the readers in a JVM. Long (in bytes).
+ * Default to 0, no caching. The cache is created by the first reader that
+ * finds it enabled; readers whose configuration sets no budget do not use it.
+ * <li><b>tfile.io.block.cache.class</b>: The {@link BlockCache}
+ * implementation. Default to {@link LruBlockCache}.
+ * <li><b>tfile.fs.mmap</b>: Whether readers opened with
+ * {@link TFile.Reader#Reader(FileSystem, Path, Configuration)} read
+ * local files through a memory map, bypassing the checksums of the local
+ * file system. Boolean. Default to false.
  * </ul>
  * <p>
  * Suggestions on performance optimization.
@@ -138,6 +150,11 @@ public class TFile {
       "tfile.fs.input.buffer.size";
   private static final String FS_OUTPUT_BUF_SIZE_ATTR =
       "tfile.fs.output.buffer.size";
+  private static final String BLOCK_CACHE_SIZE_ATTR =
+      "tfile.io.block.cache.size";
+  private static final String BLOCK_CACHE_CLASS_ATTR =
+      "tfile.io.block.cache.class";
+  private static final String FS_MMAP_ATTR = "tfile.fs.mmap";
 
   static int getChunkBufferSize(Configuration conf) {
     int ret = conf.getInt(CHUNK_BUF_SIZE_ATTR, 1024 * 1024);
@@ -152,6 +169,19 @@ public class TFile {
     return conf.getInt(FS_OUTPUT_BUF_SIZE_ATTR, 256 * 1024);
   }
 
+  static long getBlockCacheSize(Configuration conf) {
+    return conf.getLong(BLOCK_CACHE_SIZE_ATTR, 0);
+  }
+
+  static Class<? extends BlockCache> getBlockCacheClass(Configuration conf) {
+    return conf.getClass(BLOCK_CACHE_CLASS_ATTR, LruBlockCache.class,
+        BlockCache.class);
+  }
+
+  static boolean getFSMmap(Configuration conf) {
+    return conf.getBoolean(FS_MMAP_ATTR, false);
+  }
+
   private static final int MAX_KEY_SIZE = 64 * 1024; // 64KB
   static final Version API_VERSION = new Version((short) 1, (short) 0);
 
@@ -800,14 +830,40 @@ public class TFile {
      */
     public Reader(FSDataInputStream fsdis, long fileLength, Configuration conf)
         throws IOException {
-      readerBCF = new BCFile.Reader(fsdis, fileLength, conf);
+      this(new BCFile.Reader(fsdis, fileLength, conf));
+    }
+
+    /**
+     * Constructor. The reader opens the TFile and closes it when it is
+     * closed. Cached data blocks are shared with the other readers of the
+     * file.
+     * 
+     * @param fs
+     *          The file system of the TFile.
+     * @param path
+     *          The path of the TFile.
+     * @param conf
+     * @throws IOException
+     */
+    public Reader(FileSystem fs, Path path, Configuration conf)
+        throws IOException {
+      this(BCFile.Reader.open(fs, path, conf));
+    }
+
+    private Reader(BCFile.Reader readerBCF) throws IOException {
+      this.readerBCF = readerBCF;
 
       // first, read TFile meta
-      BlockReader brMeta = readerBCF.getMetaBlock(TFileMeta.BLOCK_NAME);
       try {
-        tfileMeta = new TFileMeta(brMeta);
-      } finally {
-        brMeta.close();
+        BlockReader brMeta = readerBCF.getMetaBlock(TFileMeta.BLOCK_NAME);
+        try {
+          tfileMeta = new TFileMeta(brMeta);
+        } finally {
+          brMeta.close();
+        }
+      } catch (IOException e) {
+        readerBCF.close();
+        throw e;
       }
 
       comparator = tfileMeta.getComparator();
@@ -20,6 +20,8 @@ package org.apache.hadoop.io.serializer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,6 +47,9 @@ public class SerializationFactory extends Configured {
     LogFactory.getLog(SerializationFactory.class.getName());
 
   private List<Serialization<?>> serializations = new ArrayList<Serialization<?>>();
+  // the serialization found for each class
+  private final ConcurrentMap<Class<?>, Serialization<?>> accepted =
+    new ConcurrentHashMap<Class<?>, Serialization<?>>();
   
   /**
    * <p>
@@ -85,8 +90,13 @@ public class SerializationFactory extends Configured {
 
   @SuppressWarnings("unchecked")
   public <T> Serialization<T> getSerialization(Class<T> c) {
+    Serialization<?> found = accepted.get(c);
+    if (found != null) {
+      return (Serialization<T>) found;
+    }
     for (Serialization serialization : serializations) {
       if (serialization.accept(c)) {
+        accepted.putIfAbsent(c, serialization);
 	return (Serialization<T>) serialization;
       }
     }
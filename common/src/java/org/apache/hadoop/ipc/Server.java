@@ -69,6 +69,7 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.ipc.RPC.VersionMismatch;
 import org.apache.hadoop.ipc.metrics.RpcDetailedMetrics;
+import org.apache.hadoop.ipc.metrics.RpcProfile;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.SaslRpcServer;
@@ -168,6 +169,14 @@ public abstract class Server {
   }
 
  
+  /** Returns the remote user when invoked inside an RPC.
+   *  Returns null if not inside an RPC or the user is unknown.
+   */
+  public static UserGroupInformation getRemoteUser() {
+    Call call = CurCall.get();
+    return (call == null) ? null : call.connection.user;
+  }
+
   /** Return true if the invocation was through an RPC.
    */
   public static boolean isRpcInvocation() {
@@ -191,6 +200,7 @@ public abstract class Server {
   
   protected RpcMetrics rpcMetrics;
   protected RpcDetailedMetrics rpcDetailedMetrics;
+  protected RpcProfile rpcProfile;                // null unless profiling
   
   private Configuration conf;
   private SecretManager<TokenIdentifier> secretManager;
@@ -1598,6 +1608,12 @@ public abstract class Server {
     this.port = listener.getAddress().getPort();    
     this.rpcMetrics = RpcMetrics.create(this);
     this.rpcDetailedMetrics = RpcDetailedMetrics.create(this.port);
+    int profileSize = conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_CALL_PROFILE_SIZE_KEY,
+        CommonConfigurationKeys.IPC_SERVER_CALL_PROFILE_SIZE_DEFAULT);
+    if (profileSize > 0) {
+      this.rpcProfile = RpcProfile.create(this.port, profileSize);
+    }
     this.tcpNoDelay = conf.getBoolean("ipc.server.tcpnodelay", false);
 
     // Create the responder here
@@ -1731,6 +1747,9 @@ public abstract class Server {
     if (this.rpcDetailedMetrics != null) {
       this.rpcDetailedMetrics.shutdown();
     }
+    if (this.rpcProfile != null) {
+      this.rpcProfile.shutdown();
+    }
   }
 
   /** Wait for the server to be stopped.
@@ -431,6 +431,11 @@ public class WritableRpcEngine implements RpcEngine {
         rpcMetrics.addRpcProcessingTime(processingTime);
         rpcDetailedMetrics.addProcessingTime(call.getMethodName(),
                                              processingTime);
+        if (rpcProfile != null) {
+          UserGroupInformation user = getRemoteUser();
+          rpcProfile.add(user == null ? null : user.getShortUserName(),
+                         call.getMethodName(), qTime, processingTime);
+        }
         if (verbose) log("Return: "+value);
 
         return new ObjectWritable(method.getReturnType(), value);
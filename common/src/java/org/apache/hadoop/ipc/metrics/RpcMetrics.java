@@ -27,6 +27,7 @@ import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterInt;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 
 /**
@@ -61,6 +62,8 @@ public class RpcMetrics {
   @Metric("Number of sent bytes") MutableCounterLong sentBytes;
   @Metric("Queue time") MutableRate rpcQueueTime;
   @Metric("Processsing time") MutableRate rpcProcessingTime;
+  @Metric("Queue time") MutableQuantiles rpcQueueTimeQuantiles;
+  @Metric("Processsing time") MutableQuantiles rpcProcessingTimeQuantiles;
   @Metric("Number of authentication failures")
   MutableCounterInt rpcAuthenticationFailures;
   @Metric("Number of authentication successes")
@@ -119,7 +122,10 @@ public class RpcMetrics {
    * Shutdown the instrumentation for the process
    */
   //@Override
-  public void shutdown() {}
+  public void shutdown() {
+    rpcQueueTimeQuantiles.stop();
+    rpcProcessingTimeQuantiles.stop();
+  }
 
   /**
    * Increment sent bytes by count
@@ -146,6 +152,7 @@ public class RpcMetrics {
   //@Override
   public void addRpcQueueTime(int qTime) {
     rpcQueueTime.add(qTime);
+    rpcQueueTimeQuantiles.add(qTime);
   }
 
   /**
@@ -155,5 +162,6 @@ public class RpcMetrics {
   //@Override
   public void addRpcProcessingTime(int processingTime) {
     rpcProcessingTime.add(processingTime);
+    rpcProcessingTimeQuantiles.add(processingTime);
   }
 }
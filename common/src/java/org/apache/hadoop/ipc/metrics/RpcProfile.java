@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.ObjectName;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.util.MBeans;
+import org.mortbay.util.ajax.JSON;
+
+/**
+ * Counts the calls to an RPC server and their queue and processing times
+ * by user and method, so that the users flooding a server can be found.
+ *
+ * Only the <code>capacity</code> pairs of user and method with the most
+ * calls are tracked, with the Space-Saving algorithm of Metwally et al.: a
+ * new pair replaces the pair with the fewest calls and inherits its count,
+ * which is then an overestimate by at most the inherited count. Any pair
+ * with more calls than the least tracked is tracked.
+ *
+ * The tracked pairs are kept in buckets of equal counts, in order of count,
+ * the Stream-Summary of the paper, so the pair to replace is found in
+ * constant time. Calls to tracked pairs are counted without waiting: a
+ * call that finds the buckets busy leaves its pair to be moved later, when
+ * the pair is called again or is about to be replaced.
+ */
+@InterfaceAudience.Private
+public class RpcProfile implements RpcProfileMXBean {
+  private static final List<RpcProfile> profiles =
+    new CopyOnWriteArrayList<RpcProfile>();
+
+  private final int port;
+  private final int capacity;
+  private final ConcurrentHashMap<Key, Calls> calls;
+  // guards the buckets and the links of the pairs in them
+  private final ReentrantLock lock = new ReentrantLock();
+  // the bucket of the pairs with the fewest calls
+  private Bucket least;
+  private ObjectName mbeanName;
+
+  /**
+   * Create a profile that is not registered with JMX; see
+   * {@link #create(int, int)}
+   * @param port of the server
+   * @param capacity the number of (user, method) pairs to track
+   */
+  public RpcProfile(int port, int capacity) {
+    this.port = port;
+    this.capacity = capacity;
+    this.calls = new ConcurrentHashMap<Key, Calls>(capacity * 2);
+  }
+
+  /**
+   * Create the profile of an RPC server and register it with JMX
+   * @param port of the server
+   * @param capacity the number of (user, method) pairs to track
+   * @return the profile
+   */
+  public static RpcProfile create(int port, int capacity) {
+    RpcProfile profile = new RpcProfile(port, capacity);
+    profile.mbeanName =
+      MBeans.register("RpcProfile", "RpcProfileForPort"+ port, profile);
+    profiles.add(profile);
+    return profile;
+  }
+
+  /**
+   * @return the profiles of the RPC servers running in this process
+   */
+  public static List<RpcProfile> getProfiles() {
+    return Collections.unmodifiableList(profiles);
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  @Override
+  public int getCapacity() {
+    return capacity;
+  }
+
+  private static class Key {
+    final String user;
+    final String method;
+
+    Key(String user, String method) {
+      this.user = user == null ? "" : user;
+      this.method = method;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return user.equals(other.user) && method.equals(other.method);
+    }
+
+    @Override
+    public int hashCode() {
+      return user.hashCode() * 31 + method.hashCode();
+    }
+  }
+
+  /** The tracked pairs with the same count, in a list by count. */
+  private static class Bucket {
+    final long count;
+    Bucket prev;
+    Bucket next;
+    Calls first;
+
+    Bucket(long count) {
+      this.count = count;
+    }
+  }
+
+  /**
+   * The calls of a user to a method
+   */
+  public static class Calls {
+    private final Key key;
+    private final long error;
+    // the bucket of the pair, null once replaced, and its neighbours there
+    private Bucket bucket;
+    private Calls prev;
+    private Calls next;
+    private final AtomicLong seen = new AtomicLong();
+    private final AtomicLong queueTime = new AtomicLong();
+    private final AtomicLong processingTime = new AtomicLong();
+
+    Calls(Key key, long error) {
+      this.key = key;
+      this.error = error;
+    }
+
+    void add(int qTime, int pTime) {
+      seen.incrementAndGet();
+      queueTime.addAndGet(qTime);
+      processingTime.addAndGet(pTime);
+    }
+
+    /** @return the short name of the user, or "" if unknown */
+    public String getUser() {
+      return key.user;
+    }
+
+    public String getMethod() {
+      return key.method;
+    }
+
+    /** @return the number of calls, overestimated by at most the error */
+    public long getCount() {
+      return error + seen.get();
+    }
+
+    /** @return the most by which the count may be overestimated */
+    public long getError() {
+      return error;
+    }
+
+    /** @return the average queue time of the calls seen, in ms */
+    public double getAvgQueueTime() {
+      long n = seen.get();
+      return n == 0 ? 0 : (double) queueTime.get() / n;
+    }
+
+    /** @return the average processing time of the calls seen, in ms */
+    public double getAvgProcessingTime() {
+      long n = seen.get();
+      return n == 0 ? 0 : (double) processingTime.get() / n;
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> map = new HashMap<String, Object>();
+      map.put("user", getUser());
+      map.put("method", getMethod());
+      map.put("count", getCount());
+      map.put("error", getError());
+      map.put("avgQueueTime", getAvgQueueTime());
+      map.put("avgProcessingTime", getAvgProcessingTime());
+      return map;
+    }
+  }
+
+  /**
+   * Add a call
+   * @param user the short name of the caller, or null if unknown
+   * @param method the name of the method called
+   * @param qTime the queue time
+   * @param pTime the processing time
+   */
+  public void add(String user, String method, int qTime, int pTime) {
+    Key key = new Key(user, method);
+    Calls c = calls.get(key);
+    if (c == null) {
+      lock.lock();
+      try {
+        c = insert(key);
+        c.add(qTime, pTime);
+        update(c);
+      } finally {
+        lock.unlock();
+      }
+      return;
+    }
+    c.add(qTime, pTime);
+    // until the table is full no pair is replaced, and the pairs are moved
+    // to their buckets by the first replacement
+    if (calls.size() >= capacity && lock.tryLock()) {
+      try {
+        update(c);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private Calls insert(Key key) {
+    Calls c = calls.get(key);
+    if (c != null) {
+      return c;
+    }
+    long error = 0;
+    if (calls.size() >= capacity) {
+      while (true) {
+        Calls candidate = least.first;
+        long count = candidate.getCount();
+        if (count == least.count) {
+          unlink(candidate);
+          calls.remove(candidate.key);
+          error = count;
+          break;
+        }
+        // calls counted while the buckets were busy
+        update(candidate);
+      }
+    }
+    c = new Calls(key, error);
+    // no tracked pair has fewer calls
+    link(c, error, null);
+    calls.put(key, c);
+    return c;
+  }
+
+  /** Move a tracked pair to the bucket of its count. */
+  private void update(Calls c) {
+    Bucket b = c.bucket;
+    if (b == null) {
+      // replaced
+      return;
+    }
+    long count = c.getCount();
+    if (b.count == count) {
+      return;
+    }
+    Bucket before = b.prev;
+    unlink(c);
+    Bucket after = b.first != null ? b : before;
+    Bucket next = after == null ? least : after.next;
+    while (next != null && next.count < count) {
+      after = next;
+      next = next.next;
+    }
+    link(c, count, after);
+  }
+
+  /** Take a pair out of its bucket, dropping the bucket if empty. */
+  private void unlink(Calls c) {
+    Bucket b = c.bucket;
+    if (c.prev != null) {
+      c.prev.next = c.next;
+    } else {
+      b.first = c.next;
+    }
+    if (c.next != null) {
+      c.next.prev = c.prev;
+    }
+    c.prev = null;
+    c.next = null;
+    c.bucket = null;
+    if (b.first == null) {
+      if (b.prev != null) {
+        b.prev.next = b.next;
+      } else {
+        least = b.next;
+      }
+      if (b.next != null) {
+        b.next.prev = b.prev;
+      }
+    }
+  }
+
+  /**
+   * Put a pair in the bucket of the given count, which follows the given
+   * bucket, or is the first if that is null.
+   */
+  private void link(Calls c, long count, Bucket after) {
+    Bucket next = after == null ? least : after.next;
+    Bucket b;
+    if (next != null && next.count == count) {
+      b = next;
+    } else {
+      b = new Bucket(count);
+      b.prev = after;
+      b.next = next;
+      if (after == null) {
+        least = b;
+      } else {
+        after.next = b;
+      }
+      if (next != null) {
+        next.prev = b;
+      }
+    }
+    c.bucket = b;
+    c.next = b.first;
+    if (b.first != null) {
+      b.first.prev = c;
+    }
+    b.first = c;
+  }
+
+  /**
+   * Get the pairs of user and method with the most calls
+   * @param n the number of pairs
+   * @return at most n pairs, most calls first; none if n is not positive
+   */
+  public List<Calls> getTop(int n) {
+    List<Calls> top = new ArrayList<Calls>(calls.values());
+    Collections.sort(top, new Comparator<Calls>() {
+      public int compare(Calls a, Calls b) {
+        long ca = a.getCount();
+        long cb = b.getCount();
+        return ca > cb ? -1 : ca == cb ? 0 : 1;
+      }
+    });
+    return top.size() > n ? top.subList(0, Math.max(n, 0)) : top;
+  }
+
+  /**
+   * Returned information is a JSON representation of a list of maps with
+   * the keys "user", "method", "count", "error", "avgQueueTime" and
+   * "avgProcessingTime", most calls first.
+   */
+  @Override
+  public String getTopCalls() {
+    List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+    for (Calls c : getTop(capacity)) {
+      list.add(c.toMap());
+    }
+    return JSON.toString(list);
+  }
+
+  /**
+   * Stop tracking calls and unregister from JMX
+   */
+  public void shutdown() {
+    profiles.remove(this);
+    if (mbeanName != null) {
+      MBeans.unregister(mbeanName);
+      mbeanName = null;
+    }
+  }
+}
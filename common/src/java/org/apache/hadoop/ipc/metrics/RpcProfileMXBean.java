@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc.metrics;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The JMX interface of the calls an RPC server profiles by user and method
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface RpcProfileMXBean {
+
+  /**
+   * @return the number of (user, method) pairs tracked
+   */
+  public int getCapacity();
+
+  /**
+   * Gets the (user, method) pairs with the most calls, most first. Please
+   * see the implementation for the format of returned information.
+   *
+   * @return the calls
+   */
+  public String getTopCalls();
+}
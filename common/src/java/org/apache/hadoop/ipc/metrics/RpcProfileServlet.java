@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.http.HttpServer;
+import org.mortbay.util.ajax.JSON;
+
+/**
+ * A servlet to print out the calls the RPC servers of the process profile
+ * by user and method. By default, the servlet returns a textual
+ * representation, and users can use "?format=json" for parseable output
+ * and "?top=n" to limit the pairs printed for each server.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class RpcProfileServlet extends HttpServlet {
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+
+    // Do the authorization
+    if (!HttpServer.hasAdministratorAccess(getServletContext(), request,
+        response)) {
+      return;
+    }
+
+    int top = Integer.MAX_VALUE;
+    String topParam = request.getParameter("top");
+    if (topParam != null) {
+      try {
+        top = Integer.parseInt(topParam);
+      } catch (NumberFormatException e) {
+        top = -1;
+      }
+      if (top < 0) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                           "Bad top: "+ topParam);
+        return;
+      }
+    }
+
+    boolean json = "json".equals(request.getParameter("format"));
+    response.setContentType(json ? "application/json; charset=utf-8"
+                                 : "text/plain; charset=utf-8");
+    PrintWriter out = response.getWriter();
+    try {
+      if (json) {
+        printJson(out, top);
+      } else {
+        printText(out, top);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  static void printJson(PrintWriter out, int top) {
+    Map<String, List<Map<String, Object>>> map =
+      new HashMap<String, List<Map<String, Object>>>();
+    for (RpcProfile profile : RpcProfile.getProfiles()) {
+      List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+      for (RpcProfile.Calls c : profile.getTop(top)) {
+        list.add(c.toMap());
+      }
+      map.put(String.valueOf(profile.getPort()), list);
+    }
+    out.print(JSON.toString(map));
+  }
+
+  static void printText(PrintWriter out, int top) {
+    if (RpcProfile.getProfiles().isEmpty()) {
+      out.println("No RPC server profiles calls; see "+
+                  CommonConfigurationKeys.IPC_SERVER_CALL_PROFILE_SIZE_KEY);
+    }
+    for (RpcProfile profile : RpcProfile.getProfiles()) {
+      out.println("RPC port "+ profile.getPort() +":");
+      out.printf("  %-16s %-24s %12s %10s %12s %12s%n", "user", "method",
+                 "calls", "error", "queue ms", "process ms");
+      for (RpcProfile.Calls c : profile.getTop(top)) {
+        out.printf("  %-16s %-24s %12d %10d %12.2f %12.2f%n", c.getUser(),
+                   c.getMethod(), c.getCount(), c.getError(),
+                   c.getAvgQueueTime(), c.getAvgProcessingTime());
+      }
+    }
+  }
+}
@@ -211,6 +211,24 @@ public class MetricsRegistry {
     return newStat(name, desc, sampleName, valueName, false);
   }
 
+  /**
+   * Create a mutable metric of quantiles over a rolling window
+   * @param name  of the metric
+   * @param desc  metric description
+   * @param sampleName  of the metric (e.g., "Ops")
+   * @param valueName   of the metric (e.g., "Time" or "Latency")
+   * @param interval    of the rolling window in seconds
+   * @return a new mutable quantiles metric object
+   */
+  public synchronized MutableQuantiles newQuantiles(String name, String desc,
+      String sampleName, String valueName, int interval) {
+    checkMetricName(name);
+    MutableQuantiles ret =
+        new MutableQuantiles(name, desc, sampleName, valueName, interval);
+    metricsMap.put(name, ret);
+    return ret;
+  }
+
   /**
    * Create a mutable rate metric
    * @param name  of the metric
@@ -22,6 +22,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.StripedLong;
 
 /**
  * A mutable int counter for implementing metrics sources
@@ -29,16 +30,16 @@ import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
 public class MutableCounterInt extends MutableCounter {
-  private volatile int value;
+  private final StripedLong value;
 
   MutableCounterInt(MetricsInfo info, int initValue) {
     super(info);
-    this.value = initValue;
+    this.value = new StripedLong(initValue);
   }
 
   @Override
-  public synchronized void incr() {
-    ++value;
+  public void incr() {
+    value.add(1);
     setChanged();
   }
 
@@ -46,20 +47,20 @@ public class MutableCounterInt extends MutableCounter {
    * Increment the value by a delta
    * @param delta of the increment
    */
-  public synchronized void incr(int delta) {
-    value += delta;
+  public void incr(int delta) {
+    value.add(delta);
     setChanged();
   }
 
   public int value() {
-    return value;
+    return (int) value.sum();
   }
 
   @Override
   public void snapshot(MetricsRecordBuilder builder, boolean all) {
     if (all || changed()) {
-      builder.addCounter(info(), value);
       clearChanged();
+      builder.addCounter(info(), value());
     }
   }
 
@@ -22,6 +22,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.StripedLong;
 
 /**
  * A mutable long counter
@@ -30,16 +31,16 @@ import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 @InterfaceStability.Evolving
 public class MutableCounterLong extends MutableCounter {
 
-  private volatile long value;
+  private final StripedLong value;
 
   MutableCounterLong(MetricsInfo info, long initValue) {
     super(info);
-    this.value = initValue;
+    this.value = new StripedLong(initValue);
   }
 
   @Override
-  public synchronized void incr() {
-    ++value;
+  public void incr() {
+    value.add(1);
     setChanged();
   }
 
@@ -47,20 +48,20 @@ public class MutableCounterLong extends MutableCounter {
    * Increment the value by a delta
    * @param delta of the increment
    */
-  public synchronized void incr(long delta) {
-    value += delta;
+  public void incr(long delta) {
+    value.add(delta);
     setChanged();
   }
 
   public long value() {
-    return value;
+    return value.sum();
   }
 
   @Override
   public void snapshot(MetricsRecordBuilder builder, boolean all) {
     if (all || changed()) {
-      builder.addCounter(info(), value);
       clearChanged();
+      builder.addCounter(info(), value());
     }
   }
 
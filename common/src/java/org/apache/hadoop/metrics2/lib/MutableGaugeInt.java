@@ -22,6 +22,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.StripedLong;
 
 /**
  * A mutable int gauge
@@ -30,20 +31,20 @@ import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 @InterfaceStability.Evolving
 public class MutableGaugeInt extends MutableGauge {
 
-  private volatile int value;
+  private final StripedLong value;
 
   MutableGaugeInt(MetricsInfo info, int initValue) {
     super(info);
-    this.value = initValue;
+    this.value = new StripedLong(initValue);
   }
 
   public int value() {
-    return value;
+    return (int) value.sum();
   }
 
   @Override
-  public synchronized void incr() {
-    ++value;
+  public void incr() {
+    value.add(1);
     setChanged();
   }
 
@@ -51,14 +52,14 @@ public class MutableGaugeInt extends MutableGauge {
    * Increment by delta
    * @param delta of the increment
    */
-  public synchronized void incr(int delta) {
-    value += delta;
+  public void incr(int delta) {
+    value.add(delta);
     setChanged();
   }
 
   @Override
-  public synchronized void decr() {
-    --value;
+  public void decr() {
+    value.add(-1);
     setChanged();
   }
 
@@ -66,8 +67,8 @@ public class MutableGaugeInt extends MutableGauge {
    * decrement by delta
    * @param delta of the decrement
    */
-  public synchronized void decr(int delta) {
-    value -= delta;
+  public void decr(int delta) {
+    value.add(-delta);
     setChanged();
   }
 
@@ -76,15 +77,15 @@ public class MutableGaugeInt extends MutableGauge {
    * @param value to set
    */
   public void set(int value) {
-    this.value = value;
+    this.value.set(value);
     setChanged();
   }
 
   @Override
   public void snapshot(MetricsRecordBuilder builder, boolean all) {
     if (all || changed()) {
-      builder.addGauge(info(), value);
       clearChanged();
+      builder.addGauge(info(), value());
     }
   }
 }
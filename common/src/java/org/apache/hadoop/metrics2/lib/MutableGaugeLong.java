@@ -22,6 +22,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.StripedLong;
 
 /**
  * A mutable long gauge
@@ -30,20 +31,20 @@ import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 @InterfaceStability.Evolving
 public class MutableGaugeLong extends MutableGauge {
 
-  private volatile long value;
+  private final StripedLong value;
 
   MutableGaugeLong(MetricsInfo info, long initValue) {
     super(info);
-    this.value = initValue;
+    this.value = new StripedLong(initValue);
   }
 
   public long value() {
-    return value;
+    return value.sum();
   }
 
   @Override
-  public synchronized void incr() {
-    ++value;
+  public void incr() {
+    value.add(1);
     setChanged();
   }
 
@@ -51,14 +52,14 @@ public class MutableGaugeLong extends MutableGauge {
    * Increment by delta
    * @param delta of the increment
    */
-  public synchronized void incr(long delta) {
-    value += delta;
+  public void incr(long delta) {
+    value.add(delta);
     setChanged();
   }
 
   @Override
-  public synchronized void decr() {
-    --value;
+  public void decr() {
+    value.add(-1);
     setChanged();
   }
 
@@ -66,8 +67,8 @@ public class MutableGaugeLong extends MutableGauge {
    * decrement by delta
    * @param delta of the decrement
    */
-  public synchronized void decr(long delta) {
-    value -= delta;
+  public void decr(long delta) {
+    value.add(-delta);
     setChanged();
   }
 
@@ -76,14 +77,14 @@ public class MutableGaugeLong extends MutableGauge {
    * @param value to set
    */
   public void set(long value) {
-    this.value = value;
+    this.value.set(value);
     setChanged();
   }
 
   public void snapshot(MetricsRecordBuilder builder, boolean all) {
     if (all || changed()) {
-      builder.addGauge(info(), value);
       clearChanged();
+      builder.addGauge(info(), value());
     }
   }
 
@@ -48,10 +48,16 @@ public abstract class MutableMetric {
   /**
    * Set the changed flag in mutable operations
    */
-  protected void setChanged() { changed = true; }
+  protected void setChanged() {
+    // read first, so that frequent updates do not keep writing the flag
+    if (!changed) {
+      changed = true;
+    }
+  }
 
   /**
-   * Clear the changed flag in the snapshot operations
+   * Clear the changed flag in the snapshot operations, before the values
+   * are read, so that updates racing with a snapshot show in the next one
    */
   protected void clearChanged() { changed = false; }
 
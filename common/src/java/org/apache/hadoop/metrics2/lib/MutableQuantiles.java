@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.lib;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import static org.apache.hadoop.metrics2.lib.Interns.*;
+
+/**
+ * A mutable metric of the quantiles of a stream of values, such as
+ * latencies, over a rolling window.
+ *
+ * Values are counted in a histogram of buckets whose width grows with the
+ * values, so that quantiles are estimated within 2% of the values with a
+ * fixed amount of memory. Adding a value increments one counter
+ * without locking. Every <code>interval</code> seconds the window rolls
+ * over and the quantiles of the window just ended are published until the
+ * next.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class MutableQuantiles extends MutableMetric {
+
+  /** The quantiles published, in percent */
+  static final int[] PERCENTILES = { 50, 75, 90, 95, 99 };
+
+  // values below 2^(SUB_BITS + 1) get buckets of their own, and each power of
+  // two above is split in 2^SUB_BITS buckets
+  private static final int SUB_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int EXACT = 2 * SUB_BUCKETS;
+  static final int BUCKETS =
+    EXACT + (63 - (SUB_BITS + 1)) * SUB_BUCKETS;
+
+  private static final ScheduledExecutorService scheduler =
+    Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "MutableQuantiles-rollover");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+  private final MetricsInfo numInfo;
+  private final MetricsInfo[] quantileInfos;
+  private final int interval;
+
+  private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+  private AtomicLongArray spare = new AtomicLongArray(BUCKETS);
+  // the window last rolled over
+  private long previousCount = 0;
+  private final long[] previousQuantiles = new long[PERCENTILES.length];
+  private final ScheduledFuture<?> rollover;
+
+  /**
+   * Construct a quantiles metric
+   * @param name        of the metric
+   * @param description of the metric
+   * @param sampleName  of the metric (e.g. "Ops")
+   * @param valueName   of the metric (e.g. "Time", "Latency")
+   * @param interval    of the rolling window, in seconds
+   */
+  public MutableQuantiles(String name, String description,
+                          String sampleName, String valueName, int interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval "+ interval +" for "+ name);
+    }
+    String ucName = StringUtils.capitalize(name);
+    String usName = StringUtils.capitalize(sampleName);
+    String uvName = StringUtils.capitalize(valueName);
+    String desc = StringUtils.uncapitalize(description);
+    String lsName = StringUtils.uncapitalize(sampleName);
+    String lvName = StringUtils.uncapitalize(valueName);
+    numInfo = info(ucName +"Num"+ usName, "Number of "+ lsName +" for "+ desc +
+                   " in the last "+ interval +"s");
+    quantileInfos = new MetricsInfo[PERCENTILES.length];
+    for (int i = 0; i < PERCENTILES.length; ++i) {
+      int p = PERCENTILES[i];
+      quantileInfos[i] = info(ucName + p +"thPercentile"+ uvName,
+          p +"th percentile "+ lvName +" for "+ desc +" in the last "+
+          interval +"s");
+    }
+    this.interval = interval;
+    rollover = scheduler.scheduleAtFixedRate(new Rollover(this),
+        interval, interval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Roll the windows over while the metric is in use.
+   */
+  private static class Rollover implements Runnable {
+    private final WeakReference<MutableQuantiles> metric;
+
+    Rollover(MutableQuantiles metric) {
+      this.metric = new WeakReference<MutableQuantiles>(metric);
+    }
+
+    public void run() {
+      MutableQuantiles m = metric.get();
+      if (m == null) {
+        throw new IllegalStateException("done"); // cancels the task
+      }
+      m.rollover();
+    }
+  }
+
+  /**
+   * Get the bucket counting a value.
+   */
+  static int bucket(long value) {
+    if (value < EXACT) {
+      return value < 0 ? 0 : (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return EXACT + (shift - 1) * SUB_BUCKETS +
+      (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * Get the least value counted by a bucket.
+   */
+  static long lowerBound(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+    return (long) (SUB_BUCKETS + (bucket - EXACT) % SUB_BUCKETS) << shift;
+  }
+
+  /**
+   * Get the value standing for the values counted by a bucket.
+   */
+  static long estimate(int bucket) {
+    long lower = lowerBound(bucket);
+    long upper = bucket + 1 < BUCKETS ? lowerBound(bucket + 1) - 1
+                                      : Long.MAX_VALUE;
+    return lower + (upper - lower) / 2;
+  }
+
+  /**
+   * Add a value to the current window
+   * @param value to add, negative values counting as zero
+   */
+  public void add(long value) {
+    current.incrementAndGet(bucket(value));
+  }
+
+  /**
+   * End the current window, computing its quantiles.
+   */
+  synchronized void rollover() {
+    AtomicLongArray ended = current;
+    current = spare;
+    long[] counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      // values added while the window is being swapped may be lost
+      counts[i] = ended.getAndSet(i, 0);
+      count += counts[i];
+    }
+    spare = ended;
+
+    int q = 0;
+    long seen = 0;
+    for (int i = 0; i < BUCKETS && q < PERCENTILES.length; ++i) {
+      seen += counts[i];
+      while (q < PERCENTILES.length &&
+             seen > 0 && seen * 100 >= count * PERCENTILES[q]) {
+        previousQuantiles[q++] = estimate(i);
+      }
+    }
+    while (q < PERCENTILES.length) {
+      previousQuantiles[q++] = 0;
+    }
+    previousCount = count;
+    setChanged();
+  }
+
+  /**
+   * Get the estimate of a quantile of the last window.
+   * @param percentile one of 50, 75, 90, 95 or 99
+   * @return the value, or zero if the window had no values
+   */
+  public synchronized long getPercentile(int percentile) {
+    for (int i = 0; i < PERCENTILES.length; ++i) {
+      if (PERCENTILES[i] == percentile) {
+        return previousQuantiles[i];
+      }
+    }
+    throw new IllegalArgumentException("No "+ percentile +"th percentile");
+  }
+
+  /** @return the length of the rolling window in seconds */
+  public int getInterval() {
+    return interval;
+  }
+
+  /**
+   * Stop rolling the window over.
+   */
+  public void stop() {
+    rollover.cancel(false);
+  }
+
+  @Override
+  public synchronized void snapshot(MetricsRecordBuilder builder,
+                                    boolean all) {
+    if (all || changed()) {
+      builder.addGauge(numInfo, previousCount);
+      for (int i = 0; i < PERCENTILES.length; ++i) {
+        builder.addGauge(quantileInfos[i], previousQuantiles[i]);
+      }
+      if (changed()) {
+        clearChanged();
+      }
+    }
+  }
+}
@@ -24,12 +24,15 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.util.SampleStat;
+import org.apache.hadoop.metrics2.util.StripedLong;
 import static org.apache.hadoop.metrics2.lib.Interns.*;
 
 /**
  * A mutable metric with stats.
  *
- * Useful for keeping throughput/latency stats.
+ * Useful for keeping throughput/latency stats. Samples are added to one of
+ * several stripes, chosen by thread, and the stripes are merged in
+ * snapshots, so that threads adding samples seldom wait for each other.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
@@ -42,6 +45,7 @@ public class MutableStat extends MutableMetric {
   private final MetricsInfo minInfo;
   private final MetricsInfo maxInfo;
 
+  private final SampleStat[] stripes = new SampleStat[StripedLong.STRIPES];
   private final SampleStat intervalStat = new SampleStat();
   private final SampleStat prevStat = new SampleStat();
   private final SampleStat.MinMax minMax = new SampleStat.MinMax();
@@ -75,6 +79,9 @@ public class MutableStat extends MutableMetric {
     minInfo = info(ucName +"Min"+ uvName, "Min "+ lvName +" for "+ desc);
     maxInfo = info(ucName +"Max"+ uvName, "Max "+ lvName +" for "+ desc);
     this.extended = extended;
+    for (int i = 0; i < stripes.length; ++i) {
+      stripes[i] = new SampleStat();
+    }
   }
 
   /**
@@ -94,8 +101,11 @@ public class MutableStat extends MutableMetric {
    * @param numSamples  number of samples
    * @param sum of the samples
    */
-  public synchronized void add(long numSamples, long sum) {
-    intervalStat.add(numSamples, sum);
+  public void add(long numSamples, long sum) {
+    SampleStat stripe = stripes[StripedLong.stripe()];
+    synchronized (stripe) {
+      stripe.add(numSamples, sum);
+    }
     setChanged();
   }
 
@@ -103,42 +113,59 @@ public class MutableStat extends MutableMetric {
    * Add a snapshot to the metric
    * @param value of the metric
    */
-  public synchronized void add(long value) {
-    intervalStat.add(value);
-    minMax.add(value);
+  public void add(long value) {
+    SampleStat stripe = stripes[StripedLong.stripe()];
+    synchronized (stripe) {
+      stripe.add(value);
+    }
     setChanged();
   }
 
   public synchronized void snapshot(MetricsRecordBuilder builder, boolean all) {
-    if (all || changed()) {
+    boolean changed = changed();
+    if (changed) {
+      clearChanged();
+      collect();
+    }
+    if (all || changed) {
+      SampleStat lastStat = changed ? intervalStat : prevStat;
       numSamples += intervalStat.numSamples();
       builder.addCounter(numInfo, numSamples)
-             .addGauge(avgInfo, lastStat().mean());
+             .addGauge(avgInfo, lastStat.mean());
       if (extended) {
-        builder.addGauge(stdevInfo, lastStat().stddev())
-               .addGauge(iMinInfo, lastStat().min())
-               .addGauge(iMaxInfo, lastStat().max())
+        builder.addGauge(stdevInfo, lastStat.stddev())
+               .addGauge(iMinInfo, lastStat.min())
+               .addGauge(iMaxInfo, lastStat.max())
                .addGauge(minInfo, minMax.min())
                .addGauge(maxInfo, minMax.max());
       }
-      if (changed()) {
-        if (numSamples > 0) {
-          intervalStat.copyTo(prevStat);
-          intervalStat.reset();
-        }
-        clearChanged();
+      if (changed && numSamples > 0) {
+        intervalStat.copyTo(prevStat);
+        intervalStat.reset();
       }
     }
   }
 
-  private SampleStat lastStat() {
-    return changed() ? intervalStat : prevStat;
+  /**
+   * Move the samples of the stripes to the interval stat
+   */
+  private void collect() {
+    for (int i = 0; i < stripes.length; ++i) {
+      synchronized (stripes[i]) {
+        intervalStat.add(stripes[i]);
+        stripes[i].reset();
+      }
+    }
+    if (intervalStat.min() <= intervalStat.max()) {
+      minMax.add(intervalStat.min());
+      minMax.add(intervalStat.max());
+    }
   }
 
   /**
    * Reset the all time min max of the metric
    */
-  public void resetMinMax() {
+  public synchronized void resetMinMax() {
     minMax.reset();
   }
 
@@ -95,6 +95,40 @@ public class SampleStat {
     return this;
   }
 
+  /**
+   * Add the samples of another running stat, as if they had been added to
+   * this one.
+   * @param other the stat to add
+   * @return  self
+   */
+  public SampleStat add(SampleStat other) {
+    if (other.numSamples == 0) {
+      return this;
+    }
+    if (numSamples == 0) {
+      other.copyTo(this);
+      return this;
+    }
+    // Chan et al.'s pairwise update of the mean and squared deviations
+    long n = numSamples + other.numSamples;
+    double delta = other.mean() - mean();
+    double mean = mean() + delta * other.numSamples / n;
+    double s = sumOfSquares() + other.sumOfSquares() +
+               delta * delta * numSamples * other.numSamples / n;
+    numSamples = n;
+    a0 = a1 = mean;
+    s0 = s1 = s;
+    if (other.min() <= other.max()) {
+      minmax.add(other.min());
+      minmax.add(other.max());
+    }
+    return this;
+  }
+
+  private double sumOfSquares() {
+    return numSamples > 1 ? s1 : 0.0;
+  }
+
   /**
    * @return  the total number of samples
    */
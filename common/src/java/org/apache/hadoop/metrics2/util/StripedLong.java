@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A long sum updated by many threads without locking. Updates go to a
+ * single value until threads contend for it, and are then spread over
+ * cells on separate cache lines, one per stripe of threads, that are summed
+ * when read.
+ */
+@InterfaceAudience.Private
+public class StripedLong {
+  /** The number of stripes threads are spread over, a power of two */
+  public static final int STRIPES;
+  static {
+    int stripes = 2;
+    while (stripes < 2 * Runtime.getRuntime().availableProcessors() &&
+           stripes < 64) {
+      stripes <<= 1;
+    }
+    STRIPES = stripes;
+  }
+  private static final int PAD = 8; // longs in a 64 byte cache line
+
+  private static final AtomicLongFieldUpdater<StripedLong> BASE =
+    AtomicLongFieldUpdater.newUpdater(StripedLong.class, "base");
+
+  private volatile long base;
+  private volatile AtomicLongArray cells;
+
+  public StripedLong(long initValue) {
+    base = initValue;
+  }
+
+  /**
+   * @return the stripe of the current thread
+   */
+  public static int stripe() {
+    return (int) Thread.currentThread().getId() & (STRIPES - 1);
+  }
+
+  /**
+   * Add to the sum
+   * @param delta to add
+   */
+  public void add(long delta) {
+    AtomicLongArray cs = cells;
+    if (cs == null) {
+      long b = base;
+      if (BASE.compareAndSet(this, b, b + delta)) {
+        return;
+      }
+      cs = inflate();
+    }
+    cs.addAndGet(stripe() * PAD, delta);
+  }
+
+  private synchronized AtomicLongArray inflate() {
+    if (cells == null) {
+      cells = new AtomicLongArray(STRIPES * PAD);
+    }
+    return cells;
+  }
+
+  /**
+   * @return the sum. Each update finished before the call is counted, and
+   *         updates made while it runs may be.
+   */
+  public long sum() {
+    long sum = base;
+    AtomicLongArray cs = cells;
+    if (cs != null) {
+      for (int i = 0; i < STRIPES; ++i) {
+        sum += cs.get(i * PAD);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Set the sum. Updates made while it runs may be lost.
+   * @param value to set
+   */
+  public void set(long value) {
+    AtomicLongArray cs = cells;
+    if (cs != null) {
+      for (int i = 0; i < STRIPES; ++i) {
+        cs.set(i * PAD, 0);
+      }
+    }
+    base = value;
+  }
+}
@@ -18,12 +18,27 @@
 package org.apache.hadoop.net;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
 
 /**
  * A cached implementation of DNSToSwitchMapping that takes an
@@ -31,16 +46,84 @@ import org.apache.hadoop.classification.InterfaceStability;
  * a cache. The following calls to a resolved network location
  * will get its location from the cache. 
  *
+ * Names which are not cached are resolved by a resolver thread, which
+ * passes the names requested by all callers since its last resolution to
+ * the raw mapping at once, so that callers joining together share one
+ * invocation of a script. The raw mapping is only called by that thread.
+ * Locations may be made to expire with {@link #setCacheTtl(long)}.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
 public class CachedDNSToSwitchMapping implements DNSToSwitchMapping {
-  private Map<String, String> cache = new ConcurrentHashMap<String, String>();
+  private static final Log LOG =
+    LogFactory.getLog(CachedDNSToSwitchMapping.class);
+
+  /** The metrics of all mappings, registered by the first one */
+  private static ResolveMetrics registeredMetrics;
+
+  private final ResolveMetrics metrics = getResolveMetrics();
+  private Map<String, CachedLocation> cache =
+    new ConcurrentHashMap<String, CachedLocation>();
   protected DNSToSwitchMapping rawMapping;
+  private volatile long cacheTtl = 0;
+
+  /** The names waiting for the resolver, null if none */
+  private Batch nextBatch;
+  /** The batch of each name waiting for or being resolved */
+  private final Map<String, Batch> pending = new HashMap<String, Batch>();
+  private final ThreadPoolExecutor resolver = new ThreadPoolExecutor(
+      0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Rack resolver");
+          t.setDaemon(true);
+          return t;
+        }
+      });
   
   public CachedDNSToSwitchMapping(DNSToSwitchMapping rawMapping) {
     this.rawMapping = rawMapping;
   }
+
+  private static synchronized ResolveMetrics getResolveMetrics() {
+    if (registeredMetrics == null) {
+      registeredMetrics = DefaultMetricsSystem.instance().register(
+          "RackResolution", "Rack resolution metrics", new ResolveMetrics());
+    }
+    return registeredMetrics;
+  }
+
+  /**
+   * Set how long resolved locations are cached
+   * @param ttl the time in milliseconds, or 0 to cache them for ever
+   */
+  public void setCacheTtl(long ttl) {
+    this.cacheTtl = ttl;
+  }
+
+  private static class CachedLocation {
+    final String location;
+    final long resolved;
+
+    CachedLocation(String location, long resolved) {
+      this.location = location;
+      this.resolved = resolved;
+    }
+  }
+
+  /** Names resolved together */
+  private static class Batch {
+    final List<String> names = new ArrayList<String>();
+    final CountDownLatch done = new CountDownLatch(1);
+  }
+
+  private String getCached(String name, long ttl, long now) {
+    CachedLocation cached = cache.get(name);
+    if (cached == null || (ttl > 0 && now - cached.resolved > ttl)) {
+      return null;
+    }
+    return cached.location;
+  }
   
   public List<String> resolve(List<String> names) {
     // normalize all input names to be in the form of IP addresses
@@ -51,29 +134,29 @@ public class CachedDNSToSwitchMapping implements DNSToSwitchMapping {
       return result;
     }
 
+    long ttl = cacheTtl;
+    long now = ttl > 0 ? System.currentTimeMillis() : 0;
 
     // find out all names without cached resolved location
     List<String> unCachedHosts = new ArrayList<String>(names.size());
     for (String name : names) {
-      if (cache.get(name) == null) {
+      if (getCached(name, ttl, now) == null) {
         unCachedHosts.add(name);
       } 
     }
+    metrics.cacheHits.incr(names.size() - unCachedHosts.size());
     
     // Resolve those names
-    List<String> rNames = rawMapping.resolve(unCachedHosts);
-    
-    // Cache the result
-    if (rNames != null) {
-      for (int i=0; i<unCachedHosts.size(); i++) {
-        cache.put(unCachedHosts.get(i), rNames.get(i));
+    if (!unCachedHosts.isEmpty()) {
+      if (!resolveUncached(unCachedHosts)) {
+        return null;
       }
     }
     
     // Construct the result
     for (String name : names) {
       //now everything is in the cache
-      String networkLocation = cache.get(name);
+      String networkLocation = getCached(name, ttl, now);
       if (networkLocation != null) {
         result.add(networkLocation);
       } else { //resolve all or nothing
@@ -82,4 +165,84 @@ public class CachedDNSToSwitchMapping implements DNSToSwitchMapping {
     }
     return result;
   }
+
+  /**
+   * Have the resolver thread resolve names and wait for it
+   * @return false if interrupted
+   */
+  private boolean resolveUncached(List<String> names) {
+    Set<Batch> batches = new LinkedHashSet<Batch>();
+    synchronized (pending) {
+      for (String name : names) {
+        Batch batch = pending.get(name);
+        if (batch == null) {
+          if (nextBatch == null) {
+            nextBatch = new Batch();
+            resolver.execute(new Runnable() {
+              public void run() {
+                resolveBatch();
+              }
+            });
+          }
+          batch = nextBatch;
+          batch.names.add(name);
+          pending.put(name, batch);
+        }
+        batches.add(batch);
+      }
+    }
+    try {
+      for (Batch batch : batches) {
+        batch.done.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
+  /** Resolve the names waiting, run by the resolver thread */
+  private void resolveBatch() {
+    Batch batch;
+    synchronized (pending) {
+      batch = nextBatch;
+      nextBatch = null;
+    }
+    List<String> rNames = null;
+    long start = System.currentTimeMillis();
+    try {
+      rNames = rawMapping.resolve(batch.names);
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to resolve " + batch.names, e);
+    } finally {
+      long now = System.currentTimeMillis();
+      metrics.resolve.add(now - start);
+      // Cache the result
+      if (rNames != null && rNames.size() == batch.names.size()) {
+        for (int i = 0; i < batch.names.size(); i++) {
+          cache.put(batch.names.get(i),
+                    new CachedLocation(rNames.get(i), now));
+        }
+        metrics.hostsResolved.incr(batch.names.size());
+      } else {
+        metrics.resolveFailures.incr();
+      }
+      synchronized (pending) {
+        for (String name : batch.names) {
+          pending.remove(name);
+        }
+      }
+      batch.done.countDown();
+    }
+  }
+
+  @Metrics(about="Rack resolution metrics", context="net")
+  static class ResolveMetrics {
+    @Metric("Resolutions of names not cached, in batches")
+    MutableRate resolve;
+    @Metric("Names resolved") MutableCounterLong hostsResolved;
+    @Metric("Names found in the cache") MutableCounterLong cacheHits;
+    @Metric("Resolutions which failed") MutableCounterLong resolveFailures;
+  }
 }
@@ -18,7 +18,9 @@
 package org.apache.hadoop.net;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Random;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -301,9 +303,25 @@ public class NetworkTopology {
   InnerNode clusterMap = new InnerNode(InnerNode.ROOT); // the root
   private int numOfRacks = 0;  // rack counter
   private ReadWriteLock netlock;
+  /**
+   * The ids of the ancestors of each leaf, from the root to its rack, so
+   * that distances and racks are found without taking the lock. Leaves of
+   * a rack share an array. Never changed once published: add and remove
+   * publish a changed copy under the write lock.
+   */
+  private volatile IdentityHashMap<Node, int[]> leafAncestors =
+    new IdentityHashMap<Node, int[]>();
+  /**
+   * The ids of the ancestors of each inner node, ending with its own, which
+   * are the ancestors of its leaves. Guarded by the write lock.
+   */
+  private final IdentityHashMap<Node, int[]> innerAncestors =
+    new IdentityHashMap<Node, int[]>();
+  private int lastAncestorId = 0;
     
   public NetworkTopology() {
     netlock = new ReentrantReadWriteLock();
+    innerAncestors.put(clusterMap, new int[] { 0 });
   }
     
   /** Add a leaf node
@@ -327,12 +345,21 @@ public class NetworkTopology {
                                            + node.toString() 
                                            + " at an illegal network location");
       }
+      // a node of the same name is replaced
+      Node old = getNode(NodeBase.getPath(node));
       if (clusterMap.add(node)) {
         LOG.info("Adding a new node: "+NodeBase.getPath(node));
         if (rack == null) {
           numOfRacks++;
         }
       }
+      if (old != node) {
+        IdentityHashMap<Node, int[]> ancestors =
+          new IdentityHashMap<Node, int[]>(leafAncestors);
+        ancestors.remove(old);
+        ancestors.put(node, getAncestors((InnerNode)node.getParent()));
+        leafAncestors = ancestors;
+      }
       if(LOG.isDebugEnabled()) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
@@ -355,11 +382,23 @@ public class NetworkTopology {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
+      Node old = getNode(NodeBase.getPath(node));
+      Node parent = old == null ? null : old.getParent();
       if (clusterMap.remove(node)) {
         InnerNode rack = (InnerNode)getNode(node.getNetworkLocation());
         if (rack == null) {
           numOfRacks--;
         }
+        IdentityHashMap<Node, int[]> ancestors =
+          new IdentityHashMap<Node, int[]>(leafAncestors);
+        ancestors.remove(old);
+        leafAncestors = ancestors;
+        // forget the inner nodes removed with it
+        for (; parent != clusterMap &&
+               ((InnerNode)parent).getNumOfChildren() == 0;
+             parent = parent.getParent()) {
+          innerAncestors.remove(parent);
+        }
       }
       if(LOG.isDebugEnabled()) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
@@ -429,6 +468,21 @@ public class NetworkTopology {
     }
   }
     
+  /**
+   * Return the ids of the ancestors of an inner node, giving ids to it and
+   * to any of its ancestors that are new. Called under the write lock.
+   */
+  private int[] getAncestors(InnerNode node) {
+    int[] path = innerAncestors.get(node);
+    if (path == null) {
+      int[] parentPath = getAncestors((InnerNode)node.getParent());
+      path = Arrays.copyOf(parentPath, parentPath.length + 1);
+      path[parentPath.length] = ++lastAncestorId;
+      innerAncestors.put(node, path);
+    }
+    return path;
+  }
+
   /** Return the distance between two nodes
    * It is assumed that the distance from one node to its parent is 1
    * The distance between two nodes is calculated by summing up their distances
@@ -442,6 +496,17 @@ public class NetworkTopology {
     if (node1 == node2) {
       return 0;
     }
+    IdentityHashMap<Node, int[]> ancestors = leafAncestors;
+    int[] path1 = ancestors.get(node1);
+    int[] path2 = ancestors.get(node2);
+    if (path1 != null && path2 != null) {
+      int common = 0;
+      while (common < path1.length && common < path2.length &&
+             path1[common] == path2[common]) {
+        common++;
+      }
+      return path1.length + path2.length - 2 * common + 2;
+    }
     Node n1=node1, n2=node2;
     int dis = 0;
     netlock.readLock().lock();
@@ -487,7 +552,20 @@ public class NetworkTopology {
     if (node1 == null || node2 == null) {
       return false;
     }
-      
+    IdentityHashMap<Node, int[]> ancestors = leafAncestors;
+    return isOnSameRack(ancestors, ancestors.get(node1), node1, node2);
+  }
+
+  /** Check if two nodes are on the same rack
+   * @param ancestors the ancestors of the leaves
+   * @param path1 the ancestors of node1, null if not a leaf of the cluster
+   */
+  private boolean isOnSameRack(IdentityHashMap<Node, int[]> ancestors,
+                               int[] path1, Node node1, Node node2) {
+    int[] path2 = ancestors.get(node2);
+    if (path1 != null && path2 != null) {
+      return path1 == path2;
+    }
     netlock.readLock().lock();
     try {
       return node1.getParent()==node2.getParent();
@@ -626,6 +704,8 @@ public class NetworkTopology {
   public void pseudoSortByDistance( Node reader, Node[] nodes ) {
     int tempIndex = 0;
     if (reader != null ) {
+      IdentityHashMap<Node, int[]> ancestors = leafAncestors;
+      int[] readerPath = ancestors.get(reader);
       int localRackNode = -1;
       //scan the array to find the local node & local rack node
       for(int i=0; i<nodes.length; i++) {
@@ -641,7 +721,8 @@ public class NetworkTopology {
             }
             break;
           }
-        } else if(localRackNode == -1 && isOnSameRack(reader, nodes[i])) {
+        } else if(localRackNode == -1 && nodes[i] != null &&
+                  isOnSameRack(ancestors, readerPath, reader, nodes[i])) {
           //local rack
           localRackNode = i;
           if(tempIndex != 0 ) break;
@@ -65,6 +65,9 @@ implements Configurable
   
   public void setConf(Configuration conf) {
     ((RawScriptBasedMapping)rawMapping).setConf(conf);
+    setCacheTtl(1000 * conf.getLong(
+        CommonConfigurationKeys.NET_TOPOLOGY_CACHE_TTL_KEY,
+        CommonConfigurationKeys.NET_TOPOLOGY_CACHE_TTL_DEFAULT));
   }
   
   private static final class RawScriptBasedMapping
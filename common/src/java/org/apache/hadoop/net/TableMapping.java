@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.net;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+
+/**
+ * This class implements the {@link DNSToSwitchMapping} interface using a
+ * table configured via net.topology.table.file.name, read once. Each line
+ * of the table holds a host name or IP address and its network location,
+ * separated by white space; text from a '#' on is ignored. Names which are
+ * not in the table are in {@link NetworkTopology#DEFAULT_RACK}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class TableMapping extends CachedDNSToSwitchMapping
+    implements Configurable {
+
+  public TableMapping() {
+    super(new RawTableMapping());
+  }
+
+  public TableMapping(Configuration conf) {
+    this();
+    setConf(conf);
+  }
+
+  public Configuration getConf() {
+    return ((RawTableMapping)rawMapping).getConf();
+  }
+
+  public void setConf(Configuration conf) {
+    ((RawTableMapping)rawMapping).setConf(conf);
+    setCacheTtl(1000 * conf.getLong(
+        CommonConfigurationKeys.NET_TOPOLOGY_CACHE_TTL_KEY,
+        CommonConfigurationKeys.NET_TOPOLOGY_CACHE_TTL_DEFAULT));
+  }
+
+  private static final class RawTableMapping implements DNSToSwitchMapping {
+    private static final Log LOG = LogFactory.getLog(TableMapping.class);
+
+    private Configuration conf;
+    private Map<String, String> table;
+
+    public synchronized void setConf(Configuration conf) {
+      this.conf = conf;
+      this.table = null;
+    }
+
+    public synchronized Configuration getConf() {
+      return conf;
+    }
+
+    /**
+     * Read the table, with its names normalized as the names resolved are
+     * @return the table, empty if it could not be read
+     */
+    private static Map<String, String> load(String fileName) {
+      Map<String, String> table = new HashMap<String, String>();
+      if (fileName == null || fileName.length() == 0) {
+        LOG.warn(CommonConfigurationKeys.NET_TOPOLOGY_TABLE_FILE_NAME_KEY +
+                 " not configured; all nodes are in " +
+                 NetworkTopology.DEFAULT_RACK);
+        return table;
+      }
+      try {
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try {
+          String line;
+          while ((line = in.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+              line = line.substring(0, comment);
+            }
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length == 2) {
+              table.put(NetUtils.normalizeHostName(columns[0]), columns[1]);
+            } else if (columns.length > 2) {
+              LOG.warn("Ignoring line of " + fileName + ": " + line);
+            }
+          }
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        LOG.warn("Failed to read " + fileName + "; all nodes are in " +
+                 NetworkTopology.DEFAULT_RACK, e);
+        table.clear();
+      }
+      return table;
+    }
+
+    public List<String> resolve(List<String> names) {
+      Map<String, String> table;
+      synchronized (this) {
+        if (this.table == null) {
+          this.table = load(conf == null ? null : conf.get(
+              CommonConfigurationKeys.NET_TOPOLOGY_TABLE_FILE_NAME_KEY));
+        }
+        table = this.table;
+      }
+      List<String> locations = new ArrayList<String>(names.size());
+      for (String name : names) {
+        String location = table.get(name);
+        locations.add(location == null ? NetworkTopology.DEFAULT_RACK
+                                       : location);
+      }
+      return locations;
+    }
+  }
+}
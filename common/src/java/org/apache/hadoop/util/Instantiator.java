@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Creates and configures objects of one class. The no-argument constructor
+ * and the ways the class takes a configuration are looked up once per class,
+ * so making an object costs about as much as calling its constructor.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
+@InterfaceStability.Unstable
+public final class Instantiator<T> {
+
+  private static final Class<?>[] EMPTY_ARRAY = new Class[]{};
+  private static final String JOB_CONFIGURABLE =
+    "org.apache.hadoop.mapred.JobConfigurable";
+
+  /** 
+   * Cache of instantiators for each class. Pins the classes so they
+   * can't be garbage collected until Instantiator can be collected.
+   */
+  private static final ConcurrentMap<Class<?>, Instantiator<?>> CACHE =
+    new ConcurrentHashMap<Class<?>, Instantiator<?>>();
+
+  private final Class<T> theClass;
+  private final boolean configurable;
+  // JobConfigurable.configure(JobConf), looked up by name to keep core
+  // free of a compile time dependency on mapred
+  private final Method configure;
+  private final Class<?> jobConf;
+  private volatile Constructor<T> constructor;
+
+  private Instantiator(Class<T> theClass) {
+    this.theClass = theClass;
+    this.configurable = Configurable.class.isAssignableFrom(theClass);
+    Class<?> jobConfigurable = findInterface(theClass, JOB_CONFIGURABLE);
+    Method method = null;
+    if (jobConfigurable != null) {
+      for (Method m : jobConfigurable.getMethods()) {
+        if (m.getName().equals("configure") &&
+            m.getParameterTypes().length == 1) {
+          method = m;
+        }
+      }
+    }
+    this.configure = method;
+    this.jobConf = method == null ? null : method.getParameterTypes()[0];
+  }
+
+  /**
+   * Get the instantiator of a class.
+   * @param theClass class of which objects are created
+   * @return the instantiator, shared by all callers
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Instantiator<T> get(Class<T> theClass) {
+    Instantiator<T> instantiator = (Instantiator<T>) CACHE.get(theClass);
+    if (instantiator == null) {
+      instantiator = new Instantiator<T>(theClass);
+      Instantiator<T> old =
+        (Instantiator<T>) CACHE.putIfAbsent(theClass, instantiator);
+      if (old != null) {
+        instantiator = old;
+      }
+    }
+    return instantiator;
+  }
+
+  private static Class<?> findInterface(Class<?> c, String name) {
+    for (; c != null; c = c.getSuperclass()) {
+      for (Class<?> i : c.getInterfaces()) {
+        if (i.getName().equals(name)) {
+          return i;
+        }
+        Class<?> found = findInterface(i, name);
+        if (found != null) {
+          return found;
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Create an object and initialize it from conf
+   * 
+   * @param conf Configuration, or null
+   * @return a new object
+   */
+  public T newInstance(Configuration conf) {
+    T result;
+    try {
+      Constructor<T> meth = constructor;
+      if (meth == null) {
+        meth = theClass.getDeclaredConstructor(EMPTY_ARRAY);
+        meth.setAccessible(true);
+        constructor = meth;
+      }
+      result = meth.newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    setConf(result, conf);
+    return result;
+  }
+
+  /**
+   * Set the configuration of an object of this class, if it takes one.
+   * A JobConfigurable object is configured only if conf is a JobConf.
+   * @param theObject object of this class
+   * @param conf Configuration, or null
+   */
+  public void setConf(T theObject, Configuration conf) {
+    if (conf != null) {
+      if (configurable) {
+        ((Configurable) theObject).setConf(conf);
+      }
+      if (configure != null && jobConf.isInstance(conf)) {
+        try {
+          configure.invoke(theObject, conf);
+        } catch (Exception e) {
+          throw new RuntimeException("Error in configuring object", e);
+        }
+      }
+    }
+  }
+
+  // methods to support testing
+  static void clearCache() {
+    CACHE.clear();
+  }
+
+  static int getCacheSize() {
+    return CACHE.size();
+  }
+}
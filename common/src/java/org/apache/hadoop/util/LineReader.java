@@ -20,11 +20,14 @@ package org.apache.hadoop.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.TextView;
 
 /**
  * A class that provides a line reader from an input stream.
@@ -44,6 +47,8 @@ public class LineReader {
   private int bufferSize = DEFAULT_BUFFER_SIZE;
   private InputStream in;
   private byte[] buffer;
+  // the buffer read a word at a time, lowest address in the low byte
+  private ByteBuffer words;
   // the number of bytes of real data in the buffer
   private int bufferLength = 0;
   // the current position in the buffer
@@ -55,6 +60,11 @@ public class LineReader {
   // The line delimiter
   private final byte[] recordDelimiterBytes;
 
+  // while reading into a view: the view, and the copy of a line that does
+  // not fit in one buffer
+  private TextView view;
+  private Text spill;
+
   /**
    * Create a line reader that reads from the given stream using the
    * default buffer-size (64k).
@@ -73,10 +83,7 @@ public class LineReader {
    * @throws IOException
    */
   public LineReader(InputStream in, int bufferSize) {
-    this.in = in;
-    this.bufferSize = bufferSize;
-    this.buffer = new byte[this.bufferSize];
-    this.recordDelimiterBytes = null;
+    this(in, bufferSize, null);
   }
 
   /**
@@ -99,10 +106,7 @@ public class LineReader {
    * @param recordDelimiterBytes The delimiter
    */
   public LineReader(InputStream in, byte[] recordDelimiterBytes) {
-    this.in = in;
-    this.bufferSize = DEFAULT_BUFFER_SIZE;
-    this.buffer = new byte[this.bufferSize];
-    this.recordDelimiterBytes = recordDelimiterBytes;
+    this(in, DEFAULT_BUFFER_SIZE, recordDelimiterBytes);
   }
 
   /**
@@ -119,6 +123,7 @@ public class LineReader {
     this.in = in;
     this.bufferSize = bufferSize;
     this.buffer = new byte[this.bufferSize];
+    this.words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
     this.recordDelimiterBytes = recordDelimiterBytes;
   }
 
@@ -134,10 +139,8 @@ public class LineReader {
    */
   public LineReader(InputStream in, Configuration conf,
       byte[] recordDelimiterBytes) throws IOException {
-    this.in = in;
-    this.bufferSize = conf.getInt("io.file.buffer.size", DEFAULT_BUFFER_SIZE);
-    this.buffer = new byte[this.bufferSize];
-    this.recordDelimiterBytes = recordDelimiterBytes;
+    this(in, conf.getInt("io.file.buffer.size", DEFAULT_BUFFER_SIZE),
+         recordDelimiterBytes);
   }
 
 
@@ -206,21 +209,29 @@ public class LineReader {
         startPosn = bufferPosn = 0;
         if (prevCharCR)
           ++bytesConsumed; //account for CR from previous read
+        keepLine(str);
         bufferLength = in.read(buffer);
         if (bufferLength <= 0)
           break; // EOF
       }
-      for (; bufferPosn < bufferLength; ++bufferPosn) { //search for newline
-        if (buffer[bufferPosn] == LF) {
-          newlineLength = (prevCharCR) ? 2 : 1;
-          ++bufferPosn; // at next invocation proceed from following byte
-          break;
+      if (prevCharCR) { //CR at the end of the previous buffer
+        newlineLength = (buffer[bufferPosn] == LF) ? 2 : 1;
+        if (newlineLength == 2) {
+          ++bufferPosn;
         }
-        if (prevCharCR) { //CR + notLF, we are at notLF
-          newlineLength = 1;
-          break;
+      } else { //search for newline
+        bufferPosn = findNewline(bufferPosn);
+        if (bufferPosn < bufferLength) {
+          if (buffer[bufferPosn] == LF) {
+            newlineLength = 1;
+          } else if (bufferPosn + 1 == bufferLength) {
+            prevCharCR = true; //look at the next buffer for LF
+          } else {
+            newlineLength = (buffer[bufferPosn + 1] == LF) ? 2 : 1;
+          }
+          // at next invocation proceed from the byte following the newline
+          bufferPosn += newlineLength == 0 ? 1 : newlineLength;
         }
-        prevCharCR = (buffer[bufferPosn] == CR);
       }
       int readLength = bufferPosn - startPosn;
       if (prevCharCR && newlineLength == 0)
@@ -231,7 +242,7 @@ public class LineReader {
         appendLength = maxLineLength - txtLength;
       }
       if (appendLength > 0) {
-        str.append(buffer, startPosn, appendLength);
+        append(str, startPosn, appendLength);
         txtLength += appendLength;
       }
     } while (newlineLength == 0 && bytesConsumed < maxBytesToConsume);
@@ -255,11 +266,19 @@ public class LineReader {
       // time
       if (bufferPosn >= bufferLength) {
         startPosn = bufferPosn = 0;
+        keepLine(str);
         bufferLength = in.read(buffer);
         if (bufferLength <= 0)
           break; // EOF
       }
       for (; bufferPosn < bufferLength; ++bufferPosn) {
+        if (delPosn == 0) {
+          // no partial delimiter: skip to the next first byte of one
+          bufferPosn = findByte(bufferPosn, recordDelimiterBytes[0]);
+          if (bufferPosn == bufferLength) {
+            break;
+          }
+        }
         if (buffer[bufferPosn] == recordDelimiterBytes[delPosn]) {
           delPosn++;
           if (delPosn >= recordDelimiterBytes.length) {
@@ -277,7 +296,7 @@ public class LineReader {
         appendLength = maxLineLength - txtLength;
       }
       if (appendLength > 0) {
-        str.append(buffer, startPosn, appendLength);
+        append(str, startPosn, appendLength);
         txtLength += appendLength;
       }
     } while (delPosn < recordDelimiterBytes.length
@@ -287,6 +306,126 @@ public class LineReader {
     return (int) bytesConsumed;
   }
 
+  /**
+   * Add bytes of the buffer to the line. A view is pointed at the first
+   * bytes of a line in place, and at the copy in str once there are more.
+   */
+  private void append(Text str, int start, int length) {
+    if (view == null) {
+      str.append(buffer, start, length);
+    } else if (view.getLength() == 0) {
+      view.set(buffer, start, length);
+    } else {
+      keepLine(str);
+      str.append(buffer, start, length);
+      view.set(str.getBytes(), 0, str.getLength());
+    }
+  }
+
+  /**
+   * Copy the line a view sees in the buffer to str, before the buffer is
+   * refilled.
+   */
+  private void keepLine(Text str) {
+    if (view != null && view.getBytes() == buffer && view.getLength() > 0) {
+      str.append(buffer, view.getOffset(), view.getLength());
+      view.set(str.getBytes(), 0, str.getLength());
+    }
+  }
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGHS = 0x8080808080808080L;
+
+  /**
+   * Get the high bit of each zero byte of the word, and perhaps of
+   * bytes above the lowest zero byte.
+   */
+  private static long zeros(long word) {
+    return (word - ONES) & ~word & HIGHS;
+  }
+
+  /**
+   * Find the first CR or LF in the buffer, from the given position, eight
+   * bytes at a time.
+   * @return the position of the newline or bufferLength if there is none
+   */
+  private int findNewline(int posn) {
+    final int words = bufferLength - 7;
+    for (; posn < words; posn += 8) {
+      final long word = this.words.getLong(posn);
+      final long found = zeros(word ^ (LF * ONES)) | zeros(word ^ (CR * ONES));
+      if (found != 0) {
+        return posn + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+    }
+    for (; posn < bufferLength; ++posn) {
+      final byte b = buffer[posn];
+      if (b == LF || b == CR) {
+        break;
+      }
+    }
+    return posn;
+  }
+
+  /**
+   * Find the first occurrence of a byte in the buffer, from the given
+   * position, eight bytes at a time.
+   * @return the position of the byte or bufferLength if there is none
+   */
+  private int findByte(int posn, byte b) {
+    final int words = bufferLength - 7;
+    final long pattern = (b & 0xFF) * ONES;
+    for (; posn < words; posn += 8) {
+      final long found = zeros(this.words.getLong(posn) ^ pattern);
+      if (found != 0) {
+        return posn + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+    }
+    while (posn < bufferLength && buffer[posn] != b) {
+      ++posn;
+    }
+    return posn;
+  }
+
+  /**
+   * Read one line from the InputStream into the given view, without copying
+   * it if it lies within one buffer. The view refers to the buffer of this
+   * reader, or to a copy owned by this reader, and is valid until the next
+   * call to read a line.
+   *
+   * @param str the view to point at the line (without newline)
+   * @param maxLineLength the maximum number of bytes to view;
+   *  the rest of the line is silently discarded.
+   * @param maxBytesToConsume the maximum number of bytes to consume
+   *  in this call, as for {@link #readLine(Text, int, int)}.
+   * @return the number of bytes read including the (longest) newline
+   * found.
+   * @throws IOException if the underlying stream throws
+   */
+  public int readLine(TextView str, int maxLineLength,
+                      int maxBytesToConsume) throws IOException {
+    if (spill == null) {
+      spill = new Text();
+    }
+    str.clear();
+    view = str;
+    try {
+      return readLine(spill, maxLineLength, maxBytesToConsume);
+    } finally {
+      view = null;
+    }
+  }
+
+  /**
+   * Read one line from the InputStream into the given view.
+   * @param str the view to point at the line
+   * @return the number of bytes read including the newline
+   * @throws IOException if the underlying stream throws
+   */
+  public int readLine(TextView str) throws IOException {
+    return readLine(str, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
   /**
    * Read from the InputStream into the given Text.
    * @param str the object to store the given line
@@ -24,15 +24,10 @@ import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
-import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
@@ -48,57 +43,19 @@ import org.apache.hadoop.io.serializer.Serializer;
 @InterfaceStability.Evolving
 public class ReflectionUtils {
     
-  private static final Class<?>[] EMPTY_ARRAY = new Class[]{};
   volatile private static SerializationFactory serialFactory = null;
 
-  /** 
-   * Cache of constructors for each class. Pins the classes so they
-   * can't be garbage collected until ReflectionUtils can be collected.
-   */
-  private static final Map<Class<?>, Constructor<?>> CONSTRUCTOR_CACHE = 
-    new ConcurrentHashMap<Class<?>, Constructor<?>>();
-
   /**
    * Check and set 'configuration' if necessary.
    * 
    * @param theObject object for which to set configuration
    * @param conf Configuration
    */
+  @SuppressWarnings("unchecked")
   public static void setConf(Object theObject, Configuration conf) {
     if (conf != null) {
-      if (theObject instanceof Configurable) {
-        ((Configurable) theObject).setConf(conf);
-      }
-      setJobConf(theObject, conf);
-    }
-  }
-  
-  /**
-   * This code is to support backward compatibility and break the compile  
-   * time dependency of core on mapred.
-   * This should be made deprecated along with the mapred package HADOOP-1230. 
-   * Should be removed when mapred package is removed.
-   */
-  private static void setJobConf(Object theObject, Configuration conf) {
-    //If JobConf and JobConfigurable are in classpath, AND
-    //theObject is of type JobConfigurable AND
-    //conf is of type JobConf then
-    //invoke configure on theObject
-    try {
-      Class<?> jobConfClass = 
-        conf.getClassByName("org.apache.hadoop.mapred.JobConf");
-      Class<?> jobConfigurableClass = 
-        conf.getClassByName("org.apache.hadoop.mapred.JobConfigurable");
-       if (jobConfClass.isAssignableFrom(conf.getClass()) &&
-            jobConfigurableClass.isAssignableFrom(theObject.getClass())) {
-        Method configureMethod = 
-          jobConfigurableClass.getMethod("configure", jobConfClass);
-        configureMethod.invoke(theObject, conf);
-      }
-    } catch (ClassNotFoundException e) {
-      //JobConf/JobConfigurable not in classpath. no need to configure
-    } catch (Exception e) {
-      throw new RuntimeException("Error in configuring object", e);
+      ((Instantiator<Object>) Instantiator.get(theObject.getClass()))
+        .setConf(theObject, conf);
     }
   }
 
@@ -108,22 +65,8 @@ public class ReflectionUtils {
    * @param conf Configuration
    * @return a new object
    */
-  @SuppressWarnings("unchecked")
   public static <T> T newInstance(Class<T> theClass, Configuration conf) {
-    T result;
-    try {
-      Constructor<T> meth = (Constructor<T>) CONSTRUCTOR_CACHE.get(theClass);
-      if (meth == null) {
-        meth = theClass.getDeclaredConstructor(EMPTY_ARRAY);
-        meth.setAccessible(true);
-        CONSTRUCTOR_CACHE.put(theClass, meth);
-      }
-      result = meth.newInstance();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
-    setConf(result, conf);
-    return result;
+    return Instantiator.get(theClass).newInstance(conf);
   }
 
   static private ThreadMXBean threadBean = 
@@ -227,11 +170,11 @@ public class ReflectionUtils {
   
   // methods to support testing
   static void clearCache() {
-    CONSTRUCTOR_CACHE.clear();
+    Instantiator.clearCache();
   }
     
   static int getCacheSize() {
-    return CONSTRUCTOR_CACHE.size();
+    return Instantiator.getCacheSize();
   }
   /**
    * A pair of input/output buffers that we use to clone writables.
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.util;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Runs the tasks of one owner, such as a stream compressing or decompressing
+ * blocks in the background, at most a given number at a time, on a pool of
+ * daemon threads shared by all owners in the JVM. The shared pool has one
+ * thread per processor; threads are started as needed and stop when idle.
+ *
+ * <p>Tasks submitted from a thread of the shared pool run in the submitting
+ * thread, so that tasks waiting for other tasks cannot starve the pool.
+ * Cancelling the future of a task not yet started keeps it from running.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class ThrottledExecutor {
+  private static final ThreadPoolExecutor SHARED;
+  static {
+    int threads = Runtime.getRuntime().availableProcessors();
+    SHARED = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new WorkerFactory());
+    SHARED.allowCoreThreadTimeOut(true);
+  }
+
+  /** A thread of the shared pool. */
+  private static class Worker extends Daemon {
+    Worker(Runnable runnable, String name) {
+      super(runnable);
+      setName(name);
+    }
+  }
+
+  private static class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable runnable) {
+      return new Worker(runnable,
+                        "ThrottledExecutor-" + count.incrementAndGet());
+    }
+  }
+
+  private final int limit;
+  // tasks submitted and not yet handed to the shared pool
+  private final Queue<Runnable> waiting = new LinkedList<Runnable>();
+  private int running;
+
+  /**
+   * @param limit the most tasks of this owner to run at a time
+   */
+  public ThrottledExecutor(int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit(" + limit + ") < 1");
+    }
+    this.limit = limit;
+  }
+
+  /** The number of threads of the shared pool. */
+  public static int getPoolSize() {
+    return SHARED.getMaximumPoolSize();
+  }
+
+  /**
+   * Run a task once fewer than the limit of tasks of this owner run.
+   * @return the future of the task
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    FutureTask<T> future = new FutureTask<T>(task);
+    if (Thread.currentThread() instanceof Worker) {
+      future.run();
+      return future;
+    }
+    synchronized (this) {
+      if (running >= limit) {
+        waiting.add(future);
+        return future;
+      }
+      ++running;
+    }
+    start(future);
+    return future;
+  }
+
+  /** Hand a task to the shared pool, then the next waiting one. */
+  private void start(final Runnable task) {
+    SHARED.execute(new Runnable() {
+      public void run() {
+        try {
+          task.run();
+        } finally {
+          Runnable next;
+          synchronized (ThrottledExecutor.this) {
+            next = waiting.poll();
+            if (next == null) {
+              --running;
+            }
+          }
+          if (next != null) {
+            start(next);
+          }
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.conf;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that snapshots of configurations resolve values as configurations
+ * do, and that configurations see changes to the resources they parse, also
+ * when cached.
+ */
+public class TestImmutableConfiguration {
+  private static final File DIR =
+    new File(System.getProperty("test.build.data", "/tmp"),
+             "TestImmutableConfiguration");
+  private static final File CONFIG = new File(DIR, "config.xml");
+  private static final File INCLUDED = new File(DIR, "included.xml");
+
+  static {
+    Configuration.addDeprecation("test.immutable.old",
+                                 new String[] { "test.immutable.new" });
+  }
+
+  @After
+  public void tearDown() {
+    CONFIG.delete();
+    INCLUDED.delete();
+    DIR.delete();
+  }
+
+  private static void writeConfig(File file, String include,
+                                  String... properties) throws IOException {
+    DIR.mkdirs();
+    Writer out = new FileWriter(file);
+    try {
+      out.write("<?xml version=\"1.0\"?>\n<configuration>\n");
+      if (include != null) {
+        out.write("<xi:include href=\"" + include + "\" " +
+                  "xmlns:xi=\"http://www.w3.org/2001/XInclude\"/>\n");
+      }
+      for (int i = 0; i < properties.length; i += 2) {
+        out.write("<property><name>" + properties[i] + "</name><value>" +
+                  properties[i + 1] + "</value></property>\n");
+      }
+      out.write("</configuration>\n");
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testGet() throws IOException {
+    writeConfig(CONFIG, null, "test.int", "${test.base}0", "test.base", "4");
+    Configuration conf = new Configuration();
+    conf.addResource(new Path(CONFIG.getAbsolutePath()));
+    conf.set("test.long", "0x10");
+    conf.set("test.bool", "true");
+    conf.set("test.float", "0.5");
+    conf.set("test.dir", "/tmp/${user.name}");
+    conf.set("test.immutable.new", "new");
+    ImmutableConfiguration snapshot = new ImmutableConfiguration(conf);
+    conf.set("test.base", "5");
+
+    for (int i = 0; i < 2; ++i) {
+      assertEquals(40, snapshot.getInt("test.int", 0));
+      assertEquals("40", snapshot.get("test.int"));
+      assertEquals(16, snapshot.getLong("test.long", 0));
+      assertTrue(snapshot.getBoolean("test.bool", false));
+      assertEquals(0.5f, snapshot.getFloat("test.float", 0), 0);
+      assertEquals("/tmp/" + System.getProperty("user.name"),
+                   snapshot.get("test.dir"));
+      assertEquals("new", snapshot.get("test.immutable.old"));
+      assertNull(snapshot.get("test.unset"));
+      assertEquals("x", snapshot.get("test.unset", "x"));
+      assertEquals(7, snapshot.getInt("test.unset", 7));
+      assertFalse(snapshot.getBoolean("test.long", false));
+    }
+    assertEquals(50, conf.getInt("test.int", 0));
+    // copies are not immutable
+    Configuration copy = new Configuration(snapshot);
+    copy.set("test.base", "6");
+    assertEquals(60, copy.getInt("test.int", 0));
+  }
+
+  @Test
+  public void testNotNumbers() {
+    Configuration conf = new Configuration(false);
+    conf.set("test.bad", "notanumber");
+    conf.set("test.big", "99999999999");
+    ImmutableConfiguration snapshot = new ImmutableConfiguration(conf);
+    for (int i = 0; i < 2; ++i) {
+      // each caller gets its own default, as from the configuration
+      assertEquals(1, snapshot.getInt("test.bad", 1));
+      assertEquals(2, snapshot.getInt("test.bad", 2));
+      assertEquals(3L, snapshot.getLong("test.bad", 3L));
+      assertEquals(4L, snapshot.getLong("test.bad", 4L));
+      assertEquals(0.5f, snapshot.getFloat("test.bad", 0.5f), 0);
+      assertEquals(1.5f, snapshot.getFloat("test.bad", 1.5f), 0);
+      assertTrue(Float.isNaN(snapshot.getFloat("test.bad", Float.NaN)));
+      // a number, but not an int
+      assertEquals(5, snapshot.getInt("test.big", 5));
+      assertEquals(99999999999L, snapshot.getLong("test.big", 6L));
+      assertEquals(7, snapshot.getInt("test.big", 7));
+    }
+  }
+
+  @Test
+  public void testImmutable() {
+    ImmutableConfiguration snapshot =
+      new ImmutableConfiguration(new Configuration());
+    try {
+      snapshot.set("test.base", "4");
+      fail("set");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.setInt("test.base", 4);
+      fail("setInt");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.addResource("test-resource.xml");
+      fail("addResource");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.clear();
+      fail("clear");
+    } catch (UnsupportedOperationException e) {
+    }
+    String value = snapshot.get("fs.default.name");
+    // as when a default resource is added
+    snapshot.reloadConfiguration();
+    assertEquals(value, snapshot.get("fs.default.name"));
+  }
+
+  @Test
+  public void testChangedResource() throws IOException {
+    writeConfig(CONFIG, null, "test.value", "a");
+    ClassLoader loader =
+      new URLClassLoader(new URL[] { DIR.toURI().toURL() }, null);
+    Configuration conf = new Configuration(false);
+    conf.setClassLoader(loader);
+    conf.addResource(CONFIG.getName());
+    assertEquals("a", conf.get("test.value"));
+
+    // same length and modification time, other content
+    long modified = CONFIG.lastModified();
+    writeConfig(CONFIG, null, "test.value", "b");
+    CONFIG.setLastModified(modified);
+    conf = new Configuration(false);
+    conf.setClassLoader(loader);
+    conf.addResource(CONFIG.getName());
+    assertEquals("b", conf.get("test.value"));
+
+    // files named by paths are read every time
+    Path path = new Path(CONFIG.getAbsolutePath());
+    conf = new Configuration(false);
+    conf.addResource(path);
+    assertEquals("b", conf.get("test.value"));
+    writeConfig(CONFIG, null, "test.value", "c");
+    CONFIG.setLastModified(modified);
+    conf = new Configuration(false);
+    conf.addResource(path);
+    assertEquals("c", conf.get("test.value"));
+  }
+
+  @Test
+  public void testChangedInclude() throws IOException {
+    writeConfig(INCLUDED, null, "test.included", "a");
+    writeConfig(CONFIG, INCLUDED.getAbsolutePath(), "test.value", "v");
+    Path path = new Path(CONFIG.getAbsolutePath());
+    Configuration conf = new Configuration(false);
+    conf.addResource(path);
+    assertEquals("a", conf.get("test.included"));
+
+    long modified = CONFIG.lastModified();
+    writeConfig(INCLUDED, null, "test.included", "b");
+    conf = new Configuration(false);
+    conf.addResource(path);
+    assertEquals(modified, CONFIG.lastModified());
+    assertEquals("b", conf.get("test.included"));
+    assertEquals("v", conf.get("test.value"));
+  }
+}
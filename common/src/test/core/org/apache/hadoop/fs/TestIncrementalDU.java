@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the usage kept by IncrementalDU against the files written. Run as a
+ * program it reports the time to count the usage of a directory tree with
+ * 'du' and by walking it.
+ */
+public class TestIncrementalDU {
+  private static final File DU_DIR = new File(
+      System.getProperty("test.build.data", "/tmp"), "TestIncrementalDU");
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtil.fullyDelete(DU_DIR);
+    assertTrue(DU_DIR.mkdirs());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtil.fullyDelete(DU_DIR);
+  }
+
+  private static void createFile(File file, int size) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[size]);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Create files of 1 to n bytes spread over subdirectories of dir.
+   * @return the total length
+   */
+  private static long createTree(File dir, int n) throws IOException {
+    long length = 0;
+    for (int i = 1; i <= n; ++i) {
+      File sub = new File(dir, "subdir" + (i % 8) + "/subdir" + (i % 3));
+      sub.mkdirs();
+      createFile(new File(sub, "blk_" + i), i);
+      length += i;
+    }
+    return length;
+  }
+
+  @Test
+  public void testUsage() throws IOException {
+    long length = createTree(DU_DIR, 100);
+    IncrementalDU du = new IncrementalDU(DU_DIR, 0);
+    assertEquals(length, du.getUsed());
+
+    // reported bytes are counted until the next walk
+    File file = new File(DU_DIR, "blk_new");
+    createFile(file, 4096);
+    du.incDfsUsed(4096);
+    assertEquals(length + 4096, du.getUsed());
+    assertTrue(file.delete());
+    du.decDfsUsed(4096);
+    du.incDfsUsed(1000);
+    assertEquals(length + 1000, du.getUsed());
+    du.reconcile();
+    assertEquals(length, du.getUsed());
+
+    assertEquals(100, new IncrementalDU(
+        new File(DU_DIR, "subdir4/subdir1/blk_100"), 0).getUsed());
+  }
+
+  @Test
+  public void testMissingDir() {
+    try {
+      new IncrementalDU(new File(DU_DIR, "missing"), 0);
+      fail("Usage of a missing directory");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReconcileThread() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(CommonConfigurationKeysPublic.FS_DU_INTERVAL_KEY, 100);
+    IncrementalDU du = new IncrementalDU(DU_DIR, conf);
+    du.start();
+    try {
+      assertEquals(0, du.getUsed());
+      long length = createTree(DU_DIR, 10);
+      for (int i = 0; i < 100 && du.getUsed() != length; ++i) {
+        Thread.sleep(50);
+      }
+      assertEquals(length, du.getUsed());
+    } finally {
+      du.shutdown();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int files = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    FileUtil.fullyDelete(DU_DIR);
+    DU_DIR.mkdirs();
+    createTree(DU_DIR, files);
+    try {
+      for (int i = 0; i < 3; ++i) {
+        long start = System.nanoTime();
+        for (int j = 0; j < runs; ++j) {
+          new DU(DU_DIR, 0).getUsed();
+        }
+        long duNanos = System.nanoTime() - start;
+        IncrementalDU du = new IncrementalDU(DU_DIR, 0);
+        start = System.nanoTime();
+        for (int j = 0; j < runs; ++j) {
+          du.reconcile();
+        }
+        long walkNanos = System.nanoTime() - start;
+        System.out.println(files + " files: du " + duNanos / runs / 1000 +
+            " us, walk " + walkNanos / runs / 1000 + " us");
+      }
+    } finally {
+      FileUtil.fullyDelete(DU_DIR);
+    }
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.hadoop.fs;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.Shell;
@@ -40,11 +41,11 @@ public class TestLocalDirAllocator extends TestCase {
   final static private String BUFFER_DIR[] = new String[] {
     BUFFER_DIR_ROOT+"/tmp0",  BUFFER_DIR_ROOT+"/tmp1", BUFFER_DIR_ROOT+"/tmp2",
     BUFFER_DIR_ROOT+"/tmp3", BUFFER_DIR_ROOT+"/tmp4", BUFFER_DIR_ROOT+"/tmp5",
-    BUFFER_DIR_ROOT+"/tmp6"};
+    BUFFER_DIR_ROOT+"/tmp6", BUFFER_DIR_ROOT+"/tmp7", BUFFER_DIR_ROOT+"/tmp8"};
   final static private Path BUFFER_PATH[] = new Path[] {
     new Path(BUFFER_DIR[0]), new Path(BUFFER_DIR[1]), new Path(BUFFER_DIR[2]),
     new Path(BUFFER_DIR[3]), new Path(BUFFER_DIR[4]), new Path(BUFFER_DIR[5]),
-    new Path(BUFFER_DIR[6])};
+    new Path(BUFFER_DIR[6]), new Path(BUFFER_DIR[7]), new Path(BUFFER_DIR[8])};
   final static private String CONTEXT = "dfs.client.buffer.dir";
   final static private String FILENAME = "block";
   final static private LocalDirAllocator dirAllocator = 
@@ -207,5 +208,134 @@ public class TestLocalDirAllocator extends TestCase {
       rmBufferDirs();
     }
   }
-  
+
+  /** Two buffer dirs with weighted placement. A file in the way of the
+   * first fails its check, which is then trusted for the check interval.
+   * @throws Exception
+   */
+  public void test5() throws Exception {
+    Configuration wconf = new Configuration(conf);
+    try {
+      wconf.set(CONTEXT, BUFFER_DIR[7]+","+BUFFER_DIR[8]);
+      wconf.set(CommonConfigurationKeys.FS_LOCAL_DIR_PLACEMENT_KEY,
+                LocalDirAllocator.PLACEMENT_WEIGHTED);
+      wconf.setLong(CommonConfigurationKeys.FS_LOCAL_DIR_CHECK_INTERVAL_KEY,
+                    60000);
+      assertTrue(localFs.mkdirs(BUFFER_PATH[7]));
+      assertTrue(localFs.mkdirs(BUFFER_PATH[8]));
+      File blocker = new File(BUFFER_DIR[7], "sub");
+      assertTrue(blocker.createNewFile());
+      for (int i = 0; i < TRIALS; ++i) {
+        Path path = dirAllocator.getLocalPathForWrite("sub/" + FILENAME,
+            SMALL_FILE_SIZE, wconf);
+        assertTrue(path.toString(), path.toString().startsWith(
+            new Path(BUFFER_DIR[8], "sub").toString()));
+      }
+      // still skipped once the file is gone
+      assertTrue(blocker.delete());
+      for (int i = 0; i < TRIALS; ++i) {
+        Path path = dirAllocator.getLocalPathForWrite(FILENAME, wconf);
+        assertTrue(path.toString(), path.toString().startsWith(BUFFER_DIR[8]));
+      }
+    } finally {
+      rmBufferDirs();
+    }
+  }
+
+  /** Two buffer dirs written from several threads at once.
+   * @throws Exception
+   */
+  public void test6() throws Exception {
+    final Configuration wconf = new Configuration(conf);
+    try {
+      wconf.set(CONTEXT, BUFFER_DIR[7]+","+BUFFER_DIR[8]);
+      wconf.set(CommonConfigurationKeys.FS_LOCAL_DIR_PLACEMENT_KEY,
+                LocalDirAllocator.PLACEMENT_WEIGHTED);
+      final AtomicInteger[] placed = { new AtomicInteger(),
+                                       new AtomicInteger() };
+      final AtomicInteger failed = new AtomicInteger();
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; ++i) {
+        final int thread = i;
+        threads[i] = new Thread() {
+          public void run() {
+            try {
+              for (int j = 0; j < TRIALS; ++j) {
+                Path path = dirAllocator.getLocalPathForWrite(
+                    thread + "/" + FILENAME, SMALL_FILE_SIZE, wconf);
+                placed[path.toString().startsWith(BUFFER_DIR[7]) ? 0 : 1]
+                    .incrementAndGet();
+              }
+            } catch (IOException e) {
+              failed.incrementAndGet();
+            }
+          }
+        };
+        threads[i].start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      assertEquals(0, failed.get());
+      assertEquals(threads.length * TRIALS, placed[0].get() + placed[1].get());
+      assertTrue(placed[0].get() > 0 && placed[1].get() > 0);
+    } finally {
+      rmBufferDirs();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int calls = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+    final Configuration[] confs = { new Configuration(conf),
+                                    new Configuration(conf) };
+    String dirs = BUFFER_DIR[0];
+    for (int i = 1; i < 4; ++i) {
+      dirs += "," + BUFFER_DIR[i];
+    }
+    confs[0].set(CONTEXT, dirs);
+    confs[1].set(CONTEXT, dirs);
+    confs[1].set(CommonConfigurationKeys.FS_LOCAL_DIR_PLACEMENT_KEY,
+                 LocalDirAllocator.PLACEMENT_WEIGHTED);
+    confs[1].setLong(CommonConfigurationKeys.FS_LOCAL_DIR_CHECK_INTERVAL_KEY,
+                     10000);
+    final int perThread = calls / threads;
+    try {
+      for (int i = 0; i < 3; ++i) {
+        for (final Configuration c : confs) {
+          // directories checked before timing
+          final LocalDirAllocator allocator =
+            new LocalDirAllocator(CONTEXT);
+          allocator.getLocalPathForWrite(FILENAME, 1, c);
+          Thread[] workers = new Thread[threads];
+          long start = System.nanoTime();
+          for (int t = 0; t < threads; ++t) {
+            final String file = "job/spill" + t + ".out";
+            workers[t] = new Thread() {
+              public void run() {
+                try {
+                  for (int j = 0; j < perThread; ++j) {
+                    allocator.getLocalPathForWrite(file, 1024, c);
+                  }
+                } catch (IOException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+            };
+            workers[t].start();
+          }
+          for (Thread t : workers) {
+            t.join();
+          }
+          long nanos = System.nanoTime() - start;
+          System.out.println(
+              c.get(CommonConfigurationKeys.FS_LOCAL_DIR_PLACEMENT_KEY,
+                    "round-robin") + ", " + threads + " threads: " +
+              (long) (perThread * threads / (nanos / 1e9)) + " paths/s");
+        }
+      }
+    } finally {
+      rmBufferDirs();
+    }
+  }
 }
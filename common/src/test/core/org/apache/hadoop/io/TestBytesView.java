@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Checks that views compare, hash and serialize as the Writables whose
+ * format they share.
+ */
+public class TestBytesView {
+
+  private static byte[] serialize(Writable w) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    w.write(out);
+    byte[] b = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, b, 0, b.length);
+    return b;
+  }
+
+  @Test
+  public void testView() {
+    byte[] b = "xxhadoopxx".getBytes();
+    BytesView view = new BytesView(b, 2, 6);
+    assertSame(b, view.getBytes());
+    assertEquals(2, view.getOffset());
+    assertEquals(6, view.getLength());
+    assertArrayEquals("hadoop".getBytes(), view.copyBytes());
+    // the view follows changes to the array
+    b[2] = 'H';
+    assertEquals('H', view.copyBytes()[0]);
+    try {
+      view.set(b, 6, 5);
+      fail("range past the array");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    view.set(ByteBuffer.wrap(b, 8, 2));
+    assertSame(b, view.getBytes());
+    assertEquals(8, view.getOffset());
+    ByteBuffer direct = ByteBuffer.allocateDirect(3);
+    direct.put("abc".getBytes()).flip();
+    view.set(direct);
+    assertArrayEquals("abc".getBytes(), view.copyBytes());
+    assertEquals(0, direct.position());
+  }
+
+  @Test
+  public void testBytesWritableFormat() throws IOException {
+    byte[] b = "--hadoop--".getBytes();
+    BytesView view = new BytesView(b, 2, 6);
+    BytesWritable bytes = new BytesWritable("hadoop".getBytes());
+    assertArrayEquals(serialize(bytes), serialize(view));
+    assertEquals(bytes.hashCode(), view.hashCode());
+
+    BytesView read = new BytesView();
+    DataInputBuffer in = new DataInputBuffer();
+    byte[] serialized = serialize(bytes);
+    in.reset(serialized, serialized.length);
+    read.readFields(in);
+    assertEquals(view, read);
+    assertEquals(bytes.toString(), read.toString());
+
+    BytesView other = new BytesView("hadooq".getBytes(), 0, 6);
+    assertTrue(view.compareTo(other) < 0);
+    byte[] o = serialize(other);
+    assertTrue(WritableComparator.get(BytesView.class).compare(
+        serialized, 0, serialized.length, o, 0, o.length) < 0);
+  }
+
+  @Test
+  public void testTextFormat() throws IOException {
+    String s = "caf\u00e9 \u4e2d\u6587";
+    Text text = new Text(s);
+    byte[] b = new byte[text.getLength() + 3];
+    System.arraycopy(text.getBytes(), 0, b, 3, text.getLength());
+    TextView view = new TextView(b, 3, text.getLength());
+    assertEquals(s, view.toString());
+    assertArrayEquals(serialize(text), serialize(view));
+    assertEquals(text.hashCode(), view.hashCode());
+    assertFalse(view.equals(new BytesView(b, 3, text.getLength())));
+
+    TextView read = new TextView();
+    DataInputBuffer in = new DataInputBuffer();
+    byte[] serialized = serialize(text);
+    in.reset(serialized, serialized.length);
+    read.readFields(in);
+    assertEquals(view, read);
+
+    byte[] o = serialize(new Text("cafe"));
+    assertEquals(Integer.signum(WritableComparator.get(Text.class).compare(
+        serialized, 0, serialized.length, o, 0, o.length)),
+        Integer.signum(WritableComparator.get(TextView.class).compare(
+        serialized, 0, serialized.length, o, 0, o.length)));
+  }
+}
@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that ColumnFiles return the rows written, whole or projected, that
+ * row groups carry the least and greatest values of their columns, and that
+ * files split at sync markers. Run as a program it reports the rows per
+ * second scanned from a SequenceFile of wide records and from a ColumnFile
+ * of the same rows, reading all columns and a projection of two.
+ */
+public class TestColumnFile {
+  private static final int ROWS = 20000;
+
+  private final Path path = new Path(
+      System.getProperty("test.build.data", "/tmp"), "TestColumnFile.clf");
+  private Configuration conf;
+  private FileSystem fs;
+  private ColumnFile.Schema schema;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    // many small row groups
+    conf.setLong(
+        CommonConfigurationKeysPublic.IO_COLUMNFILE_ROWGROUP_SIZE_KEY, 8192);
+    fs = FileSystem.getLocal(conf);
+    schema = new ColumnFile.Schema()
+      .addColumn("id", IntWritable.class)
+      .addColumn("name", Text.class, DefaultCodec.class)
+      .addColumn("score", DoubleWritable.class, DefaultCodec.class)
+      .addColumn("tags", MapWritable.class);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(path, false);
+  }
+
+  private static Text name(Random random, int i) {
+    StringBuilder s = new StringBuilder(i + ":");
+    for (int j = random.nextInt(40); j > 0; --j) {
+      s.append((char) ('a' + random.nextInt(4)));
+    }
+    return new Text(s.toString());
+  }
+
+  private void writeFile() throws IOException {
+    ColumnFile.Writer writer =
+      new ColumnFile.Writer(fs, conf, path, schema);
+    try {
+      Random random = new Random(ROWS);
+      for (int i = 0; i < ROWS; ++i) {
+        MapWritable tags = new MapWritable();
+        tags.put(new IntWritable(i % 7), NullWritable.get());
+        writer.append(new IntWritable(i), name(random, i),
+                      new DoubleWritable(i * 0.5), tags);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testRows() throws IOException {
+    writeFile();
+    checkRows();
+  }
+
+  @Test
+  public void testGzipWithoutNative() throws IOException {
+    conf.setBoolean(
+        CommonConfigurationKeysPublic.IO_NATIVE_LIB_AVAILABLE_KEY, false);
+    // gzip has no compressor without native zlib
+    assertNull(CodecPool.getCompressor(
+        ReflectionUtils.newInstance(GzipCodec.class, conf)));
+    schema = new ColumnFile.Schema()
+      .addColumn("id", IntWritable.class)
+      .addColumn("name", Text.class, GzipCodec.class)
+      .addColumn("score", DoubleWritable.class, GzipCodec.class)
+      .addColumn("tags", MapWritable.class);
+    writeFile();
+    checkRows();
+  }
+
+  private void checkRows() throws IOException {
+    ColumnFile.Reader reader = new ColumnFile.Reader(fs, path, conf);
+    try {
+      assertEquals(schema, reader.getSchema());
+      ColumnFile.Row row = new ColumnFile.Row(reader.getSchema());
+      Random random = new Random(ROWS);
+      int i = 0;
+      while (reader.next(row)) {
+        assertEquals(new IntWritable(i), row.get("id"));
+        assertEquals(name(random, i), row.get(1));
+        assertEquals(new DoubleWritable(i * 0.5), row.get("score"));
+        MapWritable tags = (MapWritable) row.get("tags");
+        assertEquals(1, tags.size());
+        assertTrue(tags.containsKey(new IntWritable(i % 7)));
+        ++i;
+      }
+      assertEquals(ROWS, i);
+      assertFalse(reader.next(row));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testProjection() throws IOException {
+    writeFile();
+    ColumnFile.Reader reader = new ColumnFile.Reader(fs, path, conf);
+    try {
+      reader.setProjection("score", "name");
+      ColumnFile.Row row = new ColumnFile.Row(reader.getSchema());
+      Random random = new Random(ROWS);
+      int i = 0;
+      while (reader.next(row)) {
+        assertNull(row.get("id"));
+        assertEquals(name(random, i), row.get("name"));
+        assertEquals(new DoubleWritable(i * 0.5), row.get("score"));
+        assertNull(row.get("tags"));
+        ++i;
+      }
+      assertEquals(ROWS, i);
+    } finally {
+      reader.close();
+    }
+    reader = new ColumnFile.Reader(fs, path, conf);
+    try {
+      reader.setProjection("nonesuch");
+      fail("Projected a missing column");
+    } catch (IllegalArgumentException e) {
+      // expected
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testGroupStatistics() throws IOException {
+    writeFile();
+    ColumnFile.Reader reader = new ColumnFile.Reader(fs, path, conf);
+    try {
+      // groups are skipped by their statistics without reading any column
+      reader.setProjection();
+      int groups = 0;
+      int rows = 0;
+      while (reader.nextGroup()) {
+        assertEquals(new IntWritable(rows), reader.getGroupLeast(0));
+        rows += reader.getGroupRowCount();
+        assertEquals(new IntWritable(rows - 1), reader.getGroupGreatest(0));
+        assertEquals(new DoubleWritable((rows - 1) * 0.5),
+                     reader.getGroupGreatest(2));
+        Text least = (Text) reader.getGroupLeast(1);
+        Text greatest = (Text) reader.getGroupGreatest(1);
+        assertTrue(least.compareTo(greatest) <= 0);
+        assertNull(reader.getGroupLeast(3));
+        ++groups;
+      }
+      assertEquals(ROWS, rows);
+      assertTrue("Only " + groups + " groups", groups > 10);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Read the ids of the given split as ColumnFileRecordReader does.
+   */
+  private List<Integer> readSplit(long start, long end) throws IOException {
+    List<Integer> ids = new ArrayList<Integer>();
+    ColumnFile.Reader reader = new ColumnFile.Reader(fs, path, conf);
+    try {
+      reader.setProjection("id");
+      if (start > reader.getPosition()) {
+        reader.sync(start);
+      }
+      ColumnFile.Row row = new ColumnFile.Row(reader.getSchema());
+      if (reader.getPosition() >= end) {
+        return ids;
+      }
+      while (true) {
+        while (!reader.nextRow(row)) {
+          if (reader.getPosition() >= end || !reader.nextGroup()) {
+            return ids;
+          }
+        }
+        ids.add(((IntWritable) row.get(0)).get());
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSplits() throws IOException {
+    writeFile();
+    long length = fs.getFileStatus(path).getLen();
+    for (int splits : new int[] { 1, 3, 17, 200 }) {
+      List<Integer> all = new ArrayList<Integer>();
+      for (int i = 0; i < splits; ++i) {
+        all.addAll(readSplit(length * i / splits, length * (i + 1) / splits));
+      }
+      assertEquals(ROWS, all.size());
+      for (int i = 0; i < ROWS; ++i) {
+        assertEquals(i, all.get(i).intValue());
+      }
+    }
+  }
+
+  @Test
+  public void testBadValues() throws IOException {
+    ColumnFile.Writer writer =
+      new ColumnFile.Writer(fs, conf, path, schema);
+    try {
+      try {
+        writer.append(new IntWritable(1), null, new DoubleWritable(),
+                      new MapWritable());
+        fail("Appended a null value");
+      } catch (IOException e) {
+        // expected
+      }
+      try {
+        writer.append(new LongWritable(1), new Text(), new DoubleWritable(),
+                      new MapWritable());
+        fail("Appended a value of the wrong class");
+      } catch (IOException e) {
+        // expected
+      }
+    } finally {
+      writer.close();
+    }
+    // a file without rows
+    ColumnFile.Reader reader = new ColumnFile.Reader(fs, path, conf);
+    try {
+      assertFalse(reader.next(new ColumnFile.Row(schema)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * A record of ten fields, stored whole in a SequenceFile.
+   */
+  static class WideRecord implements Writable {
+    final Writable[] fields = {
+      new IntWritable(), new LongWritable(), new DoubleWritable(),
+      new Text(), new Text(), new LongWritable(), new DoubleWritable(),
+      new Text(), new IntWritable(), new Text()
+    };
+
+    public void write(DataOutput out) throws IOException {
+      for (Writable field : fields) {
+        field.write(out);
+      }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+      for (Writable field : fields) {
+        field.readFields(in);
+      }
+    }
+  }
+
+  private static void fill(WideRecord record, Random random, int i) {
+    ((IntWritable) record.fields[0]).set(i);
+    ((LongWritable) record.fields[1]).set(random.nextLong());
+    ((DoubleWritable) record.fields[2]).set(random.nextDouble());
+    ((Text) record.fields[3]).set(name(random, i));
+    ((Text) record.fields[4]).set("category" + random.nextInt(20));
+    ((LongWritable) record.fields[5]).set(i * 1000L);
+    ((DoubleWritable) record.fields[6]).set(random.nextInt(100) / 4.0);
+    ((Text) record.fields[7]).set(name(random, i));
+    ((IntWritable) record.fields[8]).set(random.nextInt(10));
+    ((Text) record.fields[9]).set(name(random, random.nextInt(1000)));
+  }
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path dir = new Path(System.getProperty("test.build.data", "/tmp"));
+    Path seqPath = new Path(dir, "TestColumnFile.seq");
+    Path clfPath = new Path(dir, "TestColumnFile.clf");
+
+    WideRecord record = new WideRecord();
+    ColumnFile.Schema schema = new ColumnFile.Schema();
+    for (int i = 0; i < record.fields.length; ++i) {
+      schema.addColumn("f" + i, record.fields[i].getClass(),
+                       DefaultCodec.class);
+    }
+    SequenceFile.Writer seqWriter = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(seqPath),
+        SequenceFile.Writer.keyClass(NullWritable.class),
+        SequenceFile.Writer.valueClass(WideRecord.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK,
+                                        new DefaultCodec()));
+    ColumnFile.Writer clfWriter =
+      new ColumnFile.Writer(fs, conf, clfPath, schema);
+    Random random = new Random(rows);
+    for (int i = 0; i < rows; ++i) {
+      fill(record, random, i);
+      seqWriter.append(NullWritable.get(), record);
+      clfWriter.append(record.fields);
+    }
+    seqWriter.close();
+    clfWriter.close();
+    System.out.println("SequenceFile " + fs.getFileStatus(seqPath).getLen() +
+        " bytes, ColumnFile " + fs.getFileStatus(clfPath).getLen() +
+        " bytes");
+
+    for (int i = 0; i < 3; ++i) {
+      long start = System.nanoTime();
+      SequenceFile.Reader seqReader =
+        new SequenceFile.Reader(conf, SequenceFile.Reader.file(seqPath));
+      long sum = 0;
+      while (seqReader.next(NullWritable.get(), record)) {
+        sum += ((IntWritable) record.fields[8]).get();
+      }
+      seqReader.close();
+      report("SequenceFile, all fields:   ", rows, start, sum);
+
+      for (String[] projection : new String[][] { null, { "f4", "f8" } }) {
+        start = System.nanoTime();
+        ColumnFile.Reader clfReader =
+          new ColumnFile.Reader(fs, clfPath, conf);
+        if (projection != null) {
+          clfReader.setProjection(projection);
+        }
+        ColumnFile.Row row = new ColumnFile.Row(schema);
+        sum = 0;
+        while (clfReader.next(row)) {
+          sum += ((IntWritable) row.get(8)).get();
+        }
+        clfReader.close();
+        report(projection == null ? "ColumnFile, all columns:    "
+                                  : "ColumnFile, 2 of 10 columns:", rows,
+               start, sum);
+      }
+    }
+    fs.delete(seqPath, false);
+    fs.delete(clfPath, false);
+  }
+
+  private static void report(String what, int rows, long start, long sum) {
+    long nanos = System.nanoTime() - start;
+    System.out.println(what + " " + (long) (rows / (nanos / 1e9)) +
+                       " rows/s (" + sum + ")");
+  }
+}
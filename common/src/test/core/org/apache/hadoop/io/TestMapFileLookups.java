@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks batch lookups in MapFiles and BloomMapFiles and the cache of their
+ * indices. Run as a program it reports the rate of opening MapFiles with
+ * and without the cache, and of single and batch lookups.
+ */
+public class TestMapFileLookups {
+  private static final int RECORDS = 10000;
+
+  private final Path dir = new Path(
+      System.getProperty("test.build.data", "/tmp"), "TestMapFileLookups");
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    fs = FileSystem.getLocal(conf);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(dir, true);
+  }
+
+  /** Write the even numbers below 2 * records. */
+  private static void writeFile(Configuration conf, Path dir, boolean bloom,
+                                int records) throws IOException {
+    FileSystem fs = FileSystem.getLocal(conf);
+    MapFile.Writer writer = bloom
+      ? new BloomMapFile.Writer(conf, fs, dir.toString(),
+                                IntWritable.class, Text.class)
+      : new MapFile.Writer(conf, fs, dir.toString(),
+                           IntWritable.class, Text.class);
+    writer.setIndexInterval(16);
+    for (int i = 0; i < records; ++i) {
+      writer.append(new IntWritable(2 * i), new Text("value" + 2 * i));
+    }
+    writer.close();
+  }
+
+  private static IntWritable[] randomKeys(Random random, int n, int records) {
+    IntWritable[] keys = new IntWritable[n];
+    for (int i = 0; i < n; ++i) {
+      // before, in and after the map, some of them twice
+      keys[i] = i > 0 && random.nextInt(10) == 0
+        ? keys[random.nextInt(i)]
+        : new IntWritable(random.nextInt(2 * records + 20) - 10);
+    }
+    return keys;
+  }
+
+  private void checkBatch(MapFile.Reader reader, int n) throws IOException {
+    Text[] vals = new Text[n];
+    for (int i = 0; i < n; ++i) {
+      vals[i] = new Text();
+    }
+    // a second batch reuses the values of the first, misses included
+    checkBatch(reader, randomKeys(new Random(n), n, RECORDS), vals);
+    checkBatch(reader, randomKeys(new Random(n + 1), n, RECORDS), vals);
+  }
+
+  private void checkBatch(MapFile.Reader reader, IntWritable[] keys,
+                          Text[] vals) throws IOException {
+    Text[] instances = vals.clone();
+    BitSet found = reader.get(keys, vals);
+    int expectedFound = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      int k = keys[i].get();
+      assertSame(instances[i], vals[i]);
+      if (k >= 0 && k < 2 * RECORDS && k % 2 == 0) {
+        assertTrue("key " + k, found.get(i));
+        assertEquals(new Text("value" + k), vals[i]);
+        ++expectedFound;
+      } else {
+        assertFalse("key " + k, found.get(i));
+      }
+    }
+    assertEquals(expectedFound, found.cardinality());
+  }
+
+  @Test
+  public void testBatchGet() throws IOException {
+    writeFile(conf, dir, false, RECORDS);
+    MapFile.Reader reader = new MapFile.Reader(dir, conf);
+    try {
+      for (int n : new int[] { 0, 1, 10, 1000, 50000 }) {
+        checkBatch(reader, n);
+      }
+      // the reader still seeks
+      assertNotNull(reader.get(new IntWritable(10), new Text()));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testBloomBatchGet() throws IOException {
+    writeFile(conf, dir, true, RECORDS);
+    MapFile.Reader reader = new BloomMapFile.Reader(dir, conf);
+    try {
+      for (int n : new int[] { 0, 1, 10, 1000 }) {
+        checkBatch(reader, n);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testIndexCache() throws IOException {
+    conf.setLong(CommonConfigurationKeysPublic.IO_MAP_INDEX_CACHE_SIZE_KEY,
+                 16 << 20);
+    MapFileIndexCache cache = MapFileIndexCache.get(conf);
+    writeFile(conf, dir, true, RECORDS);
+    MapFile.Reader reader = new BloomMapFile.Reader(dir, conf);
+    WritableComparable<?> midKey = reader.midKey();
+    reader.close();
+
+    long hits = cache.hits;
+    reader = new BloomMapFile.Reader(dir, conf);
+    try {
+      // the index and Bloom filter are cached
+      assertEquals(hits + 2, cache.hits);
+      assertEquals(midKey, reader.midKey());
+      assertNotSame(reader.midKey(), reader.midKey());
+      checkBatch(reader, 1000);
+    } finally {
+      reader.close();
+    }
+
+    // a rewritten file is read again
+    fs.delete(dir, true);
+    writeFile(conf, dir, true, RECORDS / 2);
+    long misses = cache.misses;
+    reader = new BloomMapFile.Reader(dir, conf);
+    try {
+      assertEquals(misses + 2, cache.misses);
+      assertNull(reader.get(new IntWritable(RECORDS + 2), new Text()));
+    } finally {
+      reader.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+    int opens = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+    Configuration conf = new Configuration();
+    Path dir = new Path(System.getProperty("test.build.data", "/tmp"),
+                        "TestMapFileLookups");
+    writeFile(conf, dir, false, records);
+    Configuration cached = new Configuration(conf);
+    cached.setLong(CommonConfigurationKeysPublic.IO_MAP_INDEX_CACHE_SIZE_KEY,
+                   256 << 20);
+    for (int i = 0; i < 3; ++i) {
+      for (Configuration c : new Configuration[] { conf, cached }) {
+        long start = System.nanoTime();
+        for (int j = 0; j < opens; ++j) {
+          MapFile.Reader reader = new MapFile.Reader(dir, c);
+          reader.get(new IntWritable(2 * j), new Text());
+          reader.close();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println((c == conf ? "open: " : "open, cached index: ") +
+            (long) (opens / (nanos / 1e9)) + " opens/s");
+      }
+
+      MapFile.Reader reader = new MapFile.Reader(dir, conf);
+      IntWritable[] keys = randomKeys(new Random(i), lookups, records);
+      Text[] vals = new Text[lookups];
+      for (int j = 0; j < lookups; ++j) {
+        vals[j] = new Text();
+      }
+      long start = System.nanoTime();
+      for (int j = 0; j < lookups; ++j) {
+        reader.get(keys[j], vals[j]);
+      }
+      long single = System.nanoTime() - start;
+      start = System.nanoTime();
+      reader.get(keys, vals);
+      long batch = System.nanoTime() - start;
+      reader.close();
+      System.out.println("get: " + (long) (lookups / (single / 1e9)) +
+          " keys/s, batch get: " + (long) (lookups / (batch / 1e9)) +
+          " keys/s");
+    }
+    FileSystem.getLocal(conf).delete(dir, true);
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that block-compressed SequenceFiles written with background
+ * compression are read back by the plain reader. Run as a program it reports
+ * the records written per second with and without background compression.
+ */
+public class TestSequenceFileParallelCompression {
+  private static final int RECORDS = 20000;
+
+  private final Path path = new Path(
+      System.getProperty("test.build.data", "/tmp"),
+      "TestSequenceFileParallelCompression");
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    // many small blocks
+    conf.setInt(
+        CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY, 4096);
+    conf.setInt(
+        CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_KEY, 3);
+    fs = FileSystem.getLocal(conf);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(path, true);
+  }
+
+  private static Text value(Random random, int i) {
+    Text value = new Text();
+    StringBuilder s = new StringBuilder(i + ":");
+    for (int j = random.nextInt(100); j > 0; --j) {
+      s.append((char) ('a' + random.nextInt(4)));
+    }
+    value.set(s.toString());
+    return value;
+  }
+
+  private static SequenceFile.Writer createWriter(Configuration conf,
+                                                  Path path)
+      throws IOException {
+    return SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(path),
+        SequenceFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK,
+                                        new DefaultCodec()));
+  }
+
+  @Test
+  public void testRecords() throws IOException {
+    SequenceFile.Writer writer = createWriter(conf, path);
+    Random random = new Random(RECORDS);
+    IntWritable key = new IntWritable();
+    long length = 0;
+    for (int i = 0; i < RECORDS; ++i) {
+      key.set(i);
+      writer.append(key, value(random, i));
+      if (i % 5000 == 0) {
+        // everything appended so far is written
+        writer.sync();
+        assertTrue(writer.getLength() > length);
+        length = writer.getLength();
+      }
+    }
+    writer.close();
+
+    SequenceFile.Reader reader =
+      new SequenceFile.Reader(conf, SequenceFile.Reader.file(path));
+    try {
+      random = new Random(RECORDS);
+      Text value = new Text();
+      int i = 0;
+      while (reader.next(key, value)) {
+        assertEquals(i, key.get());
+        assertEquals(value(random, i), value);
+        ++i;
+      }
+      assertEquals(RECORDS, i);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testMapFile() throws IOException {
+    // index positions are taken while blocks are still being compressed
+    MapFile.Writer writer = new MapFile.Writer(conf, path,
+        MapFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK,
+                                        new DefaultCodec()));
+    Random random = new Random(RECORDS);
+    for (int i = 0; i < RECORDS; ++i) {
+      writer.append(new IntWritable(2 * i), value(random, 2 * i));
+    }
+    writer.close();
+
+    MapFile.Reader reader = new MapFile.Reader(path, conf);
+    try {
+      Text value = new Text();
+      for (int i = 0; i < RECORDS; i += 37) {
+        assertNotNull(reader.get(new IntWritable(2 * i), value));
+        assertTrue(value.toString().startsWith(2 * i + ":"));
+        assertNull(reader.get(new IntWritable(2 * i + 1), value));
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+    Configuration conf = new Configuration();
+    Path path = new Path(System.getProperty("test.build.data", "/tmp"),
+                         "TestSequenceFileParallelCompression");
+    FileSystem fs = FileSystem.getLocal(conf);
+    Random random = new Random(records);
+    Text[] values = new Text[1024];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = value(random, i);
+    }
+    IntWritable key = new IntWritable();
+    for (int i = 0; i < 3; ++i) {
+      for (int t : new int[] { 0, threads }) {
+        Configuration writeConf = new Configuration(conf);
+        writeConf.setInt(
+            CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_KEY, t);
+        long start = System.nanoTime();
+        SequenceFile.Writer writer = createWriter(writeConf, path);
+        for (int j = 0; j < records; ++j) {
+          key.set(j);
+          writer.append(key, values[j % values.length]);
+        }
+        writer.close();
+        long nanos = System.nanoTime() - start;
+        System.out.println("compression threads " + t + ": " +
+            (long) (records / (nanos / 1e9)) + " records/s");
+      }
+    }
+    fs.delete(path, false);
+  }
+}
@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.util.NativeCodeLoader;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.ThrottledExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that readers decompressing blocks ahead return the same records as
+ * readers that do not, including raw records read into views. Run as a
+ * program it reports the records read per second with and without read
+ * ahead, for several codecs.
+ */
+public class TestSequenceFileReadAhead {
+  private static final int RECORDS = 20000;
+
+  private final Path path = new Path(
+      System.getProperty("test.build.data", "/tmp"),
+      "TestSequenceFileReadAhead.seq");
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    // many small blocks
+    conf.setInt(
+        CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY, 4096);
+    fs = FileSystem.getLocal(conf);
+    writeFile(conf, path, new DefaultCodec(), RECORDS);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    fs.delete(path, false);
+  }
+
+  private static Text value(Random random, int i) {
+    Text value = new Text();
+    StringBuilder s = new StringBuilder(i + ":");
+    for (int j = random.nextInt(100); j > 0; --j) {
+      s.append((char) ('a' + random.nextInt(4)));
+    }
+    value.set(s.toString());
+    return value;
+  }
+
+  private static void writeFile(Configuration conf, Path path,
+                                CompressionCodec codec, int records)
+      throws IOException {
+    ReflectionUtils.setConf(codec, conf);
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(path),
+        SequenceFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK, codec));
+    try {
+      Random random = new Random(records);
+      IntWritable key = new IntWritable();
+      for (int i = 0; i < records; ++i) {
+        key.set(i);
+        writer.append(key, value(random, i));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private SequenceFile.Reader createReader(int readAheadBlocks)
+      throws IOException {
+    Configuration readConf = new Configuration(conf);
+    readConf.setInt(
+        CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_BLOCKS_KEY,
+        readAheadBlocks);
+    return new SequenceFile.Reader(readConf, SequenceFile.Reader.file(path));
+  }
+
+  @Test
+  public void testRecords() throws IOException {
+    SequenceFile.Reader reader = createReader(3);
+    try {
+      Random random = new Random(RECORDS);
+      IntWritable key = new IntWritable();
+      Text value = new Text();
+      int i = 0;
+      while (reader.next(key, value)) {
+        assertEquals(i, key.get());
+        assertEquals(value(random, i), value);
+        ++i;
+      }
+      assertEquals(RECORDS, i);
+      assertFalse(reader.next(key, value));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSkippedValues() throws IOException {
+    SequenceFile.Reader reader = createReader(2);
+    try {
+      Random random = new Random(RECORDS);
+      IntWritable key = new IntWritable();
+      Text value = new Text();
+      DataOutputBuffer rawKey = new DataOutputBuffer();
+      SequenceFile.ValueBytes rawValue = reader.createValueBytes();
+      for (int i = 0; i < RECORDS; ++i) {
+        Text expected = value(random, i);
+        switch (i % 3) {
+        case 0:
+          // the value is skipped
+          assertTrue(reader.next(key));
+          assertEquals(i, key.get());
+          break;
+        case 1:
+          assertTrue(reader.next(key));
+          reader.getCurrentValue(value);
+          assertEquals(expected, value);
+          break;
+        default:
+          rawKey.reset();
+          assertTrue(reader.nextRaw(rawKey, rawValue) > 0);
+          DataInputBuffer in = new DataInputBuffer();
+          in.reset(rawKey.getData(), rawKey.getLength());
+          key.readFields(in);
+          assertEquals(i, key.get());
+        }
+      }
+      assertFalse(reader.next(key));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testManyReaders() throws IOException {
+    List<SequenceFile.Reader> readers = new ArrayList<SequenceFile.Reader>();
+    try {
+      IntWritable key = new IntWritable();
+      for (int i = 0; i < 20; ++i) {
+        SequenceFile.Reader reader = createReader(4);
+        readers.add(reader);
+        assertTrue(reader.next(key));
+      }
+      // the readers share the threads of the JVM
+      int threads = 0;
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        if (t.getName().startsWith("ThrottledExecutor-")) {
+          ++threads;
+        }
+      }
+      assertTrue(threads <= ThrottledExecutor.getPoolSize());
+    } finally {
+      for (SequenceFile.Reader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  @Test
+  public void testRawViews() throws IOException {
+    for (int readAheadBlocks : new int[] { 0, 3 }) {
+      SequenceFile.Reader reader = createReader(readAheadBlocks);
+      try {
+        Random random = new Random(RECORDS);
+        IntWritable key = new IntWritable();
+        Text value = new Text();
+        BytesView rawKey = new BytesView();
+        BytesView rawValue = new BytesView();
+        DataInputBuffer in = new DataInputBuffer();
+        for (int i = 0; i < RECORDS; ++i) {
+          Text expected = value(random, i);
+          assertEquals(4, reader.nextRawKey(rawKey));
+          in.reset(rawKey.getBytes(), rawKey.getOffset(), rawKey.getLength());
+          key.readFields(in);
+          assertEquals(i, key.get());
+          if (i % 5 == 0) {
+            // the value is skipped
+            continue;
+          }
+          assertTrue(reader.nextRawValue(rawValue) > 0);
+          in.reset(rawValue.getBytes(), rawValue.getOffset(),
+                   rawValue.getLength());
+          value.readFields(in);
+          assertEquals(expected, value);
+        }
+        assertEquals(-1, reader.nextRawKey(rawKey));
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Read the records of the given split as SequenceFileRecordReader does.
+   */
+  private List<Integer> readSplit(int readAheadBlocks, long start, long end)
+      throws IOException {
+    List<Integer> keys = new ArrayList<Integer>();
+    SequenceFile.Reader reader = createReader(readAheadBlocks);
+    try {
+      if (start > 0) {
+        reader.sync(start);
+      }
+      IntWritable key = new IntWritable();
+      Text value = new Text();
+      while (true) {
+        long pos = reader.getPosition();
+        if (!reader.next(key, value) || (pos >= end && reader.syncSeen())) {
+          break;
+        }
+        keys.add(key.get());
+      }
+    } finally {
+      reader.close();
+    }
+    return keys;
+  }
+
+  @Test
+  public void testSplits() throws IOException {
+    long length = fs.getFileStatus(path).getLen();
+    int splits = 7;
+    List<Integer> all = new ArrayList<Integer>();
+    for (int i = 0; i < splits; ++i) {
+      long start = length * i / splits;
+      long end = length * (i + 1) / splits;
+      List<Integer> keys = readSplit(4, start, end);
+      assertEquals(readSplit(0, start, end), keys);
+      all.addAll(keys);
+    }
+    assertEquals(RECORDS, all.size());
+    for (int i = 0; i < RECORDS; ++i) {
+      assertEquals(i, all.get(i).intValue());
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    SequenceFile.Reader plain = createReader(0);
+    SequenceFile.Reader reader = createReader(4);
+    try {
+      IntWritable expected = new IntWritable();
+      IntWritable key = new IntWritable();
+      long length = fs.getFileStatus(path).getLen();
+      Random random = new Random();
+      for (int i = 0; i < 50; ++i) {
+        long pos = (long) (random.nextDouble() * length);
+        plain.sync(pos);
+        reader.sync(pos);
+        assertEquals(plain.getPosition(), reader.getPosition());
+        for (int j = random.nextInt(1000); j >= 0; --j) {
+          boolean more = plain.next(expected);
+          assertEquals(more, reader.next(key));
+          if (!more) {
+            break;
+          }
+          assertEquals(expected, key);
+        }
+      }
+    } finally {
+      plain.close();
+      reader.close();
+    }
+  }
+
+  private static long readAll(Configuration conf, Path path)
+      throws IOException {
+    SequenceFile.Reader reader =
+      new SequenceFile.Reader(conf, SequenceFile.Reader.file(path));
+    try {
+      IntWritable key = new IntWritable();
+      Text value = new Text();
+      long records = 0;
+      while (reader.next(key, value)) {
+        ++records;
+      }
+      return records;
+    } finally {
+      reader.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    int blocks = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+    Configuration conf = new Configuration();
+    Path path = new Path(System.getProperty("test.build.data", "/tmp"),
+                         "TestSequenceFileReadAhead.seq");
+    FileSystem fs = FileSystem.getLocal(conf);
+    List<Class<? extends CompressionCodec>> codecs =
+      new ArrayList<Class<? extends CompressionCodec>>();
+    codecs.add(DefaultCodec.class);
+    if (NativeCodeLoader.isNativeCodeLoaded()) {
+      codecs.add(GzipCodec.class);
+    } else {
+      System.out.println("GzipCodec: native hadoop not loaded, skipped");
+    }
+    if (SnappyCodec.isNativeSnappyLoaded(conf)) {
+      codecs.add(SnappyCodec.class);
+    } else {
+      System.out.println("SnappyCodec: native snappy not loaded, skipped");
+    }
+    for (Class<? extends CompressionCodec> c : codecs) {
+      writeFile(conf, path, ReflectionUtils.newInstance(c, conf), records);
+      for (int i = 0; i < 3; ++i) {
+        for (int readAhead : new int[] { 0, blocks }) {
+          Configuration readConf = new Configuration(conf);
+          readConf.setInt(
+              CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_BLOCKS_KEY,
+              readAhead);
+          readConf.setInt(
+              CommonConfigurationKeysPublic.IO_SEQFILE_READ_AHEAD_THREADS_KEY,
+              threads);
+          long start = System.nanoTime();
+          long n = readAll(readConf, path);
+          long nanos = System.nanoTime() - start;
+          System.out.println(c.getSimpleName() + " read ahead " + readAhead +
+              ": " + (long) (n / (nanos / 1e9)) + " records/s");
+        }
+      }
+    }
+    fs.delete(path, false);
+  }
+}
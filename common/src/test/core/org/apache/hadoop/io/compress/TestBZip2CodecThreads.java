@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec.READ_MODE;
+import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
+import org.apache.hadoop.io.compress.bzip2.ParallelCBZip2InputStream;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+
+/**
+ * Checks that BZip2Codec streams compressing and decompressing blocks on
+ * several threads agree with those that do not, including the positions
+ * reported by streams reading splits. Run as a program it reports the
+ * throughput of compression and decompression for numbers of threads.
+ */
+public class TestBZip2CodecThreads {
+  private static final Path path = new Path(
+      System.getProperty("test.build.data", "/tmp"), "TestBZip2CodecThreads");
+
+  private static BZip2Codec codec(int compressThreads, int decompressThreads) {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeysPublic.IO_BZIP2_COMPRESS_THREADS_KEY,
+                compressThreads);
+    conf.setInt(CommonConfigurationKeysPublic.IO_BZIP2_DECOMPRESS_THREADS_KEY,
+                decompressThreads);
+    return ReflectionUtils.newInstance(BZip2Codec.class, conf);
+  }
+
+  /** Lines of words, with some long runs. */
+  private static byte[] data(int len) {
+    Random random = new Random(len);
+    String[] words = { "bzip2", "block", "split", "hadoop", "a", "the" };
+    StringBuilder s = new StringBuilder(len + 300);
+    while (s.length() < len) {
+      if (random.nextInt(50) == 0) {
+        char[] run = new char[random.nextInt(300)];
+        Arrays.fill(run, (char) ('a' + random.nextInt(26)));
+        s.append(run);
+      }
+      s.append(words[random.nextInt(words.length)]);
+      s.append(random.nextInt(1000));
+      s.append(random.nextInt(10) == 0 ? '\n' : ' ');
+    }
+    return s.substring(0, len).getBytes();
+  }
+
+  private static byte[] compress(CompressionCodec codec, byte[] data)
+      throws IOException {
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    CompressionOutputStream out = codec.createOutputStream(buffer);
+    // uneven writes
+    for (int off = 0; off < data.length; ) {
+      int n = Math.min(data.length - off, 1 + off % 100000);
+      out.write(data, off, n);
+      off += n;
+    }
+    out.close();
+    return Arrays.copyOf(buffer.getData(), buffer.getLength());
+  }
+
+  private static byte[] decompress(CompressionCodec codec, byte[] compressed)
+      throws IOException {
+    InputStream in =
+      codec.createInputStream(new ByteArrayInputStream(compressed));
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    IOUtils.copyBytes(in, buffer, 4096, true);
+    return Arrays.copyOf(buffer.getData(), buffer.getLength());
+  }
+
+  @Test
+  public void testStreams() throws IOException {
+    BZip2Codec plain = codec(0, 0);
+    BZip2Codec threads = codec(3, 3);
+    for (int len : new int[] { 0, 1, 1000, 2000000 }) {
+      byte[] data = data(len);
+      byte[] compressed = compress(threads, data);
+      assertArrayEquals(data, decompress(plain, compressed));
+      assertArrayEquals(data, decompress(threads, compressed));
+      assertArrayEquals(data, decompress(threads, compress(plain, data)));
+    }
+  }
+
+  @Test
+  public void testCorruptBlock() throws IOException {
+    byte[] compressed = compress(codec(0, 0), data(2000000));
+    // inside the second block
+    compressed[compressed.length / 2] ^= 0x10;
+    try {
+      decompress(codec(0, 2), compressed);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSkipToNextMarker() throws IOException {
+    byte[] data = data(3000000);
+    byte[] compressed = compress(codec(0, 0), data);
+    // the data of the first block
+    CBZip2InputStream plain = new CBZip2InputStream(
+        new ByteArrayInputStream(compressed), READ_MODE.BYBLOCK);
+    byte[] b = new byte[10000];
+    int first = 0;
+    for (int n; (n = plain.read(b, 0, b.length)) >= 0; first += n) {
+    }
+    plain.close();
+    assertTrue(first > 0 && first < data.length);
+
+    ParallelCBZip2InputStream in = new ParallelCBZip2InputStream(
+        new ByteArrayInputStream(compressed), READ_MODE.BYBLOCK, 2);
+    try {
+      // past the delimiter of the second block
+      assertTrue(in.skipToNextMarker(CBZip2InputStream.BLOCK_DELIMITER, 48));
+      DataOutputBuffer rest = new DataOutputBuffer();
+      for (int n; (n = in.read(b, 0, b.length)) != -1; ) {
+        if (n > 0) {
+          rest.write(b, 0, n);
+        }
+      }
+      assertArrayEquals(Arrays.copyOfRange(data, first, data.length),
+                        Arrays.copyOf(rest.getData(), rest.getLength()));
+      assertFalse(in.skipToNextMarker(CBZip2InputStream.BLOCK_DELIMITER, 48));
+      try {
+        in.skipToNextMarker(0, 64);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Read a split as LineRecordReader does, noting the data read whenever the
+   * position changes.
+   */
+  private static List<Object> readSplit(FileSystem fs, BZip2Codec codec,
+                                        long start, long end)
+      throws IOException {
+    List<Object> events = new ArrayList<Object>();
+    FSDataInputStream file = fs.open(path);
+    SplitCompressionInputStream in = codec.createInputStream(file,
+        codec.createDecompressor(), start, end, READ_MODE.BYBLOCK);
+    try {
+      long pos = in.getPos();
+      events.add(pos);
+      byte[] b = new byte[10000];
+      DataOutputBuffer data = new DataOutputBuffer();
+      int n;
+      while ((n = in.read(b, 0, b.length)) >= 0) {
+        data.write(b, 0, n);
+        if (in.getPos() != pos) {
+          pos = in.getPos();
+          events.add(data.getLength());
+          events.add(pos);
+        }
+      }
+      events.add(data.getLength());
+      events.add(Arrays.hashCode(Arrays.copyOf(data.getData(),
+                                               data.getLength())));
+    } finally {
+      in.close();
+    }
+    return events;
+  }
+
+  @Test
+  public void testSplits() throws IOException {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    byte[] data = data(3000000);
+    FSDataOutputStream out = fs.create(path, true);
+    try {
+      // two concatenated streams
+      out.write(compress(codec(2, 0), data));
+      out.write(compress(codec(0, 0), data));
+    } finally {
+      out.close();
+    }
+    try {
+      BZip2Codec plain = codec(0, 0);
+      BZip2Codec threads = codec(0, 2);
+      long length = fs.getFileStatus(path).getLen();
+      Random random = new Random(length);
+      for (int i = 0; i < 20; ++i) {
+        long start = i == 0 ? 0 : (long) (random.nextDouble() * length);
+        long end = Math.min(length, start + length / 4);
+        assertEquals("split at " + start,
+                     readSplit(fs, plain, start, end),
+                     readSplit(fs, threads, start, end));
+      }
+    } finally {
+      fs.delete(path, false);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int len = args.length > 0 ? Integer.parseInt(args[0]) : 30 << 20;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+    byte[] data = data(len);
+    for (int i = 0; i < 3; ++i) {
+      for (int t : new int[] { 0, threads }) {
+        BZip2Codec codec = codec(t, t);
+        long start = System.nanoTime();
+        byte[] compressed = compress(codec, data);
+        long compressNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        byte[] output = decompress(codec, compressed);
+        long decompressNanos = System.nanoTime() - start;
+        assertEquals(data.length, output.length);
+        System.out.println(String.format(
+            "threads %d: compress %.1f MB/s, decompress %.1f MB/s", t,
+            data.length / (compressNanos / 1e3),
+            data.length / (decompressNanos / 1e3)));
+      }
+    }
+  }
+}
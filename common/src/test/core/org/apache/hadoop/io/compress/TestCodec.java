@@ -96,6 +96,12 @@ public class TestCodec {
     codecTest(conf, seed, count, "org.apache.hadoop.io.compress.BZip2Codec");
   }
   
+  @Test
+  public void testLz4Codec() throws IOException {
+    codecTest(conf, seed, 0, "org.apache.hadoop.io.compress.Lz4Codec");
+    codecTest(conf, seed, count, "org.apache.hadoop.io.compress.Lz4Codec");
+  }
+
   @Test
   public void testSnappyCodec() throws IOException {
     if (LoadSnappy.isAvailable()) {
@@ -437,6 +443,15 @@ public class TestCodec {
     sequenceFileCodecTest(conf, 200000, "org.apache.hadoop.io.compress.DefaultCodec", 1000000);
   }
 
+  @Test
+  public void testSequenceFileLz4Codec() throws IOException,
+      ClassNotFoundException, InstantiationException, IllegalAccessException {
+    String codec = "org.apache.hadoop.io.compress.Lz4Codec";
+    sequenceFileCodecTest(conf, 0, codec, 100);
+    sequenceFileCodecTest(conf, 100, codec, 100);
+    sequenceFileCodecTest(conf, 200000, codec, 1000000);
+  }
+
   @Test
   public void testSequenceFileBZip2Codec() throws IOException, ClassNotFoundException,
       InstantiationException, IllegalAccessException {
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import static org.junit.Assert.*;
+import static org.apache.hadoop.test.MetricsAsserts.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.Test;
+
+public class TestCodecPool {
+
+  private final DefaultCodec codec = new DefaultCodec();
+  {
+    codec.setConf(new Configuration());
+  }
+
+  /** A pool of plain objects, counting those ended. */
+  private static class TestPool extends CodecPool.Pool<Object> {
+    int ended;
+
+    TestPool() {
+      super("test");
+    }
+
+    void end(Object o) {
+      ++ended;
+    }
+  }
+
+  @Test
+  public void testReuse() {
+    CodecPool.Pool<Compressor> pool = CodecPool.getCompressorPool();
+    Compressor compressor = CodecPool.getCompressor(codec);
+    CodecPool.returnCompressor(compressor);
+    long reused = pool.reused.get();
+    CodecPool.returnCompressor(CodecPool.getCompressor(codec));
+    assertEquals(reused + 1, pool.reused.get());
+
+    Decompressor decompressor = CodecPool.getDecompressor(codec);
+    CodecPool.returnDecompressor(decompressor);
+    assertTrue(CodecPool.getDecompressorPool().getPooled(
+        decompressor.getClass()) > 0);
+  }
+
+  @Test
+  public void testBoundedPool() {
+    TestPool pool = new TestPool();
+    List<Object> borrowed = new ArrayList<Object>();
+    for (int i = 0; i < CodecPool.MAX_POOLED + 10; ++i) {
+      Object o = new Object();
+      pool.lease(o, true);
+      borrowed.add(o);
+    }
+    assertEquals(CodecPool.MAX_POOLED + 10, pool.inUse.get());
+    for (Object o : borrowed) {
+      pool.payback(o);
+    }
+    assertEquals(0, pool.inUse.get());
+    assertEquals(CodecPool.MAX_POOLED, pool.getPooled(Object.class));
+    // those beyond the bound are ended
+    assertEquals(10, pool.ended);
+    assertNotNull(pool.borrow(Object.class));
+    assertEquals(1, pool.reused.get());
+    assertEquals(CodecPool.MAX_POOLED - 1, pool.getPooled(Object.class));
+  }
+
+  @Test
+  public void testOtherThreads() throws Exception {
+    final TestPool pool = new TestPool();
+    final Object o = new Object();
+    pool.lease(o, true);
+    Thread t = new Thread() {
+      public void run() {
+        // returned from another thread, which then exits
+        pool.payback(o);
+      }
+    };
+    t.start();
+    t.join();
+    assertEquals(0, pool.inUse.get());
+    assertSame(o, pool.borrow(Object.class));
+    assertNull(pool.borrow(Object.class));
+  }
+
+  @Test
+  public void testLeaks() throws Exception {
+    TestPool pool = new TestPool();
+    // given out, never returned
+    for (int i = 0; i < 3; ++i) {
+      pool.lease(new Object(), true);
+    }
+    assertEquals(3, pool.inUse.get());
+    for (int i = 0; i < 100 && pool.leaked.get() < 3; ++i) {
+      System.gc();
+      Thread.sleep(10);
+      // leaks are noticed when instances are given out
+      Object o = new Object();
+      pool.lease(o, true);
+      pool.payback(o);
+    }
+    assertEquals(3, pool.leaked.get());
+    assertEquals(0, pool.inUse.get());
+  }
+
+  @Test
+  public void testMetrics() {
+    CodecPool.Pool<Compressor> pool = CodecPool.getCompressorPool();
+    Compressor compressor = CodecPool.getCompressor(codec);
+    MetricsRecordBuilder rb = getMetrics("CodecPool");
+    assertCounter("CompressorsCreated", pool.created.get(), rb);
+    assertCounter("CompressorsReused", pool.reused.get(), rb);
+    assertGauge("CompressorsInUse", pool.inUse.get(), rb);
+    CodecPool.returnCompressor(compressor);
+  }
+}
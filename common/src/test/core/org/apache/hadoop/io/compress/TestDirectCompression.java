@@ -0,0 +1,330 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.compress.snappy.SnappyCompressor;
+import org.apache.hadoop.io.compress.snappy.SnappyDecompressor;
+import org.apache.hadoop.io.compress.zlib.BuiltInZlibDeflater;
+import org.apache.hadoop.io.compress.zlib.BuiltInZlibInflater;
+import org.apache.hadoop.io.compress.zlib.ZlibCompressor;
+import org.apache.hadoop.io.compress.zlib.ZlibDecompressor;
+import org.apache.hadoop.io.compress.zlib.ZlibFactory;
+import org.junit.Test;
+
+/**
+ * Checks that compressors and decompressors working on {@link ByteBuffer}s
+ * agree with their byte array methods, for heap and direct buffers. Run as a
+ * program it reports the throughput of the codec streams reading and writing
+ * byte arrays and direct buffers.
+ */
+public class TestDirectCompression {
+  private static final Configuration conf = new Configuration();
+
+  private static byte[] data(int len) {
+    // compressible, but not too much
+    Random random = new Random(len);
+    byte[] b = new byte[len];
+    for (int i = 0; i < len; ++i) {
+      b[i] = (byte) ('a' + random.nextInt(8));
+    }
+    return b;
+  }
+
+  private static ByteBuffer allocate(int len, boolean direct) {
+    return direct ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len);
+  }
+
+  private static byte[] toArray(ByteBuffer b) {
+    byte[] a = new byte[b.remaining()];
+    b.duplicate().get(a);
+    return a;
+  }
+
+  /**
+   * Compress with the byte array methods.
+   */
+  private static byte[] compress(Compressor compressor, byte[] data)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    byte[] b = new byte[1000];
+    compressor.setInput(data, 0, data.length);
+    // as CompressorStream does: native zlib takes the input a buffer at a
+    // time, and only when asked whether it needs more
+    while (!compressor.needsInput()) {
+      out.write(b, 0, compressor.compress(b, 0, b.length));
+    }
+    compressor.finish();
+    while (!compressor.finished()) {
+      out.write(b, 0, compressor.compress(b, 0, b.length));
+    }
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  /**
+   * Compress through the given buffers, feeding and draining a little at a
+   * time.
+   */
+  private static byte[] compress(DirectCompressor compressor, byte[] data,
+                                 boolean directSrc, boolean directDst)
+      throws IOException {
+    ByteBuffer src = allocate(data.length, directSrc);
+    src.put(data);
+    src.flip();
+    ByteBuffer dst = allocate(300, directDst);
+    DataOutputBuffer out = new DataOutputBuffer();
+    int limit = 0;
+    while (!compressor.finished()) {
+      if (limit == data.length) {
+        compressor.finish();
+      }
+      limit = Math.min(limit + 7000, data.length);
+      src.limit(limit);
+      compressor.compress(src, dst);
+      dst.flip();
+      out.write(toArray(dst));
+      dst.clear();
+    }
+    assertFalse(src.hasRemaining());
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static byte[] decompress(DirectDecompressor decompressor,
+                                   byte[] compressed, int len,
+                                   boolean directSrc, boolean directDst)
+      throws IOException {
+    ByteBuffer src = allocate(compressed.length, directSrc);
+    src.put(compressed);
+    src.flip();
+    ByteBuffer dst = allocate(len, directDst);
+    while (!decompressor.finished()) {
+      // the output a little at a time
+      dst.limit(Math.min(dst.position() + 333, len));
+      decompressor.decompress(src, dst);
+    }
+    assertFalse(src.hasRemaining());
+    dst.flip();
+    return toArray(dst);
+  }
+
+  private static void checkStreamCodec(DirectCompressor compressor,
+                                       DirectDecompressor decompressor)
+      throws IOException {
+    byte[] data = data(100000);
+    byte[] expected = compress(compressor, data);
+    for (boolean directSrc : new boolean[] { false, true }) {
+      for (boolean directDst : new boolean[] { false, true }) {
+        String name = compressor.getClass().getSimpleName() + " " +
+                      directSrc + " " + directDst;
+        compressor.reset();
+        byte[] compressed = compress(compressor, data, directSrc, directDst);
+        assertArrayEquals(name, expected, compressed);
+        decompressor.reset();
+        assertArrayEquals(name, data, decompress(decompressor, compressed,
+            data.length, directSrc, directDst));
+      }
+    }
+  }
+
+  @Test
+  public void testBuiltInZlib() throws IOException {
+    checkStreamCodec(new BuiltInZlibDeflater(), new BuiltInZlibInflater());
+  }
+
+  @Test
+  public void testNativeZlib() throws IOException {
+    if (!ZlibFactory.isNativeZlibLoaded(conf)) {
+      return;
+    }
+    checkStreamCodec(new ZlibCompressor(), new ZlibDecompressor());
+  }
+
+  @Test
+  public void testNativeSnappy() throws IOException {
+    if (!SnappyCodec.isNativeSnappyLoaded(conf)) {
+      return;
+    }
+    SnappyCompressor compressor = new SnappyCompressor();
+    SnappyDecompressor decompressor = new SnappyDecompressor();
+    byte[] data = data(50000);
+    for (boolean directSrc : new boolean[] { false, true }) {
+      for (boolean directDst : new boolean[] { false, true }) {
+        ByteBuffer src = allocate(data.length, directSrc);
+        src.put(data);
+        src.flip();
+        ByteBuffer compressed = allocate(
+            SnappyCompressor.maxCompressedLength(data.length), directDst);
+        compressor.reset();
+        compressor.compress(src, compressed);
+        compressed.flip();
+        ByteBuffer uncompressed = allocate(data.length, directSrc);
+        decompressor.reset();
+        decompressor.decompress(compressed, uncompressed);
+        uncompressed.flip();
+        assertArrayEquals(data, toArray(uncompressed));
+      }
+    }
+  }
+
+  @Test
+  public void testStreams() throws IOException {
+    checkStreams(false);
+  }
+
+  @Test
+  public void testNativeZlibStreams() throws IOException {
+    if (!ZlibFactory.isNativeZlibLoaded(conf)) {
+      return;
+    }
+    checkStreams(true);
+  }
+
+  private static void checkStreams(boolean nativeZlib) throws IOException {
+    Configuration codecConf = new Configuration(conf);
+    codecConf.setBoolean(
+        CommonConfigurationKeys.IO_NATIVE_LIB_AVAILABLE_KEY, nativeZlib);
+    DefaultCodec codec = new DefaultCodec();
+    codec.setConf(codecConf);
+    assertEquals(nativeZlib,
+                 codec.createCompressor() instanceof ZlibCompressor);
+    byte[] data = data(200000);
+    int quarter = data.length / 4;
+    ByteBuffer src = ByteBuffer.allocateDirect(data.length);
+    src.put(data);
+    DataOutputBuffer out = new DataOutputBuffer();
+    // two concatenated streams: arrays then a buffer, which is staged
+    // through an array, and a buffer then arrays, which are compressed as
+    // buffers
+    CompressionOutputStream cout = codec.createOutputStream(out);
+    cout.write(data, 0, quarter);
+    src.limit(2 * quarter).position(quarter);
+    ((CompressorStream) cout).write(src);
+    cout.finish();
+    cout = codec.createOutputStream(out);
+    src.limit(3 * quarter).position(2 * quarter);
+    ((CompressorStream) cout).write(src);
+    cout.write(data, 3 * quarter, data.length - 3 * quarter);
+    cout.close();
+
+    for (boolean arrayFirst : new boolean[] { true, false }) {
+      CompressionInputStream cin = codec.createInputStream(
+          new ByteArrayInputStream(out.getData(), 0, out.getLength()));
+      ByteBuffer dst = ByteBuffer.allocateDirect(data.length + 1);
+      // alternately into the buffer and into arrays
+      boolean array = arrayFirst;
+      while (true) {
+        int n;
+        if (array) {
+          byte[] b = new byte[Math.min(dst.remaining(), 1000)];
+          n = cin.read(b);
+          if (n > 0) {
+            dst.put(b, 0, n);
+          }
+        } else {
+          n = ((DecompressorStream) cin).read(dst);
+        }
+        if (n == -1) {
+          break;
+        }
+        assertTrue(n > 0);
+        array = !array;
+      }
+      assertEquals(data.length, dst.position());
+      dst.flip();
+      assertArrayEquals(data, toArray(dst));
+    }
+  }
+
+  private static long writeStream(CompressionCodec codec, byte[] data,
+                                  boolean direct, int rounds)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    ByteBuffer src = ByteBuffer.allocateDirect(data.length);
+    src.put(data);
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; ++i) {
+      out.reset();
+      CompressionOutputStream cout = codec.createOutputStream(out);
+      if (direct) {
+        src.clear();
+        ((CompressorStream) cout).write(src);
+      } else {
+        cout.write(data, 0, data.length);
+      }
+      cout.close();
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long readStream(CompressionCodec codec, byte[] data,
+                                 boolean direct, int rounds)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    CompressionOutputStream cout = codec.createOutputStream(out);
+    cout.write(data, 0, data.length);
+    cout.close();
+    byte[] b = new byte[64 * 1024];
+    ByteBuffer dst = ByteBuffer.allocateDirect(b.length);
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; ++i) {
+      CompressionInputStream cin = codec.createInputStream(
+          new ByteArrayInputStream(out.getData(), 0, out.getLength()));
+      if (direct) {
+        do {
+          dst.clear();
+        } while (((DecompressorStream) cin).read(dst) != -1);
+      } else {
+        while (cin.read(b, 0, b.length) != -1) {
+        }
+      }
+      cin.close();
+    }
+    return System.nanoTime() - start;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int mb = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    byte[] data = data(mb << 20);
+    DefaultCodec codec = new DefaultCodec();
+    codec.setConf(conf);
+    System.out.println("native zlib " +
+        (ZlibFactory.isNativeZlibLoaded(conf) ? "loaded" : "not loaded"));
+    for (int i = 0; i < 3; ++i) {
+      for (boolean direct : new boolean[] { false, true }) {
+        String name = direct ? "direct buffer" : "byte array   ";
+        long nanos = writeStream(codec, data, direct, rounds);
+        System.out.println("write " + name + ": " +
+            (long) (rounds * (double) mb / (nanos / 1e9)) + " MB/s");
+        nanos = readStream(codec, data, direct, rounds);
+        System.out.println("read  " + name + ": " +
+            (long) (rounds * (double) mb / (nanos / 1e9)) + " MB/s");
+      }
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress.lz4;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.util.NativeCodeLoader;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+
+/**
+ * Checks that blocks compressed by {@link Lz4Compressor} decompress to their
+ * input and that corrupt blocks are rejected. Run as a program it reports the
+ * throughput and ratio of {@link Lz4Codec} next to the other codecs.
+ */
+public class TestLz4Compressor {
+
+  /**
+   * Log-like text: words from a small vocabulary and numbers.
+   */
+  private static byte[] text(int len, long seed) {
+    String[] words = { "INFO", "WARN", "attempt_", "task", "map", "reduce",
+                       "org.apache.hadoop.mapred.", "bytes", "hdfs://" };
+    Random random = new Random(seed);
+    StringBuilder s = new StringBuilder(len + 32);
+    while (s.length() < len) {
+      if (random.nextBoolean()) {
+        s.append(random.nextInt(100000));
+      } else {
+        s.append(words[random.nextInt(words.length)]);
+      }
+      s.append(random.nextInt(8) == 0 ? '\n' : ' ');
+    }
+    return s.substring(0, len).getBytes();
+  }
+
+  private static byte[] compress(byte[] data) {
+    byte[] compressed =
+      new byte[Lz4Compressor.maxCompressedLength(data.length)];
+    int n = Lz4Compressor.compress(data, 0, data.length, compressed, 0,
+                                   new int[1 << 14]);
+    return Arrays.copyOf(compressed, n);
+  }
+
+  private static void checkRoundTrip(byte[] data) throws IOException {
+    byte[] compressed = compress(data);
+    assertTrue(compressed.length <=
+               Lz4Compressor.maxCompressedLength(data.length));
+    byte[] b = new byte[data.length];
+    assertEquals(data.length, Lz4Decompressor.decompress(
+        compressed, 0, compressed.length, b, 0, b.length));
+    assertArrayEquals(data, b);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random random = new Random();
+    checkRoundTrip(new byte[0]);
+    checkRoundTrip(new byte[] { 1 });
+    checkRoundTrip(text(11, 1));
+    checkRoundTrip(text(100000, 2));
+    // incompressible
+    byte[] b = new byte[70000];
+    random.nextBytes(b);
+    checkRoundTrip(b);
+    // long runs and overlapping matches
+    checkRoundTrip(new byte[100000]);
+    for (int period = 1; period < 20; ++period) {
+      for (int i = 0; i < b.length; ++i) {
+        b[i] = (byte) (i % period);
+      }
+      checkRoundTrip(b);
+    }
+    // matches further apart than a distance can reach
+    byte[] far = new byte[200000];
+    random.nextBytes(far);
+    System.arraycopy(far, 0, far, 100000, 1000);
+    checkRoundTrip(far);
+  }
+
+  @Test
+  public void testCorruptBlocks() {
+    byte[] data = text(10000, 3);
+    byte[] compressed = compress(data);
+    byte[] b = new byte[data.length];
+    try {
+      // too small for the block
+      Lz4Decompressor.decompress(compressed, 0, compressed.length,
+                                 b, 0, b.length - 1);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    Random random = new Random(compressed.length);
+    for (int i = 0; i < 1000; ++i) {
+      byte[] corrupt = compressed.clone();
+      corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt();
+      int len = random.nextInt(corrupt.length + 1);
+      try {
+        // wrong output is possible, but never out of bounds
+        Lz4Decompressor.decompress(corrupt, 0, len, b, 0, b.length);
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testCompressorStreams() throws IOException {
+    Lz4Compressor compressor = new Lz4Compressor(4096);
+    Lz4Decompressor decompressor = new Lz4Decompressor(4096);
+    Lz4Codec codec = new Lz4Codec();
+    Configuration conf = new Configuration();
+    conf.setInt("io.compression.codec.lz4.buffersize", 4096);
+    codec.setConf(conf);
+    byte[] data = text(100000, 4);
+    for (int i = 0; i < 2; ++i) {
+      // reused after reset
+      compressor.reset();
+      decompressor.reset();
+      assertArrayEquals(data, decompress(codec, decompressor,
+          compress(codec, compressor, data)));
+    }
+  }
+
+  private static byte[] compress(CompressionCodec codec, Compressor c,
+                                 byte[] data) throws IOException {
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    CompressionOutputStream out = codec.createOutputStream(buffer, c);
+    out.write(data);
+    out.close();
+    return Arrays.copyOf(buffer.getData(), buffer.getLength());
+  }
+
+  private static byte[] decompress(CompressionCodec codec, Decompressor d,
+                                   byte[] compressed) throws IOException {
+    CompressionInputStream in = codec.createInputStream(
+        new ByteArrayInputStream(compressed), d);
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    IOUtils.copyBytes(in, buffer, 4096, true);
+    return Arrays.copyOf(buffer.getData(), buffer.getLength());
+  }
+
+  public static void main(String[] args) throws IOException {
+    int len = args.length > 0 ? Integer.parseInt(args[0]) : 64 << 20;
+    Configuration conf = new Configuration();
+    List<Class<? extends CompressionCodec>> codecs =
+      new ArrayList<Class<? extends CompressionCodec>>();
+    codecs.add(Lz4Codec.class);
+    codecs.add(DefaultCodec.class);
+    if (NativeCodeLoader.isNativeCodeLoaded()) {
+      codecs.add(GzipCodec.class);
+    } else {
+      System.out.println("GzipCodec: native hadoop not loaded, skipped");
+    }
+    codecs.add(BZip2Codec.class);
+    byte[] data = text(len, len);
+    for (Class<? extends CompressionCodec> c : codecs) {
+      CompressionCodec codec = ReflectionUtils.newInstance(c, conf);
+      // bzip2 is slow enough for a tenth of the data
+      byte[] input = c == BZip2Codec.class
+        ? Arrays.copyOf(data, data.length / 10) : data;
+      for (int i = 0; i < 3; ++i) {
+        long start = System.nanoTime();
+        byte[] compressed = compress(codec, codec.createCompressor(), input);
+        long compressNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        byte[] output = decompress(codec, codec.createDecompressor(),
+                                   compressed);
+        long decompressNanos = System.nanoTime() - start;
+        assertEquals(input.length, output.length);
+        System.out.println(String.format(
+            "%s: ratio %.2f, compress %.1f MB/s, decompress %.1f MB/s",
+            c.getSimpleName(), (double) input.length / compressed.length,
+            input.length / (compressNanos / 1e3),
+            input.length / (decompressNanos / 1e3)));
+      }
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.file.tfile;
+
+import static org.apache.hadoop.test.MetricsAsserts.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.file.tfile.TFile.Reader;
+import org.apache.hadoop.io.file.tfile.TFile.Reader.Scanner;
+import org.apache.hadoop.io.file.tfile.TFile.Writer;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+
+/**
+ * Checks lookups through the block cache and memory mapped files. Run as a
+ * program it reports the rate of random lookups with and without them.
+ */
+public class TestTFileBlockCache extends TestCase {
+  private static final String ROOT =
+      System.getProperty("test.build.data", "/tmp/tfile-test");
+  private static final int RECORDS = 5000;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path path;
+
+  @Override
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    path = new Path(ROOT, "TestTFileBlockCache");
+    fs = path.getFileSystem(conf);
+    createFile(fs, path, conf, RECORDS, 4096);
+  }
+
+  @Override
+  public void tearDown() throws IOException {
+    fs.delete(path, false);
+  }
+
+  private static byte[] key(int i) {
+    return String.format("key%09d", i).getBytes();
+  }
+
+  private static byte[] value(int i) {
+    return ("value" + i).getBytes();
+  }
+
+  private static void createFile(FileSystem fs, Path path, Configuration conf,
+      int records, int blockSize) throws IOException {
+    FSDataOutputStream out = fs.create(path);
+    Writer writer = new Writer(out, blockSize, "gz", "memcmp", conf);
+    for (int i = 0; i < records; ++i) {
+      writer.append(key(i), value(i));
+    }
+    writer.close();
+    out.close();
+  }
+
+  private static void lookup(Reader reader, Random random, int records,
+      int lookups) throws IOException {
+    Scanner scanner = reader.createScanner();
+    BytesWritable value = new BytesWritable();
+    for (int n = 0; n < lookups; ++n) {
+      int i = random.nextInt(records);
+      assertTrue(scanner.seekTo(key(i)));
+      scanner.entry().getValue(value);
+      assertEquals(new BytesWritable(value(i)), value);
+    }
+    scanner.close();
+  }
+
+  public void testLru() {
+    LruBlockCache cache = new LruBlockCache(100);
+    cache.cacheBlock("a", 0, new byte[40]);
+    cache.cacheBlock("a", 40, new byte[40]);
+    assertNotNull(cache.getBlock("a", 0));
+    // the least recently used block is dropped
+    cache.cacheBlock("b", 0, new byte[40]);
+    assertNull(cache.getBlock("a", 40));
+    assertNotNull(cache.getBlock("a", 0));
+    assertEquals(80, cache.getSize());
+    assertEquals(1, cache.getEvictions());
+    // blocks over the budget are not kept
+    cache.cacheBlock("c", 0, new byte[101]);
+    assertNull(cache.getBlock("c", 0));
+    cache.evictBlocks("a");
+    assertNull(cache.getBlock("a", 0));
+    assertEquals(1, cache.getBlockCount());
+    assertEquals(40, cache.getSize());
+  }
+
+  public void testCachedLookups() throws IOException {
+    conf.setLong("tfile.io.block.cache.size", 16 << 20);
+    Reader reader = new Reader(fs, path, conf);
+    try {
+      lookup(reader, new Random(1), RECORDS, 200);
+    } finally {
+      reader.close();
+    }
+    long misses = BCFile.cacheMisses.get();
+    long hits = BCFile.cacheHits.get();
+    // the blocks are cached for other readers of the file
+    reader = new Reader(fs, path, conf);
+    try {
+      lookup(reader, new Random(1), RECORDS, 200);
+    } finally {
+      reader.close();
+    }
+    assertEquals(misses, BCFile.cacheMisses.get());
+    assertTrue(BCFile.cacheHits.get() > hits);
+
+    MetricsRecordBuilder rb = getMetrics("TFileBlockCache");
+    assertCounter("BlockCacheHits", BCFile.cacheHits.get(), rb);
+    assertCounter("BlockCacheMisses", BCFile.cacheMisses.get(), rb);
+  }
+
+  public void testStreamReader() throws IOException {
+    conf.setLong("tfile.io.block.cache.size", 16 << 20);
+    Reader reader = new Reader(fs.open(path), fs.getFileStatus(path).getLen(),
+        conf);
+    long hits = BCFile.cacheHits.get();
+    try {
+      lookup(reader, new Random(2), RECORDS, 200);
+    } finally {
+      reader.close();
+    }
+    assertTrue(BCFile.cacheHits.get() > hits);
+  }
+
+  public void testMappedLookups() throws IOException {
+    conf.setBoolean("tfile.fs.mmap", true);
+    Reader reader = new Reader(fs, path, conf);
+    try {
+      lookup(reader, new Random(3), RECORDS, 200);
+      Scanner scanner = reader.createScanner();
+      int n = 0;
+      for (; !scanner.atEnd(); scanner.advance()) {
+        ++n;
+      }
+      scanner.close();
+      assertEquals(RECORDS, n);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+    Configuration conf = new Configuration();
+    Path path = new Path(ROOT, "TestTFileBlockCache");
+    FileSystem fs = path.getFileSystem(conf);
+    createFile(fs, path, conf, records, 64 * 1024);
+    String[] modes = { "stream", "mmap", "cache", "cache+mmap" };
+    for (int i = 0; i < 3; ++i) {
+      for (String mode : modes) {
+        Configuration readConf = new Configuration(conf);
+        readConf.setBoolean("tfile.fs.mmap", mode.endsWith("mmap"));
+        if (mode.startsWith("cache")) {
+          readConf.setLong("tfile.io.block.cache.size", 256 << 20);
+        }
+        Reader reader = mode.equals("stream")
+            ? new Reader(fs.open(path), fs.getFileStatus(path).getLen(),
+                         readConf)
+            : new Reader(fs, path, readConf);
+        long start = System.nanoTime();
+        lookup(reader, new Random(i), records, lookups);
+        long nanos = System.nanoTime() - start;
+        reader.close();
+        System.out.println(mode + ": " +
+            (long) (lookups / (nanos / 1e9)) + " lookups/s");
+      }
+    }
+    fs.delete(path, false);
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.TestRPC.TestImpl;
+import org.apache.hadoop.ipc.TestRPC.TestProtocol;
+import org.apache.hadoop.ipc.metrics.RpcProfile;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Test;
+
+/**
+ * Checks that RPC servers profile calls by user and method, keeping the
+ * pairs with the most calls. Run as a program it reports the cost of
+ * adding a call to a profile.
+ */
+public class TestRpcProfile {
+
+  @Test
+  public void testTopCalls() {
+    RpcProfile profile = new RpcProfile(0, 4);
+    Random random = new Random(0);
+    // two heavy hitters among many light ones
+    for (int i = 0; i < 10000; ++i) {
+      if (i % 3 == 0) {
+        profile.add("alice", "getListing", 1, 2);
+      } else if (i % 3 == 1) {
+        profile.add("bob", "create", 3, 4);
+      } else {
+        profile.add("u" + random.nextInt(100), "getFileInfo", 0, 0);
+      }
+    }
+    List<RpcProfile.Calls> top = profile.getTop(10);
+    assertEquals(4, top.size());
+    RpcProfile.Calls first = top.get(0);
+    RpcProfile.Calls second = top.get(1);
+    assertEquals("getListing", first.getMethod());
+    assertEquals("alice", first.getUser());
+    assertEquals("bob", second.getUser());
+    // tracked from the start, so the counts are exact
+    assertEquals(3334, first.getCount());
+    assertEquals(0, first.getError());
+    assertEquals(3333, second.getCount());
+    assertEquals(1.0, first.getAvgQueueTime(), 0);
+    assertEquals(4.0, second.getAvgProcessingTime(), 0);
+    for (RpcProfile.Calls c : top.subList(2, 4)) {
+      assertTrue(c.getCount() - c.getError() <= 3333);
+    }
+    assertEquals(1, profile.getTop(1).size());
+    assertEquals(0, profile.getTop(0).size());
+    assertEquals(0, profile.getTop(-1).size());
+  }
+
+  @Test
+  public void testServer() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeys.IPC_SERVER_CALL_PROFILE_SIZE_KEY, 16);
+    Server server = RPC.getServer(TestProtocol.class, new TestImpl(),
+                                  "0.0.0.0", 0, conf);
+    TestProtocol proxy = null;
+    try {
+      server.start();
+      InetSocketAddress addr = NetUtils.getConnectAddress(server);
+      proxy = (TestProtocol) RPC.getProxy(TestProtocol.class,
+          TestProtocol.versionID, addr, conf);
+      proxy.ping();
+      proxy.echo("foo");
+      proxy.echo("bar");
+
+      String user = UserGroupInformation.getCurrentUser().getShortUserName();
+      List<RpcProfile.Calls> top = server.rpcProfile.getTop(16);
+      assertEquals(2, top.size());
+      assertEquals("echo", top.get(0).getMethod());
+      assertEquals(user, top.get(0).getUser());
+      assertEquals(2, top.get(0).getCount());
+      assertEquals("ping", top.get(1).getMethod());
+      assertTrue(RpcProfile.getProfiles().contains(server.rpcProfile));
+
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(
+          "Hadoop:service=RpcProfile,name=RpcProfileForPort" + addr.getPort());
+      String json = (String) mbs.getAttribute(name, "TopCalls");
+      assertTrue(json, json.contains("\"method\":\"echo\""));
+      assertEquals(16, mbs.getAttribute(name, "Capacity"));
+    } finally {
+      server.stop();
+      if (proxy != null) {
+        RPC.stopProxy(proxy);
+      }
+    }
+    assertFalse(RpcProfile.getProfiles().contains(server.rpcProfile));
+  }
+
+  @Test
+  public void testDisabled() throws IOException {
+    Server server = RPC.getServer(TestProtocol.class, new TestImpl(),
+                                  "0.0.0.0", 0, new Configuration());
+    assertNull(server.rpcProfile);
+    server.stop();
+  }
+
+  public static void main(String[] args) {
+    int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int calls = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+    String[] names = new String[users];
+    for (int i = 0; i < users; ++i) {
+      names[i] = "user" + i;
+    }
+    String[] methods = { "getFileInfo", "getListing", "create", "complete" };
+    Random random = new Random(0);
+    int[] picks = new int[1 << 16];
+    for (int i = 0; i < picks.length; ++i) {
+      // skewed: low numbered users make most calls
+      picks[i] = (int) Math.min(users - 1,
+                                Math.abs(random.nextGaussian()) * users / 20);
+    }
+    for (int i = 0; i < 3; ++i) {
+      // evicting pairs, and all pairs tracked
+      for (int capacity : new int[] { 100, users * methods.length }) {
+        RpcProfile profile = new RpcProfile(0, capacity);
+        long start = System.nanoTime();
+        for (int j = 0; j < calls; ++j) {
+          profile.add(names[picks[j & 0xffff]], methods[j & 3], 1, 1);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println("profile of " + capacity + " pairs: " +
+            nanos / calls + " ns per call");
+      }
+    }
+  }
+}
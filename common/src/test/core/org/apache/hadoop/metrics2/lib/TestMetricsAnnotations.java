@@ -44,6 +44,7 @@ public class TestMetricsAnnotations {
     @Metric MutableRate r1;
     @Metric MutableStat s1;
     @Metric MutableRates rs1;
+    @Metric(interval=10) MutableQuantiles q1;
   }
 
   @Test public void testFields() {
@@ -58,6 +59,8 @@ public class TestMetricsAnnotations {
     metrics.r1.add(1);
     metrics.s1.add(1);
     metrics.rs1.add("rs1", 1);
+    metrics.q1.add(1);
+    metrics.q1.rollover();
 
     MetricsRecordBuilder rb = getMetrics(source);
 
@@ -72,6 +75,11 @@ public class TestMetricsAnnotations {
     verify(rb).addGauge(info("S1AvgTime", "Average time for s1"), 1.0);
     verify(rb).addCounter(info("Rs1NumOps", "Number of ops for rs1"), 1L);
     verify(rb).addGauge(info("Rs1AvgTime", "Average time for rs1"), 1.0);
+    verify(rb).addGauge(info("Q1NumOps",
+                             "Number of ops for q1 in the last 10s"), 1L);
+    verify(rb).addGauge(info("Q199thPercentileTime",
+                             "99th percentile time for q1 in the last 10s"),
+                        1L);
   }
 
   static class BadMetrics {
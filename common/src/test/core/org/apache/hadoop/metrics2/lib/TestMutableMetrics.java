@@ -18,7 +18,10 @@
 
 package org.apache.hadoop.metrics2.lib;
 
+import java.util.Random;
+
 import org.junit.Test;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.AdditionalMatchers.*;
 
@@ -103,4 +106,108 @@ public class TestMutableMetrics {
     assertCounter("BarNumOps", 0L, rb);
     assertGauge("BarAvgTime", 0.0, rb);
   }
+
+  /**
+   * Test that the buckets of quantiles hold the values counted in them
+   */
+  @Test public void testQuantileBuckets() {
+    Random r = new Random();
+    for (int i = 0; i < 100000; ++i) {
+      long value = r.nextLong() >>> (1 + r.nextInt(63));
+      int bucket = MutableQuantiles.bucket(value);
+      assertTrue(MutableQuantiles.lowerBound(bucket) <= value);
+      if (bucket + 1 < MutableQuantiles.BUCKETS) {
+        assertTrue(value < MutableQuantiles.lowerBound(bucket + 1));
+      }
+      long estimate = MutableQuantiles.estimate(bucket);
+      assertEquals(value, estimate, value * 0.02);
+    }
+    assertEquals(0, MutableQuantiles.bucket(-1));
+    assertEquals(MutableQuantiles.BUCKETS - 1,
+                 MutableQuantiles.bucket(Long.MAX_VALUE));
+  }
+
+  /**
+   * Test the quantiles of a window, added to from several threads
+   */
+  @Test public void testMutableQuantiles() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry("test");
+    final MutableQuantiles q =
+        registry.newQuantiles("q1", "latency", "Ops", "Time", 3600);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] = new Thread() {
+        public void run() {
+          for (int j = 1; j <= 10000; ++j) {
+            q.add(j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    MetricsRecordBuilder rb = mockMetricsRecordBuilder();
+    registry.snapshot(rb, true);
+    // nothing published before the window rolls over
+    assertGauge("Q1NumOps", 0L, rb);
+    assertEquals(0, q.getPercentile(99));
+
+    q.rollover();
+    rb = mockMetricsRecordBuilder();
+    registry.snapshot(rb, false);
+    assertGauge("Q1NumOps", 40000L, rb);
+    for (int p : new int[] { 50, 75, 90, 95, 99 }) {
+      assertEquals(p * 100, q.getPercentile(p), p * 100 * 0.02);
+    }
+    verify(rb).addGauge(info("Q195thPercentileTime",
+                             "95th percentile time for latency in the last "+
+                             "3600s"), q.getPercentile(95));
+
+    // an empty window
+    q.rollover();
+    assertEquals(0, q.getPercentile(50));
+    q.stop();
+  }
+
+  /**
+   * Compare the cost of adding to a rate and to quantiles
+   */
+  public static void main(String[] args) throws Exception {
+    final int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+    final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    MetricsRegistry registry = new MetricsRegistry("test");
+    final MutableRate rate = registry.newRate("rate");
+    final MutableQuantiles quantiles =
+        registry.newQuantiles("quantiles", "latency", "Ops", "Time", 60);
+    for (int i = 0; i < 3; ++i) {
+      for (final boolean q : new boolean[] { false, true }) {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int j = 0; j < threads; ++j) {
+          workers[j] = new Thread() {
+            public void run() {
+              Random r = new Random();
+              for (int k = 0; k < n / threads; ++k) {
+                int value = r.nextInt(1000);
+                if (q) {
+                  quantiles.add(value);
+                } else {
+                  rate.add(value);
+                }
+              }
+            }
+          };
+          workers[j].start();
+        }
+        for (Thread t : workers) {
+          t.join();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println((q ? "MutableQuantiles" : "MutableRate     ") +
+            ", "+ threads +" threads: "+ nanos / n +" ns/add");
+      }
+    }
+  }
 }
@@ -64,4 +64,24 @@ public class TestSampleStat {
     assertEquals("max", Double.MIN_VALUE, stat.max(), EPSILON);
   }
 
+  /**
+   * Merging stats gives the stat of all their samples
+   */
+  @Test public void testAddStat() {
+    SampleStat all = new SampleStat();
+    SampleStat a = new SampleStat();
+    SampleStat b = new SampleStat();
+    assertSame(a, a.add(b));
+    assertEquals("num samples", 0, a.numSamples());
+    for (int i = 0; i < 100; ++i) {
+      all.add(i * i);
+      (i % 3 == 0 ? a : b).add(i * i);
+    }
+    a.add(b);
+    assertEquals("num samples", 100L, a.numSamples());
+    assertEquals("mean", all.mean(), a.mean(), 1e-9);
+    assertEquals("variance", all.variance(), a.variance(), 1e-6);
+    assertEquals("min", 0.0, a.min(), EPSILON);
+    assertEquals("max", 99.0 * 99, a.max(), EPSILON);
+  }
 }
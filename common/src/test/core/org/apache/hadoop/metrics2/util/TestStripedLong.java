@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableStat;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.mockito.AdditionalMatchers.*;
+import static org.apache.hadoop.metrics2.lib.Interns.*;
+import static org.apache.hadoop.test.MetricsAsserts.*;
+
+/**
+ * Test the striped sum and the metrics built on it. Run as a program it
+ * reports the increments per second of 32 threads, locking and striped.
+ */
+public class TestStripedLong {
+
+  private static void run(int threads, final Runnable r) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; ++i) {
+      workers[i] = new Thread() {
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          r.run();
+        }
+      };
+      workers[i].start();
+    }
+    start.countDown();
+    for (Thread t : workers) {
+      t.join();
+    }
+  }
+
+  @Test public void testSum() throws Exception {
+    final StripedLong sum = new StripedLong(5);
+    assertEquals(5, sum.sum());
+    run(8, new Runnable() {
+      public void run() {
+        for (int i = 0; i < 100000; ++i) {
+          sum.add(i % 2 == 0 ? 3 : -1);
+        }
+      }
+    });
+    assertEquals(5 + 8 * 100000, sum.sum());
+    sum.set(-7);
+    assertEquals(-7, sum.sum());
+    sum.add(2);
+    assertEquals(-5, sum.sum());
+  }
+
+  @Test public void testMetrics() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry("test");
+    final MutableCounterLong counter = registry.newCounter("c", "c", 0L);
+    final MutableStat stat = registry.newStat("s", "s", "Ops", "Time", true);
+    run(8, new Runnable() {
+      public void run() {
+        for (int i = 1; i <= 10000; ++i) {
+          counter.incr();
+          stat.add(i);
+        }
+      }
+    });
+    MetricsRecordBuilder rb = mockMetricsRecordBuilder();
+    registry.snapshot(rb, false);
+    assertCounter("c", 80000L, rb);
+    assertCounter("SNumOps", 80000L, rb);
+    verify(rb).addGauge(eq(info("SAvgTime", "Average time for s")),
+                        eq(5000.5, 1e-6));
+    assertGauge("SIMinTime", 1.0, rb);
+    assertGauge("SIMaxTime", 10000.0, rb);
+
+    // unchanged metrics are left out
+    rb = mockMetricsRecordBuilder();
+    registry.snapshot(rb, false);
+    assertFalse(counter.changed());
+    assertFalse(stat.changed());
+    stat.add(3);
+    registry.snapshot(rb, false);
+    assertCounter("SNumOps", 80001L, rb);
+    assertGauge("SAvgTime", 3.0, rb);
+    assertGauge("SMaxTime", 10000.0, rb);
+  }
+
+  /**
+   * The counters as they were, for comparison
+   */
+  static class LockingCounter {
+    private volatile long value;
+    private volatile boolean changed;
+
+    synchronized void incr() {
+      ++value;
+      changed = true;
+    }
+  }
+
+  static class LockingStat {
+    private final SampleStat stat = new SampleStat();
+    private final SampleStat.MinMax minMax = new SampleStat.MinMax();
+    private volatile boolean changed;
+
+    synchronized void add(long value) {
+      stat.add(value);
+      minMax.add(value);
+      changed = true;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+    final int n = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+    MetricsRegistry registry = new MetricsRegistry("test");
+    final MutableCounterLong counter = registry.newCounter("c", "c", 0L);
+    final MutableStat stat = registry.newStat("s", "s", "Ops", "Time", true);
+    final LockingCounter lockingCounter = new LockingCounter();
+    final LockingStat lockingStat = new LockingStat();
+    Runnable[] benchmarks = {
+      new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i) lockingCounter.incr();
+        }
+        public String toString() { return "locking counter"; }
+      },
+      new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i) counter.incr();
+        }
+        public String toString() { return "MutableCounterLong"; }
+      },
+      new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i) lockingStat.add(i & 1023);
+        }
+        public String toString() { return "locking stat"; }
+      },
+      new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i) stat.add(i & 1023);
+        }
+        public String toString() { return "MutableStat"; }
+      },
+    };
+    for (int i = 0; i < 3; ++i) {
+      for (Runnable r : benchmarks) {
+        long start = System.nanoTime();
+        run(threads, r);
+        long nanos = System.nanoTime() - start;
+        System.out.println(r +", "+ threads +" threads: "+
+            (long) (threads * (double) n / (nanos / 1e9)) +" increments/s");
+      }
+    }
+  }
+}
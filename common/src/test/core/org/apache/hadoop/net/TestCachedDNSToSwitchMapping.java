@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import static org.junit.Assert.*;
+import static org.apache.hadoop.test.MetricsAsserts.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.Test;
+
+/**
+ * Checks that names resolved together by several callers are passed to the
+ * raw mapping together, and that cached locations expire. Run as a program
+ * it reports the time taken by many callers resolving one name each with a
+ * script.
+ */
+public class TestCachedDNSToSwitchMapping {
+
+  /** Resolves names slowly, counting its calls */
+  static class SlowMapping implements DNSToSwitchMapping {
+    final AtomicInteger calls = new AtomicInteger();
+    final List<Integer> sizes =
+      Collections.synchronizedList(new ArrayList<Integer>());
+
+    public List<String> resolve(List<String> names) {
+      calls.incrementAndGet();
+      sizes.add(names.size());
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        return null;
+      }
+      List<String> racks = new ArrayList<String>();
+      for (String name : names) {
+        racks.add("/rack" + name.substring(name.lastIndexOf('.') + 1));
+      }
+      return racks;
+    }
+  }
+
+  private static Thread[] resolveInThreads(final DNSToSwitchMapping mapping,
+                                           int threads,
+                                           final List<List<String>> results) {
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; ++i) {
+      final String name = "10.0.0." + i;
+      workers[i] = new Thread() {
+        public void run() {
+          results.add(mapping.resolve(Arrays.asList(name)));
+        }
+      };
+      workers[i].start();
+    }
+    return workers;
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    SlowMapping raw = new SlowMapping();
+    CachedDNSToSwitchMapping mapping = new CachedDNSToSwitchMapping(raw);
+    List<List<String>> results =
+      Collections.synchronizedList(new ArrayList<List<String>>());
+    Thread[] workers = resolveInThreads(mapping, 20, results);
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(20, results.size());
+    for (List<String> result : results) {
+      assertNotNull(result);
+      assertEquals(1, result.size());
+    }
+    // the first name is resolved alone, the others wait together
+    assertTrue(raw.sizes.toString(), raw.calls.get() < 20);
+    assertEquals(Arrays.asList("/rack3", "/rack4"),
+        mapping.resolve(Arrays.asList("10.0.0.3", "10.0.0.4")));
+    assertEquals(raw.sizes.size(), raw.calls.get());
+
+    MetricsRecordBuilder rb = getMetrics("RackResolution");
+    assertCounterGt("HostsResolved", 19L, rb);
+    assertCounterGt("CacheHits", 1L, rb);
+    assertCounterGt("ResolveNumOps", 0L, rb);
+  }
+
+  @Test
+  public void testTtl() throws Exception {
+    SlowMapping raw = new SlowMapping();
+    CachedDNSToSwitchMapping mapping = new CachedDNSToSwitchMapping(raw);
+    List<String> names = Arrays.asList("10.0.0.1");
+    mapping.resolve(names);
+    mapping.resolve(names);
+    assertEquals(1, raw.calls.get());
+    mapping.setCacheTtl(1);
+    Thread.sleep(10);
+    mapping.resolve(names);
+    Thread.sleep(10);
+    assertEquals(Arrays.asList("/rack1"), mapping.resolve(names));
+    assertEquals(3, raw.calls.get());
+  }
+
+  @Test
+  public void testFailure() {
+    CachedDNSToSwitchMapping mapping =
+      new CachedDNSToSwitchMapping(new DNSToSwitchMapping() {
+        public List<String> resolve(List<String> names) {
+          return null;
+        }
+      });
+    assertNull(mapping.resolve(Arrays.asList("10.0.0.1")));
+    assertNull(mapping.resolve(Arrays.asList("10.0.0.1")));
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    File script = File.createTempFile("TestCachedDNSToSwitchMapping", ".sh");
+    Writer out = new FileWriter(script);
+    try {
+      out.write("#!/bin/sh\nfor h in \"$@\"; do echo /rack-$h; done\n");
+    } finally {
+      out.close();
+    }
+    script.setExecutable(true);
+    try {
+      for (int i = 0; i < 3; ++i) {
+        Configuration conf = new Configuration();
+        conf.set(CommonConfigurationKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
+                 script.getAbsolutePath());
+        ScriptBasedMapping mapping = new ScriptBasedMapping(conf);
+        List<List<String>> results =
+          Collections.synchronizedList(new ArrayList<List<String>>());
+        long start = System.nanoTime();
+        Thread[] workers = resolveInThreads(mapping, threads, results);
+        for (Thread worker : workers) {
+          worker.join();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(threads + " callers resolving a name each: " +
+                           nanos / 1000000 + " ms");
+      }
+    } finally {
+      script.delete();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.junit.Test;
+
+public class TestTableMapping {
+  private final File table = new File(
+      System.getProperty("test.build.data", "/tmp"), "TestTableMapping");
+
+  private TableMapping createMapping(String fileName) {
+    Configuration conf = new Configuration();
+    if (fileName != null) {
+      conf.set(CommonConfigurationKeys.NET_TOPOLOGY_TABLE_FILE_NAME_KEY,
+               fileName);
+    }
+    return new TableMapping(conf);
+  }
+
+  @Test
+  public void testResolve() throws IOException {
+    table.getParentFile().mkdirs();
+    Writer out = new FileWriter(table);
+    try {
+      out.write("# host rack\n10.0.0.1 /rack1\n\n10.0.0.2\t/rack2 # b\n" +
+                "10.0.0.3 /rack3 extra\n");
+    } finally {
+      out.close();
+    }
+    try {
+      TableMapping mapping = createMapping(table.getPath());
+      assertEquals(Arrays.asList("/rack1", "/rack2",
+                                 NetworkTopology.DEFAULT_RACK,
+                                 NetworkTopology.DEFAULT_RACK),
+          mapping.resolve(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3",
+                                        "10.0.0.4")));
+      // read once
+      table.delete();
+      assertEquals(Arrays.asList("/rack2", "/rack1"),
+          mapping.resolve(Arrays.asList("10.0.0.2", "10.0.0.1")));
+    } finally {
+      table.delete();
+    }
+  }
+
+  @Test
+  public void testMissingTable() {
+    assertEquals(Arrays.asList(NetworkTopology.DEFAULT_RACK),
+        createMapping(null).resolve(Arrays.asList("10.0.0.1")));
+    assertEquals(Arrays.asList(NetworkTopology.DEFAULT_RACK),
+        createMapping(table.getPath() + ".missing").resolve(
+            Arrays.asList("10.0.0.1")));
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.TextView;
+import org.junit.Test;
+
+/**
+ * Checks that LineReader splits lines as a byte at a time scan does, for the
+ * default and custom delimiters, across buffer boundaries and with limited
+ * line lengths and bytes to consume, into Text and into views. Run as a
+ * program it reports the rate of reading short and long lines.
+ */
+public class TestLineReader {
+
+  /**
+   * The lines of the stream, found a byte at a time.
+   */
+  static class ByteLineReader {
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int bufferLength = 0;
+    private int bufferPosn = 0;
+
+    ByteLineReader(InputStream in, int bufferSize, byte[] delimiter) {
+      this.in = in;
+      this.buffer = new byte[bufferSize];
+      this.delimiter = delimiter;
+    }
+
+    int readLine(Text str, int maxLineLength, int maxBytesToConsume)
+        throws IOException {
+      return delimiter == null
+          ? readDefaultLine(str, maxLineLength, maxBytesToConsume)
+          : readCustomLine(str, maxLineLength, maxBytesToConsume);
+    }
+
+    private int readDefaultLine(Text str, int maxLineLength,
+                                int maxBytesToConsume) throws IOException {
+      str.clear();
+      int txtLength = 0;
+      int newlineLength = 0;
+      boolean prevCharCR = false;
+      long bytesConsumed = 0;
+      do {
+        int startPosn = bufferPosn;
+        if (bufferPosn >= bufferLength) {
+          startPosn = bufferPosn = 0;
+          if (prevCharCR) {
+            ++bytesConsumed;
+          }
+          bufferLength = in.read(buffer);
+          if (bufferLength <= 0) {
+            break;
+          }
+        }
+        for (; bufferPosn < bufferLength; ++bufferPosn) {
+          if (buffer[bufferPosn] == '\n') {
+            newlineLength = prevCharCR ? 2 : 1;
+            ++bufferPosn;
+            break;
+          }
+          if (prevCharCR) {
+            newlineLength = 1;
+            break;
+          }
+          prevCharCR = buffer[bufferPosn] == '\r';
+        }
+        int readLength = bufferPosn - startPosn;
+        if (prevCharCR && newlineLength == 0) {
+          --readLength;
+        }
+        bytesConsumed += readLength;
+        int appendLength = Math.min(readLength - newlineLength,
+                                    maxLineLength - txtLength);
+        if (appendLength > 0) {
+          str.append(buffer, startPosn, appendLength);
+          txtLength += appendLength;
+        }
+      } while (newlineLength == 0 && bytesConsumed < maxBytesToConsume);
+      return (int) bytesConsumed;
+    }
+
+    private int readCustomLine(Text str, int maxLineLength,
+                               int maxBytesToConsume) throws IOException {
+      str.clear();
+      int txtLength = 0;
+      long bytesConsumed = 0;
+      int delPosn = 0;
+      do {
+        int startPosn = bufferPosn;
+        if (bufferPosn >= bufferLength) {
+          startPosn = bufferPosn = 0;
+          bufferLength = in.read(buffer);
+          if (bufferLength <= 0) {
+            break;
+          }
+        }
+        for (; bufferPosn < bufferLength; ++bufferPosn) {
+          if (buffer[bufferPosn] == delimiter[delPosn]) {
+            if (++delPosn >= delimiter.length) {
+              bufferPosn++;
+              break;
+            }
+          } else {
+            delPosn = 0;
+          }
+        }
+        int readLength = bufferPosn - startPosn;
+        bytesConsumed += readLength;
+        int appendLength = Math.min(readLength - delPosn,
+                                    maxLineLength - txtLength);
+        if (appendLength > 0) {
+          str.append(buffer, startPosn, appendLength);
+          txtLength += appendLength;
+        }
+      } while (delPosn < delimiter.length
+               && bytesConsumed < maxBytesToConsume);
+      return (int) bytesConsumed;
+    }
+  }
+
+  private static byte[] randomBytes(Random random, int length,
+                                    byte[] alphabet) {
+    byte[] b = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      b[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+    return b;
+  }
+
+  private static LineReader createReader(byte[] data, int bufferSize,
+                                         byte[] delimiter) {
+    return delimiter == null
+      ? new LineReader(new ByteArrayInputStream(data), bufferSize)
+      : new LineReader(new ByteArrayInputStream(data), bufferSize, delimiter);
+  }
+
+  private static void checkLines(byte[] data, int bufferSize,
+                                 byte[] delimiter, int maxLineLength,
+                                 int maxBytesToConsume) throws IOException {
+    LineReader reader = createReader(data, bufferSize, delimiter);
+    LineReader viewReader = createReader(data, bufferSize, delimiter);
+    ByteLineReader expected = new ByteLineReader(
+        new ByteArrayInputStream(data), bufferSize, delimiter);
+    Text line = new Text();
+    TextView view = new TextView();
+    Text expectedLine = new Text();
+    for (int i = 0; ; ++i) {
+      int n = expected.readLine(expectedLine, maxLineLength,
+                                maxBytesToConsume);
+      assertEquals("line " + i, n,
+                   reader.readLine(line, maxLineLength, maxBytesToConsume));
+      assertEquals("line " + i, expectedLine, line);
+      assertEquals("line " + i, n,
+          viewReader.readLine(view, maxLineLength, maxBytesToConsume));
+      assertEquals("line " + i,
+          new TextView(expectedLine.getBytes(), 0, expectedLine.getLength()),
+          view);
+      if (n == 0) {
+        break;
+      }
+    }
+  }
+
+  @Test
+  public void testDefaultDelimiter() throws IOException {
+    Random random = new Random(1);
+    byte[] alphabet = "ab\r\n\r\n".getBytes();
+    byte[] sparse = "abcdefghijklmnopqrstuvwxyz0123456789\r\n".getBytes();
+    for (int i = 0; i < 200; ++i) {
+      byte[] data = randomBytes(random, random.nextInt(2000),
+                                i % 2 == 0 ? alphabet : sparse);
+      int bufferSize = 1 + random.nextInt(100);
+      checkLines(data, bufferSize, null, Integer.MAX_VALUE,
+                 Integer.MAX_VALUE);
+      checkLines(data, bufferSize, null, random.nextInt(20),
+                 1 + random.nextInt(50));
+    }
+  }
+
+  @Test
+  public void testCustomDelimiter() throws IOException {
+    Random random = new Random(2);
+    byte[][] delimiters = { "|".getBytes(), "ab".getBytes(),
+                            "aab".getBytes(), "\r\n".getBytes() };
+    for (byte[] delimiter : delimiters) {
+      for (int i = 0; i < 100; ++i) {
+        byte[] data = randomBytes(random, random.nextInt(2000),
+            i % 2 == 0 ? "ab|\r\n".getBytes() : "abcdefghijklm|".getBytes());
+        int bufferSize = 1 + random.nextInt(100);
+        checkLines(data, bufferSize, delimiter, Integer.MAX_VALUE,
+                   Integer.MAX_VALUE);
+        checkLines(data, bufferSize, delimiter, random.nextInt(20),
+                   1 + random.nextInt(50));
+      }
+    }
+  }
+
+  @Test
+  public void testViewInPlace() throws IOException {
+    byte[] data = "one\ntwo\nthree".getBytes();
+    LineReader reader = new LineReader(new ByteArrayInputStream(data), 8);
+    TextView view = new TextView();
+    // lines within a buffer are not copied
+    assertEquals(4, reader.readLine(view));
+    assertEquals("one", view.toString());
+    byte[] buffer = view.getBytes();
+    assertEquals(4, reader.readLine(view));
+    assertEquals("two", view.toString());
+    assertSame(buffer, view.getBytes());
+    assertEquals(4, view.getOffset());
+    // a line across buffers is copied
+    assertEquals(5, reader.readLine(view));
+    assertEquals("three", view.toString());
+    assertNotSame(buffer, view.getBytes());
+    assertEquals(0, reader.readLine(view));
+    assertEquals(0, view.getLength());
+  }
+
+  @Test
+  public void testLongLine() throws IOException {
+    byte[] data = new byte[300000];
+    Arrays.fill(data, (byte) 'x');
+    data[100000] = '\r';
+    data[200000] = '\n';
+    LineReader reader = new LineReader(new ByteArrayInputStream(data));
+    Text line = new Text();
+    assertEquals(100001, reader.readLine(line));
+    assertEquals(100000, line.getLength());
+    assertEquals(100000, reader.readLine(line));
+    assertEquals(99999, line.getLength());
+    assertEquals(99999, reader.readLine(line));
+    assertEquals(0, reader.readLine(line));
+  }
+
+  private static byte[] lines(Random random, int length, int lineLength,
+                              byte[] delimiter) {
+    byte[] data = randomBytes(random, length,
+        "abcdefghijklmnopqrstuvwxyz0123456789 ".getBytes());
+    for (int i = random.nextInt(2 * lineLength); i + delimiter.length < length;
+         i += delimiter.length + random.nextInt(2 * lineLength)) {
+      System.arraycopy(delimiter, 0, data, i, delimiter.length);
+    }
+    return data;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int length = args.length > 0 ? Integer.parseInt(args[0]) : 64 << 20;
+    Random random = new Random(length);
+    Object[][] cases = {
+      { "short lines", lines(random, length, 20, "\n".getBytes()), null },
+      { "long lines", lines(random, length, 2000, "\n".getBytes()), null },
+      { "short lines, custom", lines(random, length, 20, "|;".getBytes()),
+        "|;".getBytes() },
+      { "long lines, custom", lines(random, length, 2000, "|;".getBytes()),
+        "|;".getBytes() },
+    };
+    Text line = new Text();
+    TextView view = new TextView();
+    for (int i = 0; i < 3; ++i) {
+      for (Object[] c : cases) {
+        byte[] data = (byte[]) c[1];
+        byte[] delimiter = (byte[]) c[2];
+        for (String mode :
+             new String[] { ", byte scan: ", ": ", ", view: " }) {
+          InputStream in = new ByteArrayInputStream(data);
+          long start = System.nanoTime();
+          long lines = 0;
+          if (mode.equals(", byte scan: ")) {
+            ByteLineReader reader =
+              new ByteLineReader(in, 64 * 1024, delimiter);
+            while (reader.readLine(line, Integer.MAX_VALUE,
+                                   Integer.MAX_VALUE) > 0) {
+              ++lines;
+            }
+          } else {
+            LineReader reader = delimiter == null
+              ? new LineReader(in) : new LineReader(in, delimiter);
+            if (mode.equals(", view: ")) {
+              while (reader.readLine(view) > 0) {
+                ++lines;
+              }
+            } else {
+              while (reader.readLine(line) > 0) {
+                ++lines;
+              }
+            }
+          }
+          long nanos = System.nanoTime() - start;
+          System.out.println(c[0] + mode +
+              (long) (data.length / (nanos / 1e3)) + " MB/s, " +
+              lines + " lines");
+        }
+      }
+    }
+  }
+}
@@ -18,11 +18,18 @@
 
 package org.apache.hadoop.util;
 
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.HashMap;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.ObjectWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.serializer.SerializationFactory;
 
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -113,8 +120,63 @@ public class TestReflectionUtils {
     
   private static class LoadedInChild {
   }
+
+  @Test
+  public void testSetConf() {
+    Configuration conf = new Configuration();
+    ConfiguredOb ob = ReflectionUtils.newInstance(ConfiguredOb.class, conf);
+    assertSame(conf, ob.getConf());
+    ob = ReflectionUtils.newInstance(ConfiguredOb.class, null);
+    assertNull(ob.getConf());
+    ReflectionUtils.setConf(ob, conf);
+    assertSame(conf, ob.getConf());
+    // not configurable, left alone
+    ReflectionUtils.setConf(new LoadedInChild(), conf);
+  }
+
+  private static class ConfiguredOb extends Configured {
+  }
     
   public static class NoDefaultCtor {
     public NoDefaultCtor(int x) {}
   }
+
+  private static void report(String what, int n, long start) {
+    System.out.println(what + ": " +
+        (long) (n / ((System.nanoTime() - start) / 1e9)) + " objects/s");
+  }
+
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    Configuration conf = new Configuration();
+    // classes in this package go to AvroReflectSerialization, the last one
+    conf.set("avro.reflect.pkgs", "org.apache.hadoop.util");
+    DataOutputBuffer out = new DataOutputBuffer();
+    ObjectWritable.writeObject(out, new Text("value"), Text.class, conf);
+    DataInputBuffer in = new DataInputBuffer();
+    SerializationFactory factory = new SerializationFactory(conf);
+    // kept so that the work is not optimized away
+    Object[] sink = new Object[64];
+    for (int i = 0; i < 3; ++i) {
+      long start = System.nanoTime();
+      for (int j = 0; j < n; ++j) {
+        sink[j & 63] = ReflectionUtils.newInstance(Text.class, conf);
+      }
+      report("newInstance", n, start);
+      start = System.nanoTime();
+      for (int j = 0; j < n; ++j) {
+        in.reset(out.getData(), out.getLength());
+        sink[j & 63] = ObjectWritable.readObject(in, conf);
+      }
+      report("ObjectWritable.readObject", n, start);
+      for (Class<?> c : new Class<?>[] { Text.class, LoadedInChild.class }) {
+        start = System.nanoTime();
+        for (int j = 0; j < n; ++j) {
+          sink[j & 63] = factory.getSerialization(c);
+        }
+        report("getSerialization(" + c.getSimpleName() + ")", n, start);
+      }
+    }
+    System.out.println(sink[0] != null);
+  }
 }
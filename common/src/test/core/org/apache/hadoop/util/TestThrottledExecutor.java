@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks that owners run no more tasks at a time than their limit, on the
+ * shared pool, and that tasks submitted from the pool run in place.
+ */
+public class TestThrottledExecutor {
+
+  @Test
+  public void testLimit() throws Exception {
+    final ThrottledExecutor executor = new ThrottledExecutor(2);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger most = new AtomicInteger();
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < 50; ++i) {
+      final int n = i;
+      futures.add(executor.submit(new Callable<Integer>() {
+        public Integer call() throws InterruptedException {
+          int r = running.incrementAndGet();
+          synchronized (most) {
+            most.set(Math.max(most.get(), r));
+          }
+          Thread.sleep(1);
+          running.decrementAndGet();
+          return n;
+        }
+      }));
+    }
+    for (int i = 0; i < futures.size(); ++i) {
+      assertEquals(i, futures.get(i).get().intValue());
+    }
+    assertTrue(most.get() <= Math.min(2, ThrottledExecutor.getPoolSize()));
+  }
+
+  @Test
+  public void testCancelWaiting() throws Exception {
+    ThrottledExecutor executor = new ThrottledExecutor(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger ran = new AtomicInteger();
+    Future<Object> first = executor.submit(new Callable<Object>() {
+      public Object call() throws InterruptedException {
+        release.await();
+        return null;
+      }
+    });
+    Future<Object> second = executor.submit(new Callable<Object>() {
+      public Object call() {
+        ran.incrementAndGet();
+        return null;
+      }
+    });
+    assertTrue(second.cancel(false));
+    release.countDown();
+    first.get();
+    // a later task runs once the cancelled one is passed over
+    executor.submit(new Callable<Object>() {
+      public Object call() {
+        return null;
+      }
+    }).get();
+    assertEquals(0, ran.get());
+  }
+
+  @Test
+  public void testNested() throws Exception {
+    final ThrottledExecutor inner = new ThrottledExecutor(1);
+    List<Future<Thread>> futures = new ArrayList<Future<Thread>>();
+    // more tasks waiting for tasks than threads in the pool
+    for (int i = 0; i < 2 * ThrottledExecutor.getPoolSize() + 2; ++i) {
+      futures.add(new ThrottledExecutor(1).submit(new Callable<Thread>() {
+        public Thread call() throws Exception {
+          Thread caller = Thread.currentThread();
+          Thread ran = inner.submit(new Callable<Thread>() {
+            public Thread call() {
+              return Thread.currentThread();
+            }
+          }).get();
+          assertSame(caller, ran);
+          return ran;
+        }
+      }));
+    }
+    for (Future<Thread> f : futures) {
+      assertNotSame(Thread.currentThread(), f.get());
+    }
+  }
+}
@@ -47,8 +47,8 @@ import javax.management.StandardMBean;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.DF;
-import org.apache.hadoop.fs.DU;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.IncrementalDU;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
@@ -301,7 +301,7 @@ public class FSDataset implements FSConstants, FSDatasetInterface {
     private final File tmpDir; // directory store Temporary replica
     
     // TODO:FEDERATION scalability issue - a thread per DU is needed
-    private final DU dfsUsage;
+    private final IncrementalDU dfsUsage;
 
     /**
      * 
@@ -343,7 +343,7 @@ public class FSDataset implements FSConstants, FSDatasetInterface {
           throw new IOException("Mkdirs failed to create " + tmpDir.toString());
         }
       }
-      this.dfsUsage = new DU(bpDir, conf);
+      this.dfsUsage = new IncrementalDU(bpDir, conf);
       this.dfsUsage.start();
     }
 
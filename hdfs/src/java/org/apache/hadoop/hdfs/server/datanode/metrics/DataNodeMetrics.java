@@ -27,6 +27,7 @@ import org.apache.hadoop.metrics2.annotation.Metrics;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 import static org.apache.hadoop.metrics2.impl.MsInfo.*;
@@ -70,6 +71,12 @@ public class DataNodeMetrics {
   @Metric MutableRate heartbeats;
   @Metric MutableRate blockReports;
 
+  @Metric MutableQuantiles readBlockOpQuantiles;
+  @Metric MutableQuantiles writeBlockOpQuantiles;
+  @Metric MutableQuantiles blockChecksumOpQuantiles;
+  @Metric MutableQuantiles copyBlockOpQuantiles;
+  @Metric MutableQuantiles replaceBlockOpQuantiles;
+
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
   static final Random rng = new Random();
@@ -124,22 +131,27 @@ public class DataNodeMetrics {
 
   public void addReadBlockOp(long latency) {
     readBlockOp.add(latency);
+    readBlockOpQuantiles.add(latency);
   }
 
   public void addWriteBlockOp(long latency) {
     writeBlockOp.add(latency);
+    writeBlockOpQuantiles.add(latency);
   }
 
   public void addReplaceBlockOp(long latency) {
     replaceBlockOp.add(latency);
+    replaceBlockOpQuantiles.add(latency);
   }
 
   public void addCopyBlockOp(long latency) {
     copyBlockOp.add(latency);
+    copyBlockOpQuantiles.add(latency);
   }
 
   public void addBlockChecksumOp(long latency) {
     blockChecksumOp.add(latency);
+    blockChecksumOpQuantiles.add(latency);
   }
 
   public void incrBytesRead(int delta) {
@@ -151,6 +163,11 @@ public class DataNodeMetrics {
   }
 
   public void shutdown() {
+    readBlockOpQuantiles.stop();
+    writeBlockOpQuantiles.stop();
+    blockChecksumOpQuantiles.stop();
+    copyBlockOpQuantiles.stop();
+    replaceBlockOpQuantiles.stop();
     DefaultMetricsSystem.shutdown();
   }
 
@@ -28,6 +28,7 @@ import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
@@ -60,6 +61,9 @@ public class NameNodeMetrics {
   @Metric("Journal transactions batched in sync")
   MutableCounterLong transactionsBatchedInSync;
   @Metric("Block report") MutableRate blockReport;
+  @Metric("Journal transactions") MutableQuantiles transactionsQuantiles;
+  @Metric("Journal syncs") MutableQuantiles syncsQuantiles;
+  @Metric("Block report") MutableQuantiles blockReportQuantiles;
 
   @Metric("Duration in SafeMode at startup") MutableGaugeInt safeModeTime;
   @Metric("Time loading FS Image at startup") MutableGaugeInt fsImageLoadTime;
@@ -77,6 +81,9 @@ public class NameNodeMetrics {
   }
 
   public void shutdown() {
+    transactionsQuantiles.stop();
+    syncsQuantiles.stop();
+    blockReportQuantiles.stop();
     DefaultMetricsSystem.shutdown();
   }
 
@@ -138,6 +145,7 @@ public class NameNodeMetrics {
 
   public void addTransaction(long latency) {
     transactions.add(latency);
+    transactionsQuantiles.add(latency);
   }
 
   public void incrTransactionsBatchedInSync() {
@@ -146,6 +154,7 @@ public class NameNodeMetrics {
 
   public void addSync(long elapsed) {
     syncs.add(elapsed);
+    syncsQuantiles.add(elapsed);
   }
 
   public void setFsImageLoadTime(long elapsed) {
@@ -154,6 +163,7 @@ public class NameNodeMetrics {
 
   public void addBlockReport(long latency) {
     blockReport.add(latency);
+    blockReportQuantiles.add(latency);
   }
 
   public void setSafeModeTime(long elapsed) {
@@ -21,6 +21,7 @@ package org.apache.hadoop.net;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -119,6 +120,44 @@ public class TestNetworkTopology extends TestCase {
     }
   }
   
+  public void testChangedTopology() throws Exception {
+    // distances follow nodes added and removed after they were computed
+    assertEquals(6, cluster.getDistance(dataNodes[0], dataNodes[5]));
+    cluster.add(NODE);
+    try {
+      assertEquals(4, cluster.getDistance(NODE, dataNodes[5]));
+      assertEquals(6, cluster.getDistance(NODE, dataNodes[0]));
+      assertFalse(cluster.isOnSameRack(NODE, dataNodes[5]));
+      DatanodeDescriptor[] testNodes = { dataNodes[0], dataNodes[5] };
+      cluster.pseudoSortByDistance(NODE, testNodes);
+      assertEquals(2, testNodes.length);
+    } finally {
+      cluster.remove(NODE);
+    }
+    assertEquals(6, cluster.getDistance(dataNodes[0], dataNodes[5]));
+    // a rack added again, and a node replaced by one of the same name
+    DatanodeDescriptor same =
+      new DatanodeDescriptor(new DatanodeID("h8:5020"), "/d2/r4");
+    cluster.add(NODE);
+    cluster.add(same);
+    try {
+      assertEquals(8, cluster.getNumOfLeaves());
+      assertEquals(0, cluster.getDistance(same, same));
+      assertEquals(4, cluster.getDistance(same, dataNodes[5]));
+      assertEquals(6, cluster.getDistance(same, dataNodes[0]));
+      assertFalse(cluster.isOnSameRack(same, dataNodes[5]));
+      assertTrue(cluster.isOnSameRack(dataNodes[5], dataNodes[6]));
+    } finally {
+      cluster.remove(same);
+    }
+    assertEquals(7, cluster.getNumOfLeaves());
+    // nodes which are not in the cluster
+    DatanodeDescriptor other =
+      new DatanodeDescriptor(new DatanodeID("h9:5020"), "/d3/r5");
+    assertFalse(cluster.isOnSameRack(other, dataNodes[0]));
+    assertFalse(cluster.isOnSameRack(dataNodes[0], null));
+  }
+
   /**
    * This picks a large number of nodes at random in order to ensure coverage
    * 
@@ -168,4 +207,54 @@ public class TestNetworkTopology extends TestCase {
       }
     }
   }
+
+  /**
+   * Reports the cost of distance computations and sorts on a cluster of
+   * 5000 nodes in 250 racks, with as many threads as given.
+   */
+  public static void main(String[] args) throws Exception {
+    int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    final int ops = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+    final NetworkTopology topology = new NetworkTopology();
+    final DatanodeDescriptor[] descriptors = new DatanodeDescriptor[nodes];
+    for (int i = 0; i < nodes; ++i) {
+      descriptors[i] = new DatanodeDescriptor(
+          new DatanodeID("h" + i + ":5020"), "/d" + i % 2 + "/r" + i / 20);
+      topology.add(descriptors[i]);
+    }
+    for (int round = 0; round < 3; ++round) {
+      final long[] sum = new long[threads];
+      Thread[] workers = new Thread[threads];
+      for (int t = 0; t < threads; ++t) {
+        final int id = t;
+        workers[t] = new Thread() {
+          public void run() {
+            Random random = new Random(id);
+            DatanodeDescriptor[] replicas = new DatanodeDescriptor[3];
+            for (int i = 0; i < ops; ++i) {
+              DatanodeDescriptor reader =
+                descriptors[random.nextInt(descriptors.length)];
+              for (int j = 0; j < replicas.length; ++j) {
+                replicas[j] = descriptors[random.nextInt(descriptors.length)];
+              }
+              sum[id] += topology.getDistance(reader, replicas[0]);
+              topology.pseudoSortByDistance(reader, replicas);
+            }
+          }
+        };
+      }
+      long start = System.nanoTime();
+      for (Thread worker : workers) {
+        worker.start();
+      }
+      for (Thread worker : workers) {
+        worker.join();
+      }
+      long nanos = System.nanoTime() - start;
+      System.out.println(threads + " threads: " +
+          (long) (threads * (double) ops / (nanos / 1e9)) +
+          " getDistance and pseudoSortByDistance of 3 nodes per second");
+    }
+  }
 }
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapred;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.io.serializer.WritableSerialization;
+
+/**
+ * A {@link MapOutputCollector} for map outputs whose keys and values are
+ * {@link Text}, {@link BytesWritable}, {@link LongWritable},
+ * {@link IntWritable} or {@link NullWritable}.
+ *
+ * <p>Records of these types are encoded in a reusable scratch array and
+ * copied into the collection buffer with one write per key and value,
+ * instead of going through {@link org.apache.hadoop.io.Writable#write} and a
+ * {@link java.io.DataOutputStream} one field, and often one byte, at a time.
+ * The bytes written are the same. Other types, or types with a serialization
+ * other than {@link WritableSerialization}, are serialized as by
+ * {@link MapTask.MapOutputBuffer}.</p>
+ *
+ * <p>To use it, set {@link JobContext#MAP_OUTPUT_COLLECTOR_CLASS_ATTR} to
+ * this class.</p>
+ */
+@InterfaceAudience.LimitedPrivate({"MapReduce"})
+@InterfaceStability.Unstable
+public class BinaryMapOutputBuffer<K, V> extends MapTask.MapOutputBuffer<K, V> {
+
+  private static final Log LOG =
+    LogFactory.getLog(BinaryMapOutputBuffer.class);
+
+  @Override
+  public void init(MapOutputCollector.Context context
+                   ) throws IOException, ClassNotFoundException {
+    super.init(context);
+    Serializer<K> keyRawSerializer = getRawSerializer(keyClass);
+    if (keyRawSerializer != null) {
+      keySerializer = keyRawSerializer;
+      keySerializer.open(bb.getBuffer());
+    }
+    Serializer<V> valRawSerializer = getRawSerializer(valClass);
+    if (valRawSerializer != null) {
+      valSerializer = valRawSerializer;
+      valSerializer.open(bb.getBuffer());
+    }
+    LOG.info("Raw serialization of keys: " + (keyRawSerializer != null) +
+             ", values: " + (valRawSerializer != null));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> Serializer<T> getRawSerializer(Class<T> c) {
+    if (!(serializationFactory.getSerialization(c)
+          instanceof WritableSerialization)) {
+      return null;
+    }
+    if (c == Text.class) {
+      return (Serializer<T>) new TextSerializer();
+    } else if (c == BytesWritable.class) {
+      return (Serializer<T>) new BytesWritableSerializer();
+    } else if (c == LongWritable.class) {
+      return (Serializer<T>) new LongWritableSerializer();
+    } else if (c == IntWritable.class) {
+      return (Serializer<T>) new IntWritableSerializer();
+    } else if (c == NullWritable.class) {
+      return (Serializer<T>) new NullWritableSerializer();
+    }
+    return null;
+  }
+
+  /**
+   * Base of the serializers, holding the buffer stream and scratch space.
+   */
+  abstract static class RawSerializer<T> implements Serializer<T> {
+    // longer fields are cheaper to write directly than to copy
+    static final int SCRATCH_LENGTH = 64;
+
+    final byte[] scratch = new byte[SCRATCH_LENGTH];
+    OutputStream out;
+
+    public void open(OutputStream out) {
+      this.out = out;
+    }
+
+    public void close() { }
+
+    /**
+     * Write the given length, length-prefixed bytes in one write if they fit
+     * in the scratch space.
+     * @param header the length of the prefix already in the scratch space
+     */
+    final void writeBytes(int header, byte[] bytes, int length)
+    throws IOException {
+      if (header + length <= SCRATCH_LENGTH) {
+        System.arraycopy(bytes, 0, scratch, header, length);
+        out.write(scratch, 0, header + length);
+      } else {
+        out.write(scratch, 0, header);
+        out.write(bytes, 0, length);
+      }
+    }
+
+    /**
+     * Encode an int as by {@link java.io.DataOutput#writeInt(int)}.
+     * @return the number of bytes written
+     */
+    final int putInt(int i) {
+      scratch[0] = (byte) (i >>> 24);
+      scratch[1] = (byte) (i >>> 16);
+      scratch[2] = (byte) (i >>> 8);
+      scratch[3] = (byte) i;
+      return 4;
+    }
+
+    /**
+     * Encode a non-negative int as by
+     * {@link org.apache.hadoop.io.WritableUtils#writeVInt}.
+     * @return the number of bytes written
+     */
+    final int putVInt(int i) {
+      if (i <= 127) {
+        scratch[0] = (byte) i;
+        return 1;
+      }
+      int len = i <= 0xFF ? 1 : i <= 0xFFFF ? 2 : i <= 0xFFFFFF ? 3 : 4;
+      scratch[0] = (byte) (-112 - len);
+      for (int idx = len; idx != 0; idx--) {
+        scratch[1 + len - idx] = (byte) (i >>> ((idx - 1) * 8));
+      }
+      return 1 + len;
+    }
+  }
+
+  static class TextSerializer extends RawSerializer<Text> {
+    public void serialize(Text text) throws IOException {
+      writeBytes(putVInt(text.getLength()), text.getBytes(),
+                 text.getLength());
+    }
+  }
+
+  static class BytesWritableSerializer extends RawSerializer<BytesWritable> {
+    public void serialize(BytesWritable bytes) throws IOException {
+      writeBytes(putInt(bytes.getLength()), bytes.getBytes(),
+                 bytes.getLength());
+    }
+  }
+
+  static class LongWritableSerializer extends RawSerializer<LongWritable> {
+    public void serialize(LongWritable value) throws IOException {
+      long l = value.get();
+      putInt((int) (l >>> 32));
+      scratch[4] = (byte) (l >>> 24);
+      scratch[5] = (byte) (l >>> 16);
+      scratch[6] = (byte) (l >>> 8);
+      scratch[7] = (byte) l;
+      out.write(scratch, 0, 8);
+    }
+  }
+
+  static class IntWritableSerializer extends RawSerializer<IntWritable> {
+    public void serialize(IntWritable value) throws IOException {
+      out.write(scratch, 0, putInt(value.get()));
+    }
+  }
+
+  static class NullWritableSerializer extends RawSerializer<NullWritable> {
+    public void serialize(NullWritable value) { }
+  }
+}
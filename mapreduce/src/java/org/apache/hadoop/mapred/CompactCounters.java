@@ -0,0 +1,374 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapred;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+
+/**
+ * An immutable, array-backed snapshot of {@link Counters}.
+ *
+ * <p>Group names, counter names and their display names are interned in a
+ * dictionary shared by the snapshots of the JVM and referenced by integer
+ * ids, so a snapshot costs a handful of primitive arrays no matter how many
+ * tasks report the same counters. A dictionary takes at most
+ * {@link #MAX_NAMES} names; a new one is then started for new snapshots,
+ * and the full one is collected with the last snapshot using it.</p>
+ *
+ * <p>The {@link JobTracker} keeps the counters of every task attempt in
+ * this form, and the {@link Task} and the {@link TaskTracker} use snapshots
+ * as the baseline of delta-encoded status updates.</p>
+ */
+class CompactCounters {
+
+  /** The most names a dictionary takes */
+  static final int MAX_NAMES = 1 << 16;
+
+  // the dictionary of new snapshots
+  private static volatile NameDictionary current = new NameDictionary();
+
+  static final CompactCounters EMPTY =
+    new CompactCounters(current, new long[0], new int[0], new long[0]);
+
+  // the dictionary of the ids of this snapshot
+  private final NameDictionary dictionary;
+  // (group id, counter id) of each counter, sorted
+  private final long[] keys;
+  // group display name id and counter display name id of each counter
+  private final int[] displayNames;
+  private final long[] values;
+
+  private CompactCounters(NameDictionary dictionary, long[] keys,
+                          int[] displayNames, long[] values) {
+    this.dictionary = dictionary;
+    this.keys = keys;
+    this.displayNames = displayNames;
+    this.values = values;
+  }
+
+  /**
+   * Take a snapshot of the given counters.
+   * @param counters the counters, may be null
+   * @return the snapshot
+   */
+  static CompactCounters of(Counters counters) {
+    if (counters == null) {
+      return EMPTY;
+    }
+    synchronized (counters) {
+      int size = counters.size();
+      if (size == 0) {
+        return EMPTY;
+      }
+      NameDictionary started = null;
+      while (true) {
+        NameDictionary dictionary = current;
+        CompactCounters snapshot = of(counters, size, dictionary);
+        if (snapshot != null) {
+          return snapshot;
+        }
+        if (dictionary == started) {
+          throw new IllegalArgumentException("More than " + MAX_NAMES +
+                                             " counter names");
+        }
+        started = startDictionary(dictionary);
+      }
+    }
+  }
+
+  /**
+   * Replace the given dictionary, unless another thread already did.
+   * @return the dictionary started, or null
+   */
+  private static synchronized NameDictionary startDictionary(
+      NameDictionary full) {
+    if (current != full) {
+      return null;
+    }
+    current = new NameDictionary();
+    return current;
+  }
+
+  /**
+   * Take a snapshot of the given counters with the names in the given
+   * dictionary.
+   * @return the snapshot, or null if the dictionary is full
+   */
+  private static CompactCounters of(Counters counters, int size,
+                                    NameDictionary dictionary) {
+    final long[] keys = new long[size];
+    final int[] displayNames = new int[2 * size];
+    final long[] values = new long[size];
+    int i = 0;
+    for (Counters.Group group : counters) {
+      int groupId = dictionary.intern(group.getName());
+      int groupDisplayId = dictionary.intern(group.getDisplayName());
+      if (groupId < 0 || groupDisplayId < 0) {
+        return null;
+      }
+      for (Counters.Counter counter : group) {
+        int counterId = dictionary.intern(counter.getName());
+        int counterDisplayId = dictionary.intern(counter.getDisplayName());
+        if (counterId < 0 || counterDisplayId < 0) {
+          return null;
+        }
+        keys[i] = key(groupId, counterId);
+        displayNames[2 * i] = groupDisplayId;
+        displayNames[2 * i + 1] = counterDisplayId;
+        values[i] = counter.getValue();
+        ++i;
+      }
+    }
+    new QuickSort().sort(new IndexedSortable() {
+      public int compare(int i, int j) {
+        return keys[i] < keys[j] ? -1 : (keys[i] == keys[j] ? 0 : 1);
+      }
+      public void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        for (int k = 0; k < 2; ++k) {
+          int name = displayNames[2 * i + k];
+          displayNames[2 * i + k] = displayNames[2 * j + k];
+          displayNames[2 * j + k] = name;
+        }
+      }
+    }, 0, size);
+    return new CompactCounters(dictionary, keys, displayNames, values);
+  }
+
+  private static long key(int groupId, int counterId) {
+    return ((long) groupId << 32) | (counterId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the number of counters in the snapshot.
+   */
+  int size() {
+    return keys.length;
+  }
+
+  /**
+   * Returns the value of the given counter, or 0 if the snapshot does not
+   * contain it.
+   */
+  long getValue(String group, String name) {
+    int groupId = dictionary.lookup(group);
+    int counterId = dictionary.lookup(name);
+    if (groupId < 0 || counterId < 0) {
+      return 0L;
+    }
+    int i = indexOf(key(groupId, counterId));
+    return i < 0 ? 0L : values[i];
+  }
+
+  private int indexOf(long key) {
+    int low = 0;
+    int high = keys.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (keys[mid] < key) {
+        low = mid + 1;
+      } else if (keys[mid] > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Increment the given counters by the values in this snapshot, creating
+   * the counters that do not exist yet.
+   * @param counters the counters to increment
+   * @return the same object passed in as counters
+   */
+  Counters addTo(Counters counters) {
+    String[] names = dictionary.names();
+    Counters.Group group = null;
+    int groupId = -1;
+    for (int i = 0; i < keys.length; ++i) {
+      int id = (int) (keys[i] >>> 32);
+      if (id != groupId) {
+        groupId = id;
+        group = counters.getGroup(names[groupId]);
+        group.setDisplayName(names[displayNames[2 * i]]);
+      }
+      Counters.Counter counter =
+        group.getCounterForName(names[(int) keys[i]]);
+      counter.setDisplayName(names[displayNames[2 * i + 1]]);
+      counter.increment(values[i]);
+    }
+    return counters;
+  }
+
+  /**
+   * Inflate the snapshot back into a new, mutable {@link Counters}.
+   */
+  Counters toCounters() {
+    return addTo(new Counters());
+  }
+
+  /**
+   * Returns the counters of this snapshot whose values differ from, or are
+   * missing in, the given baseline. Values are absolute, so applying the
+   * same difference twice with {@link #update(Counters)} is harmless.
+   * @param base the baseline snapshot
+   * @return the changed counters
+   */
+  Counters diff(CompactCounters base) {
+    if (size() > 0 && base.size() > 0 && base.dictionary != dictionary) {
+      // taken with different dictionaries: compare them in the current one
+      return of(toCounters()).diff(of(base.toCounters()));
+    }
+    Counters changed = new Counters();
+    String[] names = dictionary.names();
+    int j = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      while (j < base.keys.length && base.keys[j] < keys[i]) {
+        ++j;
+      }
+      if (j < base.keys.length && base.keys[j] == keys[i] &&
+          base.values[j] == values[i] &&
+          base.displayNames[2 * j + 1] == displayNames[2 * i + 1]) {
+        continue;
+      }
+      Counters.Group group = changed.getGroup(names[(int) (keys[i] >>> 32)]);
+      group.setDisplayName(names[displayNames[2 * i]]);
+      Counters.Counter counter =
+        group.getCounterForName(names[(int) keys[i]]);
+      counter.setDisplayName(names[displayNames[2 * i + 1]]);
+      counter.setValue(values[i]);
+    }
+    return changed;
+  }
+
+  /**
+   * Returns a new snapshot with the values of this one overridden by the
+   * given changed counters, as produced by {@link #diff(CompactCounters)}.
+   * @param changed the changed counters
+   * @return the updated snapshot
+   */
+  CompactCounters update(Counters changed) {
+    CompactCounters delta = of(changed);
+    if (delta.size() == 0) {
+      return this;
+    }
+    if (size() == 0) {
+      return delta;
+    }
+    if (delta.dictionary != dictionary) {
+      // taken with an older dictionary: update it in the current one
+      return of(toCounters()).update(changed);
+    }
+    int size = 0;
+    for (int i = 0, j = 0; i < keys.length || j < delta.keys.length; ++size) {
+      if (j == delta.keys.length ||
+          (i < keys.length && keys[i] < delta.keys[j])) {
+        ++i;
+      } else {
+        if (i < keys.length && keys[i] == delta.keys[j]) {
+          ++i;
+        }
+        ++j;
+      }
+    }
+    long[] mergedKeys = new long[size];
+    int[] mergedDisplayNames = new int[2 * size];
+    long[] mergedValues = new long[size];
+    for (int i = 0, j = 0, k = 0; k < size; ++k) {
+      CompactCounters from;
+      int index;
+      if (j == delta.keys.length ||
+          (i < keys.length && keys[i] < delta.keys[j])) {
+        from = this;
+        index = i++;
+      } else {
+        if (i < keys.length && keys[i] == delta.keys[j]) {
+          ++i;
+        }
+        from = delta;
+        index = j++;
+      }
+      mergedKeys[k] = from.keys[index];
+      mergedDisplayNames[2 * k] = from.displayNames[2 * index];
+      mergedDisplayNames[2 * k + 1] = from.displayNames[2 * index + 1];
+      mergedValues[k] = from.values[index];
+    }
+    return new CompactCounters(dictionary, mergedKeys, mergedDisplayNames,
+                               mergedValues);
+  }
+
+  /**
+   * Maps up to {@link #MAX_NAMES} names to dense integer ids, shared by the
+   * snapshots taken while it is the current dictionary. Lookups by id read
+   * an array which is published again whenever a name is added, and never
+   * block.
+   */
+  static class NameDictionary {
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    // the names of ids 0 to size - 1
+    private volatile String[] names = new String[64];
+    private int size = 0;
+
+    /**
+     * Get the id of a name, adding it if needed.
+     * @return the id, or -1 if the name is new and the dictionary is full
+     */
+    synchronized int intern(String name) {
+      Integer id = ids.get(name);
+      if (id == null) {
+        if (size == MAX_NAMES) {
+          return -1;
+        }
+        String[] array = names;
+        if (size == array.length) {
+          array = Arrays.copyOf(array, Math.min(2 * size, MAX_NAMES));
+        }
+        id = size++;
+        array[id] = name;
+        ids.put(name, id);
+        // a volatile write, so that the new name is seen with its id
+        names = array;
+      }
+      return id;
+    }
+
+    synchronized int lookup(String name) {
+      Integer id = ids.get(name);
+      return id == null ? -1 : id;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    String[] names() {
+      return names;
+    }
+  }
+}
@@ -1286,7 +1286,7 @@ public class JobInProgress {
   private Counters incrementTaskCounters(Counters counters,
                                          TaskInProgress[] tips) {
     for (TaskInProgress tip : tips) {
-      counters.incrAllCounters(tip.getCounters());
+      tip.getCompactCounters().addTo(counters);
     }
     return counters;
   }
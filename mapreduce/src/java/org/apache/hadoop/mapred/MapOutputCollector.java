@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapred;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.mapred.Task.TaskReporter;
+
+/**
+ * Collects the partitioned output of a map and writes the map output file
+ * read by the reduces. Jobs with reduces select the implementation with
+ * {@link JobContext#MAP_OUTPUT_COLLECTOR_CLASS_ATTR}; the default is
+ * {@link MapTask.MapOutputBuffer}.
+ *
+ * <p>Implementations need a public no-argument constructor and are set up
+ * with {@link #init(Context)} before the first record is collected.</p>
+ */
+@InterfaceAudience.LimitedPrivate({"MapReduce"})
+@InterfaceStability.Unstable
+public interface MapOutputCollector<K, V> {
+
+  /**
+   * Prepare the collector for the given map task.
+   */
+  public void init(Context context
+                   ) throws IOException, ClassNotFoundException;
+
+  public void collect(K key, V value, int partition
+                      ) throws IOException, InterruptedException;
+
+  public void close() throws IOException, InterruptedException;
+
+  /**
+   * Write out all collected records. Called once, after the last record.
+   */
+  public void flush() throws IOException, InterruptedException,
+                             ClassNotFoundException;
+
+  /**
+   * The map task a collector works for.
+   */
+  @InterfaceAudience.LimitedPrivate({"MapReduce"})
+  @InterfaceStability.Unstable
+  public static class Context {
+    private final MapTask mapTask;
+    private final JobConf jobConf;
+    private final TaskReporter reporter;
+
+    public Context(MapTask mapTask, JobConf jobConf, TaskReporter reporter) {
+      this.mapTask = mapTask;
+      this.jobConf = jobConf;
+      this.reporter = reporter;
+    }
+
+    public MapTask getMapTask() {
+      return mapTask;
+    }
+
+    public JobConf getJobConf() {
+      return jobConf;
+    }
+
+    public TaskReporter getReporter() {
+      return reporter;
+    }
+  }
+}
@@ -32,6 +32,8 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
@@ -67,7 +69,9 @@ import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 
 /** A Map task. */
-class MapTask extends Task {
+@InterfaceAudience.LimitedPrivate({"MapReduce"})
+@InterfaceStability.Unstable
+public class MapTask extends Task {
   /**
    * The size of each record in the index file for the map-outputs.
    */
@@ -385,9 +389,10 @@ class MapTask extends Task {
     LOG.info("numReduceTasks: " + numReduceTasks);
     MapOutputCollector collector = null;
     if (numReduceTasks > 0) {
-      collector = new MapOutputBuffer(umbilical, job, reporter);
+      collector = createSortingCollector(job, reporter);
     } else { 
-      collector = new DirectMapOutputCollector(umbilical, job, reporter);
+      collector = new DirectMapOutputCollector();
+      collector.init(new MapOutputCollector.Context(this, job, reporter));
     }
     MapRunnable<INKEY,INVALUE,OUTKEY,OUTVALUE> runner =
       ReflectionUtils.newInstance(job.getMapRunnerClass(), job);
@@ -408,6 +413,19 @@ class MapTask extends Task {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private <KEY, VALUE> MapOutputCollector<KEY, VALUE> 
+  createSortingCollector(JobConf job, TaskReporter reporter)
+  throws IOException, ClassNotFoundException {
+    MapOutputCollector<KEY, VALUE> collector = 
+      (MapOutputCollector<KEY, VALUE>) ReflectionUtils.newInstance(
+          job.getClass(JobContext.MAP_OUTPUT_COLLECTOR_CLASS_ATTR, 
+                       MapOutputBuffer.class, MapOutputCollector.class), job);
+    LOG.info("Map output collector class = " + collector.getClass().getName());
+    collector.init(new MapOutputCollector.Context(this, job, reporter));
+    return collector;
+  }
+
   /**
    * Update the job with details about the file split
    * @param job the job configuration to update
@@ -565,7 +583,7 @@ class MapTask extends Task {
                        TaskUmbilicalProtocol umbilical,
                        TaskReporter reporter
                        ) throws IOException, ClassNotFoundException {
-      collector = new MapOutputBuffer<K,V>(umbilical, job, reporter);
+      collector = createSortingCollector(job, reporter);
       partitions = jobContext.getNumReduceTasks();
       if (partitions > 1) {
         partitioner = (org.apache.hadoop.mapreduce.Partitioner<K,V>)
@@ -660,31 +678,24 @@ class MapTask extends Task {
     output.close(mapperContext);
   }
 
-  interface MapOutputCollector<K, V> {
-
-    public void collect(K key, V value, int partition
-                        ) throws IOException, InterruptedException;
-    public void close() throws IOException, InterruptedException;
-    
-    public void flush() throws IOException, InterruptedException, 
-                               ClassNotFoundException;
-        
+  Progress getSortPhase() {
+    return sortPhase;
   }
 
-  class DirectMapOutputCollector<K, V>
+  static class DirectMapOutputCollector<K, V>
     implements MapOutputCollector<K, V> {
  
     private RecordWriter<K, V> out = null;
 
     private TaskReporter reporter = null;
 
-    private final Counters.Counter mapOutputRecordCounter;
+    private Counters.Counter mapOutputRecordCounter;
 
     @SuppressWarnings("unchecked")
-    public DirectMapOutputCollector(TaskUmbilicalProtocol umbilical,
-        JobConf job, TaskReporter reporter) throws IOException {
-      this.reporter = reporter;
-      String finalName = getOutputName(getPartition());
+    public void init(MapOutputCollector.Context context) throws IOException {
+      this.reporter = context.getReporter();
+      JobConf job = context.getJobConf();
+      String finalName = getOutputName(context.getMapTask().getPartition());
       FileSystem fs = FileSystem.get(job);
 
       out = job.getOutputFormat().getRecordWriter(fs, job, finalName, reporter);
@@ -711,25 +722,32 @@ class MapTask extends Task {
     
   }
 
-  private class MapOutputBuffer<K extends Object, V extends Object>
+  /**
+   * The default {@link MapOutputCollector}. Serializes records into a
+   * circular buffer, sorts and spills them to disk in a background thread
+   * and merges the spills into the map output file.
+   */
+  @InterfaceAudience.LimitedPrivate({"MapReduce"})
+  @InterfaceStability.Unstable
+  public static class MapOutputBuffer<K extends Object, V extends Object>
       implements MapOutputCollector<K, V>, IndexedSortable {
-    final int partitions;
-    final JobConf job;
-    final TaskReporter reporter;
-    final Class<K> keyClass;
-    final Class<V> valClass;
-    final RawComparator<K> comparator;
-    final SerializationFactory serializationFactory;
-    final Serializer<K> keySerializer;
-    final Serializer<V> valSerializer;
-    final CombinerRunner<K,V> combinerRunner;
-    final CombineOutputCollector<K, V> combineCollector;
+    int partitions;
+    JobConf job;
+    TaskReporter reporter;
+    Class<K> keyClass;
+    Class<V> valClass;
+    RawComparator<K> comparator;
+    SerializationFactory serializationFactory;
+    Serializer<K> keySerializer;
+    Serializer<V> valSerializer;
+    CombinerRunner<K,V> combinerRunner;
+    CombineOutputCollector<K, V> combineCollector;
 
     // Compression for map-outputs
-    final CompressionCodec codec;
+    CompressionCodec codec;
 
     // k/v accounting
-    final IntBuffer kvmeta; // metadata overlay on backing store
+    IntBuffer kvmeta;       // metadata overlay on backing store
     int kvstart;            // marks origin of spill metadata
     int kvend;              // marks end of spill metadata
     int kvindex;            // marks end of fully serialized records
@@ -750,18 +768,24 @@ class MapTask extends Task {
     private static final int KEYSTART = 2;         // key offset in acct
     private static final int PARTITION = 3;        // partition offset in acct
     private static final int NMETA = 4;            // num meta ints
-    private static final int METASIZE = NMETA * 4; // size in bytes
+    private static final int PREFIX = 4;           // key prefix offset in acct
+    private static final int NMETA_PREFIX = 6;     // num meta ints w/ prefix
+
+    int nmeta = NMETA;      // num meta ints per record
+    int metasize = NMETA * 4; // size of meta in bytes
+    // normalized key prefixes in the meta, if enabled and known for the keys
+    NormalizedKeyPrefix keyPrefix;
 
     // spill accounting
-    final int maxRec;
-    final int softLimit;
+    int maxRec;
+    int softLimit;
     boolean spillInProgress;;
     int bufferRemaining;
     volatile Throwable sortSpillException = null;
 
     int numSpills = 0;
-    final int minSpillsForCombine;
-    final IndexedSorter sorter;
+    int minSpillsForCombine;
+    IndexedSorter sorter;
     final ReentrantLock spillLock = new ReentrantLock();
     final Condition spillDone = spillLock.newCondition();
     final Condition spillReady = spillLock.newCondition();
@@ -769,11 +793,16 @@ class MapTask extends Task {
     volatile boolean spillThreadRunning = false;
     final SpillThread spillThread = new SpillThread();
 
-    final FileSystem rfs;
+    FileSystem rfs;
 
     // Counters
-    final Counters.Counter mapOutputByteCounter;
-    final Counters.Counter mapOutputRecordCounter;
+    Counters.Counter mapOutputByteCounter;
+    Counters.Counter mapOutputRecordCounter;
+    Counters.Counter spilledRecordsCounter;
+
+    MapTask mapTask;
+    MapOutputFile mapOutputFile;
+    Progress sortPhase;
 
     final ArrayList<SpillRecord> indexCacheList =
       new ArrayList<SpillRecord>();
@@ -782,11 +811,14 @@ class MapTask extends Task {
     private static final int INDEX_CACHE_MEMORY_LIMIT_DEFAULT = 1024 * 1024;
 
     @SuppressWarnings("unchecked")
-    public MapOutputBuffer(TaskUmbilicalProtocol umbilical, JobConf job,
-                           TaskReporter reporter
-                           ) throws IOException, ClassNotFoundException {
-      this.job = job;
-      this.reporter = reporter;
+    public void init(MapOutputCollector.Context context
+                     ) throws IOException, ClassNotFoundException {
+      job = context.getJobConf();
+      reporter = context.getReporter();
+      mapTask = context.getMapTask();
+      mapOutputFile = mapTask.mapOutputFile;
+      sortPhase = mapTask.getSortPhase();
+      spilledRecordsCounter = reporter.getCounter(TaskCounter.SPILLED_RECORDS);
       partitions = job.getNumReduceTasks();
       rfs = ((LocalFileSystem)FileSystem.getLocal(job)).getRaw();
 
@@ -806,9 +838,20 @@ class MapTask extends Task {
       }
       sorter = ReflectionUtils.newInstance(job.getClass("map.sort.class",
             QuickSort.class, IndexedSorter.class), job);
+      comparator = job.getOutputKeyComparator();
+      keyClass = (Class<K>)job.getMapOutputKeyClass();
+      valClass = (Class<V>)job.getMapOutputValueClass();
+      if (job.getBoolean(JobContext.MAP_SORT_KEY_PREFIX, false)) {
+        keyPrefix = NormalizedKeyPrefix.get(keyClass, comparator);
+        if (keyPrefix != null) {
+          nmeta = NMETA_PREFIX;
+          metasize = nmeta * 4;
+        }
+        LOG.info("Normalized key prefixes: " + (keyPrefix != null));
+      }
       // buffers and accounting
       int maxMemUsage = sortmb << 20;
-      maxMemUsage -= maxMemUsage % METASIZE;
+      maxMemUsage -= maxMemUsage % metasize;
       kvbuffer = new byte[maxMemUsage];
       bufvoid = kvbuffer.length;
       kvmeta = ByteBuffer.wrap(kvbuffer).asIntBuffer();
@@ -816,7 +859,7 @@ class MapTask extends Task {
       bufstart = bufend = bufindex = equator;
       kvstart = kvend = kvindex;
 
-      maxRec = kvmeta.capacity() / NMETA;
+      maxRec = kvmeta.capacity() / nmeta;
       softLimit = (int)(kvbuffer.length * spillper);
       bufferRemaining = softLimit;
       if (LOG.isInfoEnabled()) {
@@ -827,9 +870,6 @@ class MapTask extends Task {
       }
 
       // k/v serialization
-      comparator = job.getOutputKeyComparator();
-      keyClass = (Class<K>)job.getMapOutputKeyClass();
-      valClass = (Class<V>)job.getMapOutputValueClass();
       serializationFactory = new SerializationFactory(job);
       keySerializer = serializationFactory.getSerializer(keyClass);
       keySerializer.open(bb);
@@ -853,7 +893,7 @@ class MapTask extends Task {
       // combiner
       final Counters.Counter combineInputCounter =
         reporter.getCounter(TaskCounter.COMBINE_INPUT_RECORDS);
-      combinerRunner = CombinerRunner.create(job, getTaskID(), 
+      combinerRunner = CombinerRunner.create(job, mapTask.getTaskID(), 
                                              combineInputCounter,
                                              reporter, null);
       if (combinerRunner != null) {
@@ -907,7 +947,7 @@ class MapTask extends Task {
             partition + ")");
       }
       checkSpillException();
-      bufferRemaining -= METASIZE;
+      bufferRemaining -= metasize;
       if (bufferRemaining <= 0) {
         // start spill if the thread is not running and the soft limit has been
         // reached
@@ -922,13 +962,13 @@ class MapTask extends Task {
               // created by a reset must be included in "used" bytes
               final int bUsed = distanceTo(kvbidx, bufindex);
               final boolean bufsoftlimit = bUsed >= softLimit;
-              if ((kvbend + METASIZE) % kvbuffer.length !=
-                  equator - (equator % METASIZE)) {
+              if ((kvbend + metasize) % kvbuffer.length !=
+                  equator - (equator % metasize)) {
                 // spill finished, reclaim space
                 resetSpill();
                 bufferRemaining = Math.min(
-                    distanceTo(bufindex, kvbidx) - 2 * METASIZE,
-                    softLimit - bUsed) - METASIZE;
+                    distanceTo(bufindex, kvbidx) - 2 * metasize,
+                    softLimit - bUsed) - metasize;
                 continue;
               } else if (bufsoftlimit && kvindex != kvend) {
                 // spill records, if any collected; check latter, as it may
@@ -941,9 +981,9 @@ class MapTask extends Task {
                 // ensure that kvindex >= bufindex
                 final int distkvi = distanceTo(bufindex, kvbidx);
                 final int newPos = (bufindex +
-                  Math.max(2 * METASIZE - 1,
+                  Math.max(2 * metasize - 1,
                           Math.min(distkvi / 2,
-                                   distkvi / (METASIZE + avgRec) * METASIZE)))
+                                   distkvi / (metasize + avgRec) * metasize)))
                   % kvbuffer.length;
                 setEquator(newPos);
                 bufmark = bufindex = newPos;
@@ -958,7 +998,7 @@ class MapTask extends Task {
                       // serialization max
                       distanceTo(newPos, serBound),
                       // soft limit
-                      softLimit)) - 2 * METASIZE;
+                      softLimit)) - 2 * metasize;
               }
             }
           } while (false);
@@ -1000,8 +1040,16 @@ class MapTask extends Task {
         kvmeta.put(kvindex + PARTITION, partition);
         kvmeta.put(kvindex + KEYSTART, keystart);
         kvmeta.put(kvindex + VALSTART, valstart);
+        if (keyPrefix != null) {
+          // stored so that signed int comparison orders the prefixes
+          final long prefix =
+            keyPrefix.get(kvbuffer, keystart, valstart - keystart);
+          kvmeta.put(kvindex + PREFIX,
+                     (int) (prefix >>> 32) ^ Integer.MIN_VALUE);
+          kvmeta.put(kvindex + PREFIX + 1, (int) prefix ^ Integer.MIN_VALUE);
+        }
         // advance kvindex
-        kvindex = (kvindex - NMETA + kvmeta.capacity()) % kvmeta.capacity();
+        kvindex = (kvindex - nmeta + kvmeta.capacity()) % kvmeta.capacity();
       } catch (MapBufferTooSmallException e) {
         LOG.info("Record too large for in-memory buffer: " + e.getMessage());
         spillSingleRecord(key, value, partition);
@@ -1018,9 +1066,9 @@ class MapTask extends Task {
     private void setEquator(int pos) {
       equator = pos;
       // set index prior to first entry, aligned at meta boundary
-      final int aligned = pos - (pos % METASIZE);
+      final int aligned = pos - (pos % metasize);
       kvindex =
-        ((aligned - METASIZE + kvbuffer.length) % kvbuffer.length) / 4;
+        ((aligned - metasize + kvbuffer.length) % kvbuffer.length) / 4;
       if (LOG.isInfoEnabled()) {
         LOG.info("(EQUATOR) " + pos + " kvi " + kvindex +
             "(" + (kvindex * 4) + ")");
@@ -1035,10 +1083,10 @@ class MapTask extends Task {
     private void resetSpill() {
       final int e = equator;
       bufstart = bufend = e;
-      final int aligned = e - (e % METASIZE);
+      final int aligned = e - (e % metasize);
       // set start/end to point to first meta record
       kvstart = kvend =
-        ((aligned - METASIZE + kvbuffer.length) % kvbuffer.length) / 4;
+        ((aligned - metasize + kvbuffer.length) % kvbuffer.length) / 4;
       if (LOG.isInfoEnabled()) {
         LOG.info("(RESET) equator " + e + " kv " + kvstart + "(" +
           (kvstart * 4) + ")" + " kvi " + kvindex + "(" + (kvindex * 4) + ")");
@@ -1075,12 +1123,12 @@ class MapTask extends Task {
      * serialized record.
      */
     int offsetFor(int metapos) {
-      return kvmeta.get(metapos * NMETA + INDEX);
+      return kvmeta.get(metapos * nmeta + INDEX);
     }
 
     /**
      * Compare logical range, st i, j MOD offset capacity.
-     * Compare by partition, then by key.
+     * Compare by partition, then by key prefix, then by key.
      * @see IndexedSortable#compare
      */
     public int compare(final int mi, final int mj) {
@@ -1092,6 +1140,16 @@ class MapTask extends Task {
       if (kvip != kvjp) {
         return kvip - kvjp;
       }
+      // sort by key prefix, if any
+      if (keyPrefix != null) {
+        for (int i = PREFIX; i < PREFIX + 2; ++i) {
+          final int kvih = kvmeta.get(kvi + i);
+          final int kvjh = kvmeta.get(kvj + i);
+          if (kvih != kvjh) {
+            return kvih < kvjh ? -1 : 1;
+          }
+        }
+      }
       // sort by key
       return comparator.compare(kvbuffer,
           kvmeta.get(kvi + KEYSTART),
@@ -1106,8 +1164,8 @@ class MapTask extends Task {
      * @see IndexedSortable#swap
      */
     public void swap(final int mi, final int mj) {
-      final int kvi = (mi % maxRec) * NMETA + INDEX;
-      final int kvj = (mj % maxRec) * NMETA + INDEX;
+      final int kvi = (mi % maxRec) * nmeta + INDEX;
+      final int kvj = (mj % maxRec) * nmeta + INDEX;
       int tmp = kvmeta.get(kvi);
       kvmeta.put(kvi, kvmeta.get(kvj));
       kvmeta.put(kvj, tmp);
@@ -1122,6 +1180,14 @@ class MapTask extends Task {
         super(new Buffer());
       }
 
+      /**
+       * Returns the stream writing into the collection buffer, bypassing
+       * the synchronized methods of {@link DataOutputStream}.
+       */
+      OutputStream getBuffer() {
+        return out;
+      }
+
       /**
        * Mark end of record. Note that this is required if the buffer is to
        * cut the spill in the proper place.
@@ -1186,7 +1252,7 @@ class MapTask extends Task {
       @Override
       public void write(byte b[], int off, int len)
           throws IOException {
-        // must always verify the invariant that at least METASIZE bytes are
+        // must always verify the invariant that at least metasize bytes are
         // available beyond kvindex, even when len == 0
         bufferRemaining -= len;
         if (bufferRemaining <= 0) {
@@ -1214,19 +1280,19 @@ class MapTask extends Task {
               // either the metadata or the current write. Note that collect
               // ensures its metadata requirement with a zero-length write
               blockwrite = distkvi <= distkve
-                ? distkvi <= len + 2 * METASIZE
-                : distkve <= len || distanceTo(bufend, kvbidx) < 2 * METASIZE;
+                ? distkvi <= len + 2 * metasize
+                : distkve <= len || distanceTo(bufend, kvbidx) < 2 * metasize;
 
               if (!spillInProgress) {
                 if (blockwrite) {
-                  if ((kvbend + METASIZE) % kvbuffer.length !=
-                      equator - (equator % METASIZE)) {
+                  if ((kvbend + metasize) % kvbuffer.length !=
+                      equator - (equator % metasize)) {
                     // spill finished, reclaim space
                     // need to use meta exclusively; zero-len rec & 100% spill
                     // pcnt would fail
                     resetSpill(); // resetSpill doesn't move bufindex, kvindex
                     bufferRemaining = Math.min(
-                        distkvi - 2 * METASIZE,
+                        distkvi - 2 * metasize,
                         softLimit - distanceTo(kvbidx, bufindex)) - len;
                     continue;
                   }
@@ -1294,13 +1360,13 @@ class MapTask extends Task {
         checkSpillException();
 
         final int kvbend = 4 * kvend;
-        if ((kvbend + METASIZE) % kvbuffer.length !=
-            equator - (equator % METASIZE)) {
+        if ((kvbend + metasize) % kvbuffer.length !=
+            equator - (equator % metasize)) {
           // spill finished
           resetSpill();
         }
         if (kvindex != kvend) {
-          kvend = (kvindex + NMETA) % kvmeta.capacity();
+          kvend = (kvindex + nmeta) % kvmeta.capacity();
           bufend = bufmark;
           if (LOG.isInfoEnabled()) {
             LOG.info("Spilling map output");
@@ -1378,9 +1444,10 @@ class MapTask extends Task {
       final Throwable lspillException = sortSpillException;
       if (lspillException != null) {
         if (lspillException instanceof Error) {
-          final String logMsg = "Task " + getTaskID() + " failed : " +
+          final String logMsg = "Task " + mapTask.getTaskID() + " failed : " +
             StringUtils.stringifyException(lspillException);
-          reportFatalError(getTaskID(), lspillException, logMsg);
+          mapTask.reportFatalError(mapTask.getTaskID(), lspillException,
+                                   logMsg);
         }
         throw new IOException("Spill failed", lspillException);
       }
@@ -1388,7 +1455,7 @@ class MapTask extends Task {
 
     private void startSpill() {
       assert !spillInProgress;
-      kvend = (kvindex + NMETA) % kvmeta.capacity();
+      kvend = (kvindex + nmeta) % kvmeta.capacity();
       bufend = bufmark;
       spillInProgress = true;
       if (LOG.isInfoEnabled()) {
@@ -1419,11 +1486,11 @@ class MapTask extends Task {
             mapOutputFile.getSpillFileForWrite(numSpills, size);
         out = rfs.create(filename);
 
-        final int mstart = kvend / NMETA;
+        final int mstart = kvend / nmeta;
         final int mend = 1 + // kvend is a valid record
           (kvstart >= kvend
           ? kvstart
-          : kvmeta.capacity() + kvstart) / NMETA;
+          : kvmeta.capacity() + kvstart) / nmeta;
         sorter.sort(MapOutputBuffer.this, mstart, mend, reporter);
         int spindex = mstart;
         final IndexRecord rec = new IndexRecord();
@@ -1571,7 +1638,7 @@ class MapTask extends Task {
       final int nextindex = kvoff == kvend
         ? bufend
         : kvmeta.get(
-            (kvoff - NMETA + kvmeta.capacity() + KEYSTART) % kvmeta.capacity());
+            (kvoff - nmeta + kvmeta.capacity() + KEYSTART) % kvmeta.capacity());
       // calculate the length of the value
       int vallen = (nextindex >= kvmeta.get(kvoff + VALSTART))
         ? nextindex - kvmeta.get(kvoff + VALSTART)
@@ -1638,7 +1705,7 @@ class MapTask extends Task {
       long finalOutFileSize = 0;
       long finalIndexFileSize = 0;
       final Path[] filename = new Path[numSpills];
-      final TaskAttemptID mapId = getTaskID();
+      final TaskAttemptID mapId = mapTask.getTaskID();
 
       for(int i = 0; i < numSpills; i++) {
         filename[i] = mapOutputFile.getSpillFile(i);
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapred;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Computes a normalized prefix of a serialized key: a long whose unsigned
+ * order agrees with the order of the keys. If the prefixes of two keys
+ * differ, they decide the order of the keys; if they are equal, the keys must
+ * be compared in full.
+ *
+ * <p>Prefixes are only available for the registered comparators of
+ * {@link Text}, {@link BytesWritable} and the fixed-length numeric
+ * Writables.</p>
+ */
+abstract class NormalizedKeyPrefix {
+
+  /**
+   * Get the prefix of the key serialized in the given bytes.
+   */
+  abstract long get(byte[] b, int s, int l);
+
+  /**
+   * Get the prefixes for keys of the given class sorted by the given
+   * comparator, or null if none are known.
+   */
+  static NormalizedKeyPrefix get(Class<?> keyClass,
+                                 RawComparator<?> comparator) {
+    Class<?> c = comparator.getClass();
+    if (keyClass == Text.class && c == Text.Comparator.class) {
+      return new BytesPrefix() {
+        long get(byte[] b, int s, int l) {
+          final int n = WritableUtils.decodeVIntSize(b[s]);
+          return getBytes(b, s + n, l - n);
+        }
+      };
+    } else if (keyClass == BytesWritable.class &&
+               c == BytesWritable.Comparator.class) {
+      return new BytesPrefix() {
+        long get(byte[] b, int s, int l) {
+          return getBytes(b, s + 4, l - 4);
+        }
+      };
+    } else if (keyClass == LongWritable.class &&
+               c == LongWritable.Comparator.class) {
+      return new NormalizedKeyPrefix() {
+        long get(byte[] b, int s, int l) {
+          return WritableComparator.readLong(b, s) ^ Long.MIN_VALUE;
+        }
+      };
+    } else if (keyClass == IntWritable.class &&
+               c == IntWritable.Comparator.class) {
+      return new NormalizedKeyPrefix() {
+        long get(byte[] b, int s, int l) {
+          return (long) (WritableComparator.readInt(b, s) ^ Integer.MIN_VALUE)
+                 << 32;
+        }
+      };
+    } else if (keyClass == FloatWritable.class &&
+               c == FloatWritable.Comparator.class) {
+      return new NormalizedKeyPrefix() {
+        long get(byte[] b, int s, int l) {
+          final int bits = WritableComparator.readInt(b, s);
+          // negative values are ordered by their complement
+          return (long) (bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE) << 32;
+        }
+      };
+    } else if (keyClass == DoubleWritable.class &&
+               c == DoubleWritable.Comparator.class) {
+      return new NormalizedKeyPrefix() {
+        long get(byte[] b, int s, int l) {
+          final long bits = WritableComparator.readLong(b, s);
+          return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        }
+      };
+    }
+    return null;
+  }
+
+  /**
+   * Prefixes of keys compared by their unsigned bytes, as by
+   * {@link WritableComparator#compareBytes}.
+   */
+  abstract static class BytesPrefix extends NormalizedKeyPrefix {
+    /**
+     * The first eight bytes, big-endian and padded with zeros. A key shorter
+     * than eight bytes is equal to its padded form only in the prefix.
+     */
+    static long getBytes(byte[] b, int s, int l) {
+      long prefix = 0;
+      final int n = Math.min(l, 8);
+      for (int i = 0; i < n; ++i) {
+        prefix = (prefix << 8) | (b[s + i] & 0xFF);
+      }
+      return prefix << ((8 - n) * 8);
+    }
+  }
+}
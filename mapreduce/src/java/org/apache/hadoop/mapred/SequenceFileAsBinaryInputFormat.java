@@ -24,8 +24,8 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesView;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
@@ -65,8 +65,9 @@ public class SequenceFileAsBinaryInputFormat
     private long start;
     private long end;
     private boolean done = false;
-    private DataOutputBuffer buffer = new DataOutputBuffer();
-    private SequenceFile.ValueBytes vbytes;
+    // views of the raw records, copied once into the key and value
+    private final BytesView rawKey = new BytesView();
+    private final BytesView rawValue = new BytesView();
 
     public SequenceFileAsBinaryRecordReader(Configuration conf, FileSplit split)
         throws IOException {
@@ -77,7 +78,6 @@ public class SequenceFileAsBinaryInputFormat
       if (split.getStart() > in.getPosition())
         in.sync(split.getStart());                  // sync to start
       this.start = in.getPosition();
-      vbytes = in.createValueBytes();
       done = start >= end;
     }
 
@@ -112,14 +112,12 @@ public class SequenceFileAsBinaryInputFormat
         throws IOException {
       if (done) return false;
       long pos = in.getPosition();
-      boolean eof = -1 == in.nextRawKey(buffer);
+      boolean eof = -1 == in.nextRawKey(rawKey);
       if (!eof) {
-        key.set(buffer.getData(), 0, buffer.getLength());
-        buffer.reset();
-        in.nextRawValue(vbytes);
-        vbytes.writeUncompressedBytes(buffer);
-        val.set(buffer.getData(), 0, buffer.getLength());
-        buffer.reset();
+        key.set(rawKey.getBytes(), rawKey.getOffset(), rawKey.getLength());
+        in.nextRawValue(rawValue);
+        val.set(rawValue.getBytes(), rawValue.getOffset(),
+                rawValue.getLength());
       }
       return !(done = (eof || (pos >= end && in.syncSeen())));
     }
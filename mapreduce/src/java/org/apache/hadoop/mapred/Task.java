@@ -526,9 +526,9 @@ abstract public class Task implements Writable, Configurable {
     }
   }
   
-  @InterfaceAudience.Private
+  @InterfaceAudience.LimitedPrivate({"MapReduce"})
   @InterfaceStability.Unstable
-  protected class TaskReporter 
+  public class TaskReporter 
       extends org.apache.hadoop.mapreduce.StatusReporter
       implements Runnable, Reporter {
     private TaskUmbilicalProtocol umbilical;
@@ -542,6 +542,12 @@ abstract public class Task implements Writable, Configurable {
      * Using AtomicBoolean since we need an atomic read & reset method. 
      */  
     private AtomicBoolean progressFlag = new AtomicBoolean(false);
+
+    /**
+     * Counters last acknowledged by the parent. Progress updates only carry
+     * the counters which changed since.
+     */
+    private CompactCounters reportedCounters = null;
     
     TaskReporter(Progress taskProgress,
                  TaskUmbilicalProtocol umbilical) {
@@ -651,7 +657,10 @@ abstract public class Task implements Writable, Configurable {
             taskStatus.statusUpdate(taskProgress.get(),
                                     taskProgress.toString(), 
                                     counters);
-            taskFound = umbilical.statusUpdate(taskId, taskStatus);
+            TaskStatus update = (TaskStatus) taskStatus.clone();
+            update.snapshotCounters(reportedCounters);
+            taskFound = umbilical.statusUpdate(taskId, update);
+            reportedCounters = update.getCompactCounters();
             taskStatus.clearStatus();
           }
           else {
@@ -129,7 +129,7 @@ class TaskInProgress {
   //task to commit, <taskattemptid>  
   private TaskAttemptID taskToCommit;
   
-  private volatile Counters counters = new Counters();
+  private volatile CompactCounters counters = CompactCounters.EMPTY;
   
   private HashMap<TaskAttemptID, Long> dispatchTimeMap = 
     new HashMap<TaskAttemptID, Long>();
@@ -447,6 +447,13 @@ class TaskInProgress {
    * Get the task's counters
    */
   public Counters getCounters() {
+    return counters.toCounters();
+  }
+
+  /**
+   * Get a snapshot of the task's counters
+   */
+  CompactCounters getCompactCounters() {
     return counters;
   }
 
@@ -536,7 +543,7 @@ class TaskInProgress {
     TaskReport report = new TaskReport
       (getTIPId(), (float)progress, state,
        diagnostics.toArray(new String[diagnostics.size()]),
-       currentStatus, execStartTime, execFinishTime, counters);
+       currentStatus, execStartTime, execFinishTime, counters.toCounters());
     if (currentStatus == TIPStatus.RUNNING) {
       report.setRunningTaskAttempts(activeTasks.keySet());
     } else if (currentStatus == TIPStatus.COMPLETE) {
@@ -649,6 +656,9 @@ class TaskInProgress {
     // For example, startTime should not be updated, 
     // but finishTime has to be updated.
     if (!isCleanupAttempt(taskid)) {
+      // keep the counters of every attempt compact, and resolve the ones
+      // which were only sent as changes since the last heartbeat
+      status.compactCounters(oldStatus);
       taskStatuses.put(taskid, status);
       //we don't want to include setup tasks in the task execution stats
       if (!isJobSetupTask() && ((isMapTask() && job.hasSpeculativeMaps()) || 
@@ -924,24 +934,24 @@ class TaskInProgress {
       this.progress = 1;
       // update the counters and the state
       TaskStatus completedStatus = taskStatuses.get(getSuccessfulTaskid());
-      this.counters = completedStatus.getCounters();
+      this.counters = completedStatus.getCompactCounters();
       this.state = completedStatus.getStateString();
     } else if (failed) {
       this.progress = 0;
       // reset the counters and the state
       this.state = "";
-      this.counters = new Counters();
+      this.counters = CompactCounters.EMPTY;
     } else {
       double bestProgress = 0;
       String bestState = "";
-      Counters bestCounters = new Counters();
+      CompactCounters bestCounters = CompactCounters.EMPTY;
       for (Iterator<TaskAttemptID> it = taskStatuses.keySet().iterator(); it.hasNext();) {
         TaskAttemptID taskid = it.next();
         TaskStatus status = taskStatuses.get(taskid);
         if (status.getRunState() == TaskStatus.State.SUCCEEDED) {
           bestProgress = 1;
           bestState = status.getStateString();
-          bestCounters = status.getCounters();
+          bestCounters = status.getCompactCounters();
           break;
         } else if (status.getRunState() == TaskStatus.State.COMMIT_PENDING) {
           //for COMMIT_PENDING, we take the last state that we recorded
@@ -954,7 +964,7 @@ class TaskInProgress {
             bestProgress = status.getProgress();
             bestState = status.getStateString();
             if (status.getIncludeCounters()) {
-              bestCounters = status.getCounters();
+              bestCounters = status.getCompactCounters();
             } else {
               bestCounters = this.counters;
             }
@@ -66,7 +66,15 @@ public abstract class TaskStatus implements Writable, Cloneable {
     
   private volatile Phase phase = Phase.STARTING; 
   private Counters counters;
+  // counters held as an immutable snapshot instead, see compactCounters()
+  private CompactCounters compactCounters;
   private boolean includeCounters;
+  // counters last acknowledged by the receiving side; when set, only the
+  // counters that changed since are written out
+  private CompactCounters countersBase;
+  // whether the counters read in only hold the values that changed since
+  // the last acknowledged update
+  private boolean countersDelta;
   private SortedRanges.Range nextRecordRange = new SortedRanges.Range();
   
   // max task-status string size
@@ -323,7 +331,8 @@ public abstract class TaskStatus implements Writable, Cloneable {
    * Get task's counters.
    */
   public Counters getCounters() {
-    return counters;
+    CompactCounters compact = compactCounters;
+    return compact != null ? compact.toCounters() : counters;
   }
   /**
    * Set the task's counters.
@@ -331,6 +340,74 @@ public abstract class TaskStatus implements Writable, Cloneable {
    */
   public void setCounters(Counters counters) {
     this.counters = counters;
+    this.compactCounters = null;
+  }
+
+  /**
+   * Get a snapshot of the task's counters.
+   */
+  CompactCounters getCompactCounters() {
+    CompactCounters compact = compactCounters;
+    return compact != null ? compact : CompactCounters.of(counters);
+  }
+
+  /**
+   * Replace the task's counters with an immutable snapshot to be sent out.
+   * If a baseline is given, only the counters which changed since are
+   * written out.
+   * @param base the counters last acknowledged by the receiving side, or
+   *             null to send all of them
+   */
+  synchronized void snapshotCounters(CompactCounters base) {
+    compactCounters = CompactCounters.of(counters);
+    counters = null;
+    countersBase = base;
+  }
+
+  /**
+   * Resolve the counters of a status update against the previous status
+   * of the same attempt, and keep them as a compact snapshot. Updates which
+   * do not include counters inherit the previous ones.
+   * @param previous the previous status of the attempt, may be null
+   */
+  synchronized void compactCounters(TaskStatus previous) {
+    CompactCounters base = previous == null ? CompactCounters.EMPTY 
+                                            : previous.getCompactCounters();
+    if (!includeCounters) {
+      compactCounters = base;
+    } else if (countersDelta) {
+      compactCounters = base.update(counters);
+    } else {
+      compactCounters = getCompactCounters();
+    }
+    counters = null;
+    countersDelta = false;
+  }
+
+  /**
+   * Update the task's counters from a status update, which may only carry
+   * the counters that changed.
+   */
+  private void updateCounters(TaskStatus status) {
+    if (!status.countersDelta) {
+      setCounters(status.getCounters());
+    } else if (compactCounters != null) {
+      compactCounters = compactCounters.update(status.counters);
+    } else {
+      if (counters == null) {
+        counters = new Counters();
+      }
+      for (Counters.Group group : status.counters) {
+        Counters.Group target = counters.getGroup(group.getName());
+        target.setDisplayName(group.getDisplayName());
+        for (Counters.Counter counter : group) {
+          Counters.Counter targetCounter = 
+            target.getCounterForName(counter.getName());
+          targetCounter.setDisplayName(counter.getDisplayName());
+          targetCounter.setValue(counter.getValue());
+        }
+      }
+    }
   }
   
   /**
@@ -402,7 +479,7 @@ public abstract class TaskStatus implements Writable, Cloneable {
     }
     
     this.phase = status.getPhase();
-    this.counters = status.getCounters();
+    updateCounters(status);
     this.outputSize = status.outputSize;
   }
 
@@ -468,7 +545,14 @@ public abstract class TaskStatus implements Writable, Cloneable {
     out.writeBoolean(includeCounters);
     out.writeLong(outputSize);
     if (includeCounters) {
-      counters.write(out);
+      CompactCounters compact = compactCounters;
+      boolean delta = compact != null && countersBase != null;
+      out.writeBoolean(delta);
+      if (delta) {
+        compact.diff(countersBase).write(out);
+      } else {
+        getCounters().write(out);
+      }
     }
     nextRecordRange.write(out);
   }
@@ -484,9 +568,12 @@ public abstract class TaskStatus implements Writable, Cloneable {
     this.startTime = in.readLong(); 
     this.finishTime = in.readLong(); 
     counters = new Counters();
+    compactCounters = null;
     this.includeCounters = in.readBoolean();
     this.outputSize = in.readLong();
+    countersDelta = false;
     if (includeCounters) {
+      countersDelta = in.readBoolean();
       counters.readFields(in);
     }
     nextRecordRange.readFields(in);
@@ -1713,6 +1713,12 @@ public class TaskTracker
       
     synchronized (this) {
       for (TaskStatus taskStatus : status.getTaskReports()) {
+        if (taskStatus.getIncludeCounters()) {
+          TaskInProgress tip = runningTasks.get(taskStatus.getTaskID());
+          if (tip != null) {
+            tip.setReportedCounters(taskStatus.getCompactCounters());
+          }
+        }
         if (taskStatus.getRunState() != TaskStatus.State.RUNNING &&
             taskStatus.getRunState() != TaskStatus.State.UNASSIGNED &&
             taskStatus.getRunState() != TaskStatus.State.COMMIT_PENDING &&
@@ -2492,6 +2498,8 @@ public class TaskTracker
     private boolean keepFailedTaskFiles;
     private boolean alwaysKeepTaskFiles;
     private TaskStatus taskStatus; 
+    // counters last acknowledged by the JobTracker
+    private CompactCounters reportedCounters = null;
     private long taskTimeout;
     private String debugCommand;
     private volatile boolean slotTaken = false;
@@ -2636,6 +2644,18 @@ public class TaskTracker
       return taskStatus;
     }
 
+    /**
+     * Get the counters last acknowledged by the JobTracker, or null if none
+     * have been sent yet.
+     */
+    synchronized CompactCounters getReportedCounters() {
+      return reportedCounters;
+    }
+
+    synchronized void setReportedCounters(CompactCounters counters) {
+      reportedCounters = counters;
+    }
+
     /**
      * Kick off the task execution
      */
@@ -3521,7 +3541,15 @@ public class TaskTracker
       if (status.getRunState() != TaskStatus.State.RUNNING) {
         status.setIncludeCounters(true);
       }
-      result.add((TaskStatus)status.clone());
+      TaskStatus copy = (TaskStatus)status.clone();
+      if (copy.getIncludeCounters()) {
+        // running tasks only send the counters that changed since the last
+        // heartbeat which got through, all others send them in full
+        copy.snapshotCounters(
+            status.getRunState() == TaskStatus.State.RUNNING
+            ? tip.getReportedCounters() : null);
+      }
+      result.add(copy);
       status.clearStatus();
     }
     return result;
@@ -166,6 +166,12 @@ public interface MRJobConfig {
 
   public static final String MAP_SORT_SPILL_PERCENT = "mapreduce.map.sort.spill.percent";
 
+  public static final String MAP_SORT_KEY_PREFIX =
+    "mapreduce.map.sort.key.prefix";
+
+  public static final String MAP_OUTPUT_COLLECTOR_CLASS_ATTR =
+    "mapreduce.job.map.output.collector.class";
+
   public static final String MAP_INPUT_FILE = "mapreduce.map.input.file";
 
   public static final String MAP_INPUT_PATH = "mapreduce.map.input.length";
@@ -214,6 +220,9 @@ public interface MRJobConfig {
 
   public static final String REDUCE_INPUT_BUFFER_PERCENT = "mapreduce.reduce.input.buffer.percent";
 
+  public static final String REDUCE_MERGE_STREAMING_BUFFER_PERCENT =
+    "mapreduce.reduce.merge.streaming.buffer.percent";
+
   public static final String REDUCE_MARKRESET_BUFFER_PERCENT = "mapreduce.reduce.markreset.buffer.percent";
 
   public static final String REDUCE_MARKRESET_BUFFER_SIZE = "mapreduce.reduce.markreset.buffer.size";
@@ -228,6 +237,12 @@ public interface MRJobConfig {
 
   public static final String SHUFFLE_MERGE_EPRCENT = "mapreduce.reduce.shuffle.merge.percent";
 
+  public static final String SHUFFLE_MERGE_ADAPTIVE =
+    "mapreduce.reduce.shuffle.merge.adaptive";
+
+  public static final String SHUFFLE_MERGE_OUTLIER_DEVIATIONS =
+    "mapreduce.reduce.shuffle.merge.adaptive.outlier.deviations";
+
   public static final String REDUCE_FAILURES_MAXPERCENT = "mapreduce.reduce.failures.maxpercent";
 
   public static final String REDUCE_ENV = "mapreduce.reduce.env";
@@ -42,6 +42,7 @@ public enum TaskCounter {
   SHUFFLED_MAPS, 
   FAILED_SHUFFLE,
   MERGED_MAP_OUTPUTS,
+  REDUCE_MERGE_BYTES_NOT_SPILLED,
   GC_TIME_MILLIS,
   CPU_MILLISECONDS,
   PHYSICAL_MEMORY_BYTES,
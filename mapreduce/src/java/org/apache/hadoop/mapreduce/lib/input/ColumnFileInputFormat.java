@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapreduce.lib.input;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.ColumnFile;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * An {@link InputFormat} for {@link ColumnFile}s. Values are the rows of the
+ * files, holding only the columns set with {@link #setColumns(Job, String...)}
+ * if any are, and keys are null.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ColumnFileInputFormat
+    extends FileInputFormat<NullWritable, ColumnFile.Row> {
+
+  public static final String COLUMNS =
+    "mapreduce.input.columnfileinputformat.columns";
+
+  /**
+   * Read only the named columns of the rows.
+   * @param job the job to modify
+   * @param columns the names of the columns to read
+   */
+  public static void setColumns(Job job, String... columns) {
+    job.getConfiguration().setStrings(COLUMNS, columns);
+  }
+
+  /**
+   * Get the names of the columns read, or null if all are.
+   */
+  public static String[] getColumns(JobContext job) {
+    return job.getConfiguration().getStrings(COLUMNS);
+  }
+
+  static String[] getColumns(Configuration conf) {
+    return conf.getStrings(COLUMNS);
+  }
+
+  @Override
+  public RecordReader<NullWritable, ColumnFile.Row> createRecordReader(
+      InputSplit split, TaskAttemptContext context
+      ) throws IOException {
+    return new ColumnFileRecordReader();
+  }
+}
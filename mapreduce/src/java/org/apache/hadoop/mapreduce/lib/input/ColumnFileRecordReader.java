@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapreduce.lib.input;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.ColumnFile;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * A {@link RecordReader} for {@link ColumnFile}s. A split reads the row
+ * groups beginning in it.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ColumnFileRecordReader
+    extends RecordReader<NullWritable, ColumnFile.Row> {
+  private ColumnFile.Reader in;
+  private long start;
+  private long end;
+  private boolean more = true;
+  private ColumnFile.Row row;
+  private Counter inputByteCounter;
+  private long pos;
+
+  @Override
+  public void initialize(InputSplit split,
+                         TaskAttemptContext context
+                         ) throws IOException, InterruptedException {
+    FileSplit fileSplit = (FileSplit) split;
+    inputByteCounter = ((MapContext)context).getCounter(
+      FileInputFormat.COUNTER_GROUP, FileInputFormat.BYTES_READ);
+    Configuration conf = context.getConfiguration();
+    Path path = fileSplit.getPath();
+    FileSystem fs = path.getFileSystem(conf);
+    this.in = new ColumnFile.Reader(fs, path, conf);
+    String[] columns = ColumnFileInputFormat.getColumns(conf);
+    if (columns != null) {
+      in.setProjection(columns);
+    }
+    this.end = fileSplit.getStart() + fileSplit.getLength();
+
+    if (fileSplit.getStart() > in.getPosition()) {
+      in.sync(fileSplit.getStart());                  // sync to start
+    }
+
+    this.start = pos = in.getPosition();
+    more = start < end;
+    row = new ColumnFile.Row(in.getSchema());
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    if (!more) {
+      return false;
+    }
+    while (!in.nextRow(row)) {
+      // groups are read by the split they begin in
+      if (in.getPosition() >= end || !in.nextGroup()) {
+        more = false;
+        return false;
+      }
+      inputByteCounter.increment(in.getPosition() - pos);
+      pos = in.getPosition();
+    }
+    return true;
+  }
+
+  @Override
+  public NullWritable getCurrentKey() {
+    return NullWritable.get();
+  }
+
+  @Override
+  public ColumnFile.Row getCurrentValue() {
+    return more ? row : null;
+  }
+
+  /**
+   * Return the progress within the input split
+   * @return 0.0 to 1.0 of the input byte range
+   */
+  public float getProgress() throws IOException {
+    if (end == start) {
+      return 0.0f;
+    } else {
+      return Math.min(1.0f, (in.getPosition() - start) / (float)(end - start));
+    }
+  }
+
+  public synchronized void close() throws IOException { in.close(); }
+
+}
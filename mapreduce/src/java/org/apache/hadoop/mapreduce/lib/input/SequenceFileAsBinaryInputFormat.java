@@ -24,8 +24,8 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesView;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
@@ -59,8 +59,9 @@ public class SequenceFileAsBinaryInputFormat
     private long start;
     private long end;
     private boolean done = false;
-    private DataOutputBuffer buffer = new DataOutputBuffer();
-    private SequenceFile.ValueBytes vbytes;
+    // views of the raw records, copied once into the key and value
+    private final BytesView rawKey = new BytesView();
+    private final BytesView rawValue = new BytesView();
     private BytesWritable key = null;
     private BytesWritable value = null;
 
@@ -75,7 +76,6 @@ public class SequenceFileAsBinaryInputFormat
         in.sync(((FileSplit)split).getStart());    // sync to start
       }
       this.start = in.getPosition();
-      vbytes = in.createValueBytes();
       done = start >= end;
     }
     
@@ -116,7 +116,7 @@ public class SequenceFileAsBinaryInputFormat
         return false;
       }
       long pos = in.getPosition();
-      boolean eof = -1 == in.nextRawKey(buffer);
+      boolean eof = -1 == in.nextRawKey(rawKey);
       if (!eof) {
         if (key == null) {
           key = new BytesWritable();
@@ -124,12 +124,10 @@ public class SequenceFileAsBinaryInputFormat
         if (value == null) {
           value = new BytesWritable();
         }
-        key.set(buffer.getData(), 0, buffer.getLength());
-        buffer.reset();
-        in.nextRawValue(vbytes);
-        vbytes.writeUncompressedBytes(buffer);
-        value.set(buffer.getData(), 0, buffer.getLength());
-        buffer.reset();
+        key.set(rawKey.getBytes(), rawKey.getOffset(), rawKey.getLength());
+        in.nextRawValue(rawValue);
+        value.set(rawValue.getBytes(), rawValue.getOffset(),
+                  rawValue.getLength());
       }
       return !(done = (eof || (pos >= end && in.syncSeen())));
     }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapreduce.lib.output;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.ColumnFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * An {@link OutputFormat} that writes {@link ColumnFile}s of the values,
+ * ignoring the keys. The schema of the file is that of the first row
+ * written. If output compression is set, columns without a codec of their
+ * own are compressed with the output codec.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ColumnFileOutputFormat<K>
+    extends FileOutputFormat<K, ColumnFile.Row> {
+
+  /**
+   * Get the schema of the output file for rows of the given schema.
+   */
+  protected ColumnFile.Schema getOutputSchema(TaskAttemptContext context,
+                                              ColumnFile.Schema schema) {
+    if (!getCompressOutput(context)) {
+      return schema;
+    }
+    Class<? extends CompressionCodec> codecClass =
+      getOutputCompressorClass(context, DefaultCodec.class);
+    ColumnFile.Schema compressed = new ColumnFile.Schema();
+    for (int i = 0; i < schema.getColumnCount(); ++i) {
+      compressed.addColumn(schema.getName(i), schema.getValueClass(i),
+          schema.getCodecClass(i) == null ? codecClass
+                                          : schema.getCodecClass(i));
+    }
+    return compressed;
+  }
+
+  public RecordWriter<K, ColumnFile.Row>
+         getRecordWriter(final TaskAttemptContext context
+                         ) throws IOException, InterruptedException {
+    final Configuration conf = context.getConfiguration();
+    final Path file = getDefaultWorkFile(context, "");
+    final FileSystem fs = file.getFileSystem(conf);
+
+    return new RecordWriter<K, ColumnFile.Row>() {
+        private ColumnFile.Writer out;
+
+        public void write(K key, ColumnFile.Row value)
+          throws IOException {
+          if (out == null) {
+            out = new ColumnFile.Writer(fs, conf, file,
+                getOutputSchema(context, value.getSchema()), context);
+          }
+          out.append(value);
+        }
+
+        public void close(TaskAttemptContext context) throws IOException {
+          if (out != null) {
+            out.close();
+          }
+        }
+      };
+  }
+}
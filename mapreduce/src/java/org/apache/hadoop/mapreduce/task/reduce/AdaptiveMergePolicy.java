@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+/**
+ * Sizes in-memory reservations and in-memory merges of the
+ * {@link MergeManager} from what the shuffle has observed so far, instead of
+ * from static fractions of the shuffle memory alone.
+ *
+ * <ul>
+ * <li>Map outputs larger than <code>mean + k * stddev</code> of the sizes
+ * seen so far are shuffled to disk, so a few skewed outputs cannot hold most
+ * of the shuffle memory. Outputs smaller than a floor always qualify for
+ * memory, and the static single shuffle limit still applies.</li>
+ * <li>An in-memory merge is started once the used memory reaches
+ * <code>memoryLimit / (1 + fetchRate / mergeRate)</code>, the level at which
+ * the outputs fetched while the merge runs just fit in the remaining memory.
+ * Reducers whose merges keep up merge later and spill fewer, larger files;
+ * reducers whose fetchers outrun the merges merge earlier and stall less.
+ * </li>
+ * </ul>
+ *
+ * Until enough map outputs and one merge have been observed the static limits
+ * are used.
+ */
+class AdaptiveMergePolicy {
+
+  static final String COUNTER_GROUP = "Shuffle Merges";
+
+  /** Decisions of the policy that differ from the static limits. */
+  enum Decision {
+    OUTLIERS_SHUFFLED_TO_DISK,
+    EARLY_IN_MEMORY_MERGES,
+    LATE_IN_MEMORY_MERGES
+  }
+
+  /* Outputs below this fraction of the memory limit always fit in memory */
+  static final float MIN_SINGLE_SHUFFLE_SEGMENT_FRACTION = 0.05f;
+  /* Upper bound of an adaptive merge threshold */
+  static final float MAX_MERGE_FRACTION = 0.9f;
+  /* Map outputs to observe before the size distribution is trusted */
+  static final int MIN_SAMPLES = 10;
+
+  private final long memoryLimit;
+  private final long minSingleShuffleLimit;
+  private final long maxSingleShuffleLimit;
+  private final long minMergeThreshold;
+  private final long maxMergeThreshold;
+  private final long staticMergeThreshold;
+  private final float outlierDeviations;
+
+  // size distribution of the map outputs, see Welford's algorithm
+  private long samples = 0;
+  private double mean = 0;
+  private double sumOfSquares = 0;
+
+  private long firstFetchTime = -1;
+  private long lastFetchTime = -1;
+  private long fetchedBytes = 0;
+  private long mergedBytes = 0;
+  private long mergeTime = 0;
+
+  /**
+   * @param memoryLimit the memory available to in-memory map outputs
+   * @param maxSingleShuffleLimit the static limit of a single in-memory map
+   *                              output
+   * @param mergeThreshold the static in-memory merge threshold
+   * @param outlierDeviations the standard deviations above the mean size at
+   *                          which a map output is shuffled to disk
+   */
+  AdaptiveMergePolicy(long memoryLimit, long maxSingleShuffleLimit,
+                      long mergeThreshold, float outlierDeviations) {
+    if (outlierDeviations <= 0) {
+      throw new IllegalArgumentException("Invalid outlier deviations: " +
+                                         outlierDeviations);
+    }
+    this.memoryLimit = memoryLimit;
+    this.maxSingleShuffleLimit = maxSingleShuffleLimit;
+    this.minSingleShuffleLimit = Math.min(maxSingleShuffleLimit,
+        (long)(memoryLimit * MIN_SINGLE_SHUFFLE_SEGMENT_FRACTION));
+    this.staticMergeThreshold = mergeThreshold;
+    this.minMergeThreshold = mergeThreshold / 2;
+    this.maxMergeThreshold = Math.max(mergeThreshold,
+        (long)(memoryLimit * MAX_MERGE_FRACTION));
+    this.outlierDeviations = outlierDeviations;
+  }
+
+  /**
+   * Record the size of a map output about to be shuffled.
+   */
+  synchronized void reserved(long size) {
+    ++samples;
+    double delta = size - mean;
+    mean += delta / samples;
+    sumOfSquares += delta * (size - mean);
+  }
+
+  /**
+   * Record a map output shuffled into memory.
+   * @param size the size of the output
+   * @param now the current time in milliseconds
+   */
+  synchronized void fetched(long size, long now) {
+    if (firstFetchTime < 0) {
+      firstFetchTime = now;
+    }
+    lastFetchTime = now;
+    fetchedBytes += size;
+  }
+
+  /**
+   * Record a completed in-memory merge.
+   * @param size the bytes merged
+   * @param millis the duration of the merge
+   */
+  synchronized void merged(long size, long millis) {
+    mergedBytes += size;
+    mergeTime += Math.max(millis, 1);
+  }
+
+  /**
+   * Returns the largest map output currently shuffled into memory.
+   */
+  synchronized long getSingleShuffleLimit() {
+    if (samples < MIN_SAMPLES) {
+      return maxSingleShuffleLimit;
+    }
+    double stddev = Math.sqrt(sumOfSquares / samples);
+    long limit = (long)(mean + outlierDeviations * stddev);
+    return Math.min(maxSingleShuffleLimit,
+                    Math.max(minSingleShuffleLimit, limit));
+  }
+
+  /**
+   * Returns whether the given map output is small enough for memory.
+   */
+  boolean canShuffleToMemory(long requestedSize) {
+    return requestedSize < getSingleShuffleLimit();
+  }
+
+  /**
+   * Returns the used memory at which an in-memory merge is started.
+   */
+  synchronized long getMergeThreshold() {
+    if (mergedBytes == 0 || lastFetchTime <= firstFetchTime) {
+      return staticMergeThreshold;
+    }
+    double fetchRate =
+      (double) fetchedBytes / (lastFetchTime - firstFetchTime);
+    double mergeRate = (double) mergedBytes / mergeTime;
+    long threshold = (long)(memoryLimit / (1 + fetchRate / mergeRate));
+    return Math.min(maxMergeThreshold,
+                    Math.max(minMergeThreshold, threshold));
+  }
+
+  /**
+   * Classify an in-memory merge started at the given threshold.
+   * @return the decision, or null if the static threshold was used
+   */
+  Decision getMergeDecision(long threshold) {
+    if (threshold < staticMergeThreshold) {
+      return Decision.EARLY_IN_MEMORY_MERGES;
+    } else if (threshold > staticMergeThreshold) {
+      return Decision.LATE_IN_MEMORY_MERGES;
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AdaptiveMergePolicy: samples=" + samples + ", meanSize=" +
+           (long) mean + ", singleShuffleLimit=" + getSingleShuffleLimit() +
+           ", mergeThreshold=" + getMergeThreshold();
+  }
+}
@@ -54,6 +54,7 @@ import org.apache.hadoop.mapred.Task.CombineOutputCollector;
 import org.apache.hadoop.mapred.Task.CombineValuesIterator;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskCounter;
 import org.apache.hadoop.mapreduce.TaskID;
 import org.apache.hadoop.mapreduce.task.reduce.MapOutput.MapOutputComparator;
 import org.apache.hadoop.util.Progress;
@@ -96,6 +97,7 @@ public class MergeManager<K, V> {
   
   private final int memToMemMergeOutputsThreshold; 
   private final long mergeThreshold;
+  private final AdaptiveMergePolicy mergePolicy;
   
   private final int ioSortFactor;
 
@@ -181,6 +183,17 @@ public class MergeManager<K, V> {
              "ioSortFactor=" + ioSortFactor + ", " +
              "memToMemMergeOutputsThreshold=" + memToMemMergeOutputsThreshold);
 
+    if (jobConf.getBoolean(MRJobConfig.SHUFFLE_MERGE_ADAPTIVE, false)) {
+      this.mergePolicy = 
+        new AdaptiveMergePolicy(memoryLimit, maxSingleShuffleLimit, 
+            mergeThreshold, 
+            jobConf.getFloat(MRJobConfig.SHUFFLE_MERGE_OUTLIER_DEVIATIONS, 
+                             3.0f));
+      LOG.info("MergerManager: using adaptive merge policy");
+    } else {
+      this.mergePolicy = null;
+    }
+
     boolean allowMemToMemMerge = 
       jobConf.getBoolean(MRJobConfig.REDUCE_MEMTOMEM_ENABLED, false);
     if (allowMemToMemMerge) {
@@ -224,8 +237,16 @@ public class MergeManager<K, V> {
       LOG.info(mapId + ": Shuffling to disk since " + requestedSize + 
                " is greater than maxSingleShuffleLimit (" + 
                maxSingleShuffleLimit + ")");
-      return new MapOutput<K,V>(mapId, this, requestedSize, jobConf, 
-                                localDirAllocator, fetcher, true);
+      return shuffleToDisk(mapId, requestedSize, fetcher);
+    }
+    
+    if (mergePolicy != null && !mergePolicy.canShuffleToMemory(requestedSize)) {
+      LOG.info(mapId + ": Shuffling to disk since " + requestedSize + 
+               " is greater than the adaptive singleShuffleLimit (" + 
+               mergePolicy.getSingleShuffleLimit() + ")");
+      reporter.incrCounter(AdaptiveMergePolicy.COUNTER_GROUP, 
+          AdaptiveMergePolicy.Decision.OUTLIERS_SHUFFLED_TO_DISK.toString(), 1);
+      return shuffleToDisk(mapId, requestedSize, fetcher);
     }
     
     // Stall shuffle if we are above the memory limit
@@ -247,6 +268,16 @@ public class MergeManager<K, V> {
       LOG.debug(mapId + ": Stalling shuffle since usedMemory (" + usedMemory + 
                ") is greater than memoryLimit (" + memoryLimit + ")"); 
       
+      // Outputs closed while the last merge ran may hold more than the
+      // merge threshold; nothing else would start a merge to release them
+      synchronized (inMemoryMerger) {
+        if (!inMemoryMerger.isInProgress() && 
+            getInMemorySize() >= mergeThreshold) {
+          LOG.info("Starting inMemoryMerger's merge since the shuffle is " +
+                   "stalled with usedMemory=" + usedMemory);
+          startInMemoryMerge();
+        }
+      }
       return stallShuffle;
     }
     
@@ -254,9 +285,22 @@ public class MergeManager<K, V> {
     LOG.debug(mapId + ": Proceeding with shuffle since usedMemory (" +
         usedMemory + 
         ") is lesser than memoryLimit (" + memoryLimit + ")"); 
+    if (mergePolicy != null) {
+      mergePolicy.reserved(requestedSize);
+    }
     return unconditionalReserve(mapId, requestedSize, true);
   }
   
+  private MapOutput<K,V> shuffleToDisk(TaskAttemptID mapId, 
+                                       long requestedSize, 
+                                       int fetcher) throws IOException {
+    if (mergePolicy != null) {
+      mergePolicy.reserved(requestedSize);
+    }
+    return new MapOutput<K,V>(mapId, this, requestedSize, jobConf, 
+                              localDirAllocator, fetcher, true);
+  }
+  
   /**
    * Unconditional Reserve is used by the Memory-to-Memory thread
    * @return
@@ -277,13 +321,27 @@ public class MergeManager<K, V> {
     LOG.info("closeInMemoryFile -> map-output of size: " + mapOutput.getSize()
         + ", inMemoryMapOutputs.size() -> " + inMemoryMapOutputs.size());
     
+    long threshold = mergeThreshold;
+    if (mergePolicy != null) {
+      mergePolicy.fetched(mapOutput.getSize(), System.currentTimeMillis());
+      threshold = mergePolicy.getMergeThreshold();
+    }
+    
     synchronized (inMemoryMerger) {
-      if (!inMemoryMerger.isInProgress() && usedMemory >= mergeThreshold) {
+      if (!inMemoryMerger.isInProgress() && usedMemory >= threshold) {
         LOG.info("Starting inMemoryMerger's merge since usedMemory=" +
-            usedMemory + " > mergeThreshold=" + mergeThreshold);
-        inMemoryMapOutputs.addAll(inMemoryMergedMapOutputs);
-        inMemoryMergedMapOutputs.clear();
-        inMemoryMerger.startMerge(inMemoryMapOutputs);
+            usedMemory + " > mergeThreshold=" + threshold);
+        if (mergePolicy != null) {
+          AdaptiveMergePolicy.Decision decision = 
+            mergePolicy.getMergeDecision(threshold);
+          if (decision != null) {
+            LOG.info(mergePolicy + ", static mergeThreshold=" + 
+                     mergeThreshold);
+            reporter.incrCounter(AdaptiveMergePolicy.COUNTER_GROUP, 
+                                 decision.toString(), 1);
+          }
+        }
+        startInMemoryMerge();
       } 
     }
     
@@ -298,6 +356,23 @@ public class MergeManager<K, V> {
   }
   
   
+  private long getInMemorySize() {
+    long size = 0;
+    for (MapOutput<K,V> mapOutput : inMemoryMapOutputs) {
+      size += mapOutput.getSize();
+    }
+    for (MapOutput<K,V> mapOutput : inMemoryMergedMapOutputs) {
+      size += mapOutput.getSize();
+    }
+    return size;
+  }
+  
+  private void startInMemoryMerge() {
+    inMemoryMapOutputs.addAll(inMemoryMergedMapOutputs);
+    inMemoryMergedMapOutputs.clear();
+    inMemoryMerger.startMerge(inMemoryMapOutputs);
+  }
+  
   public synchronized void closeInMemoryMergedFile(MapOutput<K,V> mapOutput) {
     inMemoryMergedMapOutputs.add(mapOutput);
     LOG.info("closeInMemoryMergedFile -> size: " + mapOutput.getSize() + 
@@ -409,6 +484,7 @@ public class MergeManager<K, V> {
       //figure out the mapId 
       TaskAttemptID mapId = inputs.get(0).getMapId();
       TaskID mapTaskId = mapId.getTaskID();
+      long mergeStart = System.currentTimeMillis();
 
       List<Segment<K, V>> inMemorySegments = new ArrayList<Segment<K, V>>();
       long mergeOutputSize = 
@@ -459,6 +535,11 @@ public class MergeManager<K, V> {
         throw e;
       }
 
+      if (mergePolicy != null) {
+        mergePolicy.merged(mergeOutputSize, 
+                           System.currentTimeMillis() - mergeStart);
+      }
+
       // Note the output of the merge
       closeOnDiskFile(outputPath);
     }
@@ -586,6 +667,23 @@ public class MergeManager<K, V> {
     return totalSize;
   }
 
+  /**
+   * Get the bytes {@link #createInMemorySegments} would leave in memory,
+   * taking whole map outputs from the front until at most leaveBytes are
+   * left.
+   */
+  private long getBytesLeftInMemory(List<MapOutput<K,V>> inMemoryMapOutputs,
+                                    long leaveBytes) {
+    long fullSize = 0L;
+    for (MapOutput<K,V> mo : inMemoryMapOutputs) {
+      fullSize += mo.getMemory().length;
+    }
+    for (int i = 0; fullSize > leaveBytes; ++i) {
+      fullSize -= inMemoryMapOutputs.get(i).getMemory().length;
+    }
+    return fullSize;
+  }
+
   class RawKVIteratorReader extends IFile.Reader<K,V> {
 
     private final RawKeyValueIterator kvIter;
@@ -636,9 +734,30 @@ public class MergeManager<K, V> {
       throw new IOException(MRJobConfig.REDUCE_INPUT_BUFFER_PERCENT +
                             maxRedPer);
     }
-    int maxInMemReduce = (int)Math.min(
+    long maxInMemReduce = (long)Math.min(
         Runtime.getRuntime().maxMemory() * maxRedPer, Integer.MAX_VALUE);
     
+    // If the on-disk outputs can be merged in a single pass, spilling the
+    // in-memory outputs only frees memory for the reduce. Stream them into
+    // the final merge instead, as long as they fit in the streaming budget.
+    final float maxStreamPer = 
+      job.getFloat(MRJobConfig.REDUCE_MERGE_STREAMING_BUFFER_PERCENT, 0f);
+    if (maxStreamPer > 1.0 || maxStreamPer < 0.0) {
+      throw new IOException(MRJobConfig.REDUCE_MERGE_STREAMING_BUFFER_PERCENT +
+                            maxStreamPer);
+    }
+    long maxInMemStream = (long)Math.min(
+        Runtime.getRuntime().maxMemory() * maxStreamPer, Integer.MAX_VALUE);
+    // the bytes the reduce buffer alone would have kept in memory, if the
+    // streaming budget is used instead
+    long reduceBufferBytes = -1;
+    if (maxInMemStream > maxInMemReduce && 
+        ioSortFactor > onDiskMapOutputs.size()) {
+      reduceBufferBytes = getBytesLeftInMemory(inMemoryMapOutputs,
+                                               maxInMemReduce);
+      maxInMemReduce = maxInMemStream;
+    }
+    
 
     // merge config params
     Class<K> keyClass = (Class<K>)job.getMapOutputKeyClass();
@@ -741,6 +860,12 @@ public class MergeManager<K, V> {
                                              finalSegments, 0);
     LOG.info("Merging " + finalSegments.size() + " segments, " +
              inMemBytes + " bytes from memory into reduce");
+    if (reduceBufferBytes >= 0 && inMemBytes > reduceBufferBytes) {
+      LOG.info("Streamed " + (inMemBytes - reduceBufferBytes) + " bytes " +
+               "from memory into the reduce instead of spilling them");
+      reporter.incrCounter(TaskCounter.REDUCE_MERGE_BYTES_NOT_SPILLED,
+                           inMemBytes - reduceBufferBytes);
+    }
     if (0 != onDiskBytes) {
       final int numInMemSegments = memDiskSegments.size();
       diskSegments.addAll(0, memDiskSegments);
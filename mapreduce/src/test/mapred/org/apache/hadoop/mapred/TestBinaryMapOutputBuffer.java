@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapred.UtilsForTests.RandomInputFormat;
+import org.apache.hadoop.mapred.lib.NullOutputFormat;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs jobs with {@link BinaryMapOutputBuffer} and {@link
+ * MapTask.MapOutputBuffer} and checks that the reduce sees the same records,
+ * in order. Run as a program it reports the records collected per second by
+ * either collector.
+ */
+public class TestBinaryMapOutputBuffer {
+
+  private static final Path OUTPUT_DIR = new Path(
+      System.getProperty("test.build.data", "/tmp"),
+      "TestBinaryMapOutputBuffer");
+  private static final String RECORDS = "test.binarycollector.records";
+  private static final String TEXT_KEYS = "test.binarycollector.textkeys";
+
+  /**
+   * Emits Text keys and LongWritable values, or LongWritable keys and
+   * BytesWritable values, of random lengths.
+   */
+  static class Map implements Mapper<Text, Text, Writable, Writable> {
+    static final int POOL_SIZE = 1 << 16;
+    static long collectNanos;
+
+    private int records;
+    private boolean textKeys;
+
+    public void configure(JobConf job) {
+      records = job.getInt(RECORDS, 10000);
+      textKeys = job.getBoolean(TEXT_KEYS, true);
+    }
+
+    public void map(Text key, Text val, OutputCollector<Writable, Writable> out,
+                    Reporter reporter) throws IOException {
+      // generate the records up front, so that the loop times collection only
+      Random random = new Random(records);
+      Writable[] keys = new Writable[Math.min(records, POOL_SIZE)];
+      Writable[] values = new Writable[keys.length];
+      byte[] bytes = new byte[1024];
+      for (int i = 0; i < keys.length; ++i) {
+        // mostly short, sometimes long fields
+        int length = random.nextInt(10) == 0 ? random.nextInt(bytes.length)
+                                             : random.nextInt(20);
+        for (int j = 0; j < length; ++j) {
+          bytes[j] = (byte) ('a' + random.nextInt(26));
+        }
+        LongWritable number = new LongWritable(random.nextLong());
+        if (textKeys) {
+          Text text = new Text();
+          text.set(bytes, 0, length);
+          keys[i] = text;
+          values[i] = number;
+        } else {
+          BytesWritable data = new BytesWritable();
+          data.set(bytes, 0, length);
+          keys[i] = number;
+          values[i] = data;
+        }
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < records; ++i) {
+        out.collect(keys[i % keys.length], values[i % keys.length]);
+      }
+      collectNanos = System.nanoTime() - start;
+    }
+
+    public void close() { }
+  }
+
+  static class Reduce implements Reducer<WritableComparable, Writable,
+                                         Writable, Writable> {
+    static long records;
+    static long checksum;
+    private WritableComparable previous;
+
+    public void configure(JobConf job) { }
+
+    @SuppressWarnings("unchecked")
+    public void reduce(WritableComparable key, Iterator<Writable> values,
+                       OutputCollector<Writable, Writable> out,
+                       Reporter reporter) throws IOException {
+      if (previous != null && previous.compareTo(key) >= 0) {
+        throw new IOException(key + " after " + previous);
+      }
+      previous = key instanceof Text ? new Text((Text) key)
+                                     : new LongWritable(((LongWritable) key)
+                                                        .get());
+      while (values.hasNext()) {
+        ++records;
+        checksum += 31 * key.hashCode() + values.next().hashCode();
+      }
+    }
+
+    public void close() { }
+  }
+
+  private static JobConf createJob(int records, boolean textKeys,
+                                   int sortMB, boolean binary) {
+    JobConf job = new JobConf();
+    job.setInputFormat(RandomInputFormat.class);
+    job.setOutputFormat(NullOutputFormat.class);
+    FileOutputFormat.setOutputPath(job, OUTPUT_DIR);
+    job.setMapperClass(Map.class);
+    job.setReducerClass(Reduce.class);
+    job.setNumMapTasks(1);
+    job.setNumReduceTasks(1);
+    job.setMapOutputKeyClass(textKeys ? Text.class : LongWritable.class);
+    job.setMapOutputValueClass(textKeys ? LongWritable.class
+                                        : BytesWritable.class);
+    job.setInt(RECORDS, records);
+    job.setBoolean(TEXT_KEYS, textKeys);
+    job.setInt(JobContext.IO_SORT_MB, sortMB);
+    if (binary) {
+      job.setClass(MRJobConfig.MAP_OUTPUT_COLLECTOR_CLASS_ATTR,
+                   BinaryMapOutputBuffer.class, MapOutputCollector.class);
+    }
+    return job;
+  }
+
+  /**
+   * Run a job and return the number of records and the checksum of the
+   * records seen by the reduce.
+   */
+  private static long[] runJob(JobConf job) throws IOException {
+    Reduce.records = 0;
+    Reduce.checksum = 0;
+    try {
+      JobClient.runJob(job);
+    } finally {
+      FileSystem.get(job).delete(OUTPUT_DIR, true);
+    }
+    return new long[] { Reduce.records, Reduce.checksum };
+  }
+
+  private static void checkSameRecords(boolean textKeys) throws IOException {
+    // one MB of sort buffer to force spills and wrapped records
+    long[] expected = runJob(createJob(20000, textKeys, 1, false));
+    assertEquals(20000, expected[0]);
+    long[] actual = runJob(createJob(20000, textKeys, 1, true));
+    assertArrayEquals(expected, actual);
+  }
+
+  @Test
+  public void testTextKeys() throws IOException {
+    checkSameRecords(true);
+  }
+
+  @Test
+  public void testLongKeys() throws IOException {
+    checkSameRecords(false);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    // large enough for the map output not to block on spills
+    int sortMB = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+    for (boolean textKeys : new boolean[] { true, false }) {
+      for (int i = 0; i < 2; ++i) {
+        for (boolean binary : new boolean[] { false, true }) {
+          runJob(createJob(records, textKeys, sortMB, binary));
+          System.out.println((textKeys ? "Text/LongWritable"
+                                       : "LongWritable/BytesWritable") +
+              (binary ? " BinaryMapOutputBuffer: "
+                      : " MapOutputBuffer:       ") +
+              (long) (records / (Map.collectNanos / 1e9)) + " records/s");
+        }
+      }
+    }
+  }
+}
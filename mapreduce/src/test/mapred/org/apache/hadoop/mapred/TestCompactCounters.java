@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CompactCounters} and the delta-encoded counter updates in
+ * {@link TaskStatus}. Run as a program it reports the memory used by the
+ * counters of many tasks and the size of their status updates.
+ */
+public class TestCompactCounters {
+
+  private static final TaskAttemptID ATTEMPT =
+    TaskAttemptID.forName("attempt_201101010000_0001_m_000001_0");
+
+  private static Counters getCounters(long seed) {
+    Counters counters = new Counters();
+    for (TaskCounter key : TaskCounter.values()) {
+      counters.incrCounter(key, seed + key.ordinal());
+    }
+    counters.incrCounter("user group", "user counter", seed);
+    return counters;
+  }
+
+  private static TaskStatus getStatus(Counters counters) {
+    return TaskStatus.createTaskStatus(true, ATTEMPT, 0.5f, 1,
+        TaskStatus.State.RUNNING, "", "", "tracker", TaskStatus.Phase.MAP,
+        counters);
+  }
+
+  private static TaskStatus send(TaskStatus status, DataOutputBuffer out)
+  throws IOException {
+    out.reset();
+    TaskStatus.writeTaskStatus(out, status);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    return TaskStatus.readTaskStatus(in);
+  }
+
+  @Test
+  public void testSnapshot() {
+    Counters counters = getCounters(7);
+    CompactCounters compact = CompactCounters.of(counters);
+    assertEquals(counters.size(), compact.size());
+    assertEquals(counters, compact.toCounters());
+    assertEquals(7 + TaskCounter.SPILLED_RECORDS.ordinal(),
+        compact.getValue(TaskCounter.class.getName(), "SPILLED_RECORDS"));
+    assertEquals(0, compact.getValue("no such group", "SPILLED_RECORDS"));
+    assertEquals(0, CompactCounters.of(null).size());
+
+    Counters sum = getCounters(7);
+    compact.addTo(sum);
+    assertEquals(2 * 7,
+        sum.findCounter("user group", "user counter").getValue());
+  }
+
+  @Test
+  public void testDiffAndUpdate() {
+    Counters counters = getCounters(1);
+    CompactCounters base = CompactCounters.of(counters);
+    assertEquals(0, base.diff(base).size());
+
+    counters.incrCounter(TaskCounter.MAP_INPUT_RECORDS, 10);
+    counters.incrCounter("new group", "new counter", 3);
+    CompactCounters current = CompactCounters.of(counters);
+    Counters changed = current.diff(base);
+    assertEquals(2, changed.size());
+    assertEquals(counters.getCounter(TaskCounter.MAP_INPUT_RECORDS),
+        changed.getCounter(TaskCounter.MAP_INPUT_RECORDS));
+
+    assertEquals(counters, base.update(changed).toCounters());
+    // updates carry absolute values and can be applied again
+    assertEquals(counters, base.update(changed).update(changed).toCounters());
+  }
+
+  @Test
+  public void testNameDictionary() {
+    CompactCounters.NameDictionary dictionary =
+      new CompactCounters.NameDictionary();
+    for (int i = 0; i < CompactCounters.MAX_NAMES; ++i) {
+      assertEquals(i, dictionary.intern("name " + i));
+    }
+    assertEquals(7, dictionary.intern("name 7"));
+    assertEquals(7, dictionary.lookup("name 7"));
+    assertEquals("name 7", dictionary.names()[7]);
+    assertEquals(CompactCounters.MAX_NAMES, dictionary.names().length);
+    // full
+    assertEquals(-1, dictionary.intern("another name"));
+    assertEquals(-1, dictionary.lookup("another name"));
+    assertEquals(CompactCounters.MAX_NAMES, dictionary.size());
+  }
+
+  private static Counters getManyCounters(String prefix, int numNames) {
+    Counters counters = new Counters();
+    for (int i = 0; i < numNames; ++i) {
+      counters.incrCounter(prefix + " group " + i / 1000,
+                           prefix + " counter " + i, i);
+    }
+    return counters;
+  }
+
+  @Test
+  public void testFullDictionary() {
+    Counters counters = getCounters(1);
+    CompactCounters base = CompactCounters.of(counters);
+    // more names than a dictionary takes, in two snapshots
+    int numNames = CompactCounters.MAX_NAMES * 2 / 3;
+    Counters many = getManyCounters("first", numNames);
+    assertEquals(many, CompactCounters.of(many).toCounters());
+    many = getManyCounters("second", numNames);
+    assertEquals(many, CompactCounters.of(many).toCounters());
+
+    // snapshots taken with different dictionaries still compare
+    counters.incrCounter(TaskCounter.MAP_INPUT_RECORDS, 10);
+    CompactCounters current = CompactCounters.of(counters);
+    Counters changed = current.diff(base);
+    assertEquals(1, changed.size());
+    assertEquals(counters.getCounter(TaskCounter.MAP_INPUT_RECORDS),
+        changed.getCounter(TaskCounter.MAP_INPUT_RECORDS));
+    assertEquals(getCounters(1), base.toCounters());
+    assertEquals(counters, base.update(changed).toCounters());
+    assertEquals(counters.getCounter(TaskCounter.MAP_INPUT_RECORDS),
+        base.update(changed).getValue(TaskCounter.class.getName(),
+                                      "MAP_INPUT_RECORDS"));
+    assertEquals(counters, CompactCounters.EMPTY.update(counters).toCounters());
+    assertEquals(counters, current.diff(CompactCounters.EMPTY));
+    assertEquals(0, CompactCounters.EMPTY.diff(current).size());
+
+    try {
+      CompactCounters.of(
+          getManyCounters("third", CompactCounters.MAX_NAMES + 1));
+      fail("More names than a dictionary takes");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDeltaStatusUpdate() throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    Counters counters = getCounters(1);
+    TaskStatus status = getStatus(counters);
+
+    // the first update carries all the counters
+    TaskStatus update = (TaskStatus) status.clone();
+    update.snapshotCounters(null);
+    TaskStatus received = send(update, out);
+    int fullLength = out.getLength();
+    CompactCounters acked = update.getCompactCounters();
+    TaskStatus trackerStatus = getStatus(new Counters());
+    trackerStatus.statusUpdate(received);
+    assertEquals(counters, trackerStatus.getCounters());
+
+    // later ones only the counters that changed
+    counters.incrCounter(TaskCounter.MAP_OUTPUT_RECORDS, 100);
+    update = (TaskStatus) status.clone();
+    update.snapshotCounters(acked);
+    received = send(update, out);
+    assertTrue("delta of " + out.getLength() + " bytes not smaller than " +
+               fullLength, out.getLength() < fullLength);
+    assertEquals(1, received.getCounters().size());
+    trackerStatus.statusUpdate(received);
+    assertEquals(counters, trackerStatus.getCounters());
+
+    // the JobTracker resolves the changes against the previous status
+    TaskStatus previous = getStatus(getCounters(1));
+    previous.compactCounters(null);
+    received = send(update, out);
+    received.compactCounters(previous);
+    assertEquals(counters, received.getCounters());
+
+    // and inherits the previous counters if none were sent
+    update.setIncludeCounters(false);
+    received = send(update, out);
+    received.compactCounters(previous);
+    assertEquals(previous.getCounters(), received.getCounters());
+  }
+
+  public static void main(String[] args) throws IOException {
+    int numTasks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    DataOutputBuffer out = new DataOutputBuffer();
+
+    long full = heldMemory(numTasks, false);
+    long compact = heldMemory(numTasks, true);
+    System.out.println("Memory for the counters of " + numTasks +
+        " tasks: Counters " + (full >> 20) + "MB, CompactCounters " +
+        (compact >> 20) + "MB");
+
+    Counters counters = getCounters(1);
+    TaskStatus status = getStatus(counters);
+    TaskStatus update = (TaskStatus) status.clone();
+    update.snapshotCounters(null);
+    send(update, out);
+    int fullLength = out.getLength();
+    CompactCounters acked = update.getCompactCounters();
+    counters.incrCounter(TaskCounter.MAP_INPUT_RECORDS, 1000);
+    counters.incrCounter(TaskCounter.MAP_OUTPUT_RECORDS, 1000);
+    counters.incrCounter(TaskCounter.MAP_OUTPUT_BYTES, 100000);
+    update = (TaskStatus) status.clone();
+    update.snapshotCounters(acked);
+    send(update, out);
+    System.out.println("Status update with " + counters.size() +
+        " counters: full " + fullLength + " bytes, delta of 3 counters " +
+        out.getLength() + " bytes");
+  }
+
+  /**
+   * Returns the memory held by the counters of the given number of tasks,
+   * either as read off the wire or as compact snapshots.
+   */
+  private static long heldMemory(int numTasks, boolean compact)
+  throws IOException {
+    Runtime runtime = Runtime.getRuntime();
+    DataOutputBuffer out = new DataOutputBuffer();
+    DataInputBuffer in = new DataInputBuffer();
+    Object[] held = new Object[numTasks];
+    long before = usedMemory(runtime);
+    for (int i = 0; i < numTasks; ++i) {
+      out.reset();
+      getCounters(i).write(out);
+      in.reset(out.getData(), out.getLength());
+      Counters read = new Counters();
+      read.readFields(in);
+      held[i] = compact ? CompactCounters.of(read) : read;
+    }
+    long used = usedMemory(runtime) - before;
+    assertEquals(numTasks, held.length);
+    return used;
+  }
+
+  private static long usedMemory(Runtime runtime) {
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -19,10 +19,14 @@ package org.apache.hadoop.mapred;
 
 import org.junit.Test;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URLClassLoader;
 import java.net.URL;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.ImmutableConfiguration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
@@ -81,4 +85,74 @@ public class TestJobConf {
     String containingJar = JobConf.findContainingJar(clazz);
     assertEquals(jar.getAbsolutePath(), containingJar);
   }
-}
\ No newline at end of file
+
+  private static void report(String what, long nanos, int n) {
+    System.out.println(what + ": " + nanos / n + " ns");
+  }
+
+  /**
+   * Reports the cost of creating job configurations from a job file, of
+   * copying them and of reading properties from them and their snapshots.
+   */
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    File jobFile = new File(System.getProperty("test.build.data", "/tmp"),
+                            "TestJobConf-job.xml");
+    JobConf job = new JobConf();
+    for (int i = 0; i < 200; ++i) {
+      job.set("test.jobconf.property." + i, "${mapreduce.job.dir}/" + i);
+    }
+    job.set("mapreduce.job.dir", "/user/test/job");
+    OutputStream out = new FileOutputStream(jobFile);
+    try {
+      job.writeXml(out);
+    } finally {
+      out.close();
+    }
+    Path jobPath = new Path(jobFile.getAbsolutePath());
+    String[] names = { "mapreduce.job.maps", "io.file.buffer.size",
+                       "mapreduce.task.io.sort.mb", "test.jobconf.property.7",
+                       "mapred.map.tasks", "test.jobconf.unset" };
+    long sum = 0;
+    for (int i = 0; i < 3; ++i) {
+      long start = System.nanoTime();
+      for (int j = 0; j < n; ++j) {
+        job = new JobConf(jobPath);
+        sum += job.getInt("mapreduce.job.maps", 1);
+      }
+      report("new JobConf(job.xml) and get", System.nanoTime() - start, n);
+
+      start = System.nanoTime();
+      for (int j = 0; j < n; ++j) {
+        sum += new JobConf(job).getInt("mapreduce.job.maps", 1);
+      }
+      report("new JobConf(JobConf) and get", System.nanoTime() - start, n);
+
+      start = System.nanoTime();
+      for (int j = 0; j < n; ++j) {
+        sum += new ImmutableConfiguration(job).size();
+      }
+      report("new ImmutableConfiguration", System.nanoTime() - start, n);
+
+      Configuration snapshot = new ImmutableConfiguration(job);
+      for (Configuration conf : new Configuration[] { job, snapshot }) {
+        int gets = n * 1000;
+        start = System.nanoTime();
+        for (int j = 0; j < gets; ++j) {
+          String value = conf.get(names[j % names.length]);
+          sum += value == null ? 0 : value.length();
+        }
+        report(conf.getClass().getSimpleName() + " get",
+               System.nanoTime() - start, gets);
+        start = System.nanoTime();
+        for (int j = 0; j < gets; ++j) {
+          sum += conf.getInt("io.file.buffer.size", 0);
+        }
+        report(conf.getClass().getSimpleName() + " getInt",
+               System.nanoTime() - start, gets);
+      }
+    }
+    jobFile.delete();
+    System.out.println("(" + sum + ")");
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.UtilsForTests.RandomInputFormat;
+import org.apache.hadoop.mapred.lib.NullOutputFormat;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.IndexedSorter;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.QuickSort;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that normalized key prefixes agree with the key comparators and that
+ * map outputs sorted with them reach the reduce in order. Run as a program it
+ * reports the time spent sorting spills with and without prefixes.
+ */
+public class TestNormalizedKeyPrefix {
+
+  private static final Path OUTPUT_DIR = new Path(
+      System.getProperty("test.build.data", "/tmp"),
+      "TestNormalizedKeyPrefix");
+  private static final String RECORDS = "test.keyprefix.records";
+
+  private static final Random random = new Random();
+
+  private static Text randomText() {
+    // short keys, zero bytes and common prefixes make for many ties
+    byte[] b = new byte[random.nextInt(12)];
+    for (int i = 0; i < b.length; ++i) {
+      b[i] = (byte) (i < 4 ? random.nextInt(3) : random.nextInt(256));
+    }
+    Text text = new Text();
+    text.set(b);
+    return text;
+  }
+
+  private static WritableComparable<?> randomKey(Class<?> c) {
+    if (c == Text.class) {
+      return randomText();
+    } else if (c == BytesWritable.class) {
+      Text text = randomText();
+      return new BytesWritable(text.copyBytes());
+    } else if (c == LongWritable.class) {
+      return new LongWritable(random.nextInt(3) == 0 ? random.nextInt(5) - 2
+                                                     : random.nextLong());
+    } else if (c == IntWritable.class) {
+      return new IntWritable(random.nextInt(3) == 0 ? random.nextInt(5) - 2
+                                                    : random.nextInt());
+    } else if (c == FloatWritable.class) {
+      return new FloatWritable(random.nextInt(3) == 0 ? random.nextInt(5) - 2
+                               : (float) random.nextGaussian() * 1e10f);
+    } else {
+      return new DoubleWritable(random.nextInt(3) == 0 ? random.nextInt(5) - 2
+                                : random.nextGaussian() * 1e100);
+    }
+  }
+
+  private static int unsignedCompare(long a, long b) {
+    a ^= Long.MIN_VALUE;
+    b ^= Long.MIN_VALUE;
+    return a < b ? -1 : a == b ? 0 : 1;
+  }
+
+  @Test
+  public void testPrefixOrder() throws IOException {
+    Class<?>[] classes = { Text.class, BytesWritable.class, LongWritable.class,
+                           IntWritable.class, FloatWritable.class,
+                           DoubleWritable.class };
+    for (Class<?> c : classes) {
+      RawComparator<?> comparator = WritableComparator.get(
+          c.asSubclass(WritableComparable.class));
+      NormalizedKeyPrefix prefix = NormalizedKeyPrefix.get(c, comparator);
+      assertNotNull(c.getName(), prefix);
+      for (int i = 0; i < 10000; ++i) {
+        DataOutputBuffer a = new DataOutputBuffer();
+        DataOutputBuffer b = new DataOutputBuffer();
+        WritableComparable<?> ka = randomKey(c);
+        WritableComparable<?> kb = randomKey(c);
+        ka.write(a);
+        kb.write(b);
+        int cmp = Integer.signum(comparator.compare(
+            a.getData(), 0, a.getLength(), b.getData(), 0, b.getLength()));
+        int prefixCmp = unsignedCompare(
+            prefix.get(a.getData(), 0, a.getLength()),
+            prefix.get(b.getData(), 0, b.getLength()));
+        if (prefixCmp != 0) {
+          assertEquals(ka + " vs " + kb, cmp, prefixCmp);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUnknownComparators() {
+    assertNull(NormalizedKeyPrefix.get(LongWritable.class,
+        new LongWritable.DecreasingComparator()));
+    assertNull(NormalizedKeyPrefix.get(NullWritable.class,
+        WritableComparator.get(NullWritable.class)));
+  }
+
+  /**
+   * Emits random Text keys.
+   */
+  static class Map implements Mapper<Text, Text, Text, NullWritable> {
+    private int records;
+
+    public void configure(JobConf job) {
+      records = job.getInt(RECORDS, 10000);
+    }
+
+    public void map(Text key, Text val, OutputCollector<Text, NullWritable> out,
+                    Reporter reporter) throws IOException {
+      Random r = new Random(records);
+      Text text = new Text();
+      byte[] b = new byte[24];
+      for (int i = 0; i < records; ++i) {
+        int length = r.nextInt(b.length);
+        for (int j = 0; j < length; ++j) {
+          b[j] = (byte) ('a' + r.nextInt(j < 6 ? 2 : 26));
+        }
+        text.set(b, 0, length);
+        out.collect(text, NullWritable.get());
+      }
+    }
+
+    public void close() { }
+  }
+
+  static class Reduce implements Reducer<Text, NullWritable, Text,
+                                         NullWritable> {
+    static long records;
+    private Text previous;
+
+    public void configure(JobConf job) { }
+
+    public void reduce(Text key, Iterator<NullWritable> values,
+                       OutputCollector<Text, NullWritable> out,
+                       Reporter reporter) throws IOException {
+      if (previous != null && previous.compareTo(key) >= 0) {
+        throw new IOException(key + " after " + previous);
+      }
+      previous = new Text(key);
+      while (values.hasNext()) {
+        values.next();
+        ++records;
+      }
+    }
+
+    public void close() { }
+  }
+
+  /**
+   * Accumulates the time spent sorting spills.
+   */
+  public static class TimedQuickSort implements IndexedSorter {
+    static long sortNanos;
+    private final QuickSort sorter = new QuickSort();
+
+    public void sort(IndexedSortable s, int p, int r) {
+      sort(s, p, r, null);
+    }
+
+    public void sort(IndexedSortable s, int p, int r, Progressable rep) {
+      long start = System.nanoTime();
+      sorter.sort(s, p, r, rep);
+      sortNanos += System.nanoTime() - start;
+    }
+  }
+
+  private static JobConf createJob(int records, int sortMB, boolean prefix) {
+    JobConf job = new JobConf();
+    job.setInputFormat(RandomInputFormat.class);
+    job.setOutputFormat(NullOutputFormat.class);
+    FileOutputFormat.setOutputPath(job, OUTPUT_DIR);
+    job.setMapperClass(Map.class);
+    job.setReducerClass(Reduce.class);
+    job.setNumMapTasks(1);
+    job.setNumReduceTasks(1);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(NullWritable.class);
+    job.setInt(RECORDS, records);
+    job.setInt(JobContext.IO_SORT_MB, sortMB);
+    job.setBoolean(JobContext.MAP_SORT_KEY_PREFIX, prefix);
+    job.setClass("map.sort.class", TimedQuickSort.class,
+                 IndexedSorter.class);
+    return job;
+  }
+
+  private static void runJob(JobConf job) throws IOException {
+    Reduce.records = 0;
+    TimedQuickSort.sortNanos = 0;
+    try {
+      JobClient.runJob(job);
+    } finally {
+      FileSystem.get(job).delete(OUTPUT_DIR, true);
+    }
+  }
+
+  @Test
+  public void testSortedSpills() throws IOException {
+    // one MB of sort buffer to force several spills
+    runJob(createJob(50000, 1, true));
+    assertEquals(50000, Reduce.records);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 3000000;
+    int sortMB = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    for (int i = 0; i < 3; ++i) {
+      for (boolean prefix : new boolean[] { false, true }) {
+        runJob(createJob(records, sortMB, prefix));
+        System.out.println((prefix ? "prefixes:    " : "no prefixes: ") +
+            TimedQuickSort.sortNanos / 1000000 + " ms sorting " +
+            Reduce.records + " records");
+      }
+    }
+  }
+}
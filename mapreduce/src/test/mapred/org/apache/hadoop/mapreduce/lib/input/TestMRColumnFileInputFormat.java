@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapreduce.lib.input;
+
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.ColumnFile;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.MapReduceTestUtil;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.ColumnFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+
+public class TestMRColumnFileInputFormat extends TestCase {
+  private static final int RECORDS = 10000;
+
+  public void testFormat() throws Exception {
+    Configuration conf = new Configuration();
+    // many small row groups
+    conf.setLong(
+        CommonConfigurationKeysPublic.IO_COLUMNFILE_ROWGROUP_SIZE_KEY, 4096);
+    Job job = Job.getInstance(conf);
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path dir = new Path(System.getProperty("test.build.data", "/tmp"),
+                        "TestMRColumnFileInputFormat");
+    fs.delete(dir, true);
+
+    // write with the output format, compressing the columns
+    FileOutputFormat.setOutputPath(job, dir);
+    FileOutputFormat.setCompressOutput(job, true);
+    FileOutputFormat.setOutputCompressorClass(job, DefaultCodec.class);
+    TaskAttemptContext context = MapReduceTestUtil.
+      createDummyMapTaskAttemptContext(job.getConfiguration());
+    ColumnFileOutputFormat<NullWritable> outputFormat =
+      new ColumnFileOutputFormat<NullWritable>();
+    OutputCommitter committer = outputFormat.getOutputCommitter(context);
+    committer.setupJob(job);
+    RecordWriter<NullWritable, ColumnFile.Row> writer =
+      outputFormat.getRecordWriter(context);
+    ColumnFile.Schema schema = new ColumnFile.Schema()
+      .addColumn("id", IntWritable.class)
+      .addColumn("name", Text.class)
+      .addColumn("time", LongWritable.class);
+    ColumnFile.Row row = new ColumnFile.Row(schema);
+    try {
+      for (int i = 0; i < RECORDS; ++i) {
+        row.set(0, new IntWritable(i));
+        row.set(1, new Text("name" + i));
+        row.set(2, new LongWritable(10L * i));
+        writer.write(NullWritable.get(), row);
+      }
+    } finally {
+      writer.close(context);
+    }
+    committer.commitTask(context);
+    committer.commitJob(job);
+
+    // read back a projection in splits
+    FileInputFormat.setInputPaths(job, dir);
+    ColumnFileInputFormat.setColumns(job, "id", "time");
+    ColumnFileInputFormat inputFormat = new ColumnFileInputFormat();
+    for (int splits : new int[] { 1, 7, 50 }) {
+      BitSet bits = new BitSet(RECORDS);
+      long length = 0;
+      for (FileStatus status : fs.listStatus(dir)) {
+        length += status.getLen();
+      }
+      FileInputFormat.setMaxInputSplitSize(job, length / splits + 1);
+      for (InputSplit split : inputFormat.getSplits(job)) {
+        RecordReader<NullWritable, ColumnFile.Row> reader =
+          inputFormat.createRecordReader(split, context);
+        MapContext<NullWritable, ColumnFile.Row, NullWritable, NullWritable>
+          mcontext = new MapContextImpl<NullWritable, ColumnFile.Row,
+            NullWritable, NullWritable>(job.getConfiguration(),
+            context.getTaskAttemptID(), reader, null, null,
+            MapReduceTestUtil.createDummyReporter(), split);
+        reader.initialize(split, mcontext);
+        try {
+          while (reader.nextKeyValue()) {
+            ColumnFile.Row value = reader.getCurrentValue();
+            int id = ((IntWritable) value.get("id")).get();
+            assertEquals(10L * id, ((LongWritable) value.get("time")).get());
+            assertNull(value.get("name"));
+            assertFalse("Row in multiple splits.", bits.get(id));
+            bits.set(id);
+          }
+        } finally {
+          reader.close();
+        }
+      }
+      assertEquals("Some rows in no split.", RECORDS, bits.cardinality());
+    }
+    fs.delete(dir, true);
+  }
+}
@@ -0,0 +1,346 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.IFile;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.util.Progress;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link AdaptiveMergePolicy} and shuffles skewed map outputs
+ * through a {@link MergeManager}, spilling or streaming the in-memory outputs
+ * into the final merge. Run as a program it compares the static
+ * and the adaptive policy on gridmix-style, log-normally distributed map
+ * output sizes.
+ */
+public class TestMergeManager {
+
+  private static final Path TEST_ROOT_DIR = new Path(
+      System.getProperty("test.build.data", "/tmp"), "TestMergeManager");
+  private static final TaskAttemptID REDUCE_ID =
+    TaskAttemptID.forName("attempt_201101010000_0001_r_000000_0");
+  private static final int RECORD_LENGTH = 100;
+
+  @Test
+  public void testOutliers() {
+    AdaptiveMergePolicy policy =
+      new AdaptiveMergePolicy(100000, 25000, 66000, 3.0f);
+    // too few samples to tell
+    assertEquals(25000, policy.getSingleShuffleLimit());
+    for (int i = 0; i < AdaptiveMergePolicy.MIN_SAMPLES; ++i) {
+      policy.reserved(i % 2 == 0 ? 9000 : 11000);
+    }
+    long limit = policy.getSingleShuffleLimit();
+    assertEquals(10000 + 3 * 1000, limit);
+    assertTrue(policy.canShuffleToMemory(12000));
+    assertFalse(policy.canShuffleToMemory(20000));
+
+    // small outputs always fit in memory
+    policy = new AdaptiveMergePolicy(1000000, 250000, 660000, 3.0f);
+    for (int i = 0; i < AdaptiveMergePolicy.MIN_SAMPLES; ++i) {
+      policy.reserved(100);
+    }
+    assertEquals(50000, policy.getSingleShuffleLimit());
+  }
+
+  @Test
+  public void testMergeThreshold() {
+    AdaptiveMergePolicy policy =
+      new AdaptiveMergePolicy(1000000, 250000, 660000, 3.0f);
+    policy.fetched(100000, 0);
+    policy.fetched(100000, 100);
+    // no merge seen yet
+    assertEquals(660000, policy.getMergeThreshold());
+
+    // merges as fast as the fetches: the merge of half the memory
+    // completes just as the other half is fetched
+    policy.merged(200000, 100);
+    assertEquals(500000, policy.getMergeThreshold());
+    assertEquals(AdaptiveMergePolicy.Decision.EARLY_IN_MEMORY_MERGES,
+                 policy.getMergeDecision(policy.getMergeThreshold()));
+
+    // much faster merges start later, within bounds
+    policy.merged(100000000, 100);
+    assertEquals(900000, policy.getMergeThreshold());
+    assertEquals(AdaptiveMergePolicy.Decision.LATE_IN_MEMORY_MERGES,
+                 policy.getMergeDecision(policy.getMergeThreshold()));
+
+    // much slower merges start earlier, within bounds
+    policy = new AdaptiveMergePolicy(1000000, 250000, 660000, 3.0f);
+    policy.fetched(100000, 0);
+    policy.fetched(100000000, 100);
+    policy.merged(1000, 1000);
+    assertEquals(330000, policy.getMergeThreshold());
+    assertNull(policy.getMergeDecision(660000));
+  }
+
+  @Test
+  public void testSkewedShuffle() throws Throwable {
+    long[] sizes = getSkewedSizes(new Random(1), 200, 4000, 1.0);
+    // a few heavy hitters well below the static single shuffle limit
+    sizes[50] = sizes[150] = 150000;
+    for (boolean adaptive : new boolean[] { false, true }) {
+      JobConf conf = createConf(1 << 20);
+      conf.setBoolean(MRJobConfig.SHUFFLE_MERGE_ADAPTIVE, adaptive);
+      ShuffleResult result = shuffle(sizes, conf);
+      assertEquals(result.expectedRecords, result.records);
+      long outliers = result.counters.findCounter(
+          AdaptiveMergePolicy.COUNTER_GROUP,
+          AdaptiveMergePolicy.Decision.OUTLIERS_SHUFFLED_TO_DISK.toString())
+          .getValue();
+      if (adaptive) {
+        assertTrue("no outliers shuffled to disk", outliers >= 2);
+      } else {
+        assertEquals(0, outliers);
+      }
+    }
+  }
+
+  @Test
+  public void testStreamingFinalMerge() throws Throwable {
+    long[] sizes = getSkewedSizes(new Random(2), 100, 4000, 1.0);
+    JobConf conf = createConf(1 << 20);
+    ShuffleResult spilled = shuffle(sizes, conf);
+    assertEquals(spilled.expectedRecords, spilled.records);
+    assertEquals(0, spilled.counters.getCounter(
+        TaskCounter.REDUCE_MERGE_BYTES_NOT_SPILLED));
+
+    conf.setFloat(MRJobConfig.REDUCE_MERGE_STREAMING_BUFFER_PERCENT, 0.5f);
+    ShuffleResult streamed = shuffle(sizes, conf);
+    assertEquals(streamed.expectedRecords, streamed.records);
+    assertTrue(streamed.counters.getCounter(
+        TaskCounter.REDUCE_MERGE_BYTES_NOT_SPILLED) > 0);
+    assertTrue(streamed.counters.getCounter(TaskCounter.SPILLED_RECORDS) <
+               spilled.counters.getCounter(TaskCounter.SPILLED_RECORDS));
+
+    // a budget smaller than the outputs in memory: whole map outputs are
+    // spilled until the rest fit, and only the rest is counted
+    long budget = 100000;
+    conf.setFloat(MRJobConfig.REDUCE_MERGE_STREAMING_BUFFER_PERCENT,
+                  (float) budget / Runtime.getRuntime().maxMemory());
+    ShuffleResult partial = shuffle(sizes, conf);
+    assertEquals(partial.expectedRecords, partial.records);
+    long notSpilled = partial.counters.getCounter(
+        TaskCounter.REDUCE_MERGE_BYTES_NOT_SPILLED);
+    assertTrue(notSpilled > 0);
+    // these outputs do not fill the budget exactly
+    assertTrue(notSpilled < budget);
+    assertTrue(notSpilled < streamed.counters.getCounter(
+        TaskCounter.REDUCE_MERGE_BYTES_NOT_SPILLED));
+  }
+
+  /**
+   * Map output sizes following a log-normal distribution, as the map output
+   * bytes of gridmix jobs do.
+   */
+  private static long[] getSkewedSizes(Random random, int numMaps,
+                                       long medianSize, double sigma) {
+    long[] sizes = new long[numMaps];
+    for (int i = 0; i < numMaps; ++i) {
+      sizes[i] = Math.max(RECORD_LENGTH,
+          (long)(medianSize * Math.exp(sigma * random.nextGaussian())));
+    }
+    return sizes;
+  }
+
+  static class ShuffleResult {
+    long expectedRecords;
+    long records;
+    int stalls;
+    long millis;
+    Counters counters = new Counters();
+  }
+
+  private static JobConf createConf(long memory) {
+    JobConf conf = new JobConf();
+    conf.set(MRConfig.LOCAL_DIR, 
+             new Path(TEST_ROOT_DIR, "local").toString());
+    conf.setLong(MRJobConfig.REDUCE_MEMORY_TOTAL_BYTES, memory);
+    conf.setMapOutputKeyClass(IntWritable.class);
+    conf.setMapOutputValueClass(Text.class);
+    return conf;
+  }
+
+  /**
+   * Shuffle map outputs of the given sizes through a MergeManager and
+   * merge the results.
+   */
+  private static ShuffleResult shuffle(long[] sizes, JobConf conf) 
+  throws Throwable {
+    final ShuffleResult result = new ShuffleResult();
+    Path localDir = new Path(conf.get(MRConfig.LOCAL_DIR));
+    FileSystem localFS = FileSystem.getLocal(conf);
+    localFS.delete(localDir, true);
+    localFS.mkdirs(localDir);
+
+    final Throwable[] error = new Throwable[1];
+    MergeManager<IntWritable, Text> merger =
+      new MergeManager<IntWritable, Text>(REDUCE_ID, conf, localFS,
+          new LocalDirAllocator(MRConfig.LOCAL_DIR),
+          new CountersReporter(result.counters), null, null, null,
+          result.counters.findCounter(TaskCounter.SPILLED_RECORDS),
+          result.counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS),
+          result.counters.findCounter(TaskCounter.MERGED_MAP_OUTPUTS),
+          new ExceptionReporter() {
+            public void reportException(Throwable t) {
+              error[0] = t;
+            }
+          }, new Progress());
+
+    long start = System.currentTimeMillis();
+    DataOutputBuffer segment = new DataOutputBuffer();
+    for (int i = 0; i < sizes.length; ++i) {
+      TaskAttemptID mapId = new TaskAttemptID(
+          REDUCE_ID.getJobID().getJtIdentifier(), REDUCE_ID.getJobID().getId(),
+          TaskType.MAP, i, 0);
+      segment.reset();
+      IFile.Writer<IntWritable, Text> writer =
+        new IFile.Writer<IntWritable, Text>(conf,
+            new FSDataOutputStream(segment, null), IntWritable.class,
+            Text.class, null, null);
+      long numRecords = Math.max(1, sizes[i] / RECORD_LENGTH);
+      Text value = new Text(new byte[RECORD_LENGTH - 10]);
+      IntWritable key = new IntWritable();
+      for (int j = 0; j < numRecords; ++j) {
+        key.set(j * sizes.length + i);
+        writer.append(key, value);
+      }
+      writer.close();
+      result.expectedRecords += numRecords;
+
+      MapOutput<IntWritable, Text> mapOutput;
+      while ((mapOutput = merger.reserve(mapId, writer.getRawLength(), 0))
+             .getType() == MapOutput.Type.WAIT) {
+        ++result.stalls;
+        merger.waitForInMemoryMerge();
+      }
+      if (mapOutput.getType() == MapOutput.Type.MEMORY) {
+        System.arraycopy(segment.getData(), 0, mapOutput.getMemory(), 0,
+                         mapOutput.getMemory().length);
+      } else {
+        mapOutput.getDisk().write(segment.getData(), 0, segment.getLength());
+        mapOutput.getDisk().close();
+      }
+      mapOutput.commit();
+      if (error[0] != null) {
+        throw error[0];
+      }
+    }
+
+    RawKeyValueIterator iter = merger.close();
+    int previous = Integer.MIN_VALUE;
+    while (iter.next()) {
+      DataInputBuffer key = iter.getKey();
+      int current = WritableComparator.readInt(key.getData(),
+                                               key.getPosition());
+      assertTrue(previous < current);
+      previous = current;
+      ++result.records;
+    }
+    iter.close();
+    result.millis = System.currentTimeMillis() - start;
+    return result;
+  }
+
+  private static class CountersReporter implements Reporter {
+    private final Counters counters;
+
+    CountersReporter(Counters counters) {
+      this.counters = counters;
+    }
+
+    public void setStatus(String status) { }
+
+    public Counters.Counter getCounter(Enum<?> name) {
+      return counters.findCounter(name);
+    }
+
+    public Counters.Counter getCounter(String group, String name) {
+      return counters.findCounter(group, name);
+    }
+
+    public void incrCounter(Enum<?> key, long amount) {
+      counters.incrCounter(key, amount);
+    }
+
+    public void incrCounter(String group, String counter, long amount) {
+      counters.incrCounter(group, counter, amount);
+    }
+
+    public InputSplit getInputSplit() {
+      throw new UnsupportedOperationException();
+    }
+
+    public float getProgress() {
+      return 0;
+    }
+
+    public void progress() { }
+  }
+
+  public static void main(String[] args) throws Throwable {
+    int numMaps = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    long medianSize = args.length > 1 ? Long.parseLong(args[1]) : 20000;
+    double sigma = args.length > 2 ? Double.parseDouble(args[2]) : 1.5;
+    long memory = args.length > 3 ? Long.parseLong(args[3]) : 16 << 20;
+    long[] sizes = getSkewedSizes(new Random(0), numMaps, medianSize, sigma);
+
+    for (boolean adaptive : new boolean[] { false, true, false, true }) {
+      JobConf conf = createConf(memory);
+      conf.setBoolean(MRJobConfig.SHUFFLE_MERGE_ADAPTIVE, adaptive);
+      ShuffleResult result = shuffle(sizes, conf);
+      Counters.Group group =
+        result.counters.getGroup(AdaptiveMergePolicy.COUNTER_GROUP);
+      System.out.println((adaptive ? "adaptive" : "static  ") + ": " +
+          result.millis + "ms, " + result.stalls + " stalls, " +
+          result.counters.getCounter(TaskCounter.SPILLED_RECORDS) +
+          " spilled records, outliers " +
+          group.getCounter(AdaptiveMergePolicy.Decision
+                           .OUTLIERS_SHUFFLED_TO_DISK.toString()) +
+          ", early merges " +
+          group.getCounter(AdaptiveMergePolicy.Decision
+                           .EARLY_IN_MEMORY_MERGES.toString()) +
+          ", late merges " +
+          group.getCounter(AdaptiveMergePolicy.Decision
+                           .LATE_IN_MEMORY_MERGES.toString()));
+    }
+  }
+}
@@ -51,6 +51,19 @@ public class TestReflectionUtils {
     assertTrue(ob.configured);
   }
   
+  @Test
+  public void testNewInstance() {
+    // configurable through a superclass
+    SubclassOb ob =
+      ReflectionUtils.newInstance(SubclassOb.class, new JobConf());
+    assertTrue(ob.configured);
+    ob = ReflectionUtils.newInstance(SubclassOb.class, new Configuration());
+    assertFalse(ob.configured);
+  }
+
+  private static class SubclassOb extends JobConfigurableOb {
+  }
+
   private static class JobConfigurableOb implements JobConfigurable {
     boolean configured;
     public void configure(JobConf job) {